@@ -0,0 +1,45 @@
+package name.maxdeliso.teflon.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks headless with allocation profiling, writing results as JSON so runs can be
+ * compared by tools. Arguments are regular expressions selecting benchmarks, all of them by
+ * default. The results file is {@code jmh-results.json}, or the {@code teflon.jmh.results}
+ * system property.
+ */
+public final class BenchmarkRunner {
+    /**
+     * Results file used when none is configured.
+     */
+    private static final String DEFAULT_RESULTS = "jmh-results.json";
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * Runs the selected benchmarks.
+     *
+     * @param args Regular expressions selecting benchmarks
+     * @throws RunnerException If a benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .jvmArgsPrepend("-Djava.awt.headless=true")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(System.getProperty("teflon.jmh.results", DEFAULT_RESULTS));
+        if (args.length == 0) {
+            options.include(BenchmarkRunner.class.getPackageName() + "\\.");
+        }
+        for (String include : args) {
+            options.include(include);
+        }
+        new Runner(options.build()).run();
+    }
+}
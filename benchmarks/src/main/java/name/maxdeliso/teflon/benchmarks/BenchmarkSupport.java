@@ -0,0 +1,35 @@
+package name.maxdeliso.teflon.benchmarks;
+
+/**
+ * Settings and helpers shared by the benchmarks.
+ */
+public final class BenchmarkSupport {
+    /**
+     * JVM argument replacing the application's debug-level file logging with warnings on
+     * stderr, so benchmarks measure the code rather than the appenders.
+     */
+    public static final String QUIET_LOGGING = "-Dlog4j2.configurationFile=log4j2-benchmarks.xml";
+
+    /**
+     * Number of full collections used to settle the heap before measuring it.
+     */
+    private static final int SETTLE_COLLECTIONS = 4;
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Measures live heap after repeated full collections.
+     *
+     * @return Used heap bytes
+     */
+    public static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < SETTLE_COLLECTIONS; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,166 @@
+package name.maxdeliso.teflon.benchmarks;
+
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MetricsRegistry;
+import name.maxdeliso.teflon.ui.ChatPanel;
+import name.maxdeliso.teflon.ui.UiUpdateScheduler;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the cost of appending chat messages to a {@link ChatPanel} against the length of the
+ * transcript already shown, for both views. Each iteration fills a fresh panel, then posts a
+ * batch of pre-rendered messages one at a time, as the receive path does, and waits for the EDT
+ * to show them. EDT time per appended message is read from the scheduler's counters:
+ * {@code insertMicrosPerMessage} covers linking messages in, {@code edtMicrosPerMessage} adds
+ * the redraws, which in the HTML view grow with the transcript; at 10,000 rows a single HTML
+ * append takes seconds, so lengths stay small here and {@link TranscriptBenchmark} covers long
+ * list transcripts. Auxiliary counters are summed over iterations, so each is measured once.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkSupport.QUIET_LOGGING, "-Djava.awt.headless=true"})
+public class ChatPanelBenchmark {
+    /**
+     * Messages appended per iteration.
+     */
+    private static final int BATCH = 100;
+
+    /**
+     * Messages per update while filling the transcript.
+     */
+    private static final int FILL_CHUNK = 1000;
+
+    /**
+     * Distinct senders the messages cycle through.
+     */
+    private static final int SENDERS = 30;
+
+    /**
+     * Nanoseconds between polls of the scheduler's backlog.
+     */
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * A freshly filled transcript per iteration.
+     */
+    @State(Scope.Thread)
+    public static class Transcript {
+        /**
+         * How the transcript is displayed.
+         */
+        @Param({"LIST", "HTML"})
+        public ChatPanel.View view;
+
+        /**
+         * Messages in the transcript before the batch is appended.
+         */
+        @Param({"1000", "3000"})
+        public int rows;
+
+        MetricsRegistry metrics;
+        UiUpdateScheduler scheduler;
+        ChatPanel chatPanel;
+        List<ChatPanel.Fragment> batch;
+        long busyNanos;
+        long orderedNanos;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws InterruptedException {
+            metrics = new MetricsRegistry();
+            scheduler = new UiUpdateScheduler(metrics, Integer.MAX_VALUE);
+            chatPanel = new ChatPanel(scheduler, messageId -> null, view);
+            List<ChatPanel.Fragment> chunk = new ArrayList<>(FILL_CHUNK);
+            for (int i = 0; i < rows; i++) {
+                chunk.add(fragment(i));
+                if (chunk.size() == FILL_CHUNK || i == rows - 1) {
+                    chatPanel.insertFragments(chunk);
+                    chunk = new ArrayList<>(FILL_CHUNK);
+                }
+            }
+            awaitShown(scheduler);
+            batch = new ArrayList<>(BATCH);
+            for (int i = 0; i < BATCH; i++) {
+                batch.add(fragment(rows + i));
+            }
+            busyNanos = metrics.counter("ui.busyNanos").sum();
+            orderedNanos = metrics.counter("ui.orderedNanos").sum();
+        }
+
+        private ChatPanel.Fragment fragment(int i) {
+            String sender = new UUID(i % SENDERS, 1).toString();
+            return chatPanel.prerenderMessage(new Message(sender, "benchmark <message> & reply " + i, i + 1),
+                    new Date());
+        }
+    }
+
+    /**
+     * EDT time per appended message, reported alongside the single-shot time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class EdtTime {
+        /**
+         * EDT microseconds spent per appended message, including transcript redraws.
+         */
+        public double edtMicrosPerMessage;
+
+        /**
+         * EDT microseconds spent per appended message in per-message updates.
+         */
+        public double insertMicrosPerMessage;
+    }
+
+    @Benchmark
+    public void appendBatch(Transcript transcript, EdtTime edtTime) throws InterruptedException {
+        for (ChatPanel.Fragment fragment : transcript.batch) {
+            transcript.chatPanel.insertFragment(fragment);
+        }
+        awaitShown(transcript.scheduler);
+        edtTime.edtMicrosPerMessage = microsPerMessage(
+                transcript.metrics.counter("ui.busyNanos").sum() - transcript.busyNanos);
+        edtTime.insertMicrosPerMessage = microsPerMessage(
+                transcript.metrics.counter("ui.orderedNanos").sum() - transcript.orderedNanos);
+    }
+
+    /**
+     * Waits until every posted update has been applied and the frame showing them has ended.
+     *
+     * @param scheduler The scheduler the updates were posted to
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private static void awaitShown(UiUpdateScheduler scheduler) throws InterruptedException {
+        while (scheduler.backlog() > 0) {
+            LockSupport.parkNanos(POLL_NANOS);
+        }
+        CountDownLatch drained = new CountDownLatch(1);
+        scheduler.afterFrame(drained::countDown);
+        drained.await();
+    }
+
+    private static double microsPerMessage(long nanos) {
+        return nanos / (double) BATCH / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+}
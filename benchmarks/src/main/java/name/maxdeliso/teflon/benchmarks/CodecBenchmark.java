@@ -0,0 +1,86 @@
+package name.maxdeliso.teflon.benchmarks;
+
+import name.maxdeliso.teflon.data.JsonMessageMarshaller;
+import name.maxdeliso.teflon.data.MembershipUpdate;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageMarshaller;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding a chat message to a datagram with {@link JsonMessageMarshaller} and decoding
+ * it back, for short, typical and near-full bodies, with and without membership updates
+ * piggybacked as the membership protocol does. Run with {@code -prof gc} to compare allocation
+ * per message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    /**
+     * Number of membership updates piggybacked when they are included.
+     */
+    private static final int PIGGYBACKED_UPDATES = 6;
+
+    /**
+     * Body length in characters.
+     */
+    @Param({"16", "256", "2048"})
+    public int bodyLength;
+
+    /**
+     * Whether membership updates are piggybacked on the message.
+     */
+    @Param({"false", "true"})
+    public boolean membership;
+
+    private final MessageMarshaller marshaller = new JsonMessageMarshaller(new Gson());
+    private Message message;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setUp() {
+        String sender = UUID.randomUUID().toString();
+        message = new Message(sender, "m".repeat(bodyLength), 1L).withSentAt(1L);
+        if (membership) {
+            List<MembershipUpdate> updates = new ArrayList<>();
+            for (int i = 0; i < PIGGYBACKED_UPDATES; i++) {
+                updates.add(new MembershipUpdate(
+                        UUID.randomUUID().toString(), "10.0.0." + i, MembershipUpdate.State.ALIVE, i));
+            }
+            message = message.withMembership(updates);
+        }
+        encoded = marshaller.messageToBuffer(message);
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        return marshaller.messageToBuffer(message);
+    }
+
+    @Benchmark
+    public Optional<Message> decode() {
+        return marshaller.bufferToMessage(encoded.duplicate());
+    }
+}
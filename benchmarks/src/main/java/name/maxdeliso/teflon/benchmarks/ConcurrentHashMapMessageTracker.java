@@ -0,0 +1,99 @@
+package name.maxdeliso.teflon.benchmarks;
+
+import name.maxdeliso.teflon.data.Clock;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.TimingWheel;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Baseline reproducing the map-of-records layout MessageTracker used before it moved to a
+ * {@code UuidTable}: one record, one Instant and one nested map per tracked message.
+ * Timeouts are scheduled on a timing wheel exactly as the real tracker does, so comparisons
+ * isolate the storage layout.
+ */
+final class ConcurrentHashMapMessageTracker {
+    /**
+     * Message timeout in seconds.
+     */
+    private static final int MESSAGE_TIMEOUT_SECONDS = 5;
+
+    /**
+     * Tracked messages.
+     */
+    private final Map<UUID, MessageInfo> messageMap = new ConcurrentHashMap<>();
+
+    /**
+     * The ID of this instance.
+     */
+    private final String instanceId;
+
+    /**
+     * The clock used for timing.
+     */
+    private final Clock clock;
+
+    /**
+     * The timing wheel for timeouts.
+     */
+    private final TimingWheel timingWheel;
+
+    ConcurrentHashMapMessageTracker(String instanceId, Clock clock, TimingWheel timingWheel) {
+        this.instanceId = instanceId;
+        this.clock = clock;
+        this.timingWheel = timingWheel;
+    }
+
+    void trackMessage(Message message) {
+        UUID messageId = message.messageId();
+        Instant now = clock.now();
+        TimingWheel.Timeout expiry = timingWheel.schedule(
+                now.plusSeconds(MESSAGE_TIMEOUT_SECONDS).toEpochMilli(), () -> expire(messageId));
+        MessageInfo previous = messageMap.put(messageId,
+                new MessageInfo(message, now, new ConcurrentHashMap<>(), expiry));
+        if (previous != null) {
+            previous.expiry().cancel();
+        }
+    }
+
+    void processAcknowledgment(Message ack) {
+        MessageInfo info = messageMap.get(ack.originalMessageId());
+        if (info == null || info.message().senderId().equals(instanceId)) {
+            return;
+        }
+        info.acknowledgments().put(ack.senderId(), ack);
+    }
+
+    Set<String> getAcknowledgingParties(UUID messageId) {
+        MessageInfo info = messageMap.get(messageId);
+        return info != null ? info.acknowledgments().keySet() : Set.of();
+    }
+
+    int pending() {
+        return messageMap.size();
+    }
+
+    private void expire(UUID messageId) {
+        Instant cutoff = clock.now().minusSeconds(MESSAGE_TIMEOUT_SECONDS);
+        messageMap.computeIfPresent(messageId, (id, info) -> info.timestamp().isAfter(cutoff) ? info : null);
+    }
+
+    /**
+     * Per-message record of the baseline layout.
+     *
+     * @param message         The tracked message
+     * @param timestamp       When tracking began
+     * @param acknowledgments Acknowledgments by sender ID
+     * @param expiry          The message's timeout
+     */
+    private record MessageInfo(
+            Message message,
+            Instant timestamp,
+            Map<String, Message> acknowledgments,
+            TimingWheel.Timeout expiry
+    ) {}
+}
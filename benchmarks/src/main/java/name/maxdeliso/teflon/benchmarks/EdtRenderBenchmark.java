@@ -0,0 +1,145 @@
+package name.maxdeliso.teflon.benchmarks;
+
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MetricsRegistry;
+import name.maxdeliso.teflon.ui.ChatPanel;
+import name.maxdeliso.teflon.ui.UiUpdateScheduler;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures EDT time per chat message under a synthetic load of 1,000 messages per second.
+ * In {@code onEdt} mode every message is colored, escaped, formatted and parsed on the EDT, as
+ * incoming messages were before the pre-rendering stage. In {@code preRendered} mode the load
+ * thread does that work and the EDT only links the fragment into the transcript.
+ * EDT time is read from the scheduler's counters. {@code insertMicrosPerMessage} covers the
+ * per-message updates; {@code edtMicrosPerMessage} adds the per-frame transcript redraw that
+ * both modes share. Auxiliary counters are summed over iterations, so each is measured once.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkSupport.QUIET_LOGGING, "-Djava.awt.headless=true"})
+public class EdtRenderBenchmark {
+    /**
+     * Messages delivered per second.
+     */
+    private static final int MESSAGES_PER_SECOND = 1000;
+
+    /**
+     * Messages delivered per iteration.
+     */
+    private static final int MESSAGES = 2000;
+
+    /**
+     * Nanoseconds between messages.
+     */
+    private static final long INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1) / MESSAGES_PER_SECOND;
+
+    /**
+     * A fresh transcript per iteration, so each iteration renders into the same amount of history.
+     */
+    @State(Scope.Thread)
+    public static class Transcript {
+        /**
+         * Where rendering work happens.
+         */
+        @Param({"onEdt", "preRendered"})
+        public String mode;
+
+        MetricsRegistry metrics;
+        UiUpdateScheduler scheduler;
+        ChatPanel chatPanel;
+        Message[] messages;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            metrics = new MetricsRegistry();
+            scheduler = new UiUpdateScheduler(metrics, Integer.MAX_VALUE);
+            chatPanel = new ChatPanel(scheduler, messageId -> null);
+            messages = new Message[MESSAGES];
+            for (int i = 0; i < MESSAGES; i++) {
+                String sender = new UUID(i % 30, 1).toString();
+                messages[i] = new Message(sender, "benchmark <message> & reply " + i, i + 1);
+            }
+        }
+    }
+
+    /**
+     * EDT time per delivered message, reported alongside the single-shot time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class EdtTime {
+        /**
+         * EDT microseconds spent per delivered message, including transcript redraws.
+         */
+        public double edtMicrosPerMessage;
+
+        /**
+         * EDT microseconds spent per delivered message in per-message updates.
+         */
+        public double insertMicrosPerMessage;
+    }
+
+    @Benchmark
+    public void deliverAtFixedRate(Transcript transcript, EdtTime edtTime) throws InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            long wait = start + i * INTERVAL_NANOS - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Message message = transcript.messages[i];
+            if ("onEdt".equals(transcript.mode)) {
+                transcript.scheduler.post(() -> transcript.chatPanel.renderMessage(
+                        message.generateColor(),
+                        message.senderId(),
+                        message.htmlSafeBody(),
+                        new Date(),
+                        message.hlc(),
+                        message.messageId()));
+            } else {
+                transcript.chatPanel.insertFragment(transcript.chatPanel.prerenderMessage(
+                        message.generateColor(),
+                        message.senderId(),
+                        message.htmlSafeBody(),
+                        new Date(),
+                        message.hlc(),
+                        message.messageId()));
+            }
+        }
+
+        while (transcript.scheduler.backlog() > 0) {
+            LockSupport.parkNanos(INTERVAL_NANOS);
+        }
+        CountDownLatch drained = new CountDownLatch(1);
+        transcript.scheduler.afterFrame(drained::countDown);
+        drained.await();
+        edtTime.edtMicrosPerMessage = microsPerMessage(transcript.metrics.counter("ui.busyNanos").sum());
+        edtTime.insertMicrosPerMessage = microsPerMessage(transcript.metrics.counter("ui.orderedNanos").sum());
+    }
+
+    private static double microsPerMessage(long nanos) {
+        return nanos / (double) MESSAGES / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+}
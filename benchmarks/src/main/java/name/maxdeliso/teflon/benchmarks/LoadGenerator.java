@@ -0,0 +1,650 @@
+package name.maxdeliso.teflon.benchmarks;
+
+import name.maxdeliso.teflon.data.HybridLogicalClock;
+import name.maxdeliso.teflon.data.JsonMessageMarshaller;
+import name.maxdeliso.teflon.data.LatencyHistogram;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageMarshaller;
+import name.maxdeliso.teflon.data.MetricsRegistry;
+import name.maxdeliso.teflon.data.RealClock;
+import name.maxdeliso.teflon.net.ConnectionManager;
+import name.maxdeliso.teflon.net.ConnectionResult;
+import name.maxdeliso.teflon.net.NetSelector;
+import name.maxdeliso.teflon.net.QueueMessageSource;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Soak test that runs many simulated peers in one JVM and drives chat traffic between them at a
+ * fixed total rate, then reports throughput, loss, duplicates, acknowledgment latency and heap.
+ * Peers marshal, send, decode and acknowledge messages as the application does, over either an
+ * in-memory bus or loopback multicast through {@link NetSelector}. The sender and size of each
+ * message are drawn from a seeded random source, so a run is repeatable from its command line and
+ * results can be compared across versions.
+ *
+ * <p>Run from the shaded jar, for example:
+ * <pre>
+ * java -cp target/benchmarks.jar name.maxdeliso.teflon.benchmarks.LoadGenerator \
+ *     --peers 100 --rate 1000 --duration 30
+ * </pre>
+ */
+public final class LoadGenerator {
+    /**
+     * Command line usage.
+     */
+    static final String USAGE = "Usage: LoadGenerator [--peers <n>] [--rate <messages per second>]"
+            + " [--duration <seconds>] [--drain <seconds>] [--sizes <bytes>|<min>-<max>|exp:<mean>]"
+            + " [--transport memory|multicast] [--group <address>] [--port <port>] [--interface <name>]"
+            + " [--seed <n>] [--json]";
+
+    /**
+     * System property naming the log4j configuration file.
+     */
+    private static final String LOG_CONFIGURATION_PROPERTY = "log4j2.configurationFile";
+
+    /**
+     * Largest message body, leaving room for the JSON envelope within one datagram buffer.
+     */
+    private static final int MAX_BODY = 3072;
+
+    /**
+     * Size of the network buffer of each peer, as used by the application.
+     */
+    private static final int BUFFER_LENGTH = 4096;
+
+    /**
+     * Datagrams each peer can hold before the in-memory bus drops, like a socket receive buffer.
+     */
+    private static final int INBOX_CAPACITY = 4096;
+
+    /**
+     * Interval between sending rounds of the driver.
+     */
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * How long a send time is kept for acknowledgments to be matched against.
+     */
+    private static final long ACK_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * Number of messages a receiver must have seen from a sender, without gaps, before the
+     * duplicate window for that sender is moved past them.
+     */
+    private static final int COMPACT_BITS = 1024;
+
+    /**
+     * Percentiles of acknowledgment latency reported.
+     */
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * Names of the reported percentiles, in the same order.
+     */
+    private static final String[] PERCENTILE_NAMES = {"P50", "P90", "P99", "P999"};
+
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double MICROS_PER_MILLI = 1e3;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+    private static final double PERCENT = 100.0;
+
+    private final Options options;
+    private final MessageMarshaller marshaller = new JsonMessageMarshaller(new Gson());
+    private final RealClock clock = new RealClock();
+    private final List<Peer> peers = new ArrayList<>();
+
+    /**
+     * Send time and sender of each message still awaiting acknowledgments, by message ID.
+     */
+    private final Map<UUID, Sent> outstanding = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder acks = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder undecodable = new LongAdder();
+
+    private LoadGenerator(Options options) {
+        this.options = options;
+    }
+
+    /**
+     * Runs a load test and prints its report. Logging is quietened as for the benchmarks unless
+     * a log4j configuration is given.
+     *
+     * @param args The command line arguments
+     * @throws Exception if the peers cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty(LOG_CONFIGURATION_PROPERTY) == null) {
+            System.setProperty(LOG_CONFIGURATION_PROPERTY, "log4j2-benchmarks.xml");
+        }
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        Map<String, Object> report = new LoadGenerator(options).run();
+        if (options.json()) {
+            System.out.println(new GsonBuilder().serializeSpecialFloatingPointValues().create().toJson(report));
+        } else {
+            report.forEach((name, value) -> System.out.printf(Locale.ROOT, "%-24s %s%n", name, value));
+        }
+    }
+
+    /**
+     * Starts the peers, drives traffic for the configured duration, waits for stragglers and
+     * measures the results.
+     *
+     * @return The report, in the order it is printed
+     * @throws IOException if a peer cannot join the multicast group
+     */
+    private Map<String, Object> run() throws IOException {
+        long baselineHeap = BenchmarkSupport.usedHeap();
+        MemoryBus bus = new MemoryBus();
+        for (int i = 0; i < options.peers(); i++) {
+            Peer peer = new Peer(i);
+            peers.add(peer);
+            if (options.multicast()) {
+                peer.joinMulticast();
+            } else {
+                bus.attach(peer);
+            }
+        }
+        long peersHeap = BenchmarkSupport.usedHeap();
+        resetPeakHeap();
+
+        var random = new Random(options.seed());
+        long started = System.nanoTime();
+        long end = started + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+        long nextSweep = started + TimeUnit.SECONDS.toNanos(1);
+        long scheduled = 0;
+        for (long now = started; now < end; now = System.nanoTime()) {
+            long due = (long) ((now - started) / NANOS_PER_SECOND * options.rate());
+            for (; scheduled < due; scheduled++) {
+                peers.get(random.nextInt(peers.size())).sendChat(options.sizes().next(random));
+            }
+            if (now >= nextSweep) {
+                long expired = now - ACK_WINDOW_NANOS;
+                outstanding.values().removeIf(s -> s.nanos() < expired);
+                nextSweep += TimeUnit.SECONDS.toNanos(1);
+            }
+            LockSupport.parkNanos(TICK_NANOS);
+        }
+        double elapsedSeconds = (System.nanoTime() - started) / NANOS_PER_SECOND;
+        LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(options.drainSeconds()));
+
+        long loadedHeap = BenchmarkSupport.usedHeap();
+        long peakHeap = peakHeap();
+        peers.forEach(Peer::stop);
+        bus.stop();
+
+        long sentCount = sent.sum();
+        long expected = sentCount * (options.peers() - 1);
+        long deliveredCount = delivered.sum();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("transport", options.multicast() ? "multicast" : "memory");
+        report.put("peers", options.peers());
+        report.put("targetRate", options.rate());
+        report.put("durationSeconds", options.durationSeconds());
+        report.put("sizes", options.sizes().toString());
+        report.put("seed", options.seed());
+        report.put("sent", sentCount);
+        report.put("sendRate", round(sentCount / elapsedSeconds));
+        report.put("delivered", deliveredCount);
+        report.put("deliveryRate", round(deliveredCount / elapsedSeconds));
+        report.put("lossPercent", round(expected == 0 ? 0 : (expected - deliveredCount) * PERCENT / expected));
+        report.put("duplicatePercent", round(deliveredCount == 0 ? 0 : duplicates.sum() * PERCENT / deliveredCount));
+        report.put("droppedByInboxes", dropped.sum());
+        report.put("undecodable", undecodable.sum());
+        report.put("acks", acks.sum());
+        report.put("ackLatencySamples", ackLatency.count());
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            report.put("ackLatency" + PERCENTILE_NAMES[i] + "Millis",
+                    round(ackLatency.percentile(PERCENTILES[i]) / MICROS_PER_MILLI));
+        }
+        report.put("ackLatencyMaxMillis", round(ackLatency.summarize().max() / MICROS_PER_MILLI));
+        report.put("heapBaselineMB", round(baselineHeap / BYTES_PER_MB));
+        report.put("heapPerPeerKB", round((peersHeap - baselineHeap) / (double) options.peers() / 1024));
+        report.put("heapAfterRunMB", round(loadedHeap / BYTES_PER_MB));
+        report.put("heapPeakMB", round(peakHeap / BYTES_PER_MB));
+        return report;
+    }
+
+    /**
+     * Rounds a value to three decimal places for reporting.
+     *
+     * @param value The value
+     * @return The rounded value
+     */
+    private static double round(double value) {
+        return Math.round(value * MICROS_PER_MILLI) / MICROS_PER_MILLI;
+    }
+
+    /**
+     * Resets the peak usage of the heap memory pools, so the peak reported covers the run alone.
+     */
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Sums the peak usage of the heap memory pools. Pools peak at different times, so this is an
+     * upper bound on the peak heap.
+     *
+     * @return The peak heap bytes
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Send time of a message awaiting acknowledgments.
+     *
+     * @param sender The index of the sending peer
+     * @param nanos  When it was queued, from {@link System#nanoTime()}
+     */
+    private record Sent(int sender, long nanos) {}
+
+    /**
+     * A simulated peer: sends chat messages, acknowledges those it receives and counts what
+     * arrives. Received datagrams are handled on one thread per peer, so the duplicate windows
+     * need no locking.
+     */
+    private final class Peer {
+        private final int index;
+        private final String id = UUID.randomUUID().toString();
+        private final HybridLogicalClock hybridClock = new HybridLogicalClock(clock);
+
+        /**
+         * Next sequence number of this peer's chat messages.
+         */
+        private long sequence;
+
+        /**
+         * For each sender, sequence numbers seen at or after the window start, by offset.
+         */
+        private final BitSet[] seen;
+
+        /**
+         * For each sender, the sequence number before which every message has been seen.
+         */
+        private final long[] windowStart;
+
+        /**
+         * Sends a message over the transport this peer was attached to.
+         */
+        private Consumer<Message> transport;
+        private ConnectionResult connection;
+        private NetSelector selector;
+        private Thread selectorThread;
+
+        Peer(int index) {
+            this.index = index;
+            this.seen = new BitSet[options.peers()];
+            this.windowStart = new long[options.peers()];
+            for (int i = 0; i < seen.length; i++) {
+                seen[i] = new BitSet();
+            }
+        }
+
+        /**
+         * Joins the multicast group and starts this peer's selector on its own thread.
+         *
+         * @throws IOException if the group cannot be joined
+         */
+        void joinMulticast() throws IOException {
+            connection = new ConnectionManager()
+                    .connectMulticast(options.group(), options.port(), options.interfaceName())
+                    .join();
+            var queue = new LinkedTransferQueue<Message>();
+            selector = new NetSelector(BUFFER_LENGTH, connection, this::receive,
+                    new QueueMessageSource(queue, marshaller), new MetricsRegistry());
+            transport = message -> {
+                queue.add(message);
+                selector.wakeup();
+            };
+            selectorThread = Thread.ofPlatform().daemon().name("Load-Peer-" + index).start(() -> {
+                try {
+                    selector.selectLoop();
+                } catch (IOException e) {
+                    System.err.println("Peer " + index + " selector failed: " + e);
+                }
+            });
+        }
+
+        /**
+         * Sends a chat message whose body carries this peer's index and sequence number.
+         *
+         * @param size The body size in characters
+         */
+        void sendChat(int size) {
+            String header = index + ":" + sequence++ + ":";
+            String body = header + Filler.TEXT.substring(0, Math.max(0, size - header.length()));
+            Message message = new Message(id, body, hybridClock.tick());
+            outstanding.put(message.messageId(), new Sent(index, System.nanoTime()));
+            sent.increment();
+            transport.accept(message);
+        }
+
+        /**
+         * Handles a datagram: records acknowledgments of this peer's messages, and counts and
+         * acknowledges chat messages from other peers.
+         *
+         * @param address The sender's address, or null on the in-memory bus
+         * @param buffer  The datagram
+         */
+        void receive(SocketAddress address, ByteBuffer buffer) {
+            long arrivedAt = clock.micros();
+            var decoded = marshaller.bufferToMessage(buffer);
+            if (decoded.isEmpty()) {
+                undecodable.increment();
+                return;
+            }
+            Message message = decoded.get();
+            if (message.senderId().equals(id)) {
+                return;
+            }
+            hybridClock.merge(message.hlc());
+            if (message.isAcknowledgment()) {
+                Sent original = outstanding.get(message.originalMessageId());
+                if (original != null && original.sender() == index) {
+                    acks.increment();
+                    ackLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - original.nanos()));
+                }
+                return;
+            }
+
+            String body = message.body();
+            int first = body.indexOf(':');
+            int second = body.indexOf(':', first + 1);
+            int sender = Integer.parseInt(body, 0, first, 10);
+            long messageSequence = Long.parseLong(body, first + 1, second, 10);
+            if (markSeen(sender, messageSequence)) {
+                delivered.increment();
+            } else {
+                duplicates.increment();
+            }
+            transport.accept(Message.createAcknowledgment(
+                    id, message.messageId(), true, hybridClock.tick(), arrivedAt));
+        }
+
+        /**
+         * Marks a message as seen, moving the sender's window past the messages all seen.
+         *
+         * @param sender          The index of the sending peer
+         * @param messageSequence The sequence number of the message
+         * @return True if it had not been seen before
+         */
+        private boolean markSeen(int sender, long messageSequence) {
+            long offset = messageSequence - windowStart[sender];
+            if (offset < 0 || seen[sender].get((int) offset)) {
+                return false;
+            }
+            seen[sender].set((int) offset);
+            int contiguous = seen[sender].nextClearBit(0);
+            if (contiguous >= COMPACT_BITS) {
+                seen[sender] = seen[sender].get(contiguous, Math.max(contiguous, seen[sender].length()));
+                windowStart[sender] += contiguous;
+            }
+            return true;
+        }
+
+        /**
+         * Stops this peer, leaving the multicast group if it joined one.
+         */
+        void stop() {
+            if (connection == null) {
+                return;
+            }
+            try {
+                connection.getMembershipKey().drop();
+                connection.getDc().close();
+            } catch (IOException e) {
+                System.err.println("Peer " + index + " failed to close: " + e);
+            }
+            selector.wakeup();
+            try {
+                selectorThread.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * In-memory transport: each datagram sent is marshalled once and handed to every other
+     * peer's bounded inbox, which drops it when full, as a socket receive buffer would.
+     * Each peer drains its inbox on its own thread.
+     */
+    private final class MemoryBus {
+        private final List<BlockingQueue<ByteBuffer>> inboxes = new ArrayList<>();
+        private final List<Thread> threads = new ArrayList<>();
+
+        /**
+         * Attaches a peer to the bus and starts its receiving thread.
+         *
+         * @param peer The peer
+         */
+        void attach(Peer peer) {
+            BlockingQueue<ByteBuffer> inbox = new ArrayBlockingQueue<>(INBOX_CAPACITY);
+            int own = inboxes.size();
+            inboxes.add(inbox);
+            peer.transport = message -> {
+                ByteBuffer datagram = marshaller.messageToBuffer(message.withSentAt(clock.micros()));
+                for (int i = 0; i < inboxes.size(); i++) {
+                    if (i != own && !inboxes.get(i).offer(datagram.duplicate())) {
+                        dropped.increment();
+                    }
+                }
+            };
+            threads.add(Thread.ofPlatform().daemon().name("Load-Peer-" + peer.index).start(() -> {
+                try {
+                    while (true) {
+                        peer.receive(null, inbox.take());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
+        /**
+         * Stops the receiving threads.
+         */
+        void stop() {
+            threads.forEach(Thread::interrupt);
+        }
+    }
+
+    /**
+     * Text message bodies are cut from.
+     */
+    private static final class Filler {
+        static final String TEXT = "x".repeat(MAX_BODY);
+
+        private Filler() {
+        }
+    }
+
+    /**
+     * Distribution of message body sizes, in characters.
+     */
+    interface SizeDistribution {
+        /**
+         * Draws a size.
+         *
+         * @param random The source of randomness
+         * @return The size, at most {@link #MAX_BODY}
+         */
+        int next(Random random);
+
+        /**
+         * Parses a distribution: a fixed size such as {@code 200}, a uniform range such as
+         * {@code 50-1000}, or an exponential distribution with a given mean such as {@code exp:300}.
+         *
+         * @param spec The specification
+         * @return The distribution
+         * @throws IllegalArgumentException if the specification is invalid
+         */
+        static SizeDistribution parse(String spec) {
+            try {
+                if (spec.startsWith("exp:")) {
+                    double mean = Double.parseDouble(spec.substring("exp:".length()));
+                    return describe(spec,
+                            random -> (int) Math.min(MAX_BODY, -mean * Math.log(1 - random.nextDouble())));
+                }
+                int dash = spec.indexOf('-');
+                if (dash > 0) {
+                    int min = Math.min(MAX_BODY, Integer.parseInt(spec.substring(0, dash)));
+                    int max = Math.min(MAX_BODY, Integer.parseInt(spec.substring(dash + 1)));
+                    if (max < min) {
+                        throw new IllegalArgumentException("Invalid size range: " + spec);
+                    }
+                    return describe(spec, random -> min + random.nextInt(max - min + 1));
+                }
+                int size = Math.min(MAX_BODY, Integer.parseInt(spec));
+                return describe(spec, random -> size);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid sizes: " + spec, e);
+            }
+        }
+
+        /**
+         * Gives a distribution its specification as its description.
+         *
+         * @param spec         The specification
+         * @param distribution The distribution
+         * @return The described distribution
+         */
+        private static SizeDistribution describe(String spec, SizeDistribution distribution) {
+            return new SizeDistribution() {
+                @Override
+                public int next(Random random) {
+                    return distribution.next(random);
+                }
+
+                @Override
+                public String toString() {
+                    return spec;
+                }
+            };
+        }
+    }
+
+    /**
+     * Options of a load test given on the command line.
+     *
+     * @param peers           Number of simulated peers
+     * @param rate            Chat messages sent per second, across all peers
+     * @param durationSeconds How long to send for
+     * @param drainSeconds    How long to wait after sending for deliveries and acknowledgments
+     * @param sizes           Distribution of message body sizes
+     * @param multicast       Whether to use loopback multicast rather than the in-memory bus
+     * @param group           The multicast group
+     * @param port            The multicast port
+     * @param interfaceName   The network interface for multicast
+     * @param seed            Seed choosing the sender and size of each message
+     * @param json            Whether to print the report as one JSON object
+     */
+    record Options(int peers, double rate, int durationSeconds, int drainSeconds, SizeDistribution sizes,
+                   boolean multicast, String group, int port, String interfaceName, long seed, boolean json) {
+
+        /**
+         * Parses the command line.
+         *
+         * @param args The command line arguments
+         * @return The options
+         * @throws IllegalArgumentException if an option is unknown, missing its value or invalid
+         */
+        static Options parse(String[] args) {
+            Map<String, String> values = new LinkedHashMap<>();
+            values.put("--peers", "10");
+            values.put("--rate", "100");
+            values.put("--duration", "10");
+            values.put("--drain", "2");
+            values.put("--sizes", "200");
+            values.put("--transport", "memory");
+            values.put("--group", "224.0.0.122");
+            values.put("--port", "1337");
+            values.put("--interface", "lo");
+            values.put("--seed", "1");
+            boolean json = false;
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--json")) {
+                    json = true;
+                } else if (values.containsKey(args[i]) && i + 1 < args.length) {
+                    values.put(args[i], args[i + 1]);
+                    i++;
+                } else {
+                    throw new IllegalArgumentException("Unknown option or missing value: " + args[i]);
+                }
+            }
+
+            String transport = values.get("--transport");
+            if (!transport.equals("memory") && !transport.equals("multicast")) {
+                throw new IllegalArgumentException("Unknown transport: " + transport);
+            }
+            try {
+                var options = new Options(
+                        Integer.parseInt(values.get("--peers")),
+                        Double.parseDouble(values.get("--rate")),
+                        Integer.parseInt(values.get("--duration")),
+                        Integer.parseInt(values.get("--drain")),
+                        SizeDistribution.parse(values.get("--sizes")),
+                        transport.equals("multicast"),
+                        values.get("--group"),
+                        Integer.parseInt(values.get("--port")),
+                        values.get("--interface"),
+                        Long.parseLong(values.get("--seed")),
+                        json);
+                if (options.peers() < 2) {
+                    throw new IllegalArgumentException("At least two peers are needed");
+                }
+                return options;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number: " + e.getMessage(), e);
+            }
+        }
+    }
+}
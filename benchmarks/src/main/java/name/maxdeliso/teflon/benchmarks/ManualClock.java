@@ -0,0 +1,51 @@
+package name.maxdeliso.teflon.benchmarks;
+
+import name.maxdeliso.teflon.data.Clock;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe clock advanced explicitly by benchmarks, so timer-driven behaviour is
+ * reproducible and independent of how fast a benchmark runs.
+ */
+public final class ManualClock implements Clock {
+    /**
+     * Current time in epoch milliseconds.
+     */
+    private final AtomicLong millis;
+
+    /**
+     * Creates a clock starting at the given time.
+     *
+     * @param startMillis The start time in epoch milliseconds
+     */
+    public ManualClock(long startMillis) {
+        this.millis = new AtomicLong(startMillis);
+    }
+
+    @Override
+    public Instant now() {
+        return Instant.ofEpochMilli(millis.get());
+    }
+
+    @Override
+    public long millis() {
+        return millis.get();
+    }
+
+    @Override
+    public long micros() {
+        return TimeUnit.MILLISECONDS.toMicros(millis.get());
+    }
+
+    /**
+     * Advances the clock.
+     *
+     * @param delta The number of milliseconds to advance by
+     */
+    public void advance(long delta) {
+        millis.addAndGet(delta);
+    }
+}
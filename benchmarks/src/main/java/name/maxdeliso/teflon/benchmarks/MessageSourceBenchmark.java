@@ -0,0 +1,77 @@
+package name.maxdeliso.teflon.benchmarks;
+
+import name.maxdeliso.teflon.data.JsonMessageMarshaller;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.RealClock;
+import name.maxdeliso.teflon.net.QueueMessageSource;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * Measures {@link QueueMessageSource} as the selector drives it: queueing a message, then
+ * peeking, which decorates, stamps and marshals it, and polling it once sent. The queue holds a
+ * standing backlog, so the cost of a deep queue shows. Also measures the peek the selector makes
+ * on every wakeup when nothing is waiting.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+@State(Scope.Thread)
+public class MessageSourceBenchmark {
+    /**
+     * Messages waiting in the queue ahead of each one measured.
+     */
+    @Param({"0", "1000"})
+    public int backlog;
+
+    private LinkedTransferQueue<Message> queue;
+    private QueueMessageSource source;
+    private QueueMessageSource emptySource;
+    private Message message;
+    private long sentCount;
+
+    @Setup
+    public void setUp() {
+        var marshaller = new JsonMessageMarshaller(new Gson());
+        var clock = new RealClock();
+        queue = new LinkedTransferQueue<>();
+        source = new QueueMessageSource(queue, marshaller, clock, sent -> sentCount++, UnaryOperator.identity());
+        emptySource = new QueueMessageSource(new LinkedTransferQueue<>(), marshaller, clock,
+                sent -> sentCount++, UnaryOperator.identity());
+        message = new Message(UUID.randomUUID().toString(), "benchmark message", 1L);
+        for (int i = 0; i < backlog; i++) {
+            queue.add(message);
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer enqueuePeekPoll() {
+        queue.add(message);
+        source.peek();
+        return source.poll();
+    }
+
+    @Benchmark
+    public ByteBuffer peekEmpty() {
+        return emptySource.peek();
+    }
+}
@@ -0,0 +1,101 @@
+package name.maxdeliso.teflon.benchmarks;
+
+import name.maxdeliso.teflon.data.MetricsRegistry;
+import name.maxdeliso.teflon.data.PeerTracker;
+import name.maxdeliso.teflon.data.TimingWheel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PeerTracker#updatePeer}, called for every datagram received, in rooms of
+ * various sizes. Every peer is known, so each call takes the lock-free path that parses the
+ * sender ID and refreshes the peer's last-seen time; the contended variant has several receiving
+ * threads refreshing the same peers. Run with {@code -prof gc} to check the path allocates nothing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+public class PeerTrackerBenchmark {
+    /**
+     * Port peers send from.
+     */
+    private static final int PEER_PORT = 1337;
+
+    /**
+     * Tracker under test, shared by all benchmark threads.
+     */
+    @State(Scope.Benchmark)
+    public static class Room {
+        /**
+         * Number of peers in the room.
+         */
+        @Param({"10", "100", "1000"})
+        public int peers;
+
+        TimingWheel wheel;
+        PeerTracker tracker;
+        String[] ids;
+        SocketAddress[] addresses;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            ManualClock clock = new ManualClock(0);
+            wheel = new TimingWheel(clock);
+            tracker = new PeerTracker(TrackerBenchmark.INSTANCE_ID, clock, wheel, new MetricsRegistry());
+            ids = new String[peers];
+            addresses = new SocketAddress[peers];
+            for (int i = 0; i < peers; i++) {
+                ids[i] = UUID.randomUUID().toString();
+                addresses[i] = new InetSocketAddress("10.0." + (i >> Byte.SIZE) + "." + (i & 0xFF), PEER_PORT);
+                tracker.updatePeer(ids[i], addresses[i]);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            tracker.shutdown();
+            wheel.shutdown();
+        }
+    }
+
+    /**
+     * Position of one thread in the room.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public void updateKnownPeer(Room room, Cursor cursor) {
+        int i = cursor.next;
+        cursor.next = i + 1 == room.peers ? 0 : i + 1;
+        room.tracker.updatePeer(room.ids[i], room.addresses[i]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void updateKnownPeerContended(Room room, Cursor cursor) {
+        updateKnownPeer(room, cursor);
+    }
+}
@@ -0,0 +1,81 @@
+package name.maxdeliso.teflon.benchmarks;
+
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.ui.ChatPanel;
+import name.maxdeliso.teflon.ui.UiUpdateScheduler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of turning a received message into a transcript fragment. In
+ * {@code perMessage} mode the caller derives the sender's color and escapes the body for every
+ * message, as the network path did before sender styles were cached. In {@code cached} mode
+ * the panel renders straight from the message. Run with {@code -prof gc} to compare allocation
+ * per message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkSupport.QUIET_LOGGING, "-Djava.awt.headless=true"})
+@State(Scope.Thread)
+public class RenderBenchmark {
+    /**
+     * Distinct senders the messages cycle through.
+     */
+    private static final int SENDERS = 30;
+
+    /**
+     * Distinct messages rendered in turn.
+     */
+    private static final int MESSAGES = 1024;
+
+    /**
+     * How the message is rendered.
+     */
+    @Param({"perMessage", "cached"})
+    public String mode;
+
+    private ChatPanel chatPanel;
+    private Message[] messages;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        chatPanel = new ChatPanel(new UiUpdateScheduler(), messageId -> null);
+        messages = new Message[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            String sender = new UUID(i % SENDERS, 1).toString();
+            messages[i] = new Message(sender, "benchmark <message> & reply " + i, i + 1);
+        }
+    }
+
+    @Benchmark
+    public ChatPanel.Fragment prerender() {
+        Message message = messages[next++ & (MESSAGES - 1)];
+        if ("perMessage".equals(mode)) {
+            return chatPanel.prerenderMessage(
+                    message.generateColor(),
+                    message.senderId(),
+                    message.htmlSafeBody(),
+                    new Date(),
+                    message.hlc(),
+                    message.messageId());
+        }
+        return chatPanel.prerenderMessage(message, new Date());
+    }
+}
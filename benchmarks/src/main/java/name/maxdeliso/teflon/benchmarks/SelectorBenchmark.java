@@ -0,0 +1,114 @@
+package name.maxdeliso.teflon.benchmarks;
+
+import name.maxdeliso.teflon.data.JsonMessageMarshaller;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MetricsRegistry;
+import name.maxdeliso.teflon.net.ConnectionManager;
+import name.maxdeliso.teflon.net.ConnectionResult;
+import name.maxdeliso.teflon.net.NetSelector;
+import name.maxdeliso.teflon.net.QueueMessageSource;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a round trip through {@link NetSelector} over loopback multicast: a message is queued,
+ * the selector is woken, marshals and sends it to the group, and, multicast loopback being on,
+ * receives its own datagram back and hands it to the incoming handler. Covers the selector's
+ * wakeup, write interest switching, send and receive paths, and the kernel's loopback.
+ * Needs an interface that carries multicast, by default {@code lo}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+@State(Scope.Thread)
+public class SelectorBenchmark {
+    /**
+     * Multicast group joined for the round trips.
+     */
+    private static final String GROUP = "224.0.0.122";
+
+    /**
+     * UDP port, away from the application's so a running client is not disturbed.
+     */
+    private static final int PORT = 41_337;
+
+    /**
+     * Longest wait for a datagram to come back before the round trip is counted as lost.
+     */
+    private static final long TIMEOUT_MILLIS = 1000L;
+
+    /**
+     * Size of the selector's network buffer, as used by the application.
+     */
+    private static final int BUFFER_LENGTH = 4096;
+
+    /**
+     * Network interface to send and receive on.
+     */
+    @Param({"lo"})
+    public String networkInterface;
+
+    /**
+     * Body length in characters.
+     */
+    @Param({"32", "1024"})
+    public int bodyLength;
+
+    private final Semaphore received = new Semaphore(0);
+    private final LinkedTransferQueue<Message> queue = new LinkedTransferQueue<>();
+    private ConnectionResult connection;
+    private NetSelector selector;
+    private Thread selectorThread;
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        connection = new ConnectionManager().connectMulticast(GROUP, PORT, networkInterface).join();
+        selector = new NetSelector(BUFFER_LENGTH, connection, (address, buffer) -> received.release(),
+                new QueueMessageSource(queue, new JsonMessageMarshaller(new Gson())), new MetricsRegistry());
+        selectorThread = Thread.ofPlatform().daemon().name("Benchmark-Selector").start(() -> {
+            try {
+                selector.selectLoop();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        message = new Message(UUID.randomUUID().toString(), "m".repeat(bodyLength), 1L);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        selectorThread.interrupt();
+        selector.wakeup();
+        selectorThread.join(TIMEOUT_MILLIS);
+        connection.getMembershipKey().drop();
+        connection.getDc().close();
+    }
+
+    @Benchmark
+    public boolean roundTrip() throws InterruptedException {
+        queue.add(message);
+        selector.wakeup();
+        return received.tryAcquire(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+}
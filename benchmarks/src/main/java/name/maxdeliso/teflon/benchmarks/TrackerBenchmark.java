@@ -0,0 +1,206 @@
+package name.maxdeliso.teflon.benchmarks;
+
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageTracker;
+import name.maxdeliso.teflon.data.TimingWheel;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares MessageTracker's primitive {@code UuidTable} storage with the previous
+ * ConcurrentHashMap-of-records layout.
+ * Throughput benchmarks track a message and acknowledge it from a peer over a rolling working
+ * set, advancing a manual clock so timeouts keep the tracker at a steady size. Run with
+ * {@code -prof gc} to compare allocation per tracked message. The footprint benchmark reports
+ * retained heap bytes per tracked message as an auxiliary counter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+public class TrackerBenchmark {
+    /**
+     * Local instance ID.
+     */
+    static final String INSTANCE_ID = "550e8400-e29b-41d4-a716-446655440000";
+
+    /**
+     * Number of distinct messages each thread cycles through; a power of two.
+     */
+    private static final int WORKING_SET = 4096;
+
+    /**
+     * Operations between one-millisecond clock advances.
+     */
+    private static final int OPS_PER_TICK = 16;
+
+    /**
+     * Number of messages tracked by the footprint benchmark.
+     */
+    private static final int FOOTPRINT_MESSAGES = 100_000;
+
+    /**
+     * Number of peers acknowledging each message in the footprint benchmark.
+     */
+    private static final int FOOTPRINT_ACKERS = 4;
+
+    /**
+     * Tracker under test, shared by all benchmark threads.
+     */
+    @State(Scope.Benchmark)
+    public static class Trackers {
+        /**
+         * Which storage layout to measure.
+         */
+        @Param({"uuidTable", "concurrentHashMap"})
+        public String layout;
+
+        ManualClock clock;
+        TimingWheel wheel;
+        MessageTracker table;
+        ConcurrentHashMapMessageTracker map;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            clock = new ManualClock(0);
+            wheel = new TimingWheel(clock);
+            table = new MessageTracker(INSTANCE_ID, clock, wheel);
+            map = new ConcurrentHashMapMessageTracker(INSTANCE_ID, clock, wheel);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            wheel.shutdown();
+        }
+
+        void track(Message message) {
+            if ("uuidTable".equals(layout)) {
+                table.trackMessage(message);
+            } else {
+                map.trackMessage(message);
+            }
+        }
+
+        void acknowledge(Message ack) {
+            if ("uuidTable".equals(layout)) {
+                table.processAcknowledgment(ack);
+            } else {
+                map.processAcknowledgment(ack);
+            }
+        }
+
+        void tick() {
+            clock.advance(1);
+            wheel.advance();
+        }
+    }
+
+    /**
+     * Pre-built messages and acknowledgments for one thread.
+     */
+    @State(Scope.Thread)
+    public static class Workload {
+        Message[] messages = new Message[WORKING_SET];
+        Message[] acks = new Message[WORKING_SET];
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            String peer = UUID.randomUUID().toString();
+            String acker = UUID.randomUUID().toString();
+            for (int i = 0; i < WORKING_SET; i++) {
+                messages[i] = new Message(peer, "benchmark message " + i);
+                acks[i] = Message.createAcknowledgment(acker, messages[i].messageId(), true);
+            }
+        }
+    }
+
+    @Benchmark
+    public void trackAndAcknowledge(Trackers trackers, Workload workload) {
+        int i = workload.cursor++ & (WORKING_SET - 1);
+        trackers.track(workload.messages[i]);
+        trackers.acknowledge(workload.acks[i]);
+        if (i % OPS_PER_TICK == 0) {
+            trackers.tick();
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void trackAndAcknowledgeContended(Trackers trackers, Workload workload) {
+        trackAndAcknowledge(trackers, workload);
+    }
+
+    /**
+     * Retained heap per tracked message, reported alongside the single-shot time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        /**
+         * Heap bytes retained per tracked message after a full collection.
+         */
+        public long retainedBytesPerMessage;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 1)
+    public Object retainedBytes(Trackers trackers, Footprint footprint) {
+        String peer = UUID.randomUUID().toString();
+        String[] ackers = new String[FOOTPRINT_ACKERS];
+        for (int a = 0; a < FOOTPRINT_ACKERS; a++) {
+            ackers[a] = UUID.randomUUID().toString();
+        }
+        Message[] messages = new Message[FOOTPRINT_MESSAGES];
+        for (int i = 0; i < FOOTPRINT_MESSAGES; i++) {
+            messages[i] = new Message(peer, "m");
+        }
+
+        ManualClock clock = new ManualClock(0);
+        TimingWheel wheel = new TimingWheel(clock);
+        long before = BenchmarkSupport.usedHeap();
+        Object tracker;
+        if ("uuidTable".equals(trackers.layout)) {
+            MessageTracker table = new MessageTracker(INSTANCE_ID, clock, wheel);
+            for (Message message : messages) {
+                table.trackMessage(message);
+                for (String acker : ackers) {
+                    table.processAcknowledgment(Message.createAcknowledgment(acker, message.messageId(), true));
+                }
+            }
+            tracker = table;
+        } else {
+            ConcurrentHashMapMessageTracker map = new ConcurrentHashMapMessageTracker(INSTANCE_ID, clock, wheel);
+            for (Message message : messages) {
+                map.trackMessage(message);
+                for (String acker : ackers) {
+                    map.processAcknowledgment(Message.createAcknowledgment(acker, message.messageId(), true));
+                }
+            }
+            tracker = map;
+        }
+        footprint.retainedBytesPerMessage = (BenchmarkSupport.usedHeap() - before) / FOOTPRINT_MESSAGES;
+        return new Object[] {tracker, wheel, messages};
+    }
+
+}
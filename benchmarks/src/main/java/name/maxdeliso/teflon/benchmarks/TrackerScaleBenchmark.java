@@ -0,0 +1,138 @@
+package name.maxdeliso.teflon.benchmarks;
+
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageTracker;
+import name.maxdeliso.teflon.data.TimingWheel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MessageTracker} holding large numbers of pending messages.
+ * The steady-state benchmark tracks and acknowledges messages from a ring as large as the
+ * population, advancing a manual clock so that one ring's worth of messages spans the timeout;
+ * the tracker then holds about that many messages while entries expire as fast as they arrive.
+ * The cleanup benchmark fills a fresh tracker, moves the clock past the timeout and measures
+ * expiring the whole population at once. Run with {@code -prof gc} to compare allocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkSupport.QUIET_LOGGING, "-Xmx2g"})
+@State(Scope.Thread)
+public class TrackerScaleBenchmark {
+    /**
+     * Acknowledgment timeout of the tracker, in milliseconds.
+     */
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * Number of pending messages held by the tracker.
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private Message[] messages;
+    private Message[] acks;
+    private int opsPerTick;
+    private int cursor;
+    private ManualClock clock;
+    private TimingWheel wheel;
+    private MessageTracker tracker;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String peer = UUID.randomUUID().toString();
+        String acker = UUID.randomUUID().toString();
+        messages = new Message[size];
+        acks = new Message[size];
+        for (int i = 0; i < size; i++) {
+            messages[i] = new Message(peer, "m");
+            acks[i] = Message.createAcknowledgment(acker, messages[i].messageId(), true);
+        }
+        opsPerTick = Math.max(1, (int) (size / TIMEOUT_MILLIS));
+    }
+
+    /**
+     * Starts each iteration from a tracker already at its steady-state population.
+     */
+    @Setup(Level.Iteration)
+    public void fill() {
+        clock = new ManualClock(0);
+        wheel = new TimingWheel(clock);
+        tracker = new MessageTracker(TrackerBenchmark.INSTANCE_ID, clock, wheel);
+        cursor = 0;
+        for (int i = 0; i < size; i++) {
+            trackAndAcknowledge();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        wheel.shutdown();
+    }
+
+    @Benchmark
+    public void trackAndAcknowledge() {
+        int i = cursor;
+        cursor = i + 1 == size ? 0 : i + 1;
+        tracker.trackMessage(messages[i]);
+        tracker.processAcknowledgment(acks[i]);
+        if (i % opsPerTick == 0) {
+            clock.advance(1);
+            wheel.advance();
+        }
+    }
+
+    /**
+     * A tracker whose whole population is due to expire.
+     */
+    @State(Scope.Thread)
+    public static class Expiring {
+        ManualClock clock;
+        TimingWheel wheel;
+        MessageTracker tracker;
+
+        @Setup(Level.Invocation)
+        public void setUp(TrackerScaleBenchmark benchmark) {
+            clock = new ManualClock(0);
+            wheel = new TimingWheel(clock);
+            tracker = new MessageTracker(TrackerBenchmark.INSTANCE_ID, clock, wheel);
+            for (int i = 0; i < benchmark.size; i++) {
+                tracker.trackMessage(benchmark.messages[i]);
+                tracker.processAcknowledgment(benchmark.acks[i]);
+            }
+            clock.advance(TIMEOUT_MILLIS + 1);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            wheel.shutdown();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public MessageTracker cleanupTimedOut(Expiring expiring) {
+        expiring.tracker.cleanupTimedOutMessages();
+        return expiring.tracker;
+    }
+}
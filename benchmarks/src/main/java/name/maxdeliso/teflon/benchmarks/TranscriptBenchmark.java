@@ -0,0 +1,141 @@
+package name.maxdeliso.teflon.benchmarks;
+
+import name.maxdeliso.teflon.ui.TranscriptCellRenderer;
+import name.maxdeliso.teflon.ui.TranscriptEntry;
+import name.maxdeliso.teflon.ui.TranscriptListModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.JList;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the list transcript with a thousand and a million rows: appending a message and
+ * painting the viewport at the end, and jumping to a random position and painting it. Both
+ * should cost the same at either size, since only the visible rows are laid out and painted.
+ * With a 10,000-row scrollback most of the million rows live in the spill file, so jumping
+ * mostly pages rows back in from disk.
+ * Runs on the EDT in a headless 800x600 viewport painted into an image.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkSupport.QUIET_LOGGING, "-Djava.awt.headless=true", "-Xmx2g"})
+@State(Scope.Thread)
+public class TranscriptBenchmark {
+    /**
+     * Viewport width in pixels.
+     */
+    private static final int WIDTH = 800;
+
+    /**
+     * Viewport height in pixels.
+     */
+    private static final int HEIGHT = 600;
+
+    /**
+     * Distinct senders the rows cycle through.
+     */
+    private static final int SENDERS = 30;
+
+    /**
+     * Rows in the transcript before measuring.
+     */
+    @Param({"1000", "1000000"})
+    public int rows;
+
+    /**
+     * Rows kept on the heap; the default keeps them all.
+     */
+    @Param({"2147483647", "10000"})
+    public int scrollback;
+
+    private TranscriptListModel model;
+    private JList<TranscriptEntry> list;
+    private JScrollPane scrollPane;
+    private BufferedImage image;
+    private Graphics2D graphics;
+    private long hlc;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            model = new TranscriptListModel(scrollback);
+            for (int i = 0; i < rows; i++) {
+                model.insert(entry());
+            }
+            list = new JList<>(model);
+            list.setCellRenderer(new TranscriptCellRenderer(messageId -> null));
+            TranscriptCellRenderer.fixCellSize(list);
+            scrollPane = new JScrollPane(list);
+            scrollPane.setSize(WIDTH, HEIGHT);
+            layOut();
+            image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            graphics = image.createGraphics();
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+        model.close();
+    }
+
+    @Benchmark
+    public int appendAndPaint() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            int index = model.insert(entry());
+            layOut();
+            list.ensureIndexIsVisible(index);
+            scrollPane.paint(graphics);
+        });
+        return image.getRGB(0, 0);
+    }
+
+    @Benchmark
+    public int scrollAndPaint() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            next = next * 1_103_515_245 + 12_345;
+            int index = Math.floorMod(next, model.getSize());
+            scrollPane.getViewport().setViewPosition(new Point(0, index * list.getFixedCellHeight()));
+            layOut();
+            scrollPane.paint(graphics);
+        });
+        return image.getRGB(0, 0);
+    }
+
+    private TranscriptEntry entry() {
+        hlc++;
+        String sender = new UUID(hlc % SENDERS, 1).toString();
+        return TranscriptEntry.message(Color.BLUE, sender.substring(0, 8), sender,
+                System.currentTimeMillis(), hlc, "benchmark message " + hlc, null);
+    }
+
+    /**
+     * Lays the scroll pane out as a displayed frame would before painting.
+     */
+    private void layOut() {
+        scrollPane.doLayout();
+        scrollPane.getViewport().doLayout();
+    }
+}
@@ -12,6 +12,7 @@ module name.maxdeliso.teflon {
     // Export our packages so they're visible to other modules
     exports name.maxdeliso.teflon;
     exports name.maxdeliso.teflon.data;
+    exports name.maxdeliso.teflon.headless;
     exports name.maxdeliso.teflon.net;
     exports name.maxdeliso.teflon.ui;
     exports name.maxdeliso.teflon.commands;
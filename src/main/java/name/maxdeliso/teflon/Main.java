@@ -5,6 +5,7 @@ import com.google.gson.GsonBuilder;
 import name.maxdeliso.teflon.data.JsonMessageMarshaller;
 import name.maxdeliso.teflon.data.Message;
 import name.maxdeliso.teflon.data.MessageMarshaller;
+import name.maxdeliso.teflon.headless.HeadlessNode;
 import name.maxdeliso.teflon.net.ConnectionManager;
 import name.maxdeliso.teflon.net.NetworkInterfaceManager;
 import name.maxdeliso.teflon.ui.MainFrame;
@@ -21,7 +22,7 @@ import static java.util.UUID.randomUUID;
 
 /**
  * Main entry point for the Teflon chat application.
- * Sets up the application environment and launches the UI.
+ * Sets up the application environment and launches the UI, or a headless node.
  */
 public final class Main {
     /**
@@ -87,10 +88,18 @@ public final class Main {
     }
 
     /**
-     * Application entry point.
+     * Application entry point. With {@value HeadlessNode#FLAG} a headless node is run on the
+     * command line instead of the window; see {@link HeadlessNode}.
      *
+     * @param args The command line arguments
      */
-    static void main() {
+    static void main(String[] args) {
+        if (HeadlessNode.Options.requested(args)) {
+            System.setProperty("java.awt.headless", "true");
+            System.exit(HeadlessNode.run(
+                    args, INSTANCE_ID, CONNECTION_MANAGER, INTERFACE_MANAGER, System.in, System.out));
+        }
+
         try (var netExecutor = Executors.newSingleThreadExecutor()) {
             SwingUtilities.invokeLater(() -> {
                 var mainFrame = new MainFrame(
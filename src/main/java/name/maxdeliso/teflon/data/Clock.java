@@ -1,6 +1,7 @@
 package name.maxdeliso.teflon.data;
 
 import java.time.Instant;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Interface for providing time, allowing for both real and logical clocks.
@@ -12,4 +13,23 @@ public interface Clock {
      * @return The current time as an Instant
      */
     Instant now();
+
+    /**
+     * Gets the current time as milliseconds since the epoch.
+     * Implementations on hot paths should override this to avoid allocating an Instant.
+     *
+     * @return The current time in epoch milliseconds
+     */
+    default long millis() {
+        return now().toEpochMilli();
+    }
+
+    /**
+     * Gets the current time as microseconds since the epoch, for latency measurement.
+     *
+     * @return The current time in epoch microseconds
+     */
+    default long micros() {
+        return TimeUnit.MILLISECONDS.toMicros(millis());
+    }
 }
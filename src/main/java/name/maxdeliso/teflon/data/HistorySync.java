@@ -0,0 +1,796 @@
+package name.maxdeliso.teflon.data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Random;
+import java.util.SequencedSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Anti-entropy catch-up of recent chat history between peers, so a member that joins late sees
+ * what was said before it connected.
+ * Recent chat messages are grouped into buckets by the physical time of their hybrid logical
+ * clock timestamp, and each bucket is summarized by its message count and the XOR of a hash of
+ * each message ID, which is cheap to keep up to date and independent of arrival order.
+ * After connecting, a member sends this digest to one known peer over unicast. The peer answers
+ * with the IDs of its messages in every bucket whose summary differs, newest first and at most
+ * {@link #MAX_LISTED_IDS} of them, and the member pulls the ones it lacks from that peer in small
+ * batches, one batch per {@link #PULL_INTERVAL_MILLIS}.
+ * Rounds repeat with other peers until a round finds nothing missing or {@link #MAX_ROUNDS} have
+ * run, so catch-up converges in a bounded number of rounds and nothing is multicast but the
+ * chat itself. A listing cut off at the limit is continued by a further round once its messages
+ * have been pulled, which does not count towards the limit, since the digest then matches in the
+ * newer buckets and the peer lists older ones. Pulled messages arrive as copies attributed to the peer that sent them.
+ * All state is guarded by this object's lock.
+ */
+public final class HistorySync {
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = LogManager.getLogger(HistorySync.class);
+
+    /**
+     * Span of chat time summarized by one digest bucket.
+     */
+    public static final long BUCKET_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * How far back history is caught up.
+     */
+    public static final long WINDOW_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    /**
+     * Delay before the first round, giving the membership protocol time to find peers.
+     */
+    public static final long START_DELAY_MILLIS = 2000L;
+
+    /**
+     * Time between rounds.
+     */
+    public static final long ROUND_INTERVAL_MILLIS = 5000L;
+
+    /**
+     * Time between pull requests.
+     */
+    public static final long PULL_INTERVAL_MILLIS = 100L;
+
+    /**
+     * Most rounds run after connecting.
+     */
+    public static final int MAX_ROUNDS = 3;
+
+    /**
+     * Most messages asked for in one pull request.
+     */
+    static final int PULL_BATCH = 32;
+
+    /**
+     * Most message IDs listed in answer to one digest.
+     */
+    public static final int MAX_LISTED_IDS = 4096;
+
+    /**
+     * Most characters in the body of one protocol message, keeping it within a datagram.
+     */
+    private static final int MAX_BODY_CHARS = 3000;
+
+    /**
+     * Separates buckets in a digest.
+     */
+    private static final char BUCKET_SEPARATOR = ';';
+
+    /**
+     * Separates the fields of a bucket in a digest.
+     */
+    private static final char FIELD_SEPARATOR = ':';
+
+    /**
+     * Separates message IDs in a list.
+     */
+    private static final char ID_SEPARATOR = ',';
+
+    /**
+     * Radix of the bucket hashes in a digest.
+     */
+    private static final int HASH_RADIX = 16;
+
+    /**
+     * First multiplier of the SplitMix64 finalizer mixing message IDs into bucket hashes.
+     */
+    private static final long MIX_MULTIPLIER_1 = 0xBF58476D1CE4E5B9L;
+
+    /**
+     * Second multiplier of the SplitMix64 finalizer.
+     */
+    private static final long MIX_MULTIPLIER_2 = 0x94D049BB133111EBL;
+
+    /**
+     * First shift of the SplitMix64 finalizer.
+     */
+    private static final int MIX_SHIFT_1 = 30;
+
+    /**
+     * Second shift of the SplitMix64 finalizer.
+     */
+    private static final int MIX_SHIFT_2 = 27;
+
+    /**
+     * Third shift of the SplitMix64 finalizer.
+     */
+    private static final int MIX_SHIFT_3 = 31;
+
+    /**
+     * Number of bytes in a message ID.
+     */
+    private static final int UUID_BYTES = 16;
+
+    /**
+     * The ID of this instance.
+     */
+    private final String instanceId;
+
+    /**
+     * The clock used for timing.
+     */
+    private final Clock clock;
+
+    /**
+     * Timing wheel driving rounds and pulls.
+     */
+    private final TimingWheel timingWheel;
+
+    /**
+     * Source of peers to synchronize with.
+     */
+    private final PeerTracker peerTracker;
+
+    /**
+     * Queues protocol messages for sending to a single peer.
+     */
+    private final BiConsumer<Message, SocketAddress> sender;
+
+    /**
+     * Looks up stored chat messages by ID to answer pulls.
+     */
+    private final Function<UUID, Optional<Message>> lookup;
+
+    /**
+     * Receives the chat messages pulled from peers.
+     */
+    private final Consumer<Message> deliver;
+
+    /**
+     * Source of randomness for choosing peers.
+     */
+    private final Random random;
+
+    /**
+     * Timer starting each round. Set once, by the factory.
+     */
+    private TimingWheel.Timeout roundTimer;
+
+    /**
+     * Timer sending the next pull request. Set once, by the factory.
+     */
+    private TimingWheel.Timeout pullTimer;
+
+    /**
+     * Buckets of recent chat messages keyed by bucket number.
+     */
+    private final NavigableMap<Long, Bucket> buckets = new TreeMap<>();
+
+    /**
+     * IDs of every message in {@link #buckets}.
+     */
+    private final Set<UUID> known = new HashSet<>();
+
+    /**
+     * Missing messages waiting to be pulled, with the peer to pull each from, oldest listed first.
+     */
+    private final Map<UUID, SocketAddress> toPull = new LinkedHashMap<>();
+
+    /**
+     * Missing messages asked for and not yet received, with the clock time each was asked for.
+     */
+    private final Map<UUID, Long> pulling = new HashMap<>();
+
+    /**
+     * Peers sent a digest since connecting.
+     */
+    private final Set<String> asked = new HashSet<>();
+
+    /**
+     * Port the group's members receive on.
+     */
+    private int port;
+
+    /**
+     * ID of the current round's digest, or null before the first round.
+     */
+    private UUID digestId;
+
+    /**
+     * Whether the current round's digest has been answered.
+     */
+    private boolean answered;
+
+    /**
+     * Number of missing messages found this round.
+     */
+    private int missingFound;
+
+    /**
+     * Number of message IDs listed in answer to the current round's digest.
+     */
+    private int listed;
+
+    /**
+     * Number of rounds run since connecting.
+     */
+    private int rounds;
+
+    /**
+     * Whether the protocol is running.
+     */
+    private boolean running;
+
+    /**
+     * Number of rounds run.
+     */
+    private final MetricsRegistry.Counter roundsRun;
+
+    /**
+     * Number of messages pulled from peers.
+     */
+    private final MetricsRegistry.Counter pulled;
+
+    /**
+     * Number of messages sent to peers that pulled them.
+     */
+    private final MetricsRegistry.Counter served;
+
+    /**
+     * Creates the history synchronization protocol for this instance.
+     *
+     * @param instanceId  The ID of this instance
+     * @param clock       The clock to use for timing, also used to age out old buckets
+     * @param timingWheel The timing wheel to drive rounds and pulls, driven by the same clock
+     * @param peerTracker The roster to choose peers from
+     * @param sender      Queues protocol messages for sending to a single peer
+     * @param lookup      Looks up stored chat messages by ID
+     * @param deliver     Receives the chat messages pulled from peers
+     * @param metrics     The registry to register synchronization metrics with
+     * @return The protocol, registered with the timing wheel and the metrics
+     */
+    public static HistorySync create(String instanceId,
+                                     Clock clock,
+                                     TimingWheel timingWheel,
+                                     PeerTracker peerTracker,
+                                     BiConsumer<Message, SocketAddress> sender,
+                                     Function<UUID, Optional<Message>> lookup,
+                                     Consumer<Message> deliver,
+                                     MetricsRegistry metrics) {
+        return create(instanceId, clock, timingWheel, peerTracker, sender, lookup, deliver, metrics, new Random());
+    }
+
+    /**
+     * Creates the history synchronization protocol for this instance with a given source of randomness.
+     *
+     * @param instanceId  The ID of this instance
+     * @param clock       The clock to use for timing, also used to age out old buckets
+     * @param timingWheel The timing wheel to drive rounds and pulls, driven by the same clock
+     * @param peerTracker The roster to choose peers from
+     * @param sender      Queues protocol messages for sending to a single peer
+     * @param lookup      Looks up stored chat messages by ID
+     * @param deliver     Receives the chat messages pulled from peers
+     * @param metrics     The registry to register synchronization metrics with
+     * @param random      The source of randomness for choosing peers
+     * @return The protocol, registered with the timing wheel and the metrics
+     */
+    public static HistorySync create(String instanceId,
+                                     Clock clock,
+                                     TimingWheel timingWheel,
+                                     PeerTracker peerTracker,
+                                     BiConsumer<Message, SocketAddress> sender,
+                                     Function<UUID, Optional<Message>> lookup,
+                                     Consumer<Message> deliver,
+                                     MetricsRegistry metrics,
+                                     Random random) {
+        var sync = new HistorySync(instanceId, clock, timingWheel, peerTracker, sender, lookup, deliver, metrics,
+                random);
+        sync.register(metrics);
+        return sync;
+    }
+
+    /**
+     * Creates the protocol without its timers; see {@link #create}.
+     */
+    private HistorySync(String instanceId,
+                        Clock clock,
+                        TimingWheel timingWheel,
+                        PeerTracker peerTracker,
+                        BiConsumer<Message, SocketAddress> sender,
+                        Function<UUID, Optional<Message>> lookup,
+                        Consumer<Message> deliver,
+                        MetricsRegistry metrics,
+                        Random random) {
+        this.instanceId = instanceId;
+        this.clock = clock;
+        this.timingWheel = timingWheel;
+        this.peerTracker = peerTracker;
+        this.sender = sender;
+        this.lookup = lookup;
+        this.deliver = deliver;
+        this.random = random;
+        this.roundsRun = metrics.counter("sync.rounds");
+        this.pulled = metrics.counter("sync.pulled");
+        this.served = metrics.counter("sync.served");
+    }
+
+    /**
+     * Creates the timers and the pending gauge, which call back into this instance, once it is
+     * fully constructed.
+     *
+     * @param metrics The registry to register the gauge with
+     */
+    private synchronized void register(MetricsRegistry metrics) {
+        roundTimer = timingWheel.timeout(this::startRound);
+        pullTimer = timingWheel.timeout(this::pull);
+        metrics.gauge("sync.pending", this::pending);
+    }
+
+    /**
+     * Starts catching up with the group after connecting. Does nothing if already running.
+     *
+     * @param groupPort The port the group's members receive on
+     */
+    public synchronized void start(int groupPort) {
+        if (running) {
+            return;
+        }
+        running = true;
+        port = groupPort;
+        rounds = 0;
+        digestId = null;
+        asked.clear();
+        timingWheel.reschedule(roundTimer, clock.millis() + START_DELAY_MILLIS);
+    }
+
+    /**
+     * Stops catching up and forgets the messages still to be pulled. Digests of the local history
+     * are kept, and peers' digests are still answered.
+     */
+    public synchronized void stop() {
+        running = false;
+        roundTimer.cancel();
+        pullTimer.cancel();
+        toPull.clear();
+        pulling.clear();
+    }
+
+    /**
+     * Adds a stored chat message to the digest, and stops waiting for it if it was being pulled,
+     * so a copy pulled later is not delivered again. Messages without a timestamp, or older than
+     * the catch-up window, are left out of the digest.
+     *
+     * @param message The stored message
+     */
+    public synchronized void record(Message message) {
+        if (message.type() != Message.MessageType.CHAT || !message.hasTimestamp()) {
+            return;
+        }
+        toPull.remove(message.messageId());
+        pulling.remove(message.messageId());
+        long bucket = bucketOf(message.hlc());
+        if (bucket < oldestBucket(clock.millis())) {
+            return;
+        }
+        if (known.add(message.messageId())) {
+            buckets.computeIfAbsent(bucket, ignored -> new Bucket()).add(message.messageId());
+        }
+    }
+
+    /**
+     * Handles a message received from a peer, answering or recording it if it belongs to the protocol.
+     *
+     * @param message The message
+     * @param address The sender's address
+     * @return true if the message belongs to the protocol and needs no further handling
+     */
+    public synchronized boolean receive(Message message, SocketAddress address) {
+        if (!message.isSync()) {
+            return false;
+        }
+        if (message.senderId().equals(instanceId) || !message.isValidSenderId()) {
+            return true;
+        }
+        peerTracker.updatePeer(message.senderId(), address);
+        switch (message.type()) {
+            case SYNC_DIGEST -> answerDigest(message, address);
+            case SYNC_IDS -> recordIds(message, address);
+            case SYNC_PULL -> answerPull(message, address);
+            case SYNC_DATA -> accept(message);
+            default -> { }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the digest of the local history within the catch-up window.
+     *
+     * @return The digest: the oldest bucket, then the number, count and hash of each bucket
+     */
+    public synchronized String digest() {
+        long oldest = oldestBucket(clock.millis());
+        var digest = new StringBuilder().append(oldest);
+        for (Map.Entry<Long, Bucket> entry : buckets.tailMap(oldest, true).entrySet()) {
+            digest.append(BUCKET_SEPARATOR)
+                    .append(entry.getKey())
+                    .append(FIELD_SEPARATOR)
+                    .append(entry.getValue().ids.size())
+                    .append(FIELD_SEPARATOR)
+                    .append(Long.toUnsignedString(entry.getValue().hash, HASH_RADIX));
+        }
+        return digest.toString();
+    }
+
+    /**
+     * Gets the number of missing messages not yet received.
+     *
+     * @return The number waiting to be pulled or in flight
+     */
+    public synchronized int pending() {
+        return toPull.size() + pulling.size();
+    }
+
+    /**
+     * Ends the current round and starts the next with a peer not yet asked, unless the last
+     * round found nothing missing or the round limit has been reached. Pulls still in flight are
+     * kept unless asked for a whole round ago, when the reply is taken as lost and the message is
+     * left for a later round to list again. A round continuing a listing cut off at the limit
+     * waits until the listed messages have arrived.
+     * Runs on the timing wheel's thread.
+     */
+    private synchronized void startRound() {
+        if (!running) {
+            return;
+        }
+        long now = clock.millis();
+        prune(now);
+        pulling.values().removeIf(asked -> now - asked >= ROUND_INTERVAL_MILLIS);
+        boolean capped = listed >= MAX_LISTED_IDS;
+        if (digestId != null && answered && missingFound == 0 && pending() == 0 && !capped) {
+            LOG.debug("History caught up after {} rounds", rounds);
+            return;
+        }
+        boolean continuing = capped && missingFound > 0;
+        if (continuing && pending() > 0) {
+            timingWheel.reschedule(roundTimer, now + ROUND_INTERVAL_MILLIS);
+            return;
+        }
+        if (rounds >= MAX_ROUNDS && !continuing) {
+            LOG.debug("Stopping history catch-up after {} rounds, {} messages pending", rounds, pending());
+            return;
+        }
+
+        InetSocketAddress peer = choosePeer();
+        if (peer != null) {
+            if (!continuing) {
+                rounds++;
+            }
+            roundsRun.increment();
+            Message digest = Message.createSync(Message.MessageType.SYNC_DIGEST, instanceId, null, digest());
+            digestId = digest.messageId();
+            answered = false;
+            missingFound = 0;
+            listed = 0;
+            sender.accept(digest, peer);
+        }
+        timingWheel.reschedule(roundTimer, now + ROUND_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Picks a known peer to send the digest to, preferring ones not yet asked.
+     *
+     * @return The peer's address, or null if no peer is known
+     */
+    private InetSocketAddress choosePeer() {
+        List<PeerTracker.PeerInfo> candidates = new ArrayList<>();
+        List<PeerTracker.PeerInfo> fallback = new ArrayList<>();
+        for (PeerTracker.PeerInfo peer : peerTracker.getPeers().values()) {
+            (asked.contains(peer.uuid()) ? fallback : candidates).add(peer);
+        }
+        if (candidates.isEmpty()) {
+            candidates = fallback;
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        PeerTracker.PeerInfo chosen = candidates.get(random.nextInt(candidates.size()));
+        asked.add(chosen.uuid());
+        var address = new InetSocketAddress(chosen.ipAddress(), port);
+        return address.isUnresolved() ? null : address;
+    }
+
+    /**
+     * Answers a digest with the IDs of the local messages in every bucket whose summary differs,
+     * newest bucket first and newest message first within it, split across as many messages as
+     * needed. At most {@link #MAX_LISTED_IDS} are listed, so a peer missing more gets the most
+     * recent and lists the rest in a later round. An empty answer means nothing differs.
+     *
+     * @param message The digest
+     * @param address The sender's address
+     */
+    private void answerDigest(Message message, SocketAddress address) {
+        Map<Long, String> theirs = new HashMap<>();
+        String[] fields = message.body().split(String.valueOf(BUCKET_SEPARATOR));
+        long oldest;
+        try {
+            oldest = Long.parseLong(fields[0]);
+            for (int i = 1; i < fields.length; i++) {
+                int split = fields[i].indexOf(FIELD_SEPARATOR);
+                if (split > 0) {
+                    theirs.put(Long.parseLong(fields[i].substring(0, split)), fields[i].substring(split + 1));
+                }
+            }
+        } catch (NumberFormatException e) {
+            LOG.debug("Ignoring malformed digest from {}", message.senderId());
+            return;
+        }
+
+        var ids = new StringBuilder();
+        int listed = 0;
+        for (Map.Entry<Long, Bucket> entry : buckets.tailMap(oldest, true).descendingMap().entrySet()) {
+            if (listed >= MAX_LISTED_IDS) {
+                break;
+            }
+            Bucket bucket = entry.getValue();
+            String summary = bucket.ids.size() + String.valueOf(FIELD_SEPARATOR)
+                    + Long.toUnsignedString(bucket.hash, HASH_RADIX);
+            if (summary.equals(theirs.get(entry.getKey()))) {
+                continue;
+            }
+            for (UUID id : bucket.ids.reversed()) {
+                if (listed >= MAX_LISTED_IDS) {
+                    break;
+                }
+                listed++;
+                if (ids.length() + UUID_BYTES * 2 > MAX_BODY_CHARS) {
+                    sendIds(message.messageId(), ids, address);
+                }
+                if (!ids.isEmpty()) {
+                    ids.append(ID_SEPARATOR);
+                }
+                ids.append(encode(id));
+            }
+        }
+        sendIds(message.messageId(), ids, address);
+    }
+
+    /**
+     * Sends a list of message IDs in answer to a digest and empties it.
+     *
+     * @param digest  The ID of the digest answered
+     * @param ids     The IDs, separated
+     * @param address The address to send to
+     */
+    private void sendIds(UUID digest, StringBuilder ids, SocketAddress address) {
+        sender.accept(Message.createSync(Message.MessageType.SYNC_IDS, instanceId, digest, ids.toString()), address);
+        ids.setLength(0);
+    }
+
+    /**
+     * Notes the IDs listed in answer to this round's digest that are missing locally, and starts pulling them.
+     *
+     * @param message The list of IDs
+     * @param address The sender's address
+     */
+    private void recordIds(Message message, SocketAddress address) {
+        if (!running || digestId == null || !digestId.equals(message.originalMessageId())) {
+            return;
+        }
+        answered = true;
+        boolean idle = toPull.isEmpty();
+        List<UUID> ids = decodeAll(message.body());
+        listed += ids.size();
+        for (UUID id : ids) {
+            if (!known.contains(id) && !pulling.containsKey(id) && toPull.putIfAbsent(id, address) == null) {
+                missingFound++;
+            }
+        }
+        if (idle && !toPull.isEmpty()) {
+            timingWheel.reschedule(pullTimer, clock.millis() + PULL_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * Asks one peer for the next batch of missing messages listed by it.
+     * Runs on the timing wheel's thread.
+     */
+    private synchronized void pull() {
+        if (!running || toPull.isEmpty()) {
+            return;
+        }
+        var ids = new StringBuilder();
+        SocketAddress source = null;
+        int batch = 0;
+        Iterator<Map.Entry<UUID, SocketAddress>> entries = toPull.entrySet().iterator();
+        while (entries.hasNext() && batch < PULL_BATCH) {
+            Map.Entry<UUID, SocketAddress> entry = entries.next();
+            if (source == null) {
+                source = entry.getValue();
+            } else if (!source.equals(entry.getValue())) {
+                continue;
+            }
+            if (!ids.isEmpty()) {
+                ids.append(ID_SEPARATOR);
+            }
+            ids.append(encode(entry.getKey()));
+            pulling.put(entry.getKey(), clock.millis());
+            entries.remove();
+            batch++;
+        }
+        sender.accept(Message.createSync(Message.MessageType.SYNC_PULL, instanceId, null, ids.toString()), source);
+        if (!toPull.isEmpty()) {
+            timingWheel.reschedule(pullTimer, clock.millis() + PULL_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * Sends the requested messages that are stored locally.
+     *
+     * @param message The pull request
+     * @param address The sender's address
+     */
+    private void answerPull(Message message, SocketAddress address) {
+        List<UUID> ids = decodeAll(message.body());
+        for (int i = 0; i < ids.size() && i < PULL_BATCH; i++) {
+            Optional<Message> stored = lookup.apply(ids.get(i));
+            if (stored.isPresent() && stored.get().type() == Message.MessageType.CHAT) {
+                sender.accept(Message.createSyncData(instanceId, stored.get()), address);
+                served.increment();
+            }
+        }
+    }
+
+    /**
+     * Delivers a pulled message if it was asked for.
+     *
+     * @param message The SYNC_DATA message
+     */
+    private void accept(Message message) {
+        Optional<Message> chat = message.syncedMessage();
+        if (chat.isPresent() && pulling.remove(chat.get().messageId()) != null) {
+            pulled.increment();
+            deliver.accept(chat.get());
+        }
+    }
+
+    /**
+     * Drops the buckets that have left the catch-up window.
+     *
+     * @param now The current time in clock milliseconds
+     */
+    private void prune(long now) {
+        var expired = buckets.headMap(oldestBucket(now), false);
+        expired.values().forEach(bucket -> known.removeAll(bucket.ids));
+        expired.clear();
+    }
+
+    /**
+     * Gets the bucket a timestamp falls in.
+     *
+     * @param hlc The encoded hybrid logical clock timestamp
+     * @return The bucket number
+     */
+    private static long bucketOf(long hlc) {
+        return HybridLogicalClock.physicalMillis(hlc) / BUCKET_MILLIS;
+    }
+
+    /**
+     * Gets the oldest bucket within the catch-up window.
+     *
+     * @param now The current time in clock milliseconds
+     * @return The bucket number
+     */
+    private static long oldestBucket(long now) {
+        return (now - WINDOW_MILLIS) / BUCKET_MILLIS;
+    }
+
+    /**
+     * Mixes a message ID into a well-distributed hash.
+     *
+     * @param id The message ID
+     * @return The hash
+     */
+    private static long hash(UUID id) {
+        long z = id.getMostSignificantBits() ^ Long.rotateLeft(id.getLeastSignificantBits(), MIX_SHIFT_3);
+        z = (z ^ (z >>> MIX_SHIFT_1)) * MIX_MULTIPLIER_1;
+        z = (z ^ (z >>> MIX_SHIFT_2)) * MIX_MULTIPLIER_2;
+        return z ^ (z >>> MIX_SHIFT_3);
+    }
+
+    /**
+     * Encodes a message ID compactly as unpadded URL-safe Base64.
+     *
+     * @param id The message ID
+     * @return The encoded ID
+     */
+    private static String encode(UUID id) {
+        ByteBuffer bytes = ByteBuffer.allocate(UUID_BYTES)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.array());
+    }
+
+    /**
+     * Decodes a list of message IDs, skipping malformed ones.
+     *
+     * @param list The encoded IDs, separated
+     * @return The IDs
+     */
+    private static List<UUID> decodeAll(String list) {
+        List<UUID> ids = new ArrayList<>();
+        if (list.isEmpty()) {
+            return ids;
+        }
+        for (String encoded : list.split(String.valueOf(ID_SEPARATOR))) {
+            try {
+                byte[] bytes = Base64.getUrlDecoder().decode(encoded);
+                if (bytes.length == UUID_BYTES) {
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    ids.add(new UUID(buffer.getLong(), buffer.getLong()));
+                }
+            } catch (IllegalArgumentException e) {
+                LOG.debug("Ignoring malformed message ID {}", encoded);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * The chat messages whose timestamps fall in one bucket.
+     */
+    private static final class Bucket {
+        /**
+         * IDs of the messages, in the order they were stored.
+         */
+        private final SequencedSet<UUID> ids = new LinkedHashSet<>();
+
+        /**
+         * XOR of the hashes of the IDs.
+         */
+        private long hash;
+
+        /**
+         * Adds a message.
+         *
+         * @param id The message ID
+         */
+        private void add(UUID id) {
+            ids.add(id);
+            hash ^= HistorySync.hash(id);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package name.maxdeliso.teflon.data;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hybrid logical clock (HLC) used to stamp messages for causal ordering across peers.
+ * Timestamps are encoded in a single primitive long: the upper 48 bits hold physical
+ * milliseconds since the epoch and the lower 16 bits hold a logical counter that breaks
+ * ties between events sharing the same millisecond.
+ * Comparing two encoded timestamps as longs yields their causal order.
+ */
+public final class HybridLogicalClock implements Clock {
+    /**
+     * Number of low-order bits reserved for the logical counter.
+     */
+    public static final int LOGICAL_BITS = 16;
+
+    /**
+     * Mask selecting the logical counter of an encoded timestamp.
+     */
+    private static final long LOGICAL_MASK = (1L << LOGICAL_BITS) - 1;
+
+    /**
+     * Maximum distance in milliseconds a remote timestamp may run ahead of local physical time
+     * before it is ignored, so a single misconfigured peer cannot drag every clock forward.
+     */
+    private static final long MAX_DRIFT_MILLIS = 60_000;
+
+    /**
+     * Source of physical time.
+     */
+    private final Clock physicalClock;
+
+    /**
+     * Last timestamp issued or merged by this clock.
+     */
+    private final AtomicLong last = new AtomicLong();
+
+    /**
+     * Creates a hybrid logical clock backed by the system clock.
+     */
+    public HybridLogicalClock() {
+        this(new RealClock());
+    }
+
+    /**
+     * Creates a hybrid logical clock backed by the given physical clock.
+     *
+     * @param physicalClock The clock supplying physical time
+     */
+    public HybridLogicalClock(Clock physicalClock) {
+        this.physicalClock = physicalClock;
+    }
+
+    /**
+     * Issues a timestamp for a local or send event.
+     *
+     * @return The encoded timestamp, strictly greater than any previously issued or merged
+     */
+    public long tick() {
+        long physical = encode(physicalClock.millis(), 0);
+        while (true) {
+            long prev = last.get();
+            long next = physical > prev ? physical : prev + 1;
+            if (last.compareAndSet(prev, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Merges a timestamp received from a peer and issues a timestamp for the receive event.
+     * Remote timestamps that are zero or too far ahead of local physical time are ignored.
+     *
+     * @param remote The encoded timestamp carried by the received message
+     * @return The encoded timestamp for the receive event, greater than both inputs
+     */
+    public long merge(long remote) {
+        long physicalMillis = physicalClock.millis();
+        if (remote <= 0 || physicalMillis(remote) - physicalMillis > MAX_DRIFT_MILLIS) {
+            return tick();
+        }
+
+        long physical = encode(physicalMillis, 0);
+        while (true) {
+            long prev = last.get();
+            long latest = Math.max(prev, remote);
+            long next = physical > latest ? physical : latest + 1;
+            if (last.compareAndSet(prev, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Reads the clock without advancing it. Only {@link #tick} and {@link #merge} issue timestamps,
+     * so reading the time as a {@link Clock} never reorders the events stamped around it.
+     *
+     * @return The later of the last encoded timestamp issued or merged and the physical time,
+     *         encoded with a zero logical counter
+     */
+    public long current() {
+        return Math.max(last.get(), encode(physicalClock.millis(), 0));
+    }
+
+    @Override
+    public Instant now() {
+        return Instant.ofEpochMilli(millis());
+    }
+
+    @Override
+    public long millis() {
+        return physicalMillis(current());
+    }
+
+    /**
+     * Encodes physical milliseconds and a logical counter into a timestamp.
+     *
+     * @param millis  Physical milliseconds since the epoch
+     * @param logical The logical counter
+     * @return The encoded timestamp
+     */
+    public static long encode(long millis, int logical) {
+        return (millis << LOGICAL_BITS) | (logical & LOGICAL_MASK);
+    }
+
+    /**
+     * Extracts the physical milliseconds from an encoded timestamp.
+     *
+     * @param hlc The encoded timestamp
+     * @return Physical milliseconds since the epoch
+     */
+    public static long physicalMillis(long hlc) {
+        return hlc >>> LOGICAL_BITS;
+    }
+
+    /**
+     * Extracts the logical counter from an encoded timestamp.
+     *
+     * @param hlc The encoded timestamp
+     * @return The logical counter
+     */
+    public static int logical(long hlc) {
+        return (int) (hlc & LOGICAL_MASK);
+    }
+}
@@ -0,0 +1,181 @@
+package name.maxdeliso.teflon.data;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe log-linear histogram of non-negative values such as latencies in microseconds.
+ * Each power of two is split into eight linear sub-buckets, bounding the relative error of a
+ * reported percentile to 12.5% while keeping the whole histogram in a fixed primitive array.
+ * Recording a value is a handful of arithmetic operations and atomic increments.
+ */
+public final class LatencyHistogram {
+    /**
+     * Number of bits used to select a linear sub-bucket within a power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * Number of linear sub-buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Total number of buckets needed to cover every non-negative long.
+     */
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * Microseconds per millisecond, for display.
+     */
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    /**
+     * Percentile reported as the median.
+     */
+    private static final double MEDIAN = 0.50;
+
+    /**
+     * Percentile reported as the tail.
+     */
+    private static final double TAIL = 0.99;
+
+    /**
+     * Per-bucket counts.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Total number of recorded values.
+     */
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * Largest recorded value.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value. Negative values, which can arise from clock offset estimation error,
+     * are clamped to zero.
+     *
+     * @param value The value to record
+     */
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+        counts.incrementAndGet(bucketIndex(clamped));
+        total.increment();
+        max.accumulateAndGet(clamped, Math::max);
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return The count
+     */
+    public long count() {
+        return total.sum();
+    }
+
+    /**
+     * Estimates the value at the given percentile.
+     *
+     * @param percentile The percentile, between 0 and 1
+     * @return The highest value equivalent to the bucket containing the percentile, or zero if empty
+     */
+    public long percentile(double percentile) {
+        long recorded = count();
+        if (recorded == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketLowerBound(i + 1) - 1, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Takes a summary of the current distribution.
+     *
+     * @return The summary
+     */
+    public Summary summarize() {
+        return new Summary(count(), percentile(MEDIAN), percentile(TAIL), max.get());
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        max.set(0);
+    }
+
+    /**
+     * Computes the bucket holding a value.
+     *
+     * @param value A non-negative value
+     * @return The bucket index
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Computes the smallest value held by a bucket.
+     *
+     * @param index The bucket index
+     * @return The lower bound of the bucket
+     */
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        if (index >= BUCKET_COUNT) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Point-in-time summary of a histogram.
+     *
+     * @param count  Number of recorded values
+     * @param median Median value
+     * @param p99    99th percentile value
+     * @param max    Largest recorded value
+     */
+    public record Summary(long count, long median, long p99, long max) {
+        /**
+         * Formats the summary, interpreting values as microseconds, as
+         * "p50 / p99 / max ms (n=count)".
+         *
+         * @return The formatted summary, or "n/a" if nothing was recorded
+         */
+        public String describeMillis() {
+            if (count == 0) {
+                return "n/a";
+            }
+            return String.format(Locale.ROOT, "%.2f / %.2f / %.2f ms (n=%d)",
+                    median / MICROS_PER_MILLI, p99 / MICROS_PER_MILLI, max / MICROS_PER_MILLI, count);
+        }
+    }
+}
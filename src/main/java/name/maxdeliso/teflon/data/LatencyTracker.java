@@ -0,0 +1,362 @@
+package name.maxdeliso.teflon.data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Traces end-to-end message latency and estimates per-peer clock offsets.
+ * Breaks delivery time into the local outbound queue, the wire, decoding, and EDT rendering.
+ * Clock offsets are estimated NTP-style from acknowledgment round trips: an acknowledgment
+ * carries the time the peer received our message and the time it sent the acknowledgment,
+ * which together with our own send and receive times yields both offset and round-trip delay.
+ * All times are epoch microseconds.
+ */
+public class LatencyTracker {
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = LogManager.getLogger(LatencyTracker.class);
+
+    /**
+     * Maximum number of our own messages remembered while awaiting acknowledgments.
+     */
+    private static final int MAX_OUTSTANDING = 4096;
+
+    /**
+     * Number of recent offset samples considered when picking the lowest-delay sample.
+     */
+    private static final int OFFSET_WINDOW = 8;
+
+    /**
+     * The ID of this instance.
+     */
+    private final String instanceId;
+
+    /**
+     * The clock used for timing.
+     */
+    private final Clock clock;
+
+    /**
+     * Time from composition until the datagram is handed to the network.
+     */
+    private final LatencyHistogram queue = new LatencyHistogram();
+
+    /**
+     * Offset-corrected one-way delay from a peer's send to our receipt, across all peers.
+     */
+    private final LatencyHistogram wire = new LatencyHistogram();
+
+    /**
+     * Time spent decoding received datagrams.
+     */
+    private final LatencyHistogram decode = new LatencyHistogram();
+
+    /**
+     * Time from decoding until the message has been rendered on the EDT.
+     */
+    private final LatencyHistogram render = new LatencyHistogram();
+
+    /**
+     * Per-peer latency state.
+     */
+    private final Map<String, PeerLatency> peers = new ConcurrentHashMap<>();
+
+    /**
+     * Our own messages awaiting acknowledgment, in insertion order so the oldest are evicted first.
+     */
+    private final Map<UUID, Outstanding> outstanding = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Outstanding> eldest) {
+            return size() > MAX_OUTSTANDING;
+        }
+    };
+
+    /**
+     * Creates a new latency tracker.
+     *
+     * @param instanceId The ID of this instance
+     * @param clock      The clock used for timing
+     */
+    public LatencyTracker(String instanceId, Clock clock) {
+        this.instanceId = instanceId;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates a new latency tracker that forgets each peer when it leaves the roster.
+     *
+     * @param instanceId  The ID of this instance
+     * @param clock       The clock used for timing
+     * @param peerTracker The roster whose departures to follow
+     */
+    public LatencyTracker(String instanceId, Clock clock, PeerTracker peerTracker) {
+        this(instanceId, clock);
+        peerTracker.subscribe(PeerTracker.Listener.departures(this::removePeer));
+    }
+
+    /**
+     * Records that a message was composed locally.
+     *
+     * @param message The composed message
+     */
+    public void recordComposed(Message message) {
+        synchronized (outstanding) {
+            outstanding.put(message.messageId(), new Outstanding(clock.micros()));
+        }
+    }
+
+    /**
+     * Records that a message was handed to the network, measuring its queueing delay.
+     *
+     * @param message The message as sent, stamped with {@code sentAt}
+     */
+    public void recordSent(Message message) {
+        if (message.type() != Message.MessageType.CHAT) {
+            return;
+        }
+        synchronized (outstanding) {
+            Outstanding entry = outstanding.get(message.messageId());
+            if (entry != null) {
+                entry.sentAt = message.sentAt();
+                queue.record(message.sentAt() - entry.composedAt);
+            }
+        }
+    }
+
+    /**
+     * Records the arrival of a message from the network.
+     * Measures decode time, the one-way delay from peers whose offset is known, and updates
+     * offset estimates from acknowledgments of our own messages.
+     *
+     * @param message   The decoded message
+     * @param arrivedAt When the datagram was received
+     * @param decodedAt When decoding finished
+     */
+    public void recordArrival(Message message, long arrivedAt, long decodedAt) {
+        decode.record(decodedAt - arrivedAt);
+        if (message.senderId().equals(instanceId) || message.sentAt() == 0) {
+            return;
+        }
+
+        PeerLatency peer = peers.computeIfAbsent(message.senderId(), id -> new PeerLatency());
+        if (message.isAcknowledgment() && message.receivedAt() != 0 && message.originalMessageId() != null) {
+            Outstanding entry;
+            synchronized (outstanding) {
+                entry = outstanding.get(message.originalMessageId());
+            }
+            if (entry != null && entry.sentAt != 0) {
+                peer.addSample(entry.sentAt, message.receivedAt(), message.sentAt(), arrivedAt);
+            }
+        }
+
+        if (peer.synchronizedWithPeer) {
+            long oneWay = arrivedAt - (message.sentAt() - peer.offset);
+            peer.oneWay.record(oneWay);
+            wire.record(oneWay);
+        }
+    }
+
+    /**
+     * Records that a decoded message has been rendered.
+     *
+     * @param decodedAt When decoding finished
+     */
+    public void recordRendered(long decodedAt) {
+        render.record(clock.micros() - decodedAt);
+    }
+
+    /**
+     * Gets the current time from this tracker's clock.
+     *
+     * @return The current time in epoch microseconds
+     */
+    public long now() {
+        return clock.micros();
+    }
+
+    /**
+     * Summarizes the latency breakdown across all peers.
+     *
+     * @return The breakdown
+     */
+    public Breakdown breakdown() {
+        return new Breakdown(
+                queue.summarize(),
+                wire.summarize(),
+                decode.summarize(),
+                render.summarize());
+    }
+
+    /**
+     * Summarizes latency for a single peer.
+     *
+     * @param peerId The peer's ID
+     * @return The summary, or null if nothing has been measured for the peer
+     */
+    public PeerSummary peerSummary(String peerId) {
+        PeerLatency peer = peers.get(peerId);
+        if (peer == null) {
+            return null;
+        }
+        return new PeerSummary(
+                peer.synchronizedWithPeer,
+                peer.offset,
+                peer.roundTrip.summarize(),
+                peer.oneWay.summarize());
+    }
+
+    /**
+     * Summarizes latency for every measured peer.
+     *
+     * @return Summaries keyed by peer ID, in ID order
+     */
+    public Map<String, PeerSummary> peerSummaries() {
+        Map<String, PeerSummary> summaries = new TreeMap<>();
+        peers.keySet().forEach(peerId -> summaries.put(peerId, peerSummary(peerId)));
+        return summaries;
+    }
+
+    /**
+     * Forgets a peer, for example when it leaves or the connection is reset.
+     *
+     * @param peerId The peer's ID
+     */
+    public void removePeer(String peerId) {
+        peers.remove(peerId);
+    }
+
+    /**
+     * Forgets all peers and outstanding messages.
+     */
+    public void reset() {
+        peers.clear();
+        synchronized (outstanding) {
+            outstanding.clear();
+        }
+    }
+
+    /**
+     * Timing of one of our own messages awaiting acknowledgment.
+     */
+    private static final class Outstanding {
+        /**
+         * When the message was composed.
+         */
+        private final long composedAt;
+
+        /**
+         * When the message was handed to the network, or zero if not yet sent.
+         */
+        private long sentAt;
+
+        Outstanding(long composedAt) {
+            this.composedAt = composedAt;
+        }
+    }
+
+    /**
+     * Latency state for a single peer.
+     */
+    private static final class PeerLatency {
+        /**
+         * Round-trip delays measured from acknowledgments.
+         */
+        private final LatencyHistogram roundTrip = new LatencyHistogram();
+
+        /**
+         * Offset-corrected one-way delays of messages from this peer.
+         */
+        private final LatencyHistogram oneWay = new LatencyHistogram();
+
+        /**
+         * Recent offset samples.
+         */
+        private final long[] offsetSamples = new long[OFFSET_WINDOW];
+
+        /**
+         * Round-trip delays of the recent offset samples.
+         */
+        private final long[] delaySamples = new long[OFFSET_WINDOW];
+
+        /**
+         * Number of samples taken.
+         */
+        private int samples;
+
+        /**
+         * Estimated peer clock minus local clock.
+         */
+        private volatile long offset;
+
+        /**
+         * Whether an offset estimate is available.
+         */
+        private volatile boolean synchronizedWithPeer;
+
+        /**
+         * Adds an NTP-style sample and updates the offset with the lowest-delay recent sample,
+         * since the sample with the least queueing is the least skewed by asymmetric delay.
+         *
+         * @param originate When we sent the message (our clock)
+         * @param receive   When the peer received it (peer clock)
+         * @param transmit  When the peer sent its acknowledgment (peer clock)
+         * @param arrive    When the acknowledgment arrived (our clock)
+         */
+        synchronized void addSample(long originate, long receive, long transmit, long arrive) {
+            long delay = (arrive - originate) - (transmit - receive);
+            long sampleOffset = ((receive - originate) + (transmit - arrive)) / 2;
+            roundTrip.record(delay);
+
+            int slot = samples++ % OFFSET_WINDOW;
+            offsetSamples[slot] = sampleOffset;
+            delaySamples[slot] = delay;
+
+            int best = 0;
+            for (int i = 1; i < Math.min(samples, OFFSET_WINDOW); i++) {
+                if (delaySamples[i] < delaySamples[best]) {
+                    best = i;
+                }
+            }
+            offset = offsetSamples[best];
+            synchronizedWithPeer = true;
+            LOG.debug("Clock offset sample delay={}us offset={}us, estimate={}us", delay, sampleOffset, offset);
+        }
+    }
+
+    /**
+     * Latency breakdown across all peers. Values are in microseconds.
+     *
+     * @param queue  Composition to network hand-off
+     * @param wire   Offset-corrected one-way network delay
+     * @param decode Datagram decoding
+     * @param render Decoding to rendered on the EDT
+     */
+    public record Breakdown(
+            LatencyHistogram.Summary queue,
+            LatencyHistogram.Summary wire,
+            LatencyHistogram.Summary decode,
+            LatencyHistogram.Summary render
+    ) {}
+
+    /**
+     * Latency summary for a single peer. Values are in microseconds.
+     *
+     * @param synchronizedWithPeer Whether a clock offset estimate is available
+     * @param offset               Estimated peer clock minus local clock
+     * @param roundTrip            Round-trip delays
+     * @param oneWay               Offset-corrected one-way delays
+     */
+    public record PeerSummary(
+            boolean synchronizedWithPeer,
+            long offset,
+            LatencyHistogram.Summary roundTrip,
+            LatencyHistogram.Summary oneWay
+    ) {}
+}
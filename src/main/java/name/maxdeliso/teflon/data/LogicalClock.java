@@ -30,4 +30,13 @@ public class LogicalClock implements Clock {
     public void advanceSeconds(long seconds) {
         currentTime = currentTime.plusSeconds(seconds);
     }
+
+    /**
+     * Advances the clock by the specified number of milliseconds.
+     *
+     * @param millis Number of milliseconds to advance
+     */
+    public void advanceMillis(long millis) {
+        currentTime = currentTime.plusMillis(millis);
+    }
 }
@@ -0,0 +1,56 @@
+package name.maxdeliso.teflon.data;
+
+/**
+ * A change in one member's state, gossiped by piggybacking it on regular messages.
+ * Updates about the same member are ordered by incarnation: only the member itself raises its
+ * incarnation, which it does to refute a suspicion, so a newer incarnation always wins and
+ * within one incarnation a suspicion overrides liveness and a death overrides both.
+ *
+ * @param memberId    The member's UUID
+ * @param address     The member's address in text form, or null if the sender does not know it
+ * @param state       The member's state
+ * @param incarnation The member's incarnation number
+ */
+public record MembershipUpdate(
+        String memberId,
+        String address,
+        State state,
+        int incarnation
+) {
+    /**
+     * States of a member, in order of precedence within one incarnation.
+     */
+    public enum State {
+        /**
+         * The member answered its latest probe or announced itself.
+         */
+        ALIVE,
+
+        /**
+         * The member missed a probe and will be declared dead unless it refutes the suspicion.
+         */
+        SUSPECT,
+
+        /**
+         * The member stayed suspected for the full suspicion timeout.
+         */
+        DEAD
+    }
+
+    /**
+     * Checks whether this update supersedes what is known about the member.
+     *
+     * @param knownState       The member's known state
+     * @param knownIncarnation The member's known incarnation
+     * @return true if this update should replace the known state
+     */
+    public boolean overrides(State knownState, int knownIncarnation) {
+        if (knownState == State.DEAD) {
+            return state == State.ALIVE && incarnation > knownIncarnation;
+        }
+        if (incarnation != knownIncarnation) {
+            return incarnation > knownIncarnation;
+        }
+        return state.compareTo(knownState) > 0;
+    }
+}
@@ -1,6 +1,10 @@
 package name.maxdeliso.teflon.data;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.zip.CRC32;
 
@@ -8,7 +12,14 @@ import static org.apache.commons.text.StringEscapeUtils.escapeHtml4;
 
 /**
  * Represents a chat message in the system.
- * Contains the sender's ID, message body, and acknowledgment metadata.
+ * Contains the sender's ID, message body, acknowledgment metadata, and a hybrid logical
+ * clock timestamp used to order messages consistently across peers.
+ * For latency tracing, {@code sentAt} records the sender's wall clock in epoch microseconds
+ * when the datagram was handed to the network, and acknowledgments echo the time the
+ * acknowledged message arrived in {@code receivedAt}.
+ * A timestamp of zero means the sender did not stamp the message.
+ * Any message may carry membership updates piggybacked on it by {@link SwimMembership};
+ * the probe types exist only to carry the membership protocol.
  */
 public record Message(
         String senderId,
@@ -16,13 +27,119 @@ public record Message(
         UUID messageId,
         MessageType type,
         long checksum,
-        UUID originalMessageId) {
+        UUID originalMessageId,
+        long hlc,
+        long sentAt,
+        long receivedAt,
+        List<MembershipUpdate> membership) {
+
+    /**
+     * Orders messages by hybrid logical clock timestamp, breaking ties by sender and message ID
+     * so that every peer arrives at the same total order.
+     */
+    public static final Comparator<Message> CAUSAL_ORDER = (a, b) -> compareCausally(
+            a.hlc(), a.senderId(), a.messageId(), b.hlc(), b.senderId(), b.messageId());
+
+    /**
+     * Compares two messages by their stamps in {@link #CAUSAL_ORDER}, for views that keep the
+     * stamps rather than the messages. A missing message ID orders first.
+     *
+     * @param hlc            The first message's encoded hybrid logical clock timestamp
+     * @param senderId       The first message's sender ID
+     * @param messageId      The first message's ID, or null
+     * @param otherHlc       The second message's encoded hybrid logical clock timestamp
+     * @param otherSenderId  The second message's sender ID
+     * @param otherMessageId The second message's ID, or null
+     * @return A negative number, zero or a positive number as the first message orders before,
+     *         with or after the second
+     */
+    public static int compareCausally(long hlc, String senderId, UUID messageId,
+                                      long otherHlc, String otherSenderId, UUID otherMessageId) {
+        int order = Long.compare(hlc, otherHlc);
+        if (order == 0) {
+            order = senderId.compareTo(otherSenderId);
+        }
+        if (order == 0) {
+            order = Objects.compare(messageId, otherMessageId, Comparator.nullsFirst(Comparator.naturalOrder()));
+        }
+        return order;
+    }
 
     /**
      * Maximum RGB color value.
      */
     private static final int MAX_RGB_COLOR = 0xFFFFFF;
 
+    /**
+     * Separates the sender ID from the body of a chat message carried by SYNC_DATA.
+     */
+    private static final char SYNC_DATA_SEPARATOR = '\n';
+
+    /**
+     * Creates a message without a hybrid logical clock timestamp.
+     *
+     * @param senderId          The unique identifier of the message sender
+     * @param body              The content of the message
+     * @param messageId         The unique identifier of the message
+     * @param type              The message type
+     * @param checksum          The CRC32 checksum of the body
+     * @param originalMessageId The ID of the acknowledged message, or null
+     */
+    public Message(String senderId,
+                   String body,
+                   UUID messageId,
+                   MessageType type,
+                   long checksum,
+                   UUID originalMessageId) {
+        this(senderId, body, messageId, type, checksum, originalMessageId, 0L);
+    }
+
+    /**
+     * Creates a message without latency tracing timestamps.
+     *
+     * @param senderId          The unique identifier of the message sender
+     * @param body              The content of the message
+     * @param messageId         The unique identifier of the message
+     * @param type              The message type
+     * @param checksum          The CRC32 checksum of the body
+     * @param originalMessageId The ID of the acknowledged message, or null
+     * @param hlc               The encoded hybrid logical clock timestamp
+     */
+    public Message(String senderId,
+                   String body,
+                   UUID messageId,
+                   MessageType type,
+                   long checksum,
+                   UUID originalMessageId,
+                   long hlc) {
+        this(senderId, body, messageId, type, checksum, originalMessageId, hlc, 0L, 0L);
+    }
+
+    /**
+     * Creates a message without piggybacked membership updates.
+     *
+     * @param senderId          The unique identifier of the message sender
+     * @param body              The content of the message
+     * @param messageId         The unique identifier of the message
+     * @param type              The message type
+     * @param checksum          The CRC32 checksum of the body
+     * @param originalMessageId The ID of the acknowledged message, or null
+     * @param hlc               The encoded hybrid logical clock timestamp
+     * @param sentAt            When the message was sent, in epoch microseconds
+     * @param receivedAt        When the acknowledged message arrived, in epoch microseconds
+     */
+    public Message(String senderId,
+                   String body,
+                   UUID messageId,
+                   MessageType type,
+                   long checksum,
+                   UUID originalMessageId,
+                   long hlc,
+                   long sentAt,
+                   long receivedAt) {
+        this(senderId, body, messageId, type, checksum, originalMessageId, hlc, sentAt, receivedAt, null);
+    }
+
     /**
      * Creates a new chat message.
      *
@@ -30,7 +147,18 @@ public record Message(
      * @param body     The content of the message
      */
     public Message(String senderId, String body) {
-        this(senderId, body, UUID.randomUUID(), MessageType.CHAT, calculateChecksum(body), null);
+        this(senderId, body, 0L);
+    }
+
+    /**
+     * Creates a new chat message stamped with a hybrid logical clock timestamp.
+     *
+     * @param senderId The unique identifier of the message sender
+     * @param body     The content of the message
+     * @param hlc      The encoded hybrid logical clock timestamp
+     */
+    public Message(String senderId, String body, long hlc) {
+        this(senderId, body, UUID.randomUUID(), MessageType.CHAT, calculateChecksum(body), null, hlc);
     }
 
     /**
@@ -42,6 +170,24 @@ public record Message(
      * @return A new acknowledgment message
      */
     public static Message createAcknowledgment(String senderId, UUID originalMessageId, boolean isPositive) {
+        return createAcknowledgment(senderId, originalMessageId, isPositive, 0L, 0L);
+    }
+
+    /**
+     * Creates an acknowledgment message stamped with a hybrid logical clock timestamp.
+     *
+     * @param senderId          The unique identifier of the acknowledging party
+     * @param originalMessageId The ID of the message being acknowledged
+     * @param isPositive        Whether this is a positive (ACK) or negative (NACK) acknowledgment
+     * @param hlc               The encoded hybrid logical clock timestamp
+     * @param receivedAt        When the acknowledged message arrived, in epoch microseconds
+     * @return A new acknowledgment message
+     */
+    public static Message createAcknowledgment(String senderId,
+                                               UUID originalMessageId,
+                                               boolean isPositive,
+                                               long hlc,
+                                               long receivedAt) {
         MessageType type = isPositive ? MessageType.ACK : MessageType.NACK;
         String body = isPositive ? "Message received" : "Message validation failed";
         return new name.maxdeliso.teflon.data.Message(
@@ -50,10 +196,104 @@ public record Message(
                 java.util.UUID.randomUUID(),
                 type,
                 calculateChecksum(body),
-                originalMessageId
+                originalMessageId,
+                hlc,
+                0L,
+                receivedAt
         );
     }
 
+    /**
+     * Creates a membership probe.
+     *
+     * @param senderId The unique identifier of the prober
+     * @param probeId  The probe ID, echoed by the acknowledgment
+     * @param targetId The unique identifier of the probed member
+     * @param indirect Whether this asks other members to probe the target on the sender's behalf
+     * @return A new probe message
+     */
+    public static Message createProbe(String senderId, UUID probeId, String targetId, boolean indirect) {
+        MessageType type = indirect ? MessageType.PING_REQ : MessageType.PING;
+        return new Message(senderId, targetId, probeId, type, calculateChecksum(targetId), null);
+    }
+
+    /**
+     * Creates an acknowledgment of a membership probe.
+     *
+     * @param senderId The unique identifier of the probed member, or of a member relaying its answer
+     * @param probeId  The ID of the probe being answered
+     * @param targetId The unique identifier of the probed member
+     * @return A new probe acknowledgment
+     */
+    public static Message createProbeAck(String senderId, UUID probeId, String targetId) {
+        return new Message(senderId, targetId, UUID.randomUUID(), MessageType.PING_ACK,
+                calculateChecksum(targetId), probeId);
+    }
+
+    /**
+     * Creates a history synchronization message.
+     *
+     * @param type      The message type, one of the SYNC_ types other than SYNC_DATA
+     * @param senderId  The unique identifier of the sender
+     * @param requestId The ID of the message this answers, or null
+     * @param body      The protocol payload
+     * @return A new synchronization message
+     */
+    public static Message createSync(MessageType type, String senderId, UUID requestId, String body) {
+        return new Message(senderId, body, UUID.randomUUID(), type, calculateChecksum(body), requestId);
+    }
+
+    /**
+     * Creates a message carrying a chat message pulled from the history. The chat message's
+     * sender ID and body travel in the body so that the carrier is attributed to its sender.
+     *
+     * @param senderId The unique identifier of the member sending the copy
+     * @param original The chat message
+     * @return A new SYNC_DATA message
+     */
+    public static Message createSyncData(String senderId, Message original) {
+        String body = original.senderId() + SYNC_DATA_SEPARATOR + original.body();
+        return new Message(senderId, body, UUID.randomUUID(), MessageType.SYNC_DATA, calculateChecksum(body),
+                original.messageId(), original.hlc());
+    }
+
+    /**
+     * Gets the chat message carried by a SYNC_DATA message.
+     *
+     * @return The chat message, or empty if this message does not carry one
+     */
+    public Optional<Message> syncedMessage() {
+        int separator = body.indexOf(SYNC_DATA_SEPARATOR);
+        if (type != MessageType.SYNC_DATA || originalMessageId == null || separator < 0) {
+            return Optional.empty();
+        }
+        String originalBody = body.substring(separator + 1);
+        return Optional.of(new Message(body.substring(0, separator), originalBody, originalMessageId,
+                MessageType.CHAT, calculateChecksum(originalBody), null, hlc));
+    }
+
+    /**
+     * Returns a copy of this message stamped with the time it was handed to the network.
+     *
+     * @param sendMicros The sender's wall clock in epoch microseconds
+     * @return A copy of this message with {@code sentAt} set
+     */
+    public Message withSentAt(long sendMicros) {
+        return new Message(senderId, body, messageId, type, checksum, originalMessageId, hlc, sendMicros, receivedAt,
+                membership);
+    }
+
+    /**
+     * Returns a copy of this message carrying membership updates.
+     *
+     * @param updates The updates to piggyback
+     * @return A copy of this message with {@code membership} set
+     */
+    public Message withMembership(List<MembershipUpdate> updates) {
+        return new Message(senderId, body, messageId, type, checksum, originalMessageId, hlc, sentAt, receivedAt,
+                updates);
+    }
+
     /**
      * Calculates the checksum for a message body.
      *
@@ -111,6 +351,34 @@ public record Message(
         return type == MessageType.ACK || type == MessageType.NACK;
     }
 
+    /**
+     * Checks if this message belongs to the membership protocol rather than the chat.
+     *
+     * @return true if the message is a PING, PING_REQ or PING_ACK
+     */
+    public boolean isProbe() {
+        return type == MessageType.PING || type == MessageType.PING_REQ || type == MessageType.PING_ACK;
+    }
+
+    /**
+     * Checks if this message belongs to the history synchronization protocol rather than the chat.
+     *
+     * @return true if the message is a SYNC_DIGEST, SYNC_IDS, SYNC_PULL or SYNC_DATA
+     */
+    public boolean isSync() {
+        return type == MessageType.SYNC_DIGEST || type == MessageType.SYNC_IDS
+                || type == MessageType.SYNC_PULL || type == MessageType.SYNC_DATA;
+    }
+
+    /**
+     * Checks if this message carries a hybrid logical clock timestamp.
+     *
+     * @return true if the sender stamped the message
+     */
+    public boolean hasTimestamp() {
+        return hlc > 0;
+    }
+
     /**
      * Message types supported by the system.
      */
@@ -118,6 +386,13 @@ public record Message(
         CHAT,       // Regular chat message
         ACK,        // Positive acknowledgment
         NACK,       // Negative acknowledgment
-        SYSTEM_EVENT // System events (connect/disconnect/etc)
+        SYSTEM_EVENT, // System events (connect/disconnect/etc)
+        PING,       // Membership probe addressed to the member named in the body
+        PING_REQ,   // Request to probe the member named in the body on the sender's behalf
+        PING_ACK,   // Answer to the probe named by originalMessageId
+        SYNC_DIGEST, // Summary of recent history sent to a peer to find what is missing
+        SYNC_IDS,   // IDs of messages in the history buckets that differ from the digest originalMessageId
+        SYNC_PULL,  // Request for the messages whose IDs are in the body
+        SYNC_DATA   // A pulled chat message, its sender ID and body carried in the body
     }
 }
@@ -0,0 +1,996 @@
+package name.maxdeliso.teflon.data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Persistent, append-only history of sent and received messages.
+ * Messages are appended as length-prefixed, checksummed binary records to segment files of a
+ * fixed size, written through memory mappings; when a record does not fit, a new segment is
+ * started. Appending encodes straight into the mapping and allocates nothing once the indexes
+ * have grown to their working size. A background thread forces appended data to disk at most
+ * once per {@link #GROUP_COMMIT_MILLIS}, so one fsync commits every message appended meanwhile.
+ * Two indexes are kept in memory: a hash index from message ID to record position, which also
+ * rejects duplicates, and a sparse index holding the append time and offset of every
+ * {@link #SPARSE_INTERVAL}th record of each segment. On opening, only the newest segment is
+ * scanned before the history is usable, so its tail can be read at once; older segments and the
+ * ID index are built on a background thread, and appends and lookups that need them wait for it.
+ * A record whose checksum does not match, such as one torn by a crash, ends its segment.
+ */
+public final class MessageHistory implements Closeable {
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = LogManager.getLogger(MessageHistory.class);
+
+    /**
+     * Default size of a segment file.
+     */
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * Longest time appended data waits before being forced to disk.
+     */
+    public static final long GROUP_COMMIT_MILLIS = 50L;
+
+    /**
+     * Number of records between entries of the sparse time index.
+     */
+    static final int SPARSE_INTERVAL = 64;
+
+    /**
+     * Offset of a record's total length, written last so that a record is never seen half-written.
+     */
+    private static final int LENGTH = 0;
+
+    /**
+     * Offset of the checksum of everything after it.
+     */
+    private static final int CRC = 4;
+
+    /**
+     * Offset of the time the record was appended, in clock milliseconds.
+     */
+    private static final int APPENDED_AT = 8;
+
+    /**
+     * Offset of the most significant bits of the message ID.
+     */
+    private static final int ID_MSB = 16;
+
+    /**
+     * Offset of the least significant bits of the message ID.
+     */
+    private static final int ID_LSB = 24;
+
+    /**
+     * Offset of the hybrid logical clock timestamp.
+     */
+    private static final int HLC = 32;
+
+    /**
+     * Offset of the send time.
+     */
+    private static final int SENT_AT = 40;
+
+    /**
+     * Offset of the arrival time echoed by acknowledgments.
+     */
+    private static final int RECEIVED_AT = 48;
+
+    /**
+     * Offset of the body checksum.
+     */
+    private static final int CHECKSUM = 56;
+
+    /**
+     * Offset of the most significant bits of the acknowledged message ID.
+     */
+    private static final int ORIGINAL_MSB = 64;
+
+    /**
+     * Offset of the least significant bits of the acknowledged message ID.
+     */
+    private static final int ORIGINAL_LSB = 72;
+
+    /**
+     * Offset of the message type ordinal, or -1 if unknown.
+     */
+    private static final int TYPE = 80;
+
+    /**
+     * Offset of the flag telling whether the message acknowledges another.
+     */
+    private static final int HAS_ORIGINAL = 81;
+
+    /**
+     * Offset of the sender ID and then the body, each a length followed by UTF-8 bytes.
+     */
+    private static final int STRINGS = 82;
+
+    /**
+     * Most bytes a UTF-16 code unit takes in UTF-8.
+     */
+    private static final int MAX_UTF8_BYTES_PER_CHAR = 3;
+
+    /**
+     * Marker of a UTF-8 continuation byte, and the first code point needing more than one byte.
+     */
+    private static final int UTF8_CONTINUATION = 0x80;
+
+    /**
+     * Payload bits in a UTF-8 continuation byte.
+     */
+    private static final int UTF8_CONTINUATION_BITS = 6;
+
+    /**
+     * Mask of the payload bits in a UTF-8 continuation byte.
+     */
+    private static final int UTF8_CONTINUATION_MASK = 0x3F;
+
+    /**
+     * First code point needing three UTF-8 bytes.
+     */
+    private static final int UTF8_TWO_BYTE_LIMIT = 0x800;
+
+    /**
+     * Marker of the lead byte of a two-byte UTF-8 sequence.
+     */
+    private static final int UTF8_TWO_BYTE_LEAD = 0xC0;
+
+    /**
+     * Marker of the lead byte of a three-byte UTF-8 sequence.
+     */
+    private static final int UTF8_THREE_BYTE_LEAD = 0xE0;
+
+    /**
+     * Marker of the lead byte of a four-byte UTF-8 sequence.
+     */
+    private static final int UTF8_FOUR_BYTE_LEAD = 0xF0;
+
+    /**
+     * File name prefix of segment files.
+     */
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    /**
+     * File name suffix of segment files.
+     */
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Bits of a record position holding the offset within its segment.
+     */
+    private static final int OFFSET_BITS = 32;
+
+    /**
+     * Mask extracting the offset from a record position.
+     */
+    private static final long OFFSET_MASK = 0xFFFF_FFFFL;
+
+    /**
+     * The directory holding the segment files.
+     */
+    private final Path directory;
+
+    /**
+     * Size of each new segment file.
+     */
+    private final int segmentBytes;
+
+    /**
+     * The clock used to stamp appended records.
+     */
+    private final Clock clock;
+
+    /**
+     * Record positions keyed by message ID.
+     */
+    private final UuidTable positions = new UuidTable(0);
+
+    /**
+     * Segments in order, the last being the one appended to.
+     * Replaced, never modified, so readers may iterate a snapshot.
+     */
+    private volatile List<Segment> segments;
+
+    /**
+     * Checksum calculator used by appends.
+     */
+    private final CRC32C appendCrc = new CRC32C();
+
+    /**
+     * Released once every segment has been indexed.
+     */
+    private final CountDownLatch indexed = new CountDownLatch(1);
+
+    /**
+     * Thread forcing appended data to disk.
+     */
+    private final Thread flusher;
+
+    /**
+     * Whether data has been appended since the last force. Guarded by this object's lock.
+     */
+    private boolean dirty;
+
+    /**
+     * Whether the history has been closed. Guarded by this object's lock.
+     */
+    private boolean closed;
+
+    private MessageHistory(Path directory, int segmentBytes, Clock clock) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.clock = clock;
+        Files.createDirectories(directory);
+
+        List<Path> paths;
+        try (Stream<Path> listing = Files.list(directory)) {
+            paths = listing.filter(MessageHistory::isSegment).sorted().toList();
+        }
+        List<Segment> opened = new ArrayList<>(paths.size() + 1);
+        for (Path path : paths) {
+            opened.add(Segment.open(path, segmentNumber(path), segmentBytes));
+        }
+        if (opened.isEmpty()) {
+            opened.add(Segment.open(segmentPath(0), 0, segmentBytes));
+        }
+        Segment active = opened.get(opened.size() - 1);
+        scan(active, false);
+        this.segments = List.copyOf(opened);
+
+        List<Segment> sealed = List.copyOf(opened.subList(0, opened.size() - 1));
+        var indexer = new Thread(() -> indexInBackground(sealed, active), "MessageHistory-Index");
+        indexer.setDaemon(true);
+        indexer.start();
+        this.flusher = new Thread(this::flushLoop, "MessageHistory-Flush");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Opens the history in a directory, creating it if needed.
+     *
+     * @param directory The directory holding the segment files
+     * @return The history
+     * @throws IOException if the directory or a segment cannot be opened
+     */
+    public static MessageHistory open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_BYTES, new RealClock());
+    }
+
+    /**
+     * Opens the history in a directory with a given segment size and clock.
+     *
+     * @param directory    The directory holding the segment files
+     * @param segmentBytes The size of each new segment file
+     * @param clock        The clock used to stamp appended records
+     * @return The history
+     * @throws IOException if the directory or a segment cannot be opened
+     */
+    public static MessageHistory open(Path directory, int segmentBytes, Clock clock) throws IOException {
+        return new MessageHistory(directory, segmentBytes, clock);
+    }
+
+    /**
+     * Appends a message unless one with the same ID is already stored.
+     * Waits for older segments to be indexed if they have not been yet.
+     *
+     * @param message The message
+     * @return The record's position, or -1 if the message was already stored
+     * @throws IOException if a new segment cannot be created
+     * @throws IllegalArgumentException if the message is too large for a segment
+     */
+    public long append(Message message) throws IOException {
+        awaitIndexed();
+        return appendIndexed(message);
+    }
+
+    /**
+     * Appends a message once every segment has been indexed.
+     *
+     * @param message The message
+     * @return The record's position, or -1 if the message was already stored
+     * @throws IOException if a new segment cannot be created
+     */
+    private synchronized long appendIndexed(Message message) throws IOException {
+        if (closed) {
+            throw new IOException("History is closed");
+        }
+        long msb = message.messageId().getMostSignificantBits();
+        long lsb = message.messageId().getLeastSignificantBits();
+        boolean indexable = msb != 0 || lsb != 0;
+        if (indexable && positions.timestamp(msb, lsb) != UuidTable.ABSENT) {
+            return -1;
+        }
+
+        int bound = STRINGS + 2 * Integer.BYTES
+                + MAX_UTF8_BYTES_PER_CHAR * (message.senderId().length() + message.body().length());
+        if (bound > segmentBytes) {
+            throw new IllegalArgumentException("Message too large for a history segment: " + bound + " bytes");
+        }
+        Segment segment = segments.get(segments.size() - 1);
+        if (segment.end + bound > segment.capacity()) {
+            segment = roll(segment);
+        }
+
+        int offset = segment.end;
+        long appendedAt = clock.millis();
+        int length = encode(segment.map, offset, message, appendedAt);
+        ByteBuffer view = segment.crcView;
+        view.limit(offset + length).position(offset + APPENDED_AT);
+        appendCrc.reset();
+        appendCrc.update(view);
+        segment.map.putInt(offset + CRC, (int) appendCrc.getValue());
+        segment.map.putInt(offset + LENGTH, length);
+
+        long position = position(segment.number, offset);
+        segment.add(offset, appendedAt);
+        segment.end = offset + length;
+        if (indexable) {
+            positions.put(msb, lsb, position);
+        }
+        if (!dirty) {
+            dirty = true;
+            notifyAll();
+        }
+        return position;
+    }
+
+    /**
+     * Checks whether a message is stored.
+     *
+     * @param messageId The message ID
+     * @return true if a message with the ID is stored
+     */
+    public boolean contains(UUID messageId) {
+        awaitIndexed();
+        return positions.timestamp(messageId.getMostSignificantBits(), messageId.getLeastSignificantBits())
+                != UuidTable.ABSENT;
+    }
+
+    /**
+     * Looks up a stored message by ID.
+     *
+     * @param messageId The message ID
+     * @return The entry, or empty if no message with the ID is stored
+     */
+    public Optional<Entry> find(UUID messageId) {
+        awaitIndexed();
+        long position = positions.timestamp(messageId.getMostSignificantBits(), messageId.getLeastSignificantBits());
+        return position == UuidTable.ABSENT ? Optional.empty() : Optional.of(read(position));
+    }
+
+    /**
+     * Reads the record at a position.
+     *
+     * @param position A position returned by {@link #append} or found in an {@link Entry}
+     * @return The entry
+     */
+    public Entry read(long position) {
+        int number = (int) (position >>> OFFSET_BITS);
+        for (Segment segment : segments) {
+            if (segment.number == number) {
+                return decode(segment, (int) (position & OFFSET_MASK));
+            }
+        }
+        throw new IllegalArgumentException("No history segment " + number);
+    }
+
+    /**
+     * Reads the most recent entries.
+     *
+     * @param count The number of entries wanted
+     * @return Up to that many of the newest entries, oldest first
+     */
+    public List<Entry> tail(int count) {
+        List<Segment> snapshot = segments;
+        List<Entry> newestFirst = new ArrayList<>(Math.min(count, SPARSE_INTERVAL * SPARSE_INTERVAL));
+        for (int i = snapshot.size() - 1; i >= 0 && newestFirst.size() < count; i--) {
+            if (i < snapshot.size() - 1) {
+                awaitIndexed();
+            }
+            Segment segment = snapshot.get(i);
+            int records;
+            int end;
+            int[] sparseOffsets;
+            synchronized (this) {
+                records = segment.records;
+                end = segment.end;
+                sparseOffsets = segment.sparseOffsets;
+            }
+            int wanted = Math.min(count - newestFirst.size(), records);
+            List<Entry> entries = new ArrayList<>(wanted);
+            int first = records - wanted;
+            int offset = sparseOffsets[first / SPARSE_INTERVAL];
+            for (int skip = first % SPARSE_INTERVAL; skip > 0; skip--) {
+                offset += segment.map.getInt(offset + LENGTH);
+            }
+            while (offset < end) {
+                Entry entry = decode(segment, offset);
+                entries.add(entry);
+                offset += segment.map.getInt(offset + LENGTH);
+            }
+            for (int j = entries.size() - 1; j >= 0; j--) {
+                newestFirst.add(entries.get(j));
+            }
+        }
+        List<Entry> oldestFirst = new ArrayList<>(newestFirst.size());
+        for (int j = newestFirst.size() - 1; j >= 0; j--) {
+            oldestFirst.add(newestFirst.get(j));
+        }
+        return oldestFirst;
+    }
+
+    /**
+     * Visits every entry appended at or after a time, oldest first, using the sparse index to
+     * skip older records. Entries appended while visiting may or may not be visited.
+     *
+     * @param epochMillis The earliest append time to visit, in clock milliseconds
+     * @param visitor     Receives each entry
+     */
+    public void forEachSince(long epochMillis, Consumer<Entry> visitor) {
+        awaitIndexed();
+        for (Segment segment : segments) {
+            int end;
+            int sparseCount;
+            long[] sparseTimes;
+            int[] sparseOffsets;
+            synchronized (this) {
+                end = segment.end;
+                sparseCount = segment.sparseCount;
+                sparseTimes = segment.sparseTimes;
+                sparseOffsets = segment.sparseOffsets;
+            }
+            if (sparseCount == 0) {
+                continue;
+            }
+            int low = 0;
+            int high = sparseCount - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (sparseTimes[mid] < epochMillis) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            int offset = sparseOffsets[low];
+            while (offset < end) {
+                if (segment.map.getLong(offset + APPENDED_AT) >= epochMillis) {
+                    visitor.accept(decode(segment, offset));
+                }
+                offset += segment.map.getInt(offset + LENGTH);
+            }
+        }
+    }
+
+    /**
+     * Visits every entry appended after the record at a position, oldest first, for catching up
+     * with records stored since a known point. Entries appended while visiting may or may not be
+     * visited.
+     *
+     * @param position The position of the last record already seen, or -1 to visit every entry
+     * @param visitor  Receives each entry
+     */
+    public void forEachAfter(long position, Consumer<Entry> visitor) {
+        awaitIndexed();
+        int number = position < 0 ? Integer.MIN_VALUE : (int) (position >>> OFFSET_BITS);
+        for (Segment segment : segments) {
+            if (segment.number < number) {
+                continue;
+            }
+            int end;
+            synchronized (this) {
+                end = segment.end;
+            }
+            int offset = 0;
+            if (segment.number == number) {
+                offset = (int) (position & OFFSET_MASK);
+                offset += offset < end ? segment.map.getInt(offset + LENGTH) : 0;
+            }
+            while (offset < end) {
+                visitor.accept(decode(segment, offset));
+                offset += segment.map.getInt(offset + LENGTH);
+            }
+        }
+    }
+
+    /**
+     * Visits every entry, oldest first.
+     *
+     * @param visitor Receives each entry
+     */
+    public void forEach(Consumer<Entry> visitor) {
+        forEachSince(Long.MIN_VALUE, visitor);
+    }
+
+    /**
+     * Gets the directory holding the segment files.
+     *
+     * @return The directory
+     */
+    public Path directory() {
+        return directory;
+    }
+
+    /**
+     * Gets the number of stored messages. Waits for older segments to be indexed.
+     *
+     * @return The number of records
+     */
+    public long size() {
+        awaitIndexed();
+        long total = 0;
+        synchronized (this) {
+            for (Segment segment : segments) {
+                total += segment.records;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Forces every appended record to disk now.
+     *
+     * @throws IOException if the data cannot be forced
+     */
+    public void flush() throws IOException {
+        Segment segment;
+        synchronized (this) {
+            segment = segments.get(segments.size() - 1);
+            dirty = false;
+        }
+        segment.map.force();
+    }
+
+    /**
+     * Forces appended records to disk and closes the segment files.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOG.warn("Failed to force message history to disk", e);
+        }
+        for (Segment segment : segments) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close history segment {}", segment.number, e);
+            }
+        }
+    }
+
+    /**
+     * Forces appended data to disk once per group commit interval while there is any.
+     */
+    private void flushLoop() {
+        while (true) {
+            synchronized (this) {
+                while (!dirty && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(GROUP_COMMIT_MILLIS);
+                flush();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                LOG.warn("Failed to force message history to disk", e);
+            }
+        }
+    }
+
+    /**
+     * Seals the active segment and starts a new one.
+     *
+     * @param active The active segment
+     * @return The new segment
+     * @throws IOException if the new segment cannot be created
+     */
+    private Segment roll(Segment active) throws IOException {
+        active.map.force();
+        int number = active.number + 1;
+        Segment next = Segment.open(segmentPath(number), number, segmentBytes);
+        List<Segment> rolled = new ArrayList<>(segments);
+        rolled.add(next);
+        segments = List.copyOf(rolled);
+        LOG.debug("Started history segment {}", number);
+        return next;
+    }
+
+    /**
+     * Scans the sealed segments and adds the active segment's records to the ID index, then
+     * releases waiting lookups. Runs on the indexing thread; the latch publishes what it wrote.
+     *
+     * @param sealed The sealed segments
+     * @param active The active segment, already scanned
+     */
+    private void indexInBackground(List<Segment> sealed, Segment active) {
+        try {
+            for (Segment segment : sealed) {
+                scan(segment, true);
+            }
+            for (int offset = 0; offset < active.end; offset += active.map.getInt(offset + LENGTH)) {
+                indexId(active, offset);
+            }
+        } finally {
+            indexed.countDown();
+        }
+    }
+
+    /**
+     * Scans a segment, verifying each record and adding it to the sparse index.
+     * The segment ends at the first empty or damaged record.
+     *
+     * @param segment The segment
+     * @param withIds Whether to add the records to the ID index as well
+     */
+    private void scan(Segment segment, boolean withIds) {
+        var crc = new CRC32C();
+        ByteBuffer view = segment.map.duplicate();
+        int offset = 0;
+        int capacity = segment.capacity();
+        while (offset + STRINGS <= capacity) {
+            int length = segment.map.getInt(offset + LENGTH);
+            if (length == 0) {
+                break;
+            }
+            if (length < STRINGS || offset + length > capacity) {
+                LOG.warn("Truncating history segment {} at damaged record {}", segment.number, offset);
+                break;
+            }
+            view.limit(offset + length).position(offset + APPENDED_AT);
+            crc.reset();
+            crc.update(view);
+            if ((int) crc.getValue() != segment.map.getInt(offset + CRC)) {
+                LOG.warn("Truncating history segment {} at torn record {}", segment.number, offset);
+                break;
+            }
+            if (withIds) {
+                indexId(segment, offset);
+            }
+            segment.add(offset, segment.map.getLong(offset + APPENDED_AT));
+            offset += length;
+        }
+        segment.end = offset;
+    }
+
+    /**
+     * Adds a record to the ID index.
+     *
+     * @param segment The segment holding the record
+     * @param offset  The record's offset
+     */
+    private void indexId(Segment segment, int offset) {
+        long msb = segment.map.getLong(offset + ID_MSB);
+        long lsb = segment.map.getLong(offset + ID_LSB);
+        if (msb != 0 || lsb != 0) {
+            positions.put(msb, lsb, position(segment.number, offset));
+        }
+    }
+
+    /**
+     * Waits until every segment has been indexed.
+     */
+    private void awaitIndexed() {
+        try {
+            indexed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the path of a segment file.
+     *
+     * @param number The segment number
+     * @return The path
+     */
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Checks whether a path names a segment file.
+     *
+     * @param path The path
+     * @return true if it is a segment file
+     */
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Gets the number of a segment file.
+     *
+     * @param path The path of the segment file
+     * @return The segment number
+     */
+    private static int segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Combines a segment number and offset into a record position.
+     *
+     * @param number The segment number
+     * @param offset The offset within the segment
+     * @return The position
+     */
+    private static long position(int number, int offset) {
+        return ((long) number << OFFSET_BITS) | offset;
+    }
+
+    /**
+     * Encodes a message as a record, except for its length and checksum.
+     *
+     * @param map        The mapping to write to
+     * @param offset     The record's offset
+     * @param message    The message
+     * @param appendedAt The append time in clock milliseconds
+     * @return The record's length
+     */
+    private static int encode(ByteBuffer map, int offset, Message message, long appendedAt) {
+        map.putLong(offset + APPENDED_AT, appendedAt);
+        map.putLong(offset + ID_MSB, message.messageId().getMostSignificantBits());
+        map.putLong(offset + ID_LSB, message.messageId().getLeastSignificantBits());
+        map.putLong(offset + HLC, message.hlc());
+        map.putLong(offset + SENT_AT, message.sentAt());
+        map.putLong(offset + RECEIVED_AT, message.receivedAt());
+        map.putLong(offset + CHECKSUM, message.checksum());
+        UUID original = message.originalMessageId();
+        map.putLong(offset + ORIGINAL_MSB, original != null ? original.getMostSignificantBits() : 0L);
+        map.putLong(offset + ORIGINAL_LSB, original != null ? original.getLeastSignificantBits() : 0L);
+        map.put(offset + TYPE, (byte) (message.type() != null ? message.type().ordinal() : -1));
+        map.put(offset + HAS_ORIGINAL, (byte) (original != null ? 1 : 0));
+        int end = putString(map, offset + STRINGS, message.senderId());
+        return putString(map, end, message.body()) - offset;
+    }
+
+    /**
+     * Decodes the record at an offset.
+     *
+     * @param segment The segment holding the record
+     * @param offset  The record's offset
+     * @return The entry
+     */
+    private static Entry decode(Segment segment, int offset) {
+        ByteBuffer map = segment.map;
+        int type = map.get(offset + TYPE);
+        UUID original = map.get(offset + HAS_ORIGINAL) != 0
+                ? new UUID(map.getLong(offset + ORIGINAL_MSB), map.getLong(offset + ORIGINAL_LSB))
+                : null;
+        int senderLength = map.getInt(offset + STRINGS);
+        String senderId = getString(map, offset + STRINGS + Integer.BYTES, senderLength);
+        int bodyStart = offset + STRINGS + Integer.BYTES + senderLength;
+        String body = getString(map, bodyStart + Integer.BYTES, map.getInt(bodyStart));
+        var message = new Message(
+                senderId,
+                body,
+                new UUID(map.getLong(offset + ID_MSB), map.getLong(offset + ID_LSB)),
+                type >= 0 && type < Message.MessageType.values().length ? Message.MessageType.values()[type] : null,
+                map.getLong(offset + CHECKSUM),
+                original,
+                map.getLong(offset + HLC),
+                map.getLong(offset + SENT_AT),
+                map.getLong(offset + RECEIVED_AT));
+        return new Entry(position(segment.number, offset), map.getLong(offset + APPENDED_AT), message);
+    }
+
+    /**
+     * Writes a string as its UTF-8 length and bytes, encoding character by character so that
+     * nothing is allocated.
+     *
+     * @param map    The mapping to write to
+     * @param offset Where to write the length
+     * @param value  The string
+     * @return The offset just past the string
+     */
+    private static int putString(ByteBuffer map, int offset, String value) {
+        int index = offset + Integer.BYTES;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < UTF8_CONTINUATION) {
+                map.put(index++, (byte) c);
+                continue;
+            }
+            int codePoint = c;
+            int continuations;
+            int lead;
+            if (c < UTF8_TWO_BYTE_LIMIT) {
+                continuations = 1;
+                lead = UTF8_TWO_BYTE_LEAD;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, value.charAt(++i));
+                continuations = 3;
+                lead = UTF8_FOUR_BYTE_LEAD;
+            } else if (Character.isSurrogate(c)) {
+                map.put(index++, (byte) '?');
+                continue;
+            } else {
+                continuations = 2;
+                lead = UTF8_THREE_BYTE_LEAD;
+            }
+            map.put(index++, (byte) (lead | (codePoint >> (UTF8_CONTINUATION_BITS * continuations))));
+            for (int shift = UTF8_CONTINUATION_BITS * (continuations - 1); shift >= 0;
+                    shift -= UTF8_CONTINUATION_BITS) {
+                map.put(index++, (byte) (UTF8_CONTINUATION | ((codePoint >> shift) & UTF8_CONTINUATION_MASK)));
+            }
+        }
+        map.putInt(offset, index - offset - Integer.BYTES);
+        return index;
+    }
+
+    /**
+     * Reads a UTF-8 string.
+     *
+     * @param map    The mapping to read from
+     * @param offset Where the bytes start
+     * @param length The number of bytes
+     * @return The string
+     */
+    private static String getString(ByteBuffer map, int offset, int length) {
+        byte[] bytes = new byte[length];
+        map.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A stored message.
+     *
+     * @param position  The record's position, for reading it again with {@link #read}
+     * @param timestamp When the message was appended, in clock milliseconds
+     * @param message   The message
+     */
+    public record Entry(long position, long timestamp, Message message) {}
+
+    /**
+     * One segment file and its part of the sparse time index.
+     * Mutable fields are guarded by the history's lock, except while a sealed segment is being
+     * scanned by the indexing thread, which nothing reads until indexing has finished.
+     */
+    private static final class Segment {
+        /**
+         * The segment number, which orders segments.
+         */
+        private final int number;
+
+        /**
+         * The segment file.
+         */
+        private final FileChannel channel;
+
+        /**
+         * Mapping of the whole file.
+         */
+        private final MappedByteBuffer map;
+
+        /**
+         * View of the mapping whose position and limit bound checksummed regions during appends.
+         */
+        private final ByteBuffer crcView;
+
+        /**
+         * Offset just past the last record.
+         */
+        private int end;
+
+        /**
+         * Number of records.
+         */
+        private int records;
+
+        /**
+         * Append times of every {@link #SPARSE_INTERVAL}th record.
+         */
+        private long[] sparseTimes = new long[SPARSE_INTERVAL];
+
+        /**
+         * Offsets of every {@link #SPARSE_INTERVAL}th record.
+         */
+        private int[] sparseOffsets = new int[SPARSE_INTERVAL];
+
+        /**
+         * Number of sparse index entries.
+         */
+        private int sparseCount;
+
+        private Segment(int number, FileChannel channel, MappedByteBuffer map) {
+            this.number = number;
+            this.channel = channel;
+            this.map = map;
+            this.crcView = map.duplicate();
+        }
+
+        /**
+         * Opens or creates a segment file and maps it.
+         *
+         * @param path         The file
+         * @param number       The segment number
+         * @param segmentBytes The size of a new segment
+         * @return The segment
+         * @throws IOException if the file cannot be opened or mapped
+         */
+        private static Segment open(Path path, int number, int segmentBytes) throws IOException {
+            var channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long size = Math.max(channel.size(), segmentBytes);
+            return new Segment(number, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+
+        /**
+         * Gets the size of the mapping.
+         *
+         * @return The capacity in bytes
+         */
+        private int capacity() {
+            return map.capacity();
+        }
+
+        /**
+         * Counts a record, adding it to the sparse index if it falls on the interval.
+         *
+         * @param offset    The record's offset
+         * @param timestamp The record's append time
+         */
+        private void add(int offset, long timestamp) {
+            if (records % SPARSE_INTERVAL == 0) {
+                if (sparseCount == sparseTimes.length) {
+                    sparseTimes = Arrays.copyOf(sparseTimes, sparseCount * 2);
+                    sparseOffsets = Arrays.copyOf(sparseOffsets, sparseCount * 2);
+                }
+                sparseTimes[sparseCount] = timestamp;
+                sparseOffsets[sparseCount] = offset;
+                sparseCount++;
+            }
+            records++;
+        }
+    }
+}
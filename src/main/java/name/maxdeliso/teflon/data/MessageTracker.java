@@ -3,18 +3,24 @@ package name.maxdeliso.teflon.data;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Tracks message delivery status and acknowledgments.
  * Handles message timeouts and maintains delivery statistics.
+ * Messages are held in a {@link UuidTable} keyed by the two halves of the message ID, so
+ * tracking a message allocates no per-message records. Every message has the same timeout, so
+ * deadlines are queued in tracking order in a primitive ring buffer and a single timer on a
+ * {@link TimingWheel} is kept armed for the earliest one; timeouts fire on time without scanning.
+ * Acknowledgments are recorded as ACK and NACK bitsets over a {@link PeerIndex}. The first 64
+ * peers' bits live in the table's state words; larger rooms spill the rest into an attachment.
+ * The indexes of peers that have left are reclaimed once every message tracked before they left
+ * has timed out, so the bitsets stay as wide as the room rather than its history.
  */
 public class MessageTracker {
     /**
@@ -28,14 +34,105 @@ public class MessageTracker {
     private static final int MESSAGE_TIMEOUT_SECONDS = 5;
 
     /**
-     * Map of message IDs to their tracking information.
+     * Message timeout in milliseconds.
      */
-    private final Map<UUID, MessageInfo> messageMap = new ConcurrentHashMap<>();
+    private static final long MESSAGE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(MESSAGE_TIMEOUT_SECONDS);
 
     /**
-     * Executor for cleanup tasks.
+     * State word holding a message's flags.
      */
-    private final ScheduledExecutorService cleanupExecutor;
+    private static final int FLAGS_WORD = 0;
+
+    /**
+     * State word holding the ACK bits of the first 64 peer indexes.
+     */
+    private static final int ACK_WORD = 1;
+
+    /**
+     * State word holding the NACK bits of the first 64 peer indexes.
+     */
+    private static final int NACK_WORD = 2;
+
+    /**
+     * Number of state words per tracked message.
+     */
+    private static final int STATE_WORDS = 3;
+
+    /**
+     * Flag marking a message sent by this instance.
+     */
+    private static final long OWN_MESSAGE = 1L;
+
+    /**
+     * Bitset with no bits set.
+     */
+    private static final long[] NO_BITS = new long[0];
+
+    /**
+     * Initial capacity of the deadline queue; a power of two.
+     */
+    private static final int INITIAL_EXPIRY_CAPACITY = 64;
+
+    /**
+     * Tracked messages keyed by ID, timestamped with when tracking began. The attachment is an
+     * {@link AckOverflow}, allocated only when a peer with an index of 64 or more responds.
+     */
+    private final UuidTable messages = new UuidTable(STATE_WORDS);
+
+    /**
+     * Indexes of acknowledging peers.
+     */
+    private final PeerIndex peerIndex = new PeerIndex();
+
+    /**
+     * Timing wheel on which message deadlines are scheduled.
+     */
+    private final TimingWheel timingWheel;
+
+    /**
+     * Timer armed for the earliest queued deadline.
+     */
+    private final TimingWheel.Timeout expiryTimer;
+
+    /**
+     * Guards the deadline queue.
+     */
+    private final Object expiryLock = new Object();
+
+    /**
+     * Most significant message ID bits of queued deadlines.
+     */
+    private long[] expiryMsbs = new long[INITIAL_EXPIRY_CAPACITY];
+
+    /**
+     * Least significant message ID bits of queued deadlines.
+     */
+    private long[] expiryLsbs = new long[INITIAL_EXPIRY_CAPACITY];
+
+    /**
+     * Queued deadlines in clock milliseconds, in tracking order.
+     */
+    private long[] expiryDeadlines = new long[INITIAL_EXPIRY_CAPACITY];
+
+    /**
+     * Peer index generations the queued messages were tracked in.
+     */
+    private long[] expiryGenerations = new long[INITIAL_EXPIRY_CAPACITY];
+
+    /**
+     * Index of the earliest queued deadline.
+     */
+    private int expiryHead;
+
+    /**
+     * Number of queued deadlines.
+     */
+    private int expiryCount;
+
+    /**
+     * Whether this tracker created the timing wheel and must shut it down.
+     */
+    private final boolean ownsTimingWheel;
 
     /**
      * The ID of this instance.
@@ -50,22 +147,22 @@ public class MessageTracker {
     /**
      * Total messages sent.
      */
-    private long totalMessagesSent = 0;
+    private final MetricsRegistry.Counter totalMessagesSent;
 
     /**
      * Total acknowledgments received.
      */
-    private long totalAcksReceived = 0;
+    private final MetricsRegistry.Counter totalAcksReceived;
 
     /**
      * Total negative acknowledgments received.
      */
-    private long totalNacksReceived = 0;
+    private final MetricsRegistry.Counter totalNacksReceived;
 
     /**
      * Total messages timed out.
      */
-    private long totalMessagesTimedOut = 0;
+    private final MetricsRegistry.Counter totalMessagesTimedOut;
 
     /**
      * Creates a new message tracker.
@@ -85,26 +182,54 @@ public class MessageTracker {
 
     /**
      * Creates a new message tracker with a specific instance ID and clock.
+     * The tracker starts its own timing wheel.
      *
      * @param instanceId The ID to use for this instance
      * @param clock      The clock to use for timing
      */
     public MessageTracker(String instanceId, Clock clock) {
+        this(instanceId, clock, new TimingWheel(clock).start("MessageTracker-Timer"), true, new MetricsRegistry());
+    }
+
+    /**
+     * Creates a new message tracker that schedules timeouts on a shared timing wheel.
+     *
+     * @param instanceId  The ID to use for this instance
+     * @param clock       The clock to use for timing
+     * @param timingWheel The shared timing wheel, driven by the same clock
+     */
+    public MessageTracker(String instanceId, Clock clock, TimingWheel timingWheel) {
+        this(instanceId, clock, timingWheel, false, new MetricsRegistry());
+    }
+
+    /**
+     * Creates a new message tracker that schedules timeouts on a shared timing wheel and
+     * registers its delivery counters with a shared metrics registry.
+     *
+     * @param instanceId  The ID to use for this instance
+     * @param clock       The clock to use for timing
+     * @param timingWheel The shared timing wheel, driven by the same clock
+     * @param metrics     The registry to register delivery metrics with
+     */
+    public MessageTracker(String instanceId, Clock clock, TimingWheel timingWheel, MetricsRegistry metrics) {
+        this(instanceId, clock, timingWheel, false, metrics);
+    }
+
+    private MessageTracker(String instanceId,
+                           Clock clock,
+                           TimingWheel timingWheel,
+                           boolean ownsTimingWheel,
+                           MetricsRegistry metrics) {
         this.instanceId = instanceId;
         this.clock = clock;
-        this.cleanupExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "MessageTracker-Cleanup");
-            t.setDaemon(true);
-            return t;
-        });
-
-        // Schedule periodic cleanup of timed-out messages, starting immediately
-        cleanupExecutor.scheduleAtFixedRate(
-                this::cleanupTimedOutMessages,
-                0, // Start immediately
-                MESSAGE_TIMEOUT_SECONDS,
-                TimeUnit.SECONDS
-        );
+        this.timingWheel = timingWheel;
+        this.ownsTimingWheel = ownsTimingWheel;
+        this.expiryTimer = timingWheel.timeout(this::expireDue);
+        this.totalMessagesSent = metrics.counter("messages.sent");
+        this.totalAcksReceived = metrics.counter("messages.acksReceived");
+        this.totalNacksReceived = metrics.counter("messages.nacksReceived");
+        this.totalMessagesTimedOut = metrics.counter("messages.timedOut");
+        metrics.gauge("messages.pending", messages::size);
     }
 
     /**
@@ -117,12 +242,15 @@ public class MessageTracker {
             return; // Only track chat messages
         }
 
-        messageMap.put(message.messageId(), new MessageInfo(
-                message,
-                clock.now(),
-                new ConcurrentHashMap<>()
-        ));
-        totalMessagesSent++;
+        long msb = message.messageId().getMostSignificantBits();
+        long lsb = message.messageId().getLeastSignificantBits();
+        long now = clock.millis();
+        messages.put(msb, lsb, now);
+        if (message.senderId().equals(instanceId)) {
+            messages.setStateBits(msb, lsb, FLAGS_WORD, OWN_MESSAGE);
+        }
+        enqueueDeadline(msb, lsb, now + MESSAGE_TIMEOUT_MILLIS);
+        totalMessagesSent.increment();
         LOG.debug("Tracking new message: {}", message.messageId());
     }
 
@@ -136,24 +264,32 @@ public class MessageTracker {
             return;
         }
 
-        MessageInfo info = messageMap.get(ack.originalMessageId());
-        if (info == null) {
+        long msb = ack.originalMessageId().getMostSignificantBits();
+        long lsb = ack.originalMessageId().getLeastSignificantBits();
+        if (messages.timestamp(msb, lsb) == UuidTable.ABSENT) {
             LOG.debug("Ignoring acknowledgment for unknown or timed out message: {}", ack.originalMessageId());
             return; // Message not found or already timed out
         }
 
-        // Don't process acknowledgments for messages we sent ourselves
-        if (info.message.senderId().equals(instanceId)) {
+        // Ignore our own acknowledgments of messages we sent, looped back by multicast
+        if ((messages.state(msb, lsb, FLAGS_WORD) & OWN_MESSAGE) != 0 && ack.senderId().equals(instanceId)) {
             return;
         }
 
-        info.acknowledgments.put(ack.senderId(), ack);
-        if (ack.type() == Message.MessageType.ACK) {
-            totalAcksReceived++;
+        boolean negative = ack.type() != Message.MessageType.ACK;
+        int index = peerIndex.indexOf(ack.senderId());
+        if (index < Long.SIZE) {
+            messages.setStateBits(msb, lsb, negative ? NACK_WORD : ACK_WORD, 1L << index);
+        } else {
+            messages.updateAttachment(msb, lsb,
+                    (AckOverflow overflow) -> AckOverflow.withBit(overflow, index - Long.SIZE, negative));
+        }
+        if (!negative) {
+            totalAcksReceived.increment();
             LOG.debug("Received ACK for message: {} from: {}",
                     ack.originalMessageId(), ack.senderId());
         } else {
-            totalNacksReceived++;
+            totalNacksReceived.increment();
             LOG.debug("Received NACK for message: {} from: {}",
                     ack.originalMessageId(), ack.senderId());
         }
@@ -163,11 +299,76 @@ public class MessageTracker {
      * Gets the acknowledgment status for a message.
      *
      * @param messageId The ID of the message to check
-     * @return The set of sender IDs that have acknowledged the message
+     * @return The set of sender IDs that have acknowledged the message, positively or negatively
      */
     public Set<String> getAcknowledgingParties(UUID messageId) {
-        MessageInfo info = messageMap.get(messageId);
-        return info != null ? info.acknowledgments.keySet() : Set.of();
+        long msb = messageId.getMostSignificantBits();
+        long lsb = messageId.getLeastSignificantBits();
+        return peerIndex.idsOf(or(bits(msb, lsb, false), bits(msb, lsb, true)));
+    }
+
+    /**
+     * Gets the parties that negatively acknowledged a message.
+     *
+     * @param messageId The ID of the message to check
+     * @return The set of sender IDs that sent a NACK for the message
+     */
+    public Set<String> getNegativelyAcknowledgingParties(UUID messageId) {
+        return peerIndex.idsOf(bits(messageId.getMostSignificantBits(), messageId.getLeastSignificantBits(), true));
+    }
+
+    /**
+     * Gets the expected parties that have not yet responded to a message.
+     *
+     * @param messageId The ID of the message to check
+     * @param expected  The sender IDs expected to respond
+     * @return The expected sender IDs with neither an ACK nor a NACK recorded, or an empty set
+     *         if the message is not tracked
+     */
+    public Set<String> getUnacknowledgedParties(UUID messageId, Collection<String> expected) {
+        long msb = messageId.getMostSignificantBits();
+        long lsb = messageId.getLeastSignificantBits();
+        if (messages.timestamp(msb, lsb) == UuidTable.ABSENT) {
+            return Set.of();
+        }
+        long[] pending = peerIndex.bitsOf(expected);
+        long[] responded = or(bits(msb, lsb, false), bits(msb, lsb, true));
+        for (int word = 0; word < Math.min(pending.length, responded.length); word++) {
+            pending[word] &= ~responded[word];
+        }
+        return peerIndex.idsOf(pending);
+    }
+
+    /**
+     * Reads one of a message's acknowledgment bitsets.
+     *
+     * @param msb      The most significant bits of the message ID
+     * @param lsb      The least significant bits of the message ID
+     * @param negative Whether to read the NACK bits rather than the ACK bits
+     * @return The bitset, empty if the message is not tracked
+     */
+    private long[] bits(long msb, long lsb, boolean negative) {
+        AckOverflow overflow = messages.attachment(msb, lsb);
+        long[] spilled = overflow == null ? NO_BITS : negative ? overflow.nacks() : overflow.acks();
+        long[] bits = new long[1 + spilled.length];
+        bits[0] = messages.state(msb, lsb, negative ? NACK_WORD : ACK_WORD);
+        System.arraycopy(spilled, 0, bits, 1, spilled.length);
+        return bits;
+    }
+
+    /**
+     * Combines two bitsets.
+     *
+     * @param a A bitset
+     * @param b Another bitset
+     * @return A new bitset with the bits set in either
+     */
+    private static long[] or(long[] a, long[] b) {
+        long[] result = Arrays.copyOf(a, Math.max(a.length, b.length));
+        for (int word = 0; word < b.length; word++) {
+            result[word] |= b[word];
+        }
+        return result;
     }
 
     /**
@@ -177,52 +378,189 @@ public class MessageTracker {
      */
     public Map<String, Long> getDeliveryStats() {
         return Map.of(
-                "messagesSent", totalMessagesSent,
-                "acksReceived", totalAcksReceived,
-                "nacksReceived", totalNacksReceived,
-                "messagesTimedOut", totalMessagesTimedOut,
-                "pendingMessages", (long) messageMap.size()
+                "messagesSent", totalMessagesSent.sum(),
+                "acksReceived", totalAcksReceived.sum(),
+                "nacksReceived", totalNacksReceived.sum(),
+                "messagesTimedOut", totalMessagesTimedOut.sum(),
+                "pendingMessages", (long) messages.size()
         );
     }
 
+    /**
+     * Adds delivery statistics saved by an earlier session to the running totals, so that they
+     * cover every session. Pending messages are not carried over.
+     *
+     * @param stats Statistics keyed by the names used by {@link #getDeliveryStats()}
+     */
+    public void restoreDeliveryStats(Map<String, Long> stats) {
+        totalMessagesSent.add(stats.getOrDefault("messagesSent", 0L));
+        totalAcksReceived.add(stats.getOrDefault("acksReceived", 0L));
+        totalNacksReceived.add(stats.getOrDefault("nacksReceived", 0L));
+        totalMessagesTimedOut.add(stats.getOrDefault("messagesTimedOut", 0L));
+    }
+
+    /**
+     * Releases the index of a peer that has left, to be reused once no tracked message can hold
+     * its bits. Its acknowledgments of messages still tracked are still reported.
+     *
+     * @param peerId The peer's ID
+     */
+    public void forgetPeer(String peerId) {
+        if (peerIndex.release(peerId)) {
+            synchronized (expiryLock) {
+                reclaimIndexes();
+            }
+        }
+    }
+
+    /**
+     * Gets the width of the acknowledgment bitsets.
+     *
+     * @return The number of peer index slots in use, including ones awaiting reuse
+     */
+    public int peerIndexWidth() {
+        return peerIndex.width();
+    }
+
     /**
      * Cleans up messages that have timed out.
+     * Timeouts normally fire on their own; this fires any that are due immediately.
      */
     public void cleanupTimedOutMessages() {
-        Instant cutoff = clock.now().minusSeconds(MESSAGE_TIMEOUT_SECONDS);
+        timingWheel.advance();
+    }
 
-        messageMap.entrySet().removeIf(entry -> {
-            if (entry.getValue().timestamp.isBefore(cutoff)) {
-                totalMessagesTimedOut++;
-                LOG.debug("Message timed out: {}", entry.getKey());
-                return true;
+    /**
+     * Appends a deadline to the queue, arming the timer if the queue was empty.
+     * Deadlines arrive in clock order, so the queue stays sorted.
+     *
+     * @param msb      The most significant bits of the message ID
+     * @param lsb      The least significant bits of the message ID
+     * @param deadline The deadline in clock milliseconds
+     */
+    private void enqueueDeadline(long msb, long lsb, long deadline) {
+        synchronized (expiryLock) {
+            if (expiryCount == expiryDeadlines.length) {
+                growDeadlineQueue();
             }
-            return false;
-        });
+            int tail = (expiryHead + expiryCount) & (expiryDeadlines.length - 1);
+            expiryMsbs[tail] = msb;
+            expiryLsbs[tail] = lsb;
+            expiryDeadlines[tail] = deadline;
+            expiryGenerations[tail] = peerIndex.generation();
+            if (expiryCount++ == 0) {
+                timingWheel.reschedule(expiryTimer, deadline);
+            }
+        }
     }
 
     /**
-     * Shuts down the tracker's cleanup executor.
+     * Doubles the deadline queue's capacity, unwrapping it so the head is at index zero.
      */
-    public void shutdown() {
-        cleanupExecutor.shutdown();
-        try {
-            if (!cleanupExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                cleanupExecutor.shutdownNow();
+    private void growDeadlineQueue() {
+        int capacity = expiryDeadlines.length;
+        long[] msbs = new long[capacity * 2];
+        long[] lsbs = new long[capacity * 2];
+        long[] deadlines = new long[capacity * 2];
+        long[] generations = new long[capacity * 2];
+        for (int i = 0; i < expiryCount; i++) {
+            int from = (expiryHead + i) & (capacity - 1);
+            msbs[i] = expiryMsbs[from];
+            lsbs[i] = expiryLsbs[from];
+            deadlines[i] = expiryDeadlines[from];
+            generations[i] = expiryGenerations[from];
+        }
+        expiryMsbs = msbs;
+        expiryLsbs = lsbs;
+        expiryDeadlines = deadlines;
+        expiryGenerations = generations;
+        expiryHead = 0;
+    }
+
+    /**
+     * Expires every queued message whose deadline has passed, then re-arms the timer for the
+     * next deadline and reclaims the peer indexes no remaining message can refer to.
+     */
+    private void expireDue() {
+        long now = clock.millis();
+        while (true) {
+            long msb;
+            long lsb;
+            synchronized (expiryLock) {
+                if (expiryCount == 0) {
+                    reclaimIndexes();
+                    return;
+                }
+                long deadline = expiryDeadlines[expiryHead];
+                if (deadline > now) {
+                    timingWheel.reschedule(expiryTimer, deadline);
+                    reclaimIndexes();
+                    return;
+                }
+                msb = expiryMsbs[expiryHead];
+                lsb = expiryLsbs[expiryHead];
+                expiryHead = (expiryHead + 1) & (expiryDeadlines.length - 1);
+                expiryCount--;
             }
-        } catch (InterruptedException e) {
-            cleanupExecutor.shutdownNow();
-            Thread.currentThread().interrupt();
+            expire(msb, lsb);
         }
     }
 
     /**
-     * Record class to hold message tracking information.
+     * Reclaims the peer indexes released before the oldest queued message was tracked, or all
+     * of them if none is queued. Called with the deadline queue's lock held.
      */
-    private record MessageInfo(
-            Message message,
-            Instant timestamp,
-            Map<String, Message> acknowledgments
-    ) {
+    private void reclaimIndexes() {
+        peerIndex.reclaim(expiryCount == 0 ? peerIndex.generation() : expiryGenerations[expiryHead]);
+    }
+
+    /**
+     * Removes a message whose deadline has fired, unless it was tracked again since.
+     *
+     * @param msb The most significant bits of the message ID
+     * @param lsb The least significant bits of the message ID
+     */
+    private void expire(long msb, long lsb) {
+        if (messages.removeIfNotAfter(msb, lsb, clock.millis() - MESSAGE_TIMEOUT_MILLIS)) {
+            totalMessagesTimedOut.increment();
+            LOG.debug("Message timed out: {}", new UUID(msb, lsb));
+        }
+    }
+
+    /**
+     * Cancels this tracker's timer and stops the timing wheel if this tracker owns it.
+     */
+    public void shutdown() {
+        expiryTimer.cancel();
+        if (ownsTimingWheel) {
+            timingWheel.shutdown();
+        }
+    }
+
+    /**
+     * ACK and NACK bits of peer indexes beyond the first 64, kept as a table attachment.
+     * Instances are never mutated once attached, so readers need no lock.
+     *
+     * @param acks  The ACK bits, starting at peer index 64
+     * @param nacks The NACK bits, starting at peer index 64
+     */
+    private record AckOverflow(long[] acks, long[] nacks) {
+        /**
+         * Copies an overflow with one more bit set.
+         *
+         * @param overflow The current overflow, or null if there is none
+         * @param bit      The bit to set, relative to peer index 64
+         * @param negative Whether to set the NACK bit rather than the ACK bit
+         * @return The new overflow
+         */
+        static AckOverflow withBit(AckOverflow overflow, int bit, boolean negative) {
+            long[] acks = overflow == null ? NO_BITS : overflow.acks();
+            long[] nacks = overflow == null ? NO_BITS : overflow.nacks();
+            long[] current = negative ? nacks : acks;
+            int word = bit / Long.SIZE;
+            long[] updated = Arrays.copyOf(current, Math.max(current.length, word + 1));
+            updated[word] |= 1L << bit;
+            return negative ? new AckOverflow(acks, updated) : new AckOverflow(updated, nacks);
+        }
     }
 }
@@ -0,0 +1,173 @@
+package name.maxdeliso.teflon.data;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Lightweight registry of named counters, gauges and histograms.
+ * Counters are striped {@link LongAdder}s, so recording is a single uncontended add on the hot
+ * path; registration and lookup happen once, when a component is constructed.
+ * Names are dot-separated, for example {@code messages.sent}. Registering an existing name
+ * returns the existing metric, so components sharing a registry also share their metrics.
+ */
+public final class MetricsRegistry {
+    /**
+     * Number of times a snapshot re-reads the counters looking for two identical passes.
+     */
+    private static final int SNAPSHOT_ATTEMPTS = 4;
+
+    /**
+     * Registered counters, by name.
+     */
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Registered gauges, by name.
+     */
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Registered histograms, by name.
+     */
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Gets or registers a counter.
+     *
+     * @param name The counter name
+     * @return The counter
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge with the same name.
+     * The supplier is only called when a snapshot is taken.
+     *
+     * @param name  The gauge name
+     * @param value Supplies the gauge's current value
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Gets or registers a histogram.
+     *
+     * @param name The histogram name
+     * @return The histogram
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /**
+     * Takes a snapshot of every metric.
+     * Counters only increase, so if two successive passes over them read the same values then
+     * all of those values held at the same instant between the passes; the snapshot retries a
+     * few times to find such a pair. Under constant contention the final pass is used as is.
+     *
+     * @return An immutable snapshot
+     */
+    public Snapshot snapshot() {
+        Map<String, Long> counterValues = readCounters();
+        for (int attempt = 1; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+            Map<String, Long> again = readCounters();
+            if (again.equals(counterValues)) {
+                break;
+            }
+            counterValues = again;
+        }
+
+        Map<String, Long> gaugeValues = new LinkedHashMap<>();
+        gauges.forEach((name, value) -> gaugeValues.put(name, value.getAsLong()));
+        Map<String, LatencyHistogram.Summary> histogramValues = new LinkedHashMap<>();
+        histograms.forEach((name, histogram) -> histogramValues.put(name, histogram.summarize()));
+
+        return new Snapshot(
+                counterValues,
+                Collections.unmodifiableMap(gaugeValues),
+                Collections.unmodifiableMap(histogramValues));
+    }
+
+    /**
+     * Reads every counter once.
+     *
+     * @return Counter values by name
+     */
+    private Map<String, Long> readCounters() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * A monotonically increasing counter.
+     */
+    public static final class Counter {
+        /**
+         * Striped accumulator holding the count.
+         */
+        private final LongAdder adder = new LongAdder();
+
+        private Counter() {
+        }
+
+        /**
+         * Adds one to the counter.
+         */
+        public void increment() {
+            adder.increment();
+        }
+
+        /**
+         * Adds a non-negative amount to the counter.
+         *
+         * @param amount The amount to add
+         */
+        public void add(long amount) {
+            adder.add(amount);
+        }
+
+        /**
+         * Gets the current count.
+         *
+         * @return The count
+         */
+        public long sum() {
+            return adder.sum();
+        }
+    }
+
+    /**
+     * Point-in-time values of every registered metric.
+     *
+     * @param counters   Counter values by name
+     * @param gauges     Gauge values by name
+     * @param histograms Histogram summaries by name
+     */
+    public record Snapshot(
+            Map<String, Long> counters,
+            Map<String, Long> gauges,
+            Map<String, LatencyHistogram.Summary> histograms
+    ) {
+        /**
+         * Gets a counter or gauge value.
+         *
+         * @param name The metric name
+         * @return The value, or zero if no such counter or gauge is registered
+         */
+        public long value(String name) {
+            Long value = counters.get(name);
+            if (value == null) {
+                value = gauges.get(name);
+            }
+            return value != null ? value : 0;
+        }
+    }
+}
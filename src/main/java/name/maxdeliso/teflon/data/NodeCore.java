@@ -0,0 +1,87 @@
+package name.maxdeliso.teflon.data;
+
+import java.net.SocketAddress;
+import java.util.function.Consumer;
+
+/**
+ * What a chat node does with a message between the selector and its user, shared by the window
+ * and headless mode. Incoming messages update the roster, the hybrid logical clock and the
+ * delivery tracker, and chat messages are acknowledged; outgoing chat messages are stamped and
+ * tracked. Peers leaving the roster are forgotten by the delivery tracker. Touches no UI, so it
+ * is safe to call from any thread.
+ */
+public final class NodeCore {
+    private final String instanceId;
+    private final MessageTracker messageTracker;
+    private final PeerTracker peerTracker;
+    private final HybridLogicalClock hybridClock;
+
+    /**
+     * Queues acknowledgments for the group.
+     */
+    private final Consumer<Message> sender;
+
+    /**
+     * Creates the core of a node.
+     *
+     * @param instanceId     The ID of this node
+     * @param clock          The clock the hybrid logical clock reads
+     * @param messageTracker The tracker of sent and received chat messages
+     * @param peerTracker    The roster updated by incoming messages
+     * @param sender         Queues acknowledgments for the group
+     */
+    public NodeCore(String instanceId,
+                    Clock clock,
+                    MessageTracker messageTracker,
+                    PeerTracker peerTracker,
+                    Consumer<Message> sender) {
+        this.instanceId = instanceId;
+        this.messageTracker = messageTracker;
+        this.peerTracker = peerTracker;
+        this.hybridClock = new HybridLogicalClock(clock);
+        this.sender = sender;
+        peerTracker.subscribe(PeerTracker.Listener.departures(messageTracker::forgetPeer));
+    }
+
+    /**
+     * Creates a chat message from this node, stamped to order after everything seen so far, and
+     * tracks its delivery. The caller queues it.
+     *
+     * @param body The message body
+     * @return The message
+     */
+    public Message compose(String body) {
+        Message message = new Message(instanceId, body, hybridClock.tick());
+        messageTracker.trackMessage(message);
+        return message;
+    }
+
+    /**
+     * Records an incoming chat message or acknowledgment: updates the sender in the roster,
+     * advances the clock past the sender's, and tracks and acknowledges a chat message or counts
+     * an acknowledgment. This node's own messages come back through the multicast loopback; they
+     * were tracked when composed, so they are left alone.
+     *
+     * @param message   The message
+     * @param address   The sender's address
+     * @param arrivedAt When the datagram was received, in epoch microseconds, echoed in the acknowledgment
+     * @return false if the message is this node's own
+     */
+    public boolean receive(Message message, SocketAddress address, long arrivedAt) {
+        if (message.senderId().equals(instanceId)) {
+            return false;
+        }
+        peerTracker.updatePeer(message.senderId(), address);
+        if (message.hasTimestamp()) {
+            hybridClock.merge(message.hlc());
+        }
+        if (message.isAcknowledgment()) {
+            messageTracker.processAcknowledgment(message);
+        } else {
+            messageTracker.trackMessage(message);
+            sender.accept(Message.createAcknowledgment(
+                    instanceId, message.messageId(), true, hybridClock.tick(), arrivedAt));
+        }
+        return true;
+    }
+}
@@ -0,0 +1,425 @@
+package name.maxdeliso.teflon.data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable queue of chat messages waiting to be sent, kept in a memory-mapped journal file so that
+ * messages composed while disconnected, or not yet sent when the application exits or crashes,
+ * are sent once a connection is up again.
+ * Messages are appended as length-prefixed, checksummed records carrying consecutive sequence
+ * numbers, in their wire encoding. Removing the oldest message only advances the sequence number
+ * of the head, kept in the file's header; once every message has been removed, appending starts
+ * over at the front of the file. Opening the journal follows the chain of consecutive records from
+ * the front and keeps those at or after the head, so records left over from before starting over,
+ * whose sequence numbers are older, and records torn by a crash both end the chain.
+ * As in {@link MessageHistory}, a background thread forces changes to disk at most once per
+ * {@link #GROUP_COMMIT_MILLIS}, so appending never waits on an fsync. A message removed just
+ * before a crash may therefore be sent again; receivers recognize it by its ID.
+ */
+public final class Outbox implements Closeable {
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = LogManager.getLogger(Outbox.class);
+
+    /**
+     * Name of the journal file within the history directory.
+     */
+    public static final String FILE_NAME = "outbox.journal";
+
+    /**
+     * Default initial size of the journal file, doubled whenever waiting messages outgrow it.
+     */
+    public static final int DEFAULT_CAPACITY = 1024 * 1024;
+
+    /**
+     * Longest time a change waits before being forced to disk.
+     */
+    public static final long GROUP_COMMIT_MILLIS = 50L;
+
+    /**
+     * Marker at the start of a journal file.
+     */
+    private static final int MAGIC = 0x54454f42;
+
+    /**
+     * Version of the journal file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Offset of the marker in the header.
+     */
+    private static final int HEADER_MAGIC = 0;
+
+    /**
+     * Offset of the format version in the header.
+     */
+    private static final int HEADER_VERSION = 4;
+
+    /**
+     * Offset of the sequence number of the oldest message not yet removed.
+     */
+    private static final int HEADER_HEAD = 8;
+
+    /**
+     * Size of the header, and so the offset of the first record.
+     */
+    private static final int HEADER_BYTES = 16;
+
+    /**
+     * Offset within a record of the length of its payload, written last so that a record is
+     * never seen half-written.
+     */
+    private static final int LENGTH = 0;
+
+    /**
+     * Offset within a record of the checksum of the sequence number and payload.
+     */
+    private static final int CRC = 4;
+
+    /**
+     * Offset within a record of its sequence number.
+     */
+    private static final int SEQUENCE = 8;
+
+    /**
+     * Offset within a record of its payload, the message's wire encoding.
+     */
+    private static final int PAYLOAD = 16;
+
+    /**
+     * The journal file.
+     */
+    private final Path file;
+
+    /**
+     * Encodes messages for the journal and decodes them on opening.
+     */
+    private final MessageMarshaller marshaller;
+
+    /**
+     * The open journal file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Mapping of the whole file, replaced when the file grows. Guarded by this object's lock.
+     */
+    private MappedByteBuffer map;
+
+    /**
+     * Messages not yet removed, oldest first. Guarded by this object's lock.
+     */
+    private final ArrayDeque<Message> waiting = new ArrayDeque<>();
+
+    /**
+     * Sequence number of the oldest waiting message. Guarded by this object's lock.
+     */
+    private long head;
+
+    /**
+     * Sequence number of the next message appended. Guarded by this object's lock.
+     */
+    private long nextSequence;
+
+    /**
+     * Offset just past the last record. Guarded by this object's lock.
+     */
+    private int end;
+
+    /**
+     * Checksum calculator. Guarded by this object's lock.
+     */
+    private final CRC32C crc = new CRC32C();
+
+    /**
+     * Thread forcing changes to disk.
+     */
+    private final Thread flusher;
+
+    /**
+     * Whether the journal has changed since the last force. Guarded by this object's lock.
+     */
+    private boolean dirty;
+
+    /**
+     * Whether the journal has been closed. Guarded by this object's lock.
+     */
+    private boolean closed;
+
+    private Outbox(Path file, int capacity, MessageMarshaller marshaller) throws IOException {
+        this.file = file;
+        this.marshaller = marshaller;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, channel.size()));
+        if (map.getInt(HEADER_MAGIC) == MAGIC && map.getInt(HEADER_VERSION) == VERSION) {
+            recover();
+        } else {
+            map.putInt(HEADER_MAGIC, MAGIC);
+            map.putInt(HEADER_VERSION, VERSION);
+            map.putLong(HEADER_HEAD, 0);
+            end = HEADER_BYTES;
+        }
+        this.flusher = new Thread(this::flushLoop, "Outbox-Flush");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Opens the journal, creating it if needed.
+     *
+     * @param file       The journal file
+     * @param marshaller Encodes messages for the journal
+     * @return The outbox
+     * @throws IOException if the file cannot be opened
+     */
+    public static Outbox open(Path file, MessageMarshaller marshaller) throws IOException {
+        return open(file, DEFAULT_CAPACITY, marshaller);
+    }
+
+    /**
+     * Opens the journal with a given initial size, creating it if needed.
+     *
+     * @param file       The journal file
+     * @param capacity   The initial size of a new journal file
+     * @param marshaller Encodes messages for the journal
+     * @return The outbox
+     * @throws IOException if the file cannot be opened
+     */
+    public static Outbox open(Path file, int capacity, MessageMarshaller marshaller) throws IOException {
+        return new Outbox(file, capacity, marshaller);
+    }
+
+    /**
+     * Appends a message after those already waiting. Returns without waiting for the disk.
+     *
+     * @param message The message
+     * @throws IOException if the journal is closed or cannot grow to hold the message
+     */
+    public synchronized void add(Message message) throws IOException {
+        if (closed) {
+            throw new IOException("Outbox is closed");
+        }
+        ByteBuffer payload = marshaller.messageToBuffer(message);
+        int length = payload.remaining();
+        long required = (long) end + PAYLOAD + length;
+        if (required > map.capacity()) {
+            grow(required);
+        }
+        long sequence = nextSequence++;
+        map.put(end + PAYLOAD, payload, payload.position(), length);
+        map.putLong(end + SEQUENCE, sequence);
+        map.putInt(end + CRC, checksum(end, length));
+        map.putInt(end + LENGTH, length);
+        end += PAYLOAD + length;
+        if (waiting.isEmpty()) {
+            head = sequence;
+        }
+        waiting.addLast(message);
+        markDirty();
+    }
+
+    /**
+     * Gets the oldest waiting message without removing it.
+     *
+     * @return The message, or empty if none is waiting
+     */
+    public synchronized Optional<Message> peek() {
+        return Optional.ofNullable(waiting.peekFirst());
+    }
+
+    /**
+     * Removes the oldest waiting message, once it has been sent.
+     *
+     * @return The message removed, or empty if none was waiting
+     */
+    public synchronized Optional<Message> remove() {
+        Message removed = waiting.pollFirst();
+        if (removed == null || closed) {
+            return Optional.ofNullable(removed);
+        }
+        head++;
+        map.putLong(HEADER_HEAD, head);
+        if (waiting.isEmpty()) {
+            end = HEADER_BYTES;
+        }
+        markDirty();
+        return Optional.of(removed);
+    }
+
+    /**
+     * Gets the number of waiting messages.
+     *
+     * @return The number of messages
+     */
+    public synchronized int size() {
+        return waiting.size();
+    }
+
+    /**
+     * Forces changes to disk now rather than at the next group commit.
+     */
+    public void flush() {
+        MappedByteBuffer current;
+        synchronized (this) {
+            current = map;
+            dirty = false;
+        }
+        current.force();
+    }
+
+    /**
+     * Forces changes to disk and closes the journal file. Waiting messages stay in it.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close the outbox journal {}", file, e);
+        }
+    }
+
+    /**
+     * Reads back the messages waiting when the journal was last open. Appends continue after the
+     * last of them, or start over at the front of the file if there are none.
+     */
+    private void recover() {
+        long savedHead = map.getLong(HEADER_HEAD);
+        long expected = -1;
+        int offset = HEADER_BYTES;
+        while (offset + PAYLOAD <= map.capacity()) {
+            int length = map.getInt(offset + LENGTH);
+            long sequence = map.getLong(offset + SEQUENCE);
+            if (length <= 0
+                    || length > map.capacity() - offset - PAYLOAD
+                    || (expected >= 0 && sequence != expected)
+                    || map.getInt(offset + CRC) != checksum(offset, length)) {
+                break;
+            }
+            if (sequence >= savedHead) {
+                Optional<Message> message = marshaller.bufferToMessage(
+                        map.slice(offset + PAYLOAD, length).asReadOnlyBuffer());
+                if (message.isPresent()) {
+                    if (waiting.isEmpty()) {
+                        head = sequence;
+                    }
+                    waiting.addLast(message.get());
+                } else {
+                    LOG.warn("Dropping undecodable outbox record {}", sequence);
+                }
+            }
+            expected = sequence + 1;
+            offset += PAYLOAD + length;
+        }
+        nextSequence = Math.max(savedHead, expected);
+        if (waiting.isEmpty()) {
+            head = nextSequence;
+            end = HEADER_BYTES;
+            map.putLong(HEADER_HEAD, head);
+        } else {
+            end = offset;
+            // Skipped records are removed, so the head can move up to the first one kept
+            map.putLong(HEADER_HEAD, head);
+        }
+        LOG.debug("Recovered {} waiting messages from the outbox", waiting.size());
+    }
+
+    /**
+     * Computes the checksum of a record's sequence number and payload.
+     *
+     * @param offset The record's offset
+     * @param length The payload's length
+     * @return The checksum
+     */
+    private int checksum(int offset, int length) {
+        crc.reset();
+        crc.update(map.slice(offset + SEQUENCE, PAYLOAD - SEQUENCE + length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Remaps the file at a size at least doubled and large enough for a given end.
+     *
+     * @param required The offset the mapping must reach
+     * @throws IOException if the file cannot be extended
+     */
+    private void grow(long required) throws IOException {
+        long capacity = map.capacity();
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("Outbox journal cannot grow beyond " + Integer.MAX_VALUE + " bytes");
+        }
+        map.force();
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        LOG.debug("Grew the outbox journal to {} bytes", capacity);
+    }
+
+    /**
+     * Records a change and wakes the flusher. Called with this object's lock held.
+     */
+    private void markDirty() {
+        if (!dirty) {
+            dirty = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Forces changes to disk once per group commit interval while there are any.
+     */
+    private void flushLoop() {
+        while (true) {
+            synchronized (this) {
+                while (!dirty && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(GROUP_COMMIT_MILLIS);
+                flush();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package name.maxdeliso.teflon.data;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns small, dense integer indexes to peer IDs so per-message state about peers can be
+ * kept as bitsets instead of sets of strings.
+ * Indexes are assigned on first sight. A released index keeps resolving to its old ID until it
+ * is reclaimed, and is handed out again only after that, lowest first, so the bitsets stay as
+ * narrow as the peers present. Each release starts a new generation; a holder of bitsets notes
+ * the generation each was started in, and reclaims the indexes released no later than the
+ * oldest one it still holds, so no bitset it holds is misread. Lookups of known IDs do not lock.
+ */
+public final class PeerIndex {
+    /**
+     * Initial capacity of the reverse mapping.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Index of each known peer ID.
+     */
+    private final ConcurrentHashMap<String, Integer> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * Peer IDs by index. Replaced when it grows; writes are published through the volatile field.
+     */
+    private volatile String[] ids = new String[INITIAL_CAPACITY];
+
+    /**
+     * Number of index slots ever handed out. Guarded by this index.
+     */
+    private int width;
+
+    /**
+     * Reclaimed indexes free to be handed out again. Guarded by this index.
+     */
+    private final BitSet free = new BitSet();
+
+    /**
+     * Released indexes not yet reclaimed, in release order. Guarded by this index.
+     */
+    private final Queue<Retired> retired = new ArrayDeque<>();
+
+    /**
+     * Number of releases so far. Guarded by this index.
+     */
+    private long generation;
+
+    /**
+     * Gets the index of a peer ID, assigning the next free one if the ID is new.
+     *
+     * @param id The peer ID
+     * @return The peer's index
+     */
+    public int indexOf(String id) {
+        Integer index = indexes.get(id);
+        return index != null ? index : assign(id);
+    }
+
+    /**
+     * Gets the peer ID at an index.
+     *
+     * @param index The index
+     * @return The peer ID, or null if the index has not been assigned
+     */
+    public String idAt(int index) {
+        String[] current = ids;
+        return index >= 0 && index < current.length ? current[index] : null;
+    }
+
+    /**
+     * Gets the number of peer IDs holding an index.
+     *
+     * @return The number of known peer IDs
+     */
+    public int size() {
+        return indexes.size();
+    }
+
+    /**
+     * Gets the number of index slots handed out, including released ones, which bounds the
+     * width of every bitset.
+     *
+     * @return One more than the highest index ever assigned
+     */
+    public synchronized int width() {
+        return width;
+    }
+
+    /**
+     * Gets the current generation, to note when a bitset is started.
+     *
+     * @return The number of releases so far
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Releases a peer's index, starting a new generation. The index keeps resolving to the peer
+     * until it is reclaimed; if the peer is seen again first, it is given a new one.
+     *
+     * @param id The peer ID
+     * @return true if the peer held an index
+     */
+    public synchronized boolean release(String id) {
+        Integer index = indexes.remove(id);
+        if (index == null) {
+            return false;
+        }
+        retired.add(new Retired(index, ++generation));
+        return true;
+    }
+
+    /**
+     * Frees the released indexes that no held bitset can refer to, for handing out again.
+     *
+     * @param oldest The generation the oldest bitset still held was started in, or the current
+     *               generation if none is held
+     */
+    public synchronized void reclaim(long oldest) {
+        while (!retired.isEmpty() && retired.peek().generation() <= oldest) {
+            free.set(retired.remove().index());
+        }
+    }
+
+    /**
+     * Builds a bitset with the bit of each given peer ID set, assigning indexes to new IDs.
+     *
+     * @param peerIds The peer IDs
+     * @return The bitset, one bit per index in little-endian word order
+     */
+    public long[] bitsOf(Collection<String> peerIds) {
+        long[] bits = new long[0];
+        for (String id : peerIds) {
+            int index = indexOf(id);
+            int word = index / Long.SIZE;
+            if (word >= bits.length) {
+                bits = Arrays.copyOf(bits, word + 1);
+            }
+            bits[word] |= 1L << index;
+        }
+        return bits;
+    }
+
+    /**
+     * Resolves the peer IDs whose bits are set in a bitset.
+     *
+     * @param bits The bitset, one bit per index in little-endian word order
+     * @return The peer IDs
+     */
+    public Set<String> idsOf(long[] bits) {
+        Set<String> result = new HashSet<>();
+        for (int word = 0; word < bits.length; word++) {
+            long remaining = bits[word];
+            while (remaining != 0) {
+                String id = idAt(word * Long.SIZE + Long.numberOfTrailingZeros(remaining));
+                if (id != null) {
+                    result.add(id);
+                }
+                remaining &= remaining - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Assigns the lowest free index to a peer ID, unless another thread already has.
+     *
+     * @param id The peer ID
+     * @return The peer's index
+     */
+    private synchronized int assign(String id) {
+        Integer existing = indexes.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        int index = free.nextSetBit(0);
+        String[] current = ids;
+        if (index >= 0) {
+            free.clear(index);
+        } else {
+            index = width++;
+            if (index == current.length) {
+                current = Arrays.copyOf(current, index * 2);
+            }
+        }
+        current[index] = id;
+        ids = current;
+        indexes.put(id, index);
+        return index;
+    }
+
+    /**
+     * An index released and not yet reclaimed.
+     *
+     * @param index      The index
+     * @param generation The generation its release started
+     */
+    private record Retired(int index, long generation) {}
+}
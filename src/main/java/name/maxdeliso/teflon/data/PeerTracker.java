@@ -3,18 +3,30 @@ package name.maxdeliso.teflon.data;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Tracks known peers in the network.
  * Maintains a list of peers with their UUIDs and IP addresses.
+ * Each peer holds one timer on a {@link TimingWheel}. Updates only refresh the last-seen time;
+ * when the timer fires it either removes the peer or moves itself to the refreshed deadline.
+ * Peers are held in a {@link UuidTable} keyed by the two halves of their UUID, so a message
+ * from a known peer at an unchanged address updates a primitive timestamp and allocates nothing.
+ * Subscribers are told when peers join, change address, are seen again and leave, so views can
+ * follow the roster without taking snapshots of it. Sightings are reported at most once per peer
+ * per {@link #SEEN_EVENT_INTERVAL_MILLIS}, and a version number counts membership changes so
+ * consumers of snapshots can tell when theirs is still current.
  */
 public class PeerTracker {
     /**
@@ -28,14 +40,41 @@ public class PeerTracker {
     private static final int PEER_TIMEOUT_SECONDS = 30;
 
     /**
-     * Map of peer UUIDs to their information.
+     * Peer timeout in milliseconds.
      */
-    private final Map<String, PeerInfo> peers = new ConcurrentHashMap<>();
+    private static final long PEER_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(PEER_TIMEOUT_SECONDS);
 
     /**
-     * Executor for cleanup tasks.
+     * Shortest time between two reports that the same peer was seen, in milliseconds.
      */
-    private final ScheduledExecutorService cleanupExecutor;
+    public static final long SEEN_EVENT_INTERVAL_MILLIS = 1000L;
+
+    /**
+     * Known peers keyed by UUID, timestamped with when they were last seen. The attachment is
+     * the peer's {@link Peer} record, replaced only when a peer joins or changes address.
+     * Joins, expiry and resets are serialized on this tracker; refreshing a known peer is not.
+     */
+    private final UuidTable peers = new UuidTable(0);
+
+    /**
+     * Timing wheel on which peer deadlines are scheduled.
+     */
+    private final TimingWheel timingWheel;
+
+    /**
+     * Whether this tracker created the timing wheel and must shut it down.
+     */
+    private final boolean ownsTimingWheel;
+
+    /**
+     * Number of peers that have joined.
+     */
+    private final MetricsRegistry.Counter peersJoined;
+
+    /**
+     * Number of peers removed after being inactive for the full timeout.
+     */
+    private final MetricsRegistry.Counter peersExpired;
 
     /**
      * The ID of this instance.
@@ -47,6 +86,16 @@ public class PeerTracker {
      */
     private final Clock clock;
 
+    /**
+     * Subscribers notified of roster changes.
+     */
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Number of membership changes: joins, address changes and departures.
+     */
+    private final AtomicLong version = new AtomicLong();
+
     /**
      * Creates a new peer tracker.
      */
@@ -65,30 +114,56 @@ public class PeerTracker {
 
     /**
      * Creates a new peer tracker with a specific instance ID and clock.
+     * The tracker starts its own timing wheel.
      *
      * @param instanceId The ID to use for this instance
      * @param clock      The clock to use for timing
      */
     public PeerTracker(String instanceId, Clock clock) {
+        this(instanceId, clock, new TimingWheel(clock).start("PeerTracker-Timer"), true, new MetricsRegistry());
+    }
+
+    /**
+     * Creates a new peer tracker that schedules expiry on a shared timing wheel.
+     *
+     * @param instanceId  The ID to use for this instance
+     * @param clock       The clock to use for timing
+     * @param timingWheel The shared timing wheel, driven by the same clock
+     */
+    public PeerTracker(String instanceId, Clock clock, TimingWheel timingWheel) {
+        this(instanceId, clock, timingWheel, false, new MetricsRegistry());
+    }
+
+    /**
+     * Creates a new peer tracker that schedules expiry on a shared timing wheel and registers
+     * its membership metrics with a shared metrics registry.
+     *
+     * @param instanceId  The ID to use for this instance
+     * @param clock       The clock to use for timing
+     * @param timingWheel The shared timing wheel, driven by the same clock
+     * @param metrics     The registry to register membership metrics with
+     */
+    public PeerTracker(String instanceId, Clock clock, TimingWheel timingWheel, MetricsRegistry metrics) {
+        this(instanceId, clock, timingWheel, false, metrics);
+    }
+
+    private PeerTracker(String instanceId,
+                        Clock clock,
+                        TimingWheel timingWheel,
+                        boolean ownsTimingWheel,
+                        MetricsRegistry metrics) {
         this.instanceId = instanceId;
         this.clock = clock;
-        this.cleanupExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "PeerTracker-Cleanup");
-            t.setDaemon(true);
-            return t;
-        });
-
-        // Schedule periodic cleanup of inactive peers, starting immediately
-        cleanupExecutor.scheduleAtFixedRate(
-                this::cleanupInactivePeers,
-                0, // Start immediately
-                PEER_TIMEOUT_SECONDS,
-                TimeUnit.SECONDS
-        );
+        this.timingWheel = timingWheel;
+        this.ownsTimingWheel = ownsTimingWheel;
+        this.peersJoined = metrics.counter("peers.joined");
+        this.peersExpired = metrics.counter("peers.expired");
+        metrics.gauge("peers.known", peers::size);
     }
 
     /**
      * Updates peer information when a message is received.
+     * Sender IDs that are not canonical UUIDs are ignored.
      *
      * @param senderId     The sender's UUID
      * @param senderAddress The sender's network address
@@ -98,14 +173,144 @@ public class PeerTracker {
             return; // Don't track ourselves
         }
 
-        String ipAddress = extractIpAddress(senderAddress);
-        if (ipAddress == null) {
+        if (!(senderAddress instanceof InetSocketAddress inetAddress)) {
             LOG.debug("Could not extract IP address from: {}", senderAddress);
             return;
         }
 
-        peers.put(senderId, new PeerInfo(senderId, ipAddress, clock.now()));
-        LOG.debug("Updated peer: {} at {}", senderId, ipAddress);
+        long msb;
+        long lsb;
+        try {
+            msb = UuidTable.mostSignificantBits(senderId);
+            lsb = UuidTable.leastSignificantBits(senderId);
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Ignoring peer with invalid ID: {}", senderId);
+            return;
+        }
+
+        InetAddress address = inetAddress.getAddress();
+        long now = clock.millis();
+        Peer peer = peers.attachment(msb, lsb);
+        if (peer != null && peer.address().equals(address) && peers.touch(msb, lsb, now)) {
+            reportSeen(peer, now);
+            return;
+        }
+        join(senderId, msb, lsb, address, now);
+    }
+
+    /**
+     * Adds a peer remembered from an earlier session, keeping the time it was last seen rather
+     * than stamping it as seen now. It expires one full timeout from now unless heard from by
+     * then. Known peers, this instance and sender IDs that are not canonical UUIDs are ignored.
+     *
+     * @param uuid     The peer's UUID
+     * @param address  The peer's network address
+     * @param lastSeen When the peer was last seen, in clock milliseconds
+     * @return true if the peer was added
+     */
+    public synchronized boolean restorePeer(String uuid, SocketAddress address, long lastSeen) {
+        if (uuid.equals(instanceId) || !(address instanceof InetSocketAddress inetAddress)) {
+            return false;
+        }
+        long msb;
+        long lsb;
+        try {
+            msb = UuidTable.mostSignificantBits(uuid);
+            lsb = UuidTable.leastSignificantBits(uuid);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (peers.timestamp(msb, lsb) != UuidTable.ABSENT || !peers.put(msb, lsb, lastSeen)) {
+            return false;
+        }
+
+        InetAddress peerAddress = inetAddress.getAddress();
+        TimingWheel.Timeout expiry = timingWheel.schedule(clock.millis() + PEER_TIMEOUT_MILLIS, () -> expire(msb, lsb));
+        Peer peer = new Peer(uuid, peerAddress, peerAddress.getHostAddress(), expiry, new AtomicLong(lastSeen));
+        peers.updateAttachment(msb, lsb, previous -> peer);
+        version.incrementAndGet();
+        LOG.debug("Restored peer: {} at {}", uuid, peer.ipAddress());
+
+        var info = new PeerInfo(uuid, peer.ipAddress(), Instant.ofEpochMilli(lastSeen));
+        listeners.forEach(listener -> listener.peerJoined(info));
+        return true;
+    }
+
+    /**
+     * Adds a new peer, or records a known peer's new address.
+     *
+     * @param senderId The peer's UUID
+     * @param msb      The most significant bits of the peer's UUID
+     * @param lsb      The least significant bits of the peer's UUID
+     * @param address  The peer's address
+     * @param now      The current time in clock milliseconds
+     */
+    private synchronized void join(String senderId, long msb, long lsb, InetAddress address, long now) {
+        Peer existing = peers.attachment(msb, lsb);
+        TimingWheel.Timeout expiry;
+        if (existing == null) {
+            peers.put(msb, lsb, now);
+            expiry = timingWheel.schedule(now + PEER_TIMEOUT_MILLIS, () -> expire(msb, lsb));
+            peersJoined.increment();
+        } else {
+            peers.touch(msb, lsb, now);
+            expiry = existing.expiry();
+        }
+
+        Peer peer = new Peer(senderId, address, address.getHostAddress(), expiry, new AtomicLong(now));
+        peers.updateAttachment(msb, lsb, previous -> peer);
+        version.incrementAndGet();
+        LOG.debug("Updated peer: {} at {}", senderId, peer.ipAddress());
+
+        var info = new PeerInfo(senderId, peer.ipAddress(), Instant.ofEpochMilli(now));
+        for (Listener listener : listeners) {
+            if (existing == null) {
+                listener.peerJoined(info);
+            } else {
+                listener.peerUpdated(info);
+            }
+        }
+    }
+
+    /**
+     * Reports that a known peer was seen, unless it was reported less than
+     * {@link #SEEN_EVENT_INTERVAL_MILLIS} ago. Runs without the tracker's lock.
+     *
+     * @param peer The peer
+     * @param now  The current time in clock milliseconds
+     */
+    private void reportSeen(Peer peer, long now) {
+        long reported = peer.reported().get();
+        if (now - reported < SEEN_EVENT_INTERVAL_MILLIS
+                || listeners.isEmpty()
+                || !peer.reported().compareAndSet(reported, now)) {
+            return;
+        }
+        var info = new PeerInfo(peer.uuid(), peer.ipAddress(), Instant.ofEpochMilli(now));
+        listeners.forEach(listener -> listener.peerSeen(info));
+    }
+
+    /**
+     * Subscribes to roster changes. Joins, address changes and departures are delivered with
+     * the tracker's lock held, in the order they were made. Sightings are delivered without
+     * it, so one may arrive after the peer has left and should then be ignored.
+     *
+     * @param listener The listener, called on the thread that caused each change
+     * @return The subscription, closed to stop receiving changes
+     */
+    public Subscription subscribe(Listener listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    /**
+     * Gets the membership version, which changes whenever a peer joins, changes address or
+     * leaves. Sightings of known peers leave it unchanged.
+     *
+     * @return The number of membership changes so far
+     */
+    public long version() {
+        return version.get();
     }
 
     /**
@@ -114,7 +319,13 @@ public class PeerTracker {
      * @return A map of peer UUIDs to their information
      */
     public Map<String, PeerInfo> getPeers() {
-        return Map.copyOf(peers);
+        Map<String, PeerInfo> snapshot = new HashMap<>();
+        peers.forEach((msb, lsb, lastSeen, attachment) -> {
+            if (attachment instanceof Peer peer) {
+                snapshot.put(peer.uuid(), new PeerInfo(peer.uuid(), peer.ipAddress(), Instant.ofEpochMilli(lastSeen)));
+            }
+        });
+        return Map.copyOf(snapshot);
     }
 
     /**
@@ -128,54 +339,194 @@ public class PeerTracker {
 
     /**
      * Cleans up peers that haven't been seen recently.
+     * Expiry normally fires on its own; this fires any that are due immediately.
      */
     public void cleanupInactivePeers() {
-        Instant cutoff = clock.now().minusSeconds(PEER_TIMEOUT_SECONDS);
-        peers.entrySet().removeIf(entry -> {
-            boolean shouldRemove = entry.getValue().lastSeen().isBefore(cutoff);
-            if (shouldRemove) {
-                LOG.debug("Removing inactive peer: {}", entry.getKey());
+        timingWheel.advance();
+    }
+
+    /**
+     * Handles a peer's expiry timer: removes the peer if it has been inactive for the full
+     * timeout, otherwise moves the timer to the deadline implied by its latest activity.
+     * Removal is conditional on the last-seen time, so a concurrent refresh is never lost.
+     *
+     * @param msb The most significant bits of the peer's UUID
+     * @param lsb The least significant bits of the peer's UUID
+     */
+    private synchronized void expire(long msb, long lsb) {
+        while (true) {
+            long lastSeen = peers.timestamp(msb, lsb);
+            if (lastSeen == UuidTable.ABSENT) {
+                return;
             }
-            return shouldRemove;
-        });
+
+            long now = clock.millis();
+            if (lastSeen + PEER_TIMEOUT_MILLIS > now) {
+                Peer peer = peers.attachment(msb, lsb);
+                if (peer != null) {
+                    timingWheel.reschedule(peer.expiry(), lastSeen + PEER_TIMEOUT_MILLIS);
+                }
+                return;
+            }
+
+            Peer peer = peers.attachment(msb, lsb);
+            if (peers.removeIfNotAfter(msb, lsb, now - PEER_TIMEOUT_MILLIS)) {
+                peersExpired.increment();
+                LOG.debug("Removing inactive peer: {}", new UUID(msb, lsb));
+                version.incrementAndGet();
+                if (peer != null) {
+                    listeners.forEach(listener -> listener.peerLeft(peer.uuid()));
+                }
+                return;
+            }
+        }
     }
 
     /**
-     * Extracts IP address from a socket address.
+     * Removes a peer at once, as when the membership protocol declares it dead, instead of
+     * waiting for it to time out.
      *
-     * @param address The socket address
-     * @return The IP address string, or null if extraction fails
+     * @param uuid The peer's UUID
+     * @return true if the peer was known
      */
-    private String extractIpAddress(SocketAddress address) {
-        if (address instanceof java.net.InetSocketAddress inetAddress) {
-            return inetAddress.getAddress().getHostAddress();
+    public synchronized boolean remove(String uuid) {
+        long msb;
+        long lsb;
+        try {
+            msb = UuidTable.mostSignificantBits(uuid);
+            lsb = UuidTable.leastSignificantBits(uuid);
+        } catch (IllegalArgumentException e) {
+            return false;
         }
-        return null;
+        Peer peer = peers.attachment(msb, lsb);
+        if (peer == null || !peers.remove(msb, lsb)) {
+            return false;
+        }
+        peer.expiry().cancel();
+        version.incrementAndGet();
+        LOG.debug("Removing failed peer: {}", uuid);
+        listeners.forEach(listener -> listener.peerLeft(peer.uuid()));
+        return true;
     }
 
     /**
      * Resets the peer tracker by clearing all peers.
      */
-    public void reset() {
+    public synchronized void reset() {
+        peers.forEach((msb, lsb, lastSeen, attachment) -> {
+            if (attachment instanceof Peer peer) {
+                peer.expiry().cancel();
+                listeners.forEach(listener -> listener.peerLeft(peer.uuid()));
+            }
+        });
         peers.clear();
+        version.incrementAndGet();
         LOG.debug("Peer tracker reset - cleared all peers");
     }
 
     /**
-     * Shuts down the peer tracker.
+     * Shuts down the peer tracker, cancelling expiry timers and stopping the timing wheel
+     * if this tracker owns it.
      */
     public void shutdown() {
-        cleanupExecutor.shutdown();
-        try {
-            if (!cleanupExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                cleanupExecutor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            cleanupExecutor.shutdownNow();
-            Thread.currentThread().interrupt();
+        reset();
+        if (ownsTimingWheel) {
+            timingWheel.shutdown();
+        }
+    }
+
+    /**
+     * Identity and address of a known peer, kept as a table attachment.
+     *
+     * @param uuid      The peer's UUID
+     * @param address   The peer's address, compared on each update
+     * @param ipAddress The peer's address in text form
+     * @param expiry    The peer's expiry timer
+     * @param reported  When the peer was last reported to subscribers, in clock milliseconds
+     */
+    private record Peer(
+            String uuid,
+            InetAddress address,
+            String ipAddress,
+            TimingWheel.Timeout expiry,
+            AtomicLong reported
+    ) {}
+
+    /**
+     * Receives roster changes. Implementations must not block, and must not call back into the
+     * tracker from {@link #peerJoined}, {@link #peerUpdated} or {@link #peerLeft}, which run with
+     * its lock held.
+     */
+    public interface Listener {
+        /**
+         * Called when a peer is first seen.
+         *
+         * @param peer The new peer
+         */
+        void peerJoined(PeerInfo peer);
+
+        /**
+         * Called when a known peer is seen at a new address.
+         *
+         * @param peer The peer's updated information
+         */
+        void peerUpdated(PeerInfo peer);
+
+        /**
+         * Called when a known peer is heard from again, at most once per
+         * {@link #SEEN_EVENT_INTERVAL_MILLIS} for each peer.
+         *
+         * @param peer The peer with its new last seen time
+         */
+        void peerSeen(PeerInfo peer);
+
+        /**
+         * Called when a peer expires or is removed, or the tracker is reset.
+         *
+         * @param uuid The peer's UUID
+         */
+        void peerLeft(String uuid);
+
+        /**
+         * Creates a listener that only follows departures.
+         *
+         * @param onLeft Called with the UUID of each peer that leaves, with the tracker's lock held
+         * @return The listener
+         */
+        static Listener departures(Consumer<String> onLeft) {
+            return new Listener() {
+                @Override
+                public void peerJoined(PeerInfo peer) {
+                }
+
+                @Override
+                public void peerUpdated(PeerInfo peer) {
+                }
+
+                @Override
+                public void peerSeen(PeerInfo peer) {
+                }
+
+                @Override
+                public void peerLeft(String uuid) {
+                    onLeft.accept(uuid);
+                }
+            };
         }
     }
 
+    /**
+     * Registration of a {@link Listener}, closed to unsubscribe.
+     */
+    @FunctionalInterface
+    public interface Subscription extends AutoCloseable {
+        /**
+         * Stops delivering changes to the listener.
+         */
+        @Override
+        void close();
+    }
+
     /**
      * Information about a peer.
      */
@@ -0,0 +1,347 @@
+package name.maxdeliso.teflon.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index over message text, mapping each term to the {@link MessageHistory} positions of
+ * the messages containing it. Terms are runs of letters and digits, lower-cased.
+ * Messages are added one at a time as they are stored, and since history positions only grow,
+ * every posting list stays sorted without ever being re-sorted. A query intersects the posting
+ * lists of its terms, walking the shortest from the newest end and binary searching the others,
+ * so its cost depends on how rare the rarest term is rather than on how many messages there are.
+ * The index is saved next to the history together with the last position it covers; on loading,
+ * only messages stored after that position need indexing again.
+ * Not thread-safe; confine each index to one thread.
+ */
+public final class SearchIndex {
+    /**
+     * Name of the index file within the history directory.
+     */
+    public static final String FILE_NAME = "search.idx";
+
+    /**
+     * Longest term indexed; longer runs are cut to this length.
+     */
+    static final int MAX_TERM_LENGTH = 64;
+
+    /**
+     * Marker at the start of an index file.
+     */
+    private static final int MAGIC = 0x54534958;
+
+    /**
+     * Version of the index file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Initial capacity of a posting list.
+     */
+    private static final int INITIAL_POSTINGS = 4;
+
+    /**
+     * Bits of a varint byte holding value bits.
+     */
+    private static final int VARINT_BITS = 7;
+
+    /**
+     * Mask of the value bits of a varint byte.
+     */
+    private static final int VARINT_MASK = 0x7F;
+
+    /**
+     * Flag marking a varint byte that is followed by another.
+     */
+    private static final int VARINT_MORE = 0x80;
+
+    /**
+     * Posting lists keyed by term.
+     */
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    /**
+     * Position of the last message added, or -1 if none.
+     */
+    private long indexedThrough = -1;
+
+    /**
+     * Number of messages added.
+     */
+    private long documents;
+
+    /**
+     * Splits text into distinct search terms, in order of first appearance.
+     *
+     * @param text The text
+     * @return The terms
+     */
+    public static Set<String> terms(CharSequence text) {
+        Set<String> terms = new LinkedHashSet<>();
+        var term = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            int codePoint = Character.codePointAt(text, i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (term.length() < MAX_TERM_LENGTH) {
+                    term.appendCodePoint(Character.toLowerCase(codePoint));
+                }
+            } else if (!term.isEmpty()) {
+                terms.add(term.toString());
+                term.setLength(0);
+            }
+        }
+        if (!term.isEmpty()) {
+            terms.add(term.toString());
+        }
+        return terms;
+    }
+
+    /**
+     * Adds a message's text to the index.
+     *
+     * @param position The message's history position, which must be greater than any added before
+     * @param text     The message's text
+     * @throws IllegalArgumentException if the position is not greater than the last one added
+     */
+    public void add(long position, CharSequence text) {
+        if (position <= indexedThrough) {
+            throw new IllegalArgumentException("Position " + position + " is not after " + indexedThrough);
+        }
+        for (String term : terms(text)) {
+            postings.computeIfAbsent(term, ignored -> new Postings(INITIAL_POSTINGS)).add(position);
+        }
+        indexedThrough = position;
+        documents++;
+    }
+
+    /**
+     * Finds the messages containing every term of a query.
+     *
+     * @param query The query text
+     * @param limit The most positions to return
+     * @return The number of matches and the positions of the newest of them
+     */
+    public Hits search(CharSequence query, int limit) {
+        List<Postings> lists = new ArrayList<>();
+        for (String term : terms(query)) {
+            Postings list = postings.get(term);
+            if (list == null) {
+                return new Hits(0, List.of());
+            }
+            lists.add(list);
+        }
+        if (lists.isEmpty()) {
+            return new Hits(0, List.of());
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+
+        Postings shortest = lists.getFirst();
+        List<Long> newest = new ArrayList<>(Math.min(limit, shortest.size));
+        int total = 0;
+        for (int i = shortest.size - 1; i >= 0; i--) {
+            long position = shortest.positions[i];
+            if (containedInAll(lists, position)) {
+                total++;
+                if (newest.size() < limit) {
+                    newest.add(position);
+                }
+            }
+        }
+        return new Hits(total, newest);
+    }
+
+    /**
+     * Gets the position of the last message added.
+     *
+     * @return The position, or -1 if the index is empty
+     */
+    public long indexedThrough() {
+        return indexedThrough;
+    }
+
+    /**
+     * Gets the number of messages added.
+     *
+     * @return The number of messages
+     */
+    public long documents() {
+        return documents;
+    }
+
+    /**
+     * Gets the number of distinct terms.
+     *
+     * @return The number of terms
+     */
+    public int termCount() {
+        return postings.size();
+    }
+
+    /**
+     * Saves the index, replacing the file only once it has been written completely.
+     * Posting lists are stored as varint-encoded gaps between positions.
+     *
+     * @param file The index file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(indexedThrough);
+            out.writeLong(documents);
+            out.writeInt(postings.size());
+            for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+                out.writeUTF(entry.getKey());
+                Postings list = entry.getValue();
+                out.writeInt(list.size);
+                long previous = -1;
+                for (int i = 0; i < list.size; i++) {
+                    writeVarLong(out, list.positions[i] - previous);
+                    previous = list.positions[i];
+                }
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a saved index.
+     *
+     * @param file The index file
+     * @return The index, or an empty index if the file does not exist
+     * @throws IOException if the file cannot be read or is not an index
+     */
+    public static SearchIndex load(Path file) throws IOException {
+        var index = new SearchIndex();
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a search index: " + file);
+            }
+            index.indexedThrough = in.readLong();
+            index.documents = in.readLong();
+            int terms = in.readInt();
+            for (int t = 0; t < terms; t++) {
+                String term = in.readUTF();
+                int size = in.readInt();
+                var list = new Postings(Math.max(size, INITIAL_POSTINGS));
+                long previous = -1;
+                for (int i = 0; i < size; i++) {
+                    previous += readVarLong(in);
+                    list.add(previous);
+                }
+                index.postings.put(term, list);
+            }
+        } catch (NoSuchFileException e) {
+            return index;
+        }
+        return index;
+    }
+
+    /**
+     * Checks whether every posting list but the first, which the position was taken from, holds a position.
+     *
+     * @param lists    The posting lists
+     * @param position The position
+     * @return true if all of them hold it
+     */
+    private static boolean containedInAll(List<Postings> lists, long position) {
+        for (int j = 1; j < lists.size(); j++) {
+            Postings list = lists.get(j);
+            if (Arrays.binarySearch(list.positions, 0, list.size, position) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a non-negative value seven bits at a time, low bits first.
+     *
+     * @param out   The stream
+     * @param value The value
+     * @throws IOException if the stream fails
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~VARINT_MASK) != 0) {
+            out.writeByte((int) (value & VARINT_MASK) | VARINT_MORE);
+            value >>>= VARINT_BITS;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads a value written by {@link #writeVarLong}.
+     *
+     * @param in The stream
+     * @return The value
+     * @throws IOException if the stream fails
+     */
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += VARINT_BITS) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & VARINT_MASK) << shift;
+            if ((b & VARINT_MORE) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * The result of a query.
+     *
+     * @param total     The number of matching messages
+     * @param positions History positions of the newest matches, newest first
+     */
+    public record Hits(int total, List<Long> positions) {}
+
+    /**
+     * Growable, sorted list of history positions.
+     */
+    private static final class Postings {
+        /**
+         * The positions, ascending.
+         */
+        private long[] positions;
+
+        /**
+         * Number of positions held.
+         */
+        private int size;
+
+        private Postings(int capacity) {
+            this.positions = new long[capacity];
+        }
+
+        /**
+         * Appends a position greater than any held.
+         *
+         * @param position The position
+         */
+        private void add(long position) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package name.maxdeliso.teflon.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * State kept from one session to the next so that a launch can start warm: the last connection
+ * profile, to rejoin the group while the window is still being built, the peer roster, so peers
+ * are known before they are heard from, and the lifetime delivery statistics.
+ * Saved as a small binary file, replaced only once it has been written completely.
+ *
+ * @param profile       The last connection profile, or null if there has been no connection
+ * @param peers         The peers known when the snapshot was taken
+ * @param deliveryStats Delivery statistics keyed by the names used by {@link MessageTracker#getDeliveryStats()}
+ */
+public record SessionSnapshot(Profile profile, List<PeerTracker.PeerInfo> peers, Map<String, Long> deliveryStats) {
+    /**
+     * Name of the snapshot file within the history directory.
+     */
+    public static final String FILE_NAME = "session.snapshot";
+
+    /**
+     * A snapshot of a session that never connected.
+     */
+    public static final SessionSnapshot EMPTY = new SessionSnapshot(null, List.of(), Map.of());
+
+    /**
+     * Marker at the start of a snapshot file.
+     */
+    private static final int MAGIC = 0x54534e50;
+
+    /**
+     * Version of the snapshot file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Creates a snapshot, copying the roster and statistics.
+     *
+     * @param profile       The last connection profile, or null if there has been no connection
+     * @param peers         The peers known when the snapshot was taken
+     * @param deliveryStats Delivery statistics keyed by name
+     */
+    public SessionSnapshot {
+        peers = List.copyOf(peers);
+        deliveryStats = Map.copyOf(deliveryStats);
+    }
+
+    /**
+     * Saves the snapshot, replacing the file only once it has been written completely.
+     * Peer IDs are stored as two longs rather than as text.
+     *
+     * @param file The snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(profile != null);
+            if (profile != null) {
+                out.writeUTF(profile.groupAddress());
+                out.writeInt(profile.port());
+                out.writeUTF(profile.interfaceName());
+            }
+            out.writeInt(peers.size());
+            for (PeerTracker.PeerInfo peer : peers) {
+                UUID uuid = UUID.fromString(peer.uuid());
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+                out.writeUTF(peer.ipAddress());
+                out.writeLong(peer.lastSeen().toEpochMilli());
+            }
+            out.writeInt(deliveryStats.size());
+            for (Map.Entry<String, Long> stat : deliveryStats.entrySet()) {
+                out.writeUTF(stat.getKey());
+                out.writeLong(stat.getValue());
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a saved snapshot.
+     *
+     * @param file The snapshot file
+     * @return The snapshot, or {@link #EMPTY} if the file does not exist
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static SessionSnapshot load(Path file) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a session snapshot: " + file);
+            }
+            Profile profile = in.readBoolean() ? new Profile(in.readUTF(), in.readInt(), in.readUTF()) : null;
+            int peerCount = in.readInt();
+            List<PeerTracker.PeerInfo> peers = new ArrayList<>(peerCount);
+            for (int i = 0; i < peerCount; i++) {
+                var uuid = new UUID(in.readLong(), in.readLong());
+                peers.add(new PeerTracker.PeerInfo(uuid.toString(), in.readUTF(), Instant.ofEpochMilli(in.readLong())));
+            }
+            int statCount = in.readInt();
+            Map<String, Long> deliveryStats = new LinkedHashMap<>();
+            for (int i = 0; i < statCount; i++) {
+                deliveryStats.put(in.readUTF(), in.readLong());
+            }
+            return new SessionSnapshot(profile, peers, deliveryStats);
+        } catch (NoSuchFileException e) {
+            return EMPTY;
+        }
+    }
+
+    /**
+     * The multicast group and interface of a connection.
+     *
+     * @param groupAddress  The multicast group address
+     * @param port          The UDP port
+     * @param interfaceName The name of the network interface
+     */
+    public record Profile(String groupAddress, int port, String interfaceName) {}
+}
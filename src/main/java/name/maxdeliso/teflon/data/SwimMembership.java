@@ -0,0 +1,704 @@
+package name.maxdeliso.teflon.data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * SWIM-style membership and failure detection over the chat group.
+ * Once per protocol period each member probes one other member, taken in a shuffled round-robin
+ * order so every member is probed within a bounded time. A probe not answered within the probe
+ * timeout is repeated through other members, and a member that has still not answered by the end
+ * of the period is suspected. A suspect is declared dead after the suspicion timeout unless it
+ * refutes the suspicion by announcing a higher incarnation, and is then removed from the
+ * {@link PeerTracker} at once rather than when it times out there.
+ * Membership changes are gossiped by piggybacking a few updates on every outgoing message, each
+ * retransmitted a number of times logarithmic in the group size, so news reaches everyone within
+ * a few periods while each member sends a constant number of probes per period.
+ * Every message is multicast to the whole group, so an indirect probe request is heard by every
+ * member; each helps with a probability that keeps the expected number of helpers constant.
+ * All state is guarded by this object's lock.
+ */
+public class SwimMembership {
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = LogManager.getLogger(SwimMembership.class);
+
+    /**
+     * Length of a protocol period, in which each member probes one other member.
+     */
+    public static final long PROTOCOL_PERIOD_MILLIS = 1000L;
+
+    /**
+     * Time allowed for a direct probe to be answered before probing indirectly.
+     */
+    public static final long PROBE_TIMEOUT_MILLIS = 300L;
+
+    /**
+     * Expected number of members that repeat a probe on the prober's behalf.
+     */
+    private static final int INDIRECT_PROBES = 3;
+
+    /**
+     * Protocol periods a suspect is given to refute, scaled by the logarithm of the group size.
+     */
+    private static final int SUSPICION_PERIODS = 4;
+
+    /**
+     * Transmissions of each update, scaled by the logarithm of the group size.
+     */
+    private static final int RETRANSMIT_MULTIPLIER = 4;
+
+    /**
+     * Most updates piggybacked on one message.
+     */
+    private static final int MAX_PIGGYBACKED = 6;
+
+    /**
+     * How long a dead member is remembered, so stale news of it being alive is ignored.
+     */
+    private static final long DEAD_RETENTION_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Target of a probe announcing a member that knows no one yet; no member answers it.
+     */
+    private static final String NO_TARGET = "";
+
+    /**
+     * The ID of this instance.
+     */
+    private final String instanceId;
+
+    /**
+     * The clock used for timing.
+     */
+    private final Clock clock;
+
+    /**
+     * Timing wheel driving the protocol periods.
+     */
+    private final TimingWheel timingWheel;
+
+    /**
+     * Roster kept in step with the members declared dead or learned of through gossip.
+     */
+    private final PeerTracker peerTracker;
+
+    /**
+     * Queues protocol messages for sending to the group.
+     */
+    private final Consumer<Message> sender;
+
+    /**
+     * Source of randomness for probe order and indirect probing.
+     */
+    private final Random random;
+
+    /**
+     * Timer starting each protocol period.
+     */
+    private final TimingWheel.Timeout periodTimer;
+
+    /**
+     * Timer for the indirect probe of the current period.
+     */
+    private final TimingWheel.Timeout indirectTimer;
+
+    /**
+     * Known members other than this instance, keyed by UUID.
+     */
+    private final Map<String, Member> members = new HashMap<>();
+
+    /**
+     * Members in probe order, reshuffled after each full round.
+     */
+    private final List<Member> probeOrder = new ArrayList<>();
+
+    /**
+     * Position of the next member to probe in {@link #probeOrder}.
+     */
+    private int probeIndex;
+
+    /**
+     * Updates waiting to be piggybacked, one per member, least recently sent first.
+     */
+    private final Map<String, Gossip> gossip = new LinkedHashMap<>();
+
+    /**
+     * Members being probed on another member's behalf this period, keyed by probe ID.
+     */
+    private final Map<UUID, String> relaying = new HashMap<>();
+
+    /**
+     * This instance's incarnation, raised to refute suspicion.
+     */
+    private int incarnation;
+
+    /**
+     * ID of this period's probe, or null if no member was probed.
+     */
+    private UUID probeId;
+
+    /**
+     * Member probed this period, or null.
+     */
+    private Member probeTarget;
+
+    /**
+     * Whether this period's probe has been answered.
+     */
+    private boolean probeAnswered;
+
+    /**
+     * Whether the protocol is running.
+     */
+    private boolean running;
+
+    /**
+     * Number of members suspected after missing a probe.
+     */
+    private final MetricsRegistry.Counter suspected;
+
+    /**
+     * Number of members declared dead.
+     */
+    private final MetricsRegistry.Counter declaredDead;
+
+    /**
+     * Number of times this instance refuted a suspicion of itself.
+     */
+    private final MetricsRegistry.Counter refuted;
+
+    /**
+     * Creates the membership protocol for this instance.
+     *
+     * @param instanceId  The ID of this instance
+     * @param clock       The clock to use for timing
+     * @param timingWheel The timing wheel to drive protocol periods, driven by the same clock
+     * @param peerTracker The roster to keep in step with the membership
+     * @param sender      Queues protocol messages for sending to the group
+     * @param metrics     The registry to register membership metrics with
+     */
+    public SwimMembership(String instanceId,
+                          Clock clock,
+                          TimingWheel timingWheel,
+                          PeerTracker peerTracker,
+                          Consumer<Message> sender,
+                          MetricsRegistry metrics) {
+        this(instanceId, clock, timingWheel, peerTracker, sender, metrics, new Random());
+    }
+
+    /**
+     * Creates the membership protocol for this instance with a given source of randomness.
+     *
+     * @param instanceId  The ID of this instance
+     * @param clock       The clock to use for timing
+     * @param timingWheel The timing wheel to drive protocol periods, driven by the same clock
+     * @param peerTracker The roster to keep in step with the membership
+     * @param sender      Queues protocol messages for sending to the group
+     * @param metrics     The registry to register membership metrics with
+     * @param random      The source of randomness for probe order and indirect probing
+     */
+    public SwimMembership(String instanceId,
+                          Clock clock,
+                          TimingWheel timingWheel,
+                          PeerTracker peerTracker,
+                          Consumer<Message> sender,
+                          MetricsRegistry metrics,
+                          Random random) {
+        this.instanceId = instanceId;
+        this.clock = clock;
+        this.timingWheel = timingWheel;
+        this.peerTracker = peerTracker;
+        this.sender = sender;
+        this.random = random;
+        this.periodTimer = timingWheel.timeout(this::startPeriod);
+        this.indirectTimer = timingWheel.timeout(this::probeIndirectly);
+        this.suspected = metrics.counter("membership.suspected");
+        this.declaredDead = metrics.counter("membership.dead");
+        this.refuted = metrics.counter("membership.refuted");
+    }
+
+    /**
+     * Starts probing, announcing this instance to the group. Does nothing if already running.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        enqueue(new MembershipUpdate(instanceId, null, MembershipUpdate.State.ALIVE, incarnation));
+        timingWheel.reschedule(periodTimer, clock.millis() + PROTOCOL_PERIOD_MILLIS);
+    }
+
+    /**
+     * Stops probing and forgets every member.
+     */
+    public synchronized void stop() {
+        running = false;
+        periodTimer.cancel();
+        indirectTimer.cancel();
+        members.clear();
+        probeOrder.clear();
+        probeIndex = 0;
+        gossip.clear();
+        relaying.clear();
+        probeId = null;
+        probeTarget = null;
+    }
+
+    /**
+     * Handles a message received from the group: notes its sender as a member, applies the
+     * membership updates piggybacked on it and, for protocol messages, answers or records them.
+     * Protocol messages also refresh their sender in the peer tracker; other messages are left
+     * to the caller.
+     *
+     * @param message The message
+     * @param address The sender's address
+     * @return true if the message belongs to the protocol and needs no further handling
+     */
+    public synchronized boolean receive(Message message, SocketAddress address) {
+        String senderId = message.senderId();
+        if (!running || senderId.equals(instanceId) || !message.isValidSenderId()) {
+            return message.isProbe();
+        }
+
+        observe(senderId, hostAddress(address));
+        if (message.membership() != null) {
+            message.membership().forEach(this::apply);
+        }
+        if (!message.isProbe()) {
+            return false;
+        }
+
+        peerTracker.updatePeer(senderId, address);
+        String target = message.body();
+        switch (message.type()) {
+            case PING -> {
+                if (instanceId.equals(target)) {
+                    sender.accept(Message.createProbeAck(instanceId, message.messageId(), instanceId));
+                }
+            }
+            case PING_REQ -> {
+                if (!instanceId.equals(target) && members.containsKey(target) && random.nextDouble() < helpChance()) {
+                    relaying.put(message.messageId(), target);
+                    sender.accept(Message.createProbe(instanceId, message.messageId(), target, false));
+                }
+            }
+            case PING_ACK -> {
+                UUID answered = message.originalMessageId();
+                if (answered == null) {
+                    break;
+                }
+                if (answered.equals(probeId)) {
+                    probeAnswered = true;
+                }
+                if (senderId.equals(relaying.get(answered))) {
+                    relaying.remove(answered);
+                    sender.accept(Message.createProbeAck(instanceId, answered, senderId));
+                }
+            }
+            default -> { }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a member remembered from an earlier session, so that it is probed like any other and
+     * declared dead if it has gone. It is not announced to the group, since it has not been heard
+     * from. Known members and this instance are ignored.
+     *
+     * @param memberId The member's UUID
+     * @param address  The member's address in text form
+     */
+    public synchronized void restore(String memberId, String address) {
+        if (!memberId.equals(instanceId) && !members.containsKey(memberId)) {
+            add(new MembershipUpdate(memberId, address, MembershipUpdate.State.ALIVE, 0));
+        }
+    }
+
+    /**
+     * Piggybacks pending membership updates on an outgoing message. Each update is sent a
+     * limited number of times, rotating so every pending update gets its turn.
+     *
+     * @param message The outgoing message
+     * @return The message, carrying updates if any are pending
+     */
+    public synchronized Message piggyback(Message message) {
+        if (gossip.isEmpty()) {
+            return message;
+        }
+        int limit = retransmitLimit();
+        List<Gossip> sent = new ArrayList<>(Math.min(MAX_PIGGYBACKED, gossip.size()));
+        Iterator<Gossip> pending = gossip.values().iterator();
+        while (pending.hasNext() && sent.size() < MAX_PIGGYBACKED) {
+            sent.add(pending.next());
+            pending.remove();
+        }
+        List<MembershipUpdate> updates = new ArrayList<>(sent.size());
+        for (Gossip item : sent) {
+            updates.add(item.update);
+            if (++item.transmissions < limit) {
+                gossip.put(item.update.memberId(), item);
+            }
+        }
+        return message.withMembership(updates);
+    }
+
+    /**
+     * Gets the known members other than this instance and their states.
+     *
+     * @return A snapshot of member states keyed by UUID
+     */
+    public synchronized Map<String, MembershipUpdate.State> members() {
+        Map<String, MembershipUpdate.State> snapshot = new HashMap<>();
+        members.forEach((id, member) -> snapshot.put(id, member.state));
+        return snapshot;
+    }
+
+    /**
+     * Gets this instance's incarnation.
+     *
+     * @return The incarnation number, raised each time a suspicion of this instance is refuted
+     */
+    public synchronized int incarnation() {
+        return incarnation;
+    }
+
+    /**
+     * Ends the current protocol period and starts the next: suspects the member that did not
+     * answer, declares dead the suspects whose time is up, and probes the next member.
+     * Runs on the timing wheel's thread.
+     */
+    private synchronized void startPeriod() {
+        if (!running) {
+            return;
+        }
+        long now = clock.millis();
+        if (probeTarget != null && !probeAnswered && probeTarget.state == MembershipUpdate.State.ALIVE) {
+            probeTarget.state = MembershipUpdate.State.SUSPECT;
+            probeTarget.changedAt = now;
+            suspected.increment();
+            LOG.debug("Suspecting member {} after a missed probe", probeTarget.id);
+            enqueue(probeTarget.update());
+        }
+        expire(now);
+        relaying.clear();
+
+        probeTarget = nextTarget();
+        probeAnswered = false;
+        probeId = UUID.randomUUID();
+        if (probeTarget != null) {
+            sender.accept(Message.createProbe(instanceId, probeId, probeTarget.id, false));
+            timingWheel.reschedule(indirectTimer, now + PROBE_TIMEOUT_MILLIS);
+        } else if (members.isEmpty()) {
+            sender.accept(Message.createProbe(instanceId, probeId, NO_TARGET, false));
+        }
+        timingWheel.reschedule(periodTimer, now + PROTOCOL_PERIOD_MILLIS);
+    }
+
+    /**
+     * Asks the group to repeat an unanswered probe. Runs on the timing wheel's thread.
+     */
+    private synchronized void probeIndirectly() {
+        if (running && probeTarget != null && !probeAnswered) {
+            sender.accept(Message.createProbe(instanceId, probeId, probeTarget.id, true));
+        }
+    }
+
+    /**
+     * Declares dead the suspects whose suspicion timeout has passed and forgets dead members
+     * once stale news of them can no longer arrive.
+     *
+     * @param now The current time in clock milliseconds
+     */
+    private void expire(long now) {
+        long suspicionMillis = suspicionTimeout();
+        Iterator<Member> iterator = members.values().iterator();
+        while (iterator.hasNext()) {
+            Member member = iterator.next();
+            if (member.state == MembershipUpdate.State.SUSPECT && now - member.changedAt >= suspicionMillis) {
+                member.state = MembershipUpdate.State.DEAD;
+                member.changedAt = now;
+                markDead(member);
+                enqueue(member.update());
+            } else if (member.state == MembershipUpdate.State.DEAD && now - member.changedAt >= DEAD_RETENTION_MILLIS) {
+                iterator.remove();
+                gossip.remove(member.id);
+                int index = probeOrder.indexOf(member);
+                probeOrder.remove(index);
+                if (index < probeIndex) {
+                    probeIndex--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the next member to probe, reshuffling the probe order after each full round.
+     *
+     * @return The member, or null if no member is alive or suspected
+     */
+    private Member nextTarget() {
+        for (int checked = 0; checked < probeOrder.size(); checked++) {
+            if (probeIndex >= probeOrder.size()) {
+                Collections.shuffle(probeOrder, random);
+                probeIndex = 0;
+            }
+            Member candidate = probeOrder.get(probeIndex++);
+            if (candidate.state != MembershipUpdate.State.DEAD) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Notes a member heard from directly. A new member is announced to the group; a member
+     * believed dead is told so again, so that it can refute it.
+     *
+     * @param memberId The member's UUID
+     * @param address  The member's address in text form, or null
+     */
+    private void observe(String memberId, String address) {
+        Member member = members.get(memberId);
+        if (member == null) {
+            member = add(new MembershipUpdate(memberId, address, MembershipUpdate.State.ALIVE, 0));
+            enqueue(member.update());
+            return;
+        }
+        if (address != null) {
+            member.address = address;
+        }
+        if (member.state == MembershipUpdate.State.DEAD && !gossip.containsKey(memberId)) {
+            enqueue(member.update());
+        }
+    }
+
+    /**
+     * Applies a gossiped update if it supersedes what is known, passing it on if so.
+     * An update suspecting or declaring this instance dead is refuted.
+     *
+     * @param update The update
+     */
+    private void apply(MembershipUpdate update) {
+        if (update.memberId() == null) {
+            return;
+        }
+        if (update.memberId().equals(instanceId)) {
+            if (update.state() != MembershipUpdate.State.ALIVE && update.incarnation() >= incarnation) {
+                incarnation = update.incarnation() + 1;
+                refuted.increment();
+                LOG.debug("Refuting {} of this instance with incarnation {}", update.state(), incarnation);
+                enqueue(new MembershipUpdate(instanceId, null, MembershipUpdate.State.ALIVE, incarnation));
+            }
+            return;
+        }
+
+        Member member = members.get(update.memberId());
+        if (member == null) {
+            if (update.state() != MembershipUpdate.State.DEAD) {
+                member = add(update);
+                enqueue(member.update());
+                if (update.state() == MembershipUpdate.State.ALIVE) {
+                    addToRoster(member);
+                }
+            }
+            return;
+        }
+        if (!update.overrides(member.state, member.incarnation)) {
+            return;
+        }
+
+        MembershipUpdate.State previous = member.state;
+        member.state = update.state();
+        member.incarnation = update.incarnation();
+        member.changedAt = clock.millis();
+        if (update.address() != null) {
+            member.address = update.address();
+        }
+        enqueue(member.update());
+        if (member.state == MembershipUpdate.State.DEAD) {
+            markDead(member);
+        } else if (previous == MembershipUpdate.State.DEAD) {
+            addToRoster(member);
+        }
+    }
+
+    /**
+     * Adds a member, placing it at a random position in the probe order.
+     *
+     * @param update The member's initial state
+     * @return The member
+     */
+    private Member add(MembershipUpdate update) {
+        var member = new Member(update.memberId(), update.address(), update.state(), update.incarnation(),
+                clock.millis());
+        members.put(member.id, member);
+        int position = random.nextInt(probeOrder.size() + 1);
+        probeOrder.add(position, member);
+        if (position < probeIndex) {
+            probeIndex++;
+        }
+        return member;
+    }
+
+    /**
+     * Records a member declared dead and removes it from the roster.
+     *
+     * @param member The member
+     */
+    private void markDead(Member member) {
+        declaredDead.increment();
+        LOG.debug("Member {} declared dead", member.id);
+        peerTracker.remove(member.id);
+    }
+
+    /**
+     * Adds a member learned of through gossip to the roster, if its address is known.
+     *
+     * @param member The member
+     */
+    private void addToRoster(Member member) {
+        if (member.address == null) {
+            return;
+        }
+        var address = new InetSocketAddress(member.address, 0);
+        if (!address.isUnresolved()) {
+            peerTracker.updatePeer(member.id, address);
+        }
+    }
+
+    /**
+     * Queues an update for piggybacking, replacing any pending update about the same member.
+     *
+     * @param update The update
+     */
+    private void enqueue(MembershipUpdate update) {
+        gossip.remove(update.memberId());
+        gossip.put(update.memberId(), new Gossip(update));
+    }
+
+    /**
+     * Gets the chance that this member helps with an indirect probe, chosen so that the expected
+     * number of helpers among the members other than the prober and the target is constant.
+     *
+     * @return The probability of helping
+     */
+    private double helpChance() {
+        int candidates = Math.max(1, members.size() - 1);
+        return Math.min(1.0, (double) INDIRECT_PROBES / candidates);
+    }
+
+    /**
+     * Gets the number of times each update is piggybacked.
+     *
+     * @return The retransmission limit for the current group size
+     */
+    private int retransmitLimit() {
+        return RETRANSMIT_MULTIPLIER * (int) Math.ceil(Math.log10(members.size() + 2));
+    }
+
+    /**
+     * Gets how long a suspect has to refute before it is declared dead.
+     *
+     * @return The suspicion timeout in milliseconds for the current group size
+     */
+    private long suspicionTimeout() {
+        double scale = Math.max(1.0, Math.log10(members.size() + 1));
+        return (long) (SUSPICION_PERIODS * PROTOCOL_PERIOD_MILLIS * scale);
+    }
+
+    /**
+     * Gets the host address of a socket address.
+     *
+     * @param address The socket address
+     * @return The host address in text form, or null if it has none
+     */
+    private static String hostAddress(SocketAddress address) {
+        if (address instanceof InetSocketAddress inet && inet.getAddress() != null) {
+            return inet.getAddress().getHostAddress();
+        }
+        return null;
+    }
+
+    /**
+     * What this instance knows about another member.
+     */
+    private static final class Member {
+        /**
+         * The member's UUID.
+         */
+        private final String id;
+
+        /**
+         * The member's address in text form, or null if unknown.
+         */
+        private String address;
+
+        /**
+         * The member's state.
+         */
+        private MembershipUpdate.State state;
+
+        /**
+         * The member's incarnation.
+         */
+        private int incarnation;
+
+        /**
+         * When the member's state last changed, in clock milliseconds.
+         */
+        private long changedAt;
+
+        private Member(String id, String address, MembershipUpdate.State state, int incarnation, long changedAt) {
+            this.id = id;
+            this.address = address;
+            this.state = state;
+            this.incarnation = incarnation;
+            this.changedAt = changedAt;
+        }
+
+        /**
+         * Describes the member's current state as an update.
+         *
+         * @return The update
+         */
+        private MembershipUpdate update() {
+            return new MembershipUpdate(id, address, state, incarnation);
+        }
+    }
+
+    /**
+     * An update waiting to be piggybacked.
+     */
+    private static final class Gossip {
+        /**
+         * The update.
+         */
+        private final MembershipUpdate update;
+
+        /**
+         * Number of times the update has been sent.
+         */
+        private int transmissions;
+
+        private Gossip(MembershipUpdate update) {
+            this.update = update;
+        }
+    }
+}
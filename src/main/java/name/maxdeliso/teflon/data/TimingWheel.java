@@ -0,0 +1,531 @@
+package name.maxdeliso.teflon.data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hierarchical timing wheel for scheduling per-entry deadlines with O(1) schedule and cancel.
+ * Time is measured in millisecond ticks of the injected {@link Clock}. Each of the six levels
+ * has 64 slots, one per 6-bit digit of the deadline, so the wheel spans roughly two years;
+ * timers are placed at the level of the highest digit in which their deadline differs from the
+ * current time and cascade to lower levels as time reaches their slot.
+ * An occupancy bitmap per level lets the wheel jump directly to the next non-empty slot, and the
+ * optional driver thread sleeps until the earliest deadline instead of waking periodically.
+ */
+public final class TimingWheel {
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = LogManager.getLogger(TimingWheel.class);
+
+    /**
+     * Number of bits of the deadline handled by each level.
+     */
+    private static final int BITS_PER_LEVEL = 6;
+
+    /**
+     * Number of slots per level.
+     */
+    private static final int SLOTS_PER_LEVEL = 1 << BITS_PER_LEVEL;
+
+    /**
+     * Number of levels.
+     */
+    private static final int LEVELS = 6;
+
+    /**
+     * Bit position of the lowest digit handled by the top level.
+     */
+    private static final int TOP_SHIFT = BITS_PER_LEVEL * (LEVELS - 1);
+
+    /**
+     * Longest delay placed without re-placement. The top level is used as a ring, and stopping
+     * one slot short of a full revolution keeps wrapped timers out of the current slot; longer
+     * timers are parked at the furthest slot and re-placed when they cascade.
+     */
+    private static final long MAX_SPAN = (1L << (TOP_SHIFT + BITS_PER_LEVEL)) - (1L << TOP_SHIFT);
+
+    /**
+     * The clock driving the wheel.
+     */
+    private final Clock clock;
+
+    /**
+     * Heads of the intrusive timer lists, indexed by level then slot.
+     */
+    private final Timeout[] slots = new Timeout[LEVELS * SLOTS_PER_LEVEL];
+
+    /**
+     * Occupancy bitmap per level, one bit per slot.
+     */
+    private final long[] occupied = new long[LEVELS];
+
+    /**
+     * Guards all wheel state.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signalled when a timer is scheduled earlier than the driver's planned wakeup.
+     */
+    private final Condition earlierDeadline = lock.newCondition();
+
+    /**
+     * Time up to which every deadline has been processed.
+     */
+    private long currentTime;
+
+    /**
+     * Number of scheduled timers.
+     */
+    private int pending;
+
+    /**
+     * Time the driver thread plans to wake up, or Long.MAX_VALUE if it is idle.
+     */
+    private long plannedWakeup = Long.MAX_VALUE;
+
+    /**
+     * The driver thread, if started.
+     */
+    private Thread driver;
+
+    /**
+     * Whether the wheel has been shut down.
+     */
+    private volatile boolean shutdown;
+
+    /**
+     * Creates a timing wheel driven by the given clock.
+     * The wheel only fires timers when {@link #advance()} is called until {@link #start()} is used.
+     *
+     * @param clock The clock driving the wheel
+     */
+    public TimingWheel(Clock clock) {
+        this.clock = clock;
+        this.currentTime = clock.millis();
+    }
+
+    /**
+     * Starts a daemon thread that fires timers as they come due.
+     *
+     * @param name The name of the driver thread
+     * @return This wheel
+     */
+    public TimingWheel start(String name) {
+        lock.lock();
+        try {
+            if (driver == null && !shutdown) {
+                driver = new Thread(this::drive, name);
+                driver.setDaemon(true);
+                driver.start();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Creates a timer handle that is not yet scheduled; {@link #reschedule} arms it.
+     * Components that keep one long-lived timer use this to avoid allocating per deadline.
+     *
+     * @param task The task to run; it runs on the advancing thread, so it must be short
+     * @return The unscheduled timer
+     */
+    public Timeout timeout(Runnable task) {
+        return new Timeout(this, task);
+    }
+
+    /**
+     * Schedules a task to run at a deadline.
+     * Deadlines that have already passed fire on the next advance.
+     *
+     * @param deadlineMillis The deadline in clock milliseconds
+     * @param task           The task to run; it runs on the advancing thread, so it must be short
+     * @return A handle for cancelling or rescheduling the timer
+     */
+    public Timeout schedule(long deadlineMillis, Runnable task) {
+        Timeout timeout = new Timeout(this, task);
+        reschedule(timeout, deadlineMillis);
+        return timeout;
+    }
+
+    /**
+     * Schedules a task to run after a delay from the clock's current time.
+     *
+     * @param delayMillis The delay in milliseconds
+     * @param task        The task to run
+     * @return A handle for cancelling or rescheduling the timer
+     */
+    public Timeout scheduleAfter(long delayMillis, Runnable task) {
+        return schedule(clock.millis() + delayMillis, task);
+    }
+
+    /**
+     * Moves a timer to a new deadline, scheduling it again if it has fired or was cancelled.
+     * Reusing the handle avoids an allocation per reschedule.
+     *
+     * @param timeout        The timer to move
+     * @param deadlineMillis The new deadline in clock milliseconds
+     */
+    public void reschedule(Timeout timeout, long deadlineMillis) {
+        if (timeout.wheel != this) {
+            throw new IllegalArgumentException("Timeout belongs to a different wheel");
+        }
+        lock.lock();
+        try {
+            if (timeout.bucket >= 0) {
+                unlink(timeout);
+            }
+            timeout.deadline = deadlineMillis;
+            place(timeout);
+            pending++;
+            if (deadlineMillis < plannedWakeup) {
+                earlierDeadline.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fires every timer whose deadline has been reached by the clock.
+     *
+     * @return The number of timers fired
+     */
+    public int advance() {
+        return advanceTo(clock.millis());
+    }
+
+    /**
+     * Gets the number of scheduled timers.
+     *
+     * @return The number of timers that have neither fired nor been cancelled
+     */
+    public int pendingCount() {
+        lock.lock();
+        try {
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the driver thread. Scheduled timers are discarded without firing.
+     */
+    public void shutdown() {
+        Thread thread;
+        lock.lock();
+        try {
+            shutdown = true;
+            thread = driver;
+            earlierDeadline.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Fires every timer with a deadline at or before the target time.
+     *
+     * @param target The time to advance to
+     * @return The number of timers fired
+     */
+    private int advanceTo(long target) {
+        // Collected apart from the timers' links, which a concurrent reschedule may rewrite
+        List<Timeout> expired = null;
+        lock.lock();
+        try {
+            while (target > currentTime) {
+                int level = lowestOccupiedLevel();
+                if (level < 0) {
+                    currentTime = target;
+                    break;
+                }
+
+                int slot = nextSlot(level);
+                long slotTime = slotTime(level, slot);
+                if (slotTime > target) {
+                    currentTime = target;
+                    break;
+                }
+
+                currentTime = slotTime;
+                Timeout timeout = detachSlot(level * SLOTS_PER_LEVEL + slot);
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    if (timeout.deadline <= currentTime) {
+                        timeout.next = null;
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add(timeout);
+                    } else {
+                        place(timeout);
+                        pending++;
+                    }
+                    timeout = next;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (expired == null) {
+            return 0;
+        }
+        for (Timeout timeout : expired) {
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                LOG.error("Timer task failed", e);
+            }
+        }
+        return expired.size();
+    }
+
+    /**
+     * Driver thread loop: sleeps until the earliest deadline, then advances.
+     */
+    private void drive() {
+        while (!shutdown) {
+            lock.lock();
+            try {
+                plannedWakeup = earliestDeadline();
+                long now = clock.millis();
+                if (plannedWakeup == Long.MAX_VALUE) {
+                    earlierDeadline.await();
+                } else if (plannedWakeup > now) {
+                    earlierDeadline.await(plannedWakeup - now, TimeUnit.MILLISECONDS);
+                }
+                plannedWakeup = Long.MAX_VALUE;
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                lock.unlock();
+            }
+            advance();
+        }
+        LOG.debug("Timing wheel driver stopped");
+    }
+
+    /**
+     * Finds the earliest deadline of any scheduled timer.
+     * The next occupied slot of the lowest occupied level covers a time range that precedes
+     * every other slot, so only its list needs to be scanned.
+     *
+     * @return The earliest deadline, or Long.MAX_VALUE if nothing is scheduled
+     */
+    private long earliestDeadline() {
+        int level = lowestOccupiedLevel();
+        if (level < 0) {
+            return Long.MAX_VALUE;
+        }
+        int slot = nextSlot(level);
+        long earliest = Long.MAX_VALUE;
+        for (Timeout t = slots[level * SLOTS_PER_LEVEL + slot]; t != null; t = t.next) {
+            earliest = Math.min(earliest, t.deadline);
+        }
+        return earliest;
+    }
+
+    /**
+     * Finds the lowest level with an occupied slot.
+     *
+     * @return The level, or -1 if the wheel is empty
+     */
+    private int lowestOccupiedLevel() {
+        for (int level = 0; level < LEVELS; level++) {
+            if (occupied[level] != 0) {
+                return level;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first occupied slot of a level after the current time's digit, wrapping around.
+     * Below the top level no timer sits at or before the current digit, so the search never wraps.
+     *
+     * @param level An occupied level
+     * @return The slot index
+     */
+    private int nextSlot(int level) {
+        int digit = digit(currentTime, level);
+        long rotated = Long.rotateRight(occupied[level], digit + 1);
+        return (digit + 1 + Long.numberOfTrailingZeros(rotated)) & (SLOTS_PER_LEVEL - 1);
+    }
+
+    /**
+     * Computes the time at which the current time enters a slot.
+     *
+     * @param level The level
+     * @param slot  A slot after the current time's digit, possibly wrapped into the next block
+     * @return The first time whose digit at the level equals the slot with all lower digits zero
+     */
+    private long slotTime(int level, int slot) {
+        int shift = level * BITS_PER_LEVEL;
+        long blockSize = 1L << (shift + BITS_PER_LEVEL);
+        long time = (currentTime & -blockSize) | ((long) slot << shift);
+        return slot > digit(currentTime, level) ? time : time + blockSize;
+    }
+
+    /**
+     * Extracts the digit of a time handled by a level.
+     *
+     * @param time  The time
+     * @param level The level
+     * @return The digit
+     */
+    private static int digit(long time, int level) {
+        return (int) (time >>> (level * BITS_PER_LEVEL)) & (SLOTS_PER_LEVEL - 1);
+    }
+
+    /**
+     * Links a timer into the slot for its deadline relative to the current time.
+     *
+     * @param timeout The timer to place
+     */
+    private void place(Timeout timeout) {
+        long effective = Math.min(Math.max(timeout.deadline, currentTime + 1), currentTime + MAX_SPAN);
+        int highestDifference = Long.SIZE - 1 - Long.numberOfLeadingZeros(effective ^ currentTime);
+        int level = Math.min(highestDifference / BITS_PER_LEVEL, LEVELS - 1);
+        int slot = digit(effective, level);
+        int bucket = level * SLOTS_PER_LEVEL + slot;
+
+        Timeout head = slots[bucket];
+        timeout.bucket = bucket;
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        slots[bucket] = timeout;
+        occupied[level] |= 1L << slot;
+    }
+
+    /**
+     * Unlinks a scheduled timer from its slot.
+     *
+     * @param timeout The timer to unlink
+     */
+    private void unlink(Timeout timeout) {
+        int bucket = timeout.bucket;
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        if (slots[bucket] == null) {
+            occupied[bucket / SLOTS_PER_LEVEL] &= ~(1L << (bucket % SLOTS_PER_LEVEL));
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        pending--;
+    }
+
+    /**
+     * Removes every timer from a slot.
+     *
+     * @param bucket The slot index
+     * @return The detached list, linked through {@code next}
+     */
+    private Timeout detachSlot(int bucket) {
+        Timeout head = slots[bucket];
+        slots[bucket] = null;
+        occupied[bucket / SLOTS_PER_LEVEL] &= ~(1L << (bucket % SLOTS_PER_LEVEL));
+        for (Timeout t = head; t != null; t = t.next) {
+            t.prev = null;
+            t.bucket = -1;
+            pending--;
+        }
+        return head;
+    }
+
+    /**
+     * Handle for a scheduled timer.
+     */
+    public static final class Timeout {
+        /**
+         * The wheel this timer belongs to.
+         */
+        private final TimingWheel wheel;
+
+        /**
+         * The task to run when the timer fires.
+         */
+        private final Runnable task;
+
+        /**
+         * The deadline in clock milliseconds.
+         */
+        private long deadline;
+
+        /**
+         * The slot holding this timer, or -1 if it is not scheduled.
+         */
+        private int bucket = -1;
+
+        /**
+         * Previous timer in the slot list.
+         */
+        private Timeout prev;
+
+        /**
+         * Next timer in the slot list.
+         */
+        private Timeout next;
+
+        private Timeout(TimingWheel wheel, Runnable task) {
+            this.wheel = wheel;
+            this.task = task;
+        }
+
+        /**
+         * Cancels the timer.
+         *
+         * @return true if the timer was scheduled and will no longer fire
+         */
+        public boolean cancel() {
+            wheel.lock.lock();
+            try {
+                if (bucket < 0) {
+                    return false;
+                }
+                wheel.unlink(this);
+                return true;
+            } finally {
+                wheel.lock.unlock();
+            }
+        }
+
+        /**
+         * Gets the deadline.
+         *
+         * @return The deadline in clock milliseconds
+         */
+        public long deadline() {
+            return deadline;
+        }
+    }
+}
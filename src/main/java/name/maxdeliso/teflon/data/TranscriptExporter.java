@@ -0,0 +1,305 @@
+package name.maxdeliso.teflon.data;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Optional;
+
+import static org.apache.commons.text.StringEscapeUtils.escapeHtml4;
+
+/**
+ * Writes a transcript to a file one message at a time, so that exporting a history of any
+ * length takes the same memory as exporting a single message.
+ * Each message is formatted into a reused builder and encoded as UTF-8 into a fixed buffer,
+ * which is written to the file channel whenever it fills; nothing is kept once written.
+ * The transcript is written to a temporary file beside the target and moved into place only
+ * when committed, so a failed or cancelled export leaves any existing file untouched.
+ * Not thread safe: a transcript is written by one thread.
+ */
+public final class TranscriptExporter implements Closeable {
+    /**
+     * Size of the buffer messages are encoded into before being written.
+     */
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * Format of the time shown for each message in text and HTML transcripts.
+     */
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    /**
+     * Start of an HTML transcript, up to the first message.
+     */
+    private static final String HTML_HEADER = """
+            <!DOCTYPE html>
+            <html>
+            <head>
+            <meta charset="utf-8">
+            <title>Teflon transcript</title>
+            </head>
+            <body>
+            <ol class="transcript">
+            """;
+
+    /**
+     * End of an HTML transcript, after the last message.
+     */
+    private static final String HTML_FOOTER = """
+            </ol>
+            </body>
+            </html>
+            """;
+
+    private final Path file;
+    private final Path temporary;
+    private final FileChannel channel;
+    private final Format format;
+    private final Gson gson;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final StringBuilder line = new StringBuilder();
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Number of messages written.
+     */
+    private long messages;
+
+    /**
+     * Number of bytes handed to the channel.
+     */
+    private long bytes;
+
+    /**
+     * Whether the transcript has been committed or discarded.
+     */
+    private boolean closed;
+
+    private TranscriptExporter(Path file, Path temporary, FileChannel channel, Format format, Gson gson) {
+        this.file = file;
+        this.temporary = temporary;
+        this.channel = channel;
+        this.format = format;
+        this.gson = gson;
+    }
+
+    /**
+     * Starts a transcript in a temporary file beside the given one and writes its header.
+     *
+     * @param file   The file to write
+     * @param format The format of the transcript
+     * @return The exporter, which must be committed to replace the file, and closed
+     * @throws IOException if the temporary file cannot be opened
+     */
+    public static TranscriptExporter open(Path file, Format format) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        var exporter = new TranscriptExporter(file, temporary, channel, format, new Gson());
+        if (format == Format.HTML) {
+            try {
+                exporter.emit(HTML_HEADER);
+            } catch (IOException e) {
+                exporter.close();
+                throw e;
+            }
+        }
+        return exporter;
+    }
+
+    /**
+     * Appends a message to the transcript.
+     *
+     * @param message     The message
+     * @param epochMillis The time shown for the message
+     * @throws IOException if the transcript cannot be written
+     */
+    public void write(Message message, long epochMillis) throws IOException {
+        line.setLength(0);
+        switch (format) {
+            case HTML -> line.append("<li><time datetime=\"")
+                    .append(Instant.ofEpochMilli(epochMillis))
+                    .append("\">")
+                    .append(TIME_FORMAT.format(Instant.ofEpochMilli(epochMillis)))
+                    .append("</time> <b>")
+                    .append(escapeHtml4(message.senderId()))
+                    .append("</b>: ")
+                    .append(escapeHtml4(message.body()))
+                    .append("</li>\n");
+            case JSONL -> {
+                var json = new JsonObject();
+                json.addProperty("time", Instant.ofEpochMilli(epochMillis).toString());
+                json.addProperty("messageId", message.messageId().toString());
+                json.addProperty("senderId", message.senderId());
+                json.addProperty("body", message.body());
+                gson.toJson(json, line);
+                line.append('\n');
+            }
+            case TXT -> line.append(TIME_FORMAT.format(Instant.ofEpochMilli(epochMillis)))
+                    .append(' ')
+                    .append(message.senderId())
+                    .append(": ")
+                    .append(message.body())
+                    .append('\n');
+            default -> throw new IllegalStateException("Unknown format: " + format);
+        }
+        emit(line);
+        messages++;
+    }
+
+    /**
+     * Returns the number of messages written so far.
+     *
+     * @return The message count
+     */
+    public long messages() {
+        return messages;
+    }
+
+    /**
+     * Returns the number of bytes written so far, including any still buffered.
+     *
+     * @return The byte count
+     */
+    public long bytes() {
+        return bytes + buffer.position();
+    }
+
+    /**
+     * Writes the footer, flushes the buffer, closes the temporary file and moves it into place.
+     *
+     * @throws IOException if the transcript cannot be completed, in which case it is discarded
+     */
+    public void commit() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Transcript already closed");
+        }
+        closed = true;
+        try {
+            try (channel) {
+                if (format == Format.HTML) {
+                    emit(HTML_FOOTER);
+                }
+                drain();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Discards the transcript unless it was committed. Closing again has no effect.
+     *
+     * @throws IOException if the temporary file cannot be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Encodes text into the buffer, writing the buffer out whenever it fills.
+     *
+     * @param text The text to encode
+     * @throws IOException if the buffer cannot be written
+     */
+    private void emit(CharSequence text) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        CoderResult result = encoder.encode(chars, buffer, true);
+        while (result.isOverflow()) {
+            drain();
+            result = encoder.encode(chars, buffer, true);
+        }
+        result = encoder.flush(buffer);
+        while (result.isOverflow()) {
+            drain();
+            result = encoder.flush(buffer);
+        }
+    }
+
+    /**
+     * Writes everything in the buffer to the file and empties it.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytes += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Formats a transcript can be exported in.
+     */
+    public enum Format {
+        HTML, // A standalone HTML page with one list item per message
+        JSONL, // One JSON object per line
+        TXT; // One plain text line per message
+
+        /**
+         * Looks up a format by name, ignoring case.
+         *
+         * @param name The format name, such as "html"
+         * @return The format, or empty if there is none by that name
+         */
+        public static Optional<Format> named(String name) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name)) {
+                    return Optional.of(format);
+                }
+            }
+            return Optional.empty();
+        }
+
+        /**
+         * Picks the format matching a file's extension.
+         *
+         * @param file The file to export to
+         * @return The format, or empty if the extension names none
+         */
+        public static Optional<Format> of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            int dot = name.lastIndexOf('.');
+            if (dot < 0) {
+                return Optional.empty();
+            }
+            return switch (name.substring(dot + 1)) {
+                case "htm" -> Optional.of(HTML);
+                case "json" -> Optional.of(JSONL);
+                default -> named(name.substring(dot + 1));
+            };
+        }
+    }
+}
@@ -0,0 +1,667 @@
+package name.maxdeliso.teflon.data;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Concurrent open-addressing hash table keyed by UUIDs held as two primitive longs.
+ * Each entry has a timestamp, a fixed number of 64-bit state words and an optional attachment
+ * object, all stored in parallel arrays, so tracking an entry allocates nothing once the table
+ * has grown to its working size.
+ * The table is split into independently locked stripes. Writers take a stripe's write lock;
+ * readers first try an optimistic read and fall back to the read lock if a writer intervened.
+ * Within a stripe, collisions are resolved by linear probing and removals shift later entries
+ * back, so there are no tombstones. The nil UUID is reserved to mark empty slots.
+ */
+public final class UuidTable {
+    /**
+     * Returned by {@link #timestamp(long, long)} when the key is absent.
+     */
+    public static final long ABSENT = Long.MIN_VALUE;
+
+    /**
+     * Number of stripes; a power of two.
+     */
+    private static final int STRIPES = 16;
+
+    /**
+     * Bits of the hash used to select a stripe.
+     */
+    private static final int STRIPE_SHIFT = Long.SIZE - Integer.numberOfTrailingZeros(STRIPES);
+
+    /**
+     * Initial slots per stripe; a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Length of a canonical UUID string.
+     */
+    private static final int UUID_STRING_LENGTH = 36;
+
+    /**
+     * Positions of the dashes in a canonical UUID string.
+     */
+    private static final int[] DASH_POSITIONS = {8, 13, 18, 23};
+
+    /**
+     * Position in a canonical UUID string where the least significant bits begin.
+     */
+    private static final int LEAST_SIGNIFICANT_START = 19;
+
+    /**
+     * Number of hexadecimal digits in each half of a UUID.
+     */
+    private static final int HEX_DIGITS_PER_HALF = 16;
+
+    /**
+     * Number of bits in a hexadecimal digit.
+     */
+    private static final int HEX_DIGIT_BITS = 4;
+
+    /**
+     * Radix of hexadecimal digits.
+     */
+    private static final int HEX_RADIX = 16;
+
+    /**
+     * Multiplier used to spread key bits across the hash.
+     */
+    private static final long MIX_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Number of state words per entry.
+     */
+    private final int stateWords;
+
+    /**
+     * The stripes.
+     */
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * Creates a table with the given number of state words per entry.
+     *
+     * @param stateWords The number of 64-bit state words per entry
+     */
+    public UuidTable(int stateWords) {
+        if (stateWords < 0) {
+            throw new IllegalArgumentException("stateWords must not be negative");
+        }
+        this.stateWords = stateWords;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(new Storage(INITIAL_CAPACITY, stateWords));
+        }
+    }
+
+    /**
+     * Inserts an entry, or resets an existing one, with the given timestamp, zeroed state
+     * words and no attachment.
+     *
+     * @param msb       The most significant bits of the key
+     * @param lsb       The least significant bits of the key
+     * @param timestamp The entry's timestamp
+     * @return true if the key was not present
+     */
+    public boolean put(long msb, long lsb, long timestamp) {
+        requireKey(msb, lsb);
+        long hash = hash(msb, lsb);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            Storage storage = stripe.storage;
+            int slot = storage.find(msb, lsb, hash);
+            boolean inserted = slot < 0;
+            if (inserted) {
+                if ((storage.size + 1) * 4L > storage.capacity() * 3L) {
+                    storage = storage.grow();
+                    stripe.storage = storage;
+                }
+                slot = storage.claim(msb, lsb, hash);
+            }
+            storage.timestamps[slot] = timestamp;
+            Arrays.fill(storage.states, slot * stateWords, (slot + 1) * stateWords, 0);
+            storage.attachments[slot] = null;
+            return inserted;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets an entry's timestamp.
+     *
+     * @param msb The most significant bits of the key
+     * @param lsb The least significant bits of the key
+     * @return The timestamp, or {@link #ABSENT} if the key is not present
+     */
+    public long timestamp(long msb, long lsb) {
+        long hash = hash(msb, lsb);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Storage storage = stripe.storage;
+            int slot = storage.find(msb, lsb, hash);
+            long value = slot >= 0 ? storage.timestamps[slot] : ABSENT;
+            if (stripe.lock.validate(stamp)) {
+                return value;
+            }
+        }
+        stamp = stripe.lock.readLock();
+        try {
+            Storage storage = stripe.storage;
+            int slot = storage.find(msb, lsb, hash);
+            return slot >= 0 ? storage.timestamps[slot] : ABSENT;
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Gets one of an entry's state words.
+     *
+     * @param msb  The most significant bits of the key
+     * @param lsb  The least significant bits of the key
+     * @param word The index of the state word
+     * @return The state word, or zero if the key is not present
+     */
+    public long state(long msb, long lsb, int word) {
+        checkWord(word);
+        long hash = hash(msb, lsb);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Storage storage = stripe.storage;
+            int slot = storage.find(msb, lsb, hash);
+            long value = slot >= 0 ? storage.states[slot * stateWords + word] : 0;
+            if (stripe.lock.validate(stamp)) {
+                return value;
+            }
+        }
+        stamp = stripe.lock.readLock();
+        try {
+            Storage storage = stripe.storage;
+            int slot = storage.find(msb, lsb, hash);
+            return slot >= 0 ? storage.states[slot * stateWords + word] : 0;
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Sets bits in one of an entry's state words.
+     *
+     * @param msb  The most significant bits of the key
+     * @param lsb  The least significant bits of the key
+     * @param word The index of the state word
+     * @param bits The bits to set
+     * @return true if the key was present
+     */
+    public boolean setStateBits(long msb, long lsb, int word, long bits) {
+        checkWord(word);
+        long hash = hash(msb, lsb);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            Storage storage = stripe.storage;
+            int slot = storage.find(msb, lsb, hash);
+            if (slot < 0) {
+                return false;
+            }
+            storage.states[slot * stateWords + word] |= bits;
+            return true;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Updates an entry's timestamp.
+     *
+     * @param msb       The most significant bits of the key
+     * @param lsb       The least significant bits of the key
+     * @param timestamp The new timestamp
+     * @return true if the key was present
+     */
+    public boolean touch(long msb, long lsb, long timestamp) {
+        long hash = hash(msb, lsb);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            Storage storage = stripe.storage;
+            int slot = storage.find(msb, lsb, hash);
+            if (slot < 0) {
+                return false;
+            }
+            storage.timestamps[slot] = timestamp;
+            return true;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets an entry's attachment.
+     *
+     * @param msb The most significant bits of the key
+     * @param lsb The least significant bits of the key
+     * @param <T> The attachment type
+     * @return The attachment, or null if the key is not present or has none
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T attachment(long msb, long lsb) {
+        long hash = hash(msb, lsb);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.readLock();
+        try {
+            Storage storage = stripe.storage;
+            int slot = storage.find(msb, lsb, hash);
+            return slot >= 0 ? (T) storage.attachments[slot] : null;
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Replaces an entry's attachment while holding the stripe's write lock.
+     * The update function must not access this table.
+     *
+     * @param msb    The most significant bits of the key
+     * @param lsb    The least significant bits of the key
+     * @param update Computes the new attachment from the current one, which may be null
+     * @param <T>    The attachment type
+     * @return The new attachment, or null if the key is not present
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T updateAttachment(long msb, long lsb, UnaryOperator<T> update) {
+        long hash = hash(msb, lsb);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            Storage storage = stripe.storage;
+            int slot = storage.find(msb, lsb, hash);
+            if (slot < 0) {
+                return null;
+            }
+            T updated = update.apply((T) storage.attachments[slot]);
+            storage.attachments[slot] = updated;
+            return updated;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes an entry if its timestamp is at or before a cutoff.
+     *
+     * @param msb    The most significant bits of the key
+     * @param lsb    The least significant bits of the key
+     * @param cutoff The latest timestamp to remove
+     * @return true if the entry was removed
+     */
+    public boolean removeIfNotAfter(long msb, long lsb, long cutoff) {
+        return remove(msb, lsb, cutoff);
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param msb The most significant bits of the key
+     * @param lsb The least significant bits of the key
+     * @return true if the entry was removed
+     */
+    public boolean remove(long msb, long lsb) {
+        return remove(msb, lsb, Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return The number of entries
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                size += stripe.storage.size;
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes every entry and releases grown storage.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.writeLock();
+            try {
+                stripe.storage = new Storage(INITIAL_CAPACITY, stateWords);
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Visits every entry, one stripe at a time under its read lock.
+     * The visitor must not modify this table.
+     *
+     * @param visitor The visitor
+     */
+    public void forEach(Visitor visitor) {
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                Storage storage = stripe.storage;
+                for (int slot = 0; slot < storage.capacity(); slot++) {
+                    if (storage.occupied(slot)) {
+                        visitor.visit(storage.msbs[slot], storage.lsbs[slot], storage.timestamps[slot],
+                                storage.attachments[slot]);
+                    }
+                }
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Parses the most significant bits of a canonical UUID string without allocating.
+     *
+     * @param id A UUID in canonical 8-4-4-4-12 form
+     * @return The most significant 64 bits
+     * @throws IllegalArgumentException if the string is not a canonical UUID
+     */
+    public static long mostSignificantBits(CharSequence id) {
+        checkUuidFormat(id);
+        return parseHalf(id, 0);
+    }
+
+    /**
+     * Parses the least significant bits of a canonical UUID string without allocating.
+     *
+     * @param id A UUID in canonical 8-4-4-4-12 form
+     * @return The least significant 64 bits
+     * @throws IllegalArgumentException if the string is not a canonical UUID
+     */
+    public static long leastSignificantBits(CharSequence id) {
+        checkUuidFormat(id);
+        return parseHalf(id, LEAST_SIGNIFICANT_START);
+    }
+
+    /**
+     * Removes an entry if its timestamp is at or before a cutoff.
+     *
+     * @param msb    The most significant bits of the key
+     * @param lsb    The least significant bits of the key
+     * @param cutoff The latest timestamp to remove
+     * @return true if the entry was removed
+     */
+    private boolean remove(long msb, long lsb, long cutoff) {
+        long hash = hash(msb, lsb);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            Storage storage = stripe.storage;
+            int slot = storage.find(msb, lsb, hash);
+            if (slot < 0 || storage.timestamps[slot] > cutoff) {
+                return false;
+            }
+            storage.removeAt(slot);
+            return true;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    private Stripe stripe(long hash) {
+        return stripes[(int) (hash >>> STRIPE_SHIFT)];
+    }
+
+    private void checkWord(int word) {
+        if (word < 0 || word >= stateWords) {
+            throw new IndexOutOfBoundsException("State word " + word + " out of range");
+        }
+    }
+
+    private static void requireKey(long msb, long lsb) {
+        if (msb == 0 && lsb == 0) {
+            throw new IllegalArgumentException("The nil UUID cannot be stored");
+        }
+    }
+
+    /**
+     * Mixes both halves of a key into a well-distributed hash.
+     *
+     * @param msb The most significant bits of the key
+     * @param lsb The least significant bits of the key
+     * @return The hash; high bits select the stripe, low bits the slot
+     */
+    private static long hash(long msb, long lsb) {
+        long h = (msb ^ Long.rotateLeft(lsb, Integer.SIZE)) * MIX_MULTIPLIER;
+        return h ^ (h >>> Integer.SIZE);
+    }
+
+    private static void checkUuidFormat(CharSequence id) {
+        if (id.length() != UUID_STRING_LENGTH) {
+            throw new IllegalArgumentException("Not a canonical UUID: " + id);
+        }
+        for (int position : DASH_POSITIONS) {
+            if (id.charAt(position) != '-') {
+                throw new IllegalArgumentException("Not a canonical UUID: " + id);
+            }
+        }
+    }
+
+    /**
+     * Parses sixteen hexadecimal digits, skipping dashes.
+     *
+     * @param id    A UUID in canonical form
+     * @param start The position of the first digit
+     * @return The parsed bits
+     */
+    private static long parseHalf(CharSequence id, int start) {
+        long value = 0;
+        int digits = 0;
+        for (int i = start; digits < HEX_DIGITS_PER_HALF; i++) {
+            char c = id.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            int digit = Character.digit(c, HEX_RADIX);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Not a canonical UUID: " + id);
+            }
+            value = value << HEX_DIGIT_BITS | digit;
+            digits++;
+        }
+        return value;
+    }
+
+    /**
+     * Receives entries from {@link #forEach(Visitor)}.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * Visits an entry.
+         *
+         * @param msb        The most significant bits of the key
+         * @param lsb        The least significant bits of the key
+         * @param timestamp  The entry's timestamp
+         * @param attachment The entry's attachment, or null
+         */
+        void visit(long msb, long lsb, long timestamp, Object attachment);
+    }
+
+    /**
+     * A lock and the storage it guards.
+     */
+    private static final class Stripe {
+        /**
+         * Guards the storage; replaced storage is published under the write lock.
+         */
+        private final StampedLock lock = new StampedLock();
+
+        /**
+         * The stripe's entries.
+         */
+        private Storage storage;
+
+        Stripe(Storage storage) {
+            this.storage = storage;
+        }
+    }
+
+    /**
+     * Parallel arrays holding a stripe's entries. All arrays are replaced together on growth,
+     * so an optimistic reader always sees arrays of matching length.
+     */
+    private static final class Storage {
+        /**
+         * Most significant key bits per slot; zero with a zero lsb marks an empty slot.
+         */
+        private final long[] msbs;
+
+        /**
+         * Least significant key bits per slot.
+         */
+        private final long[] lsbs;
+
+        /**
+         * Timestamp per slot.
+         */
+        private final long[] timestamps;
+
+        /**
+         * State words, {@code stateWords} per slot.
+         */
+        private final long[] states;
+
+        /**
+         * Attachment per slot.
+         */
+        private final Object[] attachments;
+
+        /**
+         * Number of state words per slot.
+         */
+        private final int stateWords;
+
+        /**
+         * Number of occupied slots.
+         */
+        private int size;
+
+        Storage(int capacity, int stateWords) {
+            this.msbs = new long[capacity];
+            this.lsbs = new long[capacity];
+            this.timestamps = new long[capacity];
+            this.states = new long[capacity * stateWords];
+            this.attachments = new Object[capacity];
+            this.stateWords = stateWords;
+        }
+
+        int capacity() {
+            return msbs.length;
+        }
+
+        boolean occupied(int slot) {
+            return msbs[slot] != 0 || lsbs[slot] != 0;
+        }
+
+        /**
+         * Finds a key's slot. Bounded by the capacity so that an optimistic reader racing a
+         * writer always terminates; its result is then discarded by validation.
+         *
+         * @return The slot, or -1 if the key is not present
+         */
+        int find(long msb, long lsb, long hash) {
+            int mask = capacity() - 1;
+            int slot = (int) hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long slotMsb = msbs[slot];
+                long slotLsb = lsbs[slot];
+                if (slotMsb == msb && slotLsb == lsb) {
+                    return slot;
+                }
+                if (slotMsb == 0 && slotLsb == 0) {
+                    return -1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Claims the first empty slot for a key that is known to be absent.
+         *
+         * @return The claimed slot
+         */
+        int claim(long msb, long lsb, long hash) {
+            int mask = capacity() - 1;
+            int slot = (int) hash & mask;
+            while (occupied(slot)) {
+                slot = (slot + 1) & mask;
+            }
+            msbs[slot] = msb;
+            lsbs[slot] = lsb;
+            size++;
+            return slot;
+        }
+
+        /**
+         * Copies every entry into storage of twice the capacity.
+         *
+         * @return The new storage
+         */
+        Storage grow() {
+            Storage grown = new Storage(capacity() * 2, stateWords);
+            for (int slot = 0; slot < capacity(); slot++) {
+                if (occupied(slot)) {
+                    int target = grown.claim(msbs[slot], lsbs[slot], hash(msbs[slot], lsbs[slot]));
+                    grown.copyFrom(this, slot, target);
+                }
+            }
+            return grown;
+        }
+
+        /**
+         * Empties a slot, shifting back any later entries of the same probe run so lookups
+         * never stop early at the hole.
+         */
+        void removeAt(int slot) {
+            int mask = capacity() - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while (occupied(next)) {
+                int home = (int) hash(msbs[next], lsbs[next]) & mask;
+                boolean movable = hole <= next
+                        ? home <= hole || home > next
+                        : home <= hole && home > next;
+                if (movable) {
+                    msbs[hole] = msbs[next];
+                    lsbs[hole] = lsbs[next];
+                    copyFrom(this, next, hole);
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            msbs[hole] = 0;
+            lsbs[hole] = 0;
+            attachments[hole] = null;
+            size--;
+        }
+
+        private void copyFrom(Storage source, int from, int to) {
+            timestamps[to] = source.timestamps[from];
+            System.arraycopy(source.states, from * stateWords, states, to * stateWords, stateWords);
+            attachments[to] = source.attachments[from];
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package name.maxdeliso.teflon.headless;
+
+import name.maxdeliso.teflon.data.Clock;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageMarshaller;
+import name.maxdeliso.teflon.data.MessageTracker;
+import name.maxdeliso.teflon.data.MetricsRegistry;
+import name.maxdeliso.teflon.data.NodeCore;
+import name.maxdeliso.teflon.data.PeerTracker;
+import name.maxdeliso.teflon.data.RealClock;
+import name.maxdeliso.teflon.data.SwimMembership;
+import name.maxdeliso.teflon.data.TimingWheel;
+import name.maxdeliso.teflon.net.ConnectionManager;
+import name.maxdeliso.teflon.net.ConnectionResult;
+import name.maxdeliso.teflon.net.MessageSource;
+import name.maxdeliso.teflon.net.NetSelector;
+import name.maxdeliso.teflon.net.NetworkInterfaceManager;
+import name.maxdeliso.teflon.net.QueueMessageSource;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TransferQueue;
+
+import static name.maxdeliso.teflon.Main.BUFFER_LENGTH;
+import static name.maxdeliso.teflon.Main.DEFAULT_UDP_PORT;
+import static name.maxdeliso.teflon.Main.MESSAGE_MARSHALLER;
+import static name.maxdeliso.teflon.Main.MULTICAST_IPV4_BIND_ADDRESS;
+
+/**
+ * A chat node that runs without a window: the network selector, the trackers and the
+ * membership protocol, fed by lines of text and reporting what it sends and receives as JSON
+ * lines. It never touches AWT, so many nodes can run on one server for logging and load
+ * generation without the memory and startup cost of Swing.
+ * Unlike the window, a node keeps no history or outbox; it neither answers nor starts history
+ * catch-up, and what it sends while disconnected is lost.
+ *
+ * <p>Each line of input is sent as a chat message, except for these commands:
+ * <ul>
+ *     <li>{@code /sleep <millis>} - wait before reading the next line</li>
+ *     <li>{@code /stats} - write the delivery statistics</li>
+ *     <li>{@code /quit} - stop reading input and shut down</li>
+ * </ul>
+ *
+ * <p>Each line of output is a JSON object whose {@code event} is one of {@code connected},
+ * {@code sent}, {@code received}, {@code stats} or {@code error}; messages are written in their
+ * wire format under {@code message}.
+ */
+public final class HeadlessNode implements Closeable {
+    /**
+     * Command line flag that starts a headless node instead of the window.
+     */
+    public static final String FLAG = "--headless";
+
+    /**
+     * Time to keep running once the input ends, so the last messages are sent and acknowledged.
+     */
+    public static final long LINGER_MILLIS = 1000L;
+
+    /**
+     * Command line usage of headless mode.
+     */
+    public static final String USAGE = "Usage: teflon " + FLAG
+            + " [--group <address>] [--port <port>] [--interface <name>] [--script <file>] [--listen]";
+
+    private static final Logger LOG = LogManager.getLogger(HeadlessNode.class);
+
+    /**
+     * Exit status when the command line is invalid.
+     */
+    private static final int EXIT_USAGE = 2;
+
+    private final String instanceId;
+    private final Clock clock;
+    private final MessageMarshaller marshaller;
+    private final PrintStream out;
+    private final Gson gson = new Gson();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final TimingWheel timingWheel;
+    private final MessageTracker messageTracker;
+    private final PeerTracker peerTracker;
+    private final NodeCore core;
+    private final SwimMembership membership;
+
+    /**
+     * Messages waiting to be sent to the group.
+     */
+    private final TransferQueue<Message> queue = new LinkedTransferQueue<>();
+
+    /**
+     * Source of the messages sent by the selector.
+     */
+    private final MessageSource messageSource;
+
+    /**
+     * Worker running the selector loop.
+     */
+    private final ExecutorService netExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Teflon-Headless-Net");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile ConnectionResult connection;
+    private volatile NetSelector selector;
+
+    /**
+     * Creates a node. It does nothing until it is started on a connection.
+     *
+     * @param id          Unique identifier for this node
+     * @param clock       The clock to use for timing
+     * @param timingWheel The timing wheel to drive timeouts, driven by the same clock; shut down with the node
+     * @param marshaller  The marshaller to convert messages to and from bytes
+     * @param out         The stream to write JSON lines to
+     */
+    public HeadlessNode(UUID id,
+                        Clock clock,
+                        TimingWheel timingWheel,
+                        MessageMarshaller marshaller,
+                        PrintStream out) {
+        this.instanceId = id.toString();
+        this.clock = clock;
+        this.timingWheel = timingWheel;
+        this.marshaller = marshaller;
+        this.out = out;
+        this.messageTracker = new MessageTracker(instanceId, clock, timingWheel, metrics);
+        this.peerTracker = new PeerTracker(instanceId, clock, timingWheel, metrics);
+        this.core = new NodeCore(instanceId, clock, messageTracker, peerTracker, this::sendGroup);
+        this.membership = new SwimMembership(instanceId, clock, timingWheel, peerTracker, this::sendGroup, metrics);
+        this.messageSource = new QueueMessageSource(
+                queue, marshaller, clock, this::onSent, membership::piggyback);
+    }
+
+    /**
+     * Runs a node from the command line, reading input until it ends or {@code /quit}.
+     *
+     * @param args         The command line arguments, including {@link #FLAG}
+     * @param id           Unique identifier for the node
+     * @param connManager  Manager for network connections
+     * @param ifaceManager Manager for network interfaces, used when no interface is named
+     * @param in           The input to read when no script is given
+     * @param out          The stream to write JSON lines to
+     * @return The exit status
+     */
+    public static int run(String[] args,
+                          UUID id,
+                          ConnectionManager connManager,
+                          NetworkInterfaceManager ifaceManager,
+                          InputStream in,
+                          PrintStream out) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        ConnectionResult result;
+        try {
+            result = options.interfaceName() == null
+                    ? connManager.connectMulticast(options.groupAddress(), options.port(),
+                            ifaceManager.queryInterfaces().getFirst()).join()
+                    : connManager.connectMulticast(options.groupAddress(), options.port(),
+                            options.interfaceName()).join();
+        } catch (CompletionException | NoSuchElementException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            LOG.error("Failed to join {}:{}", options.groupAddress(), options.port(), cause);
+            System.err.println("Could not join " + options.groupAddress() + ":" + options.port() + ": " + cause);
+            return 1;
+        }
+
+        Clock clock = new RealClock();
+        try (var node = new HeadlessNode(id, clock, new TimingWheel(clock).start("Teflon-Timers"),
+                MESSAGE_MARSHALLER, out);
+             var reader = options.script() == null
+                     ? new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))
+                     : Files.newBufferedReader(options.script())) {
+            CompletableFuture<Void> loop = node.start(result);
+            boolean running = true;
+            for (String line = reader.readLine(); running && line != null; line = reader.readLine()) {
+                running = node.execute(line);
+            }
+            if (running && options.listen()) {
+                loop.join();
+            } else {
+                Thread.sleep(LINGER_MILLIS);
+            }
+            node.writeStats();
+            return 0;
+        } catch (IOException | CompletionException e) {
+            LOG.error("Headless node failed", e);
+            System.err.println("Headless node failed: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    /**
+     * Starts sending and receiving on a connection and joins the membership protocol.
+     *
+     * @param result The connection, closed with the node
+     * @return A future that completes when the selector loop ends
+     */
+    public CompletableFuture<Void> start(ConnectionResult result) {
+        this.connection = result;
+        NetSelector netSelector = new NetSelector(BUFFER_LENGTH, result, this::receive, messageSource, metrics);
+        this.selector = netSelector;
+        membership.start();
+
+        JsonObject event = event("connected");
+        event.addProperty("id", instanceId);
+        event.addProperty("group", result.getMembershipKey().group().getHostAddress());
+        event.addProperty("port", result.getPort());
+        event.addProperty("interface", result.getMembershipKey().networkInterface().getName());
+        write(event);
+
+        return CompletableFuture.runAsync(() -> {
+            try {
+                netSelector.selectLoop().join();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, netExecutor);
+    }
+
+    /**
+     * Handles a line of input: a command, or else a chat message to send.
+     *
+     * @param line The line
+     * @return False if the line asks the node to stop
+     * @throws InterruptedException if interrupted while sleeping
+     */
+    public boolean execute(String line) throws InterruptedException {
+        String text = line.strip();
+        if (text.isEmpty()) {
+            return true;
+        }
+        if (!text.startsWith("/")) {
+            send(text);
+            return true;
+        }
+
+        String[] words = text.substring(1).split("\\s+");
+        switch (words[0]) {
+            case "quit" -> {
+                return false;
+            }
+            case "stats" -> writeStats();
+            case "sleep" -> sleep(words);
+            default -> writeError("Unknown command: " + words[0]);
+        }
+        return true;
+    }
+
+    /**
+     * Queues a chat message for the group. It is written as sent once the selector sends it.
+     *
+     * @param text The message body
+     */
+    public void send(String text) {
+        sendGroup(core.compose(text));
+    }
+
+    /**
+     * Handles a datagram from the selector: updates the trackers, acknowledges chat messages
+     * and writes them out. Membership probes are answered; history catch-up requests and this
+     * node's own messages are ignored. Called on the selector thread.
+     *
+     * @param address The sender's address
+     * @param buffer  The datagram
+     */
+    public void receive(SocketAddress address, ByteBuffer buffer) {
+        long arrivedAt = clock.micros();
+        marshaller.bufferToMessage(buffer).ifPresent(message -> {
+            if (membership.receive(message, address) || message.isSync()) {
+                return;
+            }
+            if (!core.receive(message, address, arrivedAt) || message.isAcknowledgment()) {
+                return;
+            }
+
+            JsonObject event = event("received");
+            event.addProperty("address", address.toString());
+            event.add("message", gson.toJsonTree(message));
+            write(event);
+        });
+    }
+
+    /**
+     * Gets the source of the messages this node sends, as read by its selector.
+     *
+     * @return The message source
+     */
+    public MessageSource messageSource() {
+        return messageSource;
+    }
+
+    /**
+     * Writes the delivery statistics and the number of known peers.
+     */
+    public void writeStats() {
+        JsonObject event = event("stats");
+        event.addProperty("peers", peerTracker.getPeerCount());
+        for (Map.Entry<String, Long> stat : messageTracker.getDeliveryStats().entrySet()) {
+            event.addProperty(stat.getKey(), stat.getValue());
+        }
+        write(event);
+    }
+
+    /**
+     * Leaves the group, closes the connection and stops the trackers and timers.
+     */
+    @Override
+    public void close() {
+        membership.stop();
+        ConnectionResult current = connection;
+        if (current != null) {
+            try {
+                current.getMembershipKey().drop();
+                current.getDc().close();
+            } catch (IOException e) {
+                LOG.warn("Error closing connection", e);
+            }
+            NetSelector netSelector = selector;
+            if (netSelector != null) {
+                netSelector.wakeup();
+            }
+        }
+        netExecutor.shutdown();
+        messageTracker.shutdown();
+        peerTracker.shutdown();
+        timingWheel.shutdown();
+    }
+
+    /**
+     * Queues a message for the group and wakes the selector to send it.
+     *
+     * @param message The message
+     */
+    private void sendGroup(Message message) {
+        queue.add(message);
+        NetSelector netSelector = selector;
+        if (netSelector != null) {
+            netSelector.wakeup();
+        }
+    }
+
+    /**
+     * Writes out each chat message once it has been sent. Called on the selector thread.
+     *
+     * @param message The message, as stamped
+     */
+    private void onSent(Message message) {
+        if (message.type() != Message.MessageType.CHAT) {
+            return;
+        }
+        JsonObject event = event("sent");
+        event.add("message", gson.toJsonTree(message));
+        write(event);
+    }
+
+    /**
+     * Runs {@code /sleep}, writing an error instead if the duration is missing, malformed or negative.
+     *
+     * @param words The command and its arguments
+     * @throws InterruptedException if interrupted while sleeping
+     */
+    private void sleep(String[] words) throws InterruptedException {
+        long millis;
+        try {
+            millis = Long.parseLong(words.length == 2 ? words[1] : "");
+        } catch (NumberFormatException e) {
+            millis = -1;
+        }
+        if (millis < 0) {
+            writeError("Usage: /sleep <millis>");
+            return;
+        }
+        Thread.sleep(millis);
+    }
+
+    /**
+     * Writes an error event.
+     *
+     * @param description What went wrong
+     */
+    private void writeError(String description) {
+        JsonObject event = event("error");
+        event.addProperty("description", description);
+        write(event);
+    }
+
+    /**
+     * Starts an output event stamped with the current time.
+     *
+     * @param name The event name
+     * @return The event, to which details may be added
+     */
+    private JsonObject event(String name) {
+        JsonObject event = new JsonObject();
+        event.addProperty("event", name);
+        event.addProperty("time", Instant.ofEpochMilli(clock.millis()).toString());
+        return event;
+    }
+
+    /**
+     * Writes an event as one line. Lines from different threads are never interleaved.
+     *
+     * @param event The event
+     */
+    private void write(JsonObject event) {
+        String line = gson.toJson(event);
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    /**
+     * Options of a headless node given on the command line.
+     *
+     * @param groupAddress  The multicast group to join
+     * @param port          The UDP port
+     * @param interfaceName The network interface, or null for the first available
+     * @param script        A file of input lines to read instead of standard input, or null
+     * @param listen        Whether to keep running once the input ends, until the process is stopped
+     */
+    public record Options(String groupAddress, int port, String interfaceName, Path script, boolean listen) {
+
+        /**
+         * Checks whether the command line asks for a headless node.
+         *
+         * @param args The command line arguments
+         * @return True if {@link #FLAG} is present
+         */
+        public static boolean requested(String[] args) {
+            return Arrays.asList(args).contains(FLAG);
+        }
+
+        /**
+         * Parses the command line, defaulting to the IPv4 group and port used by the window.
+         *
+         * @param args The command line arguments
+         * @return The options
+         * @throws IllegalArgumentException if an option is unknown, repeated without a value or invalid
+         */
+        public static Options parse(String[] args) {
+            String groupAddress = MULTICAST_IPV4_BIND_ADDRESS;
+            int port = DEFAULT_UDP_PORT;
+            String interfaceName = null;
+            Path script = null;
+            boolean listen = false;
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case FLAG -> {
+                        // Selects headless mode; takes no value
+                    }
+                    case "--listen" -> {
+                        listen = true;
+                    }
+                    case "--group" -> {
+                        groupAddress = valueOf(args, i);
+                        i++;
+                    }
+                    case "--interface" -> {
+                        interfaceName = valueOf(args, i);
+                        i++;
+                    }
+                    case "--script" -> {
+                        script = Path.of(valueOf(args, i));
+                        i++;
+                    }
+                    case "--port" -> {
+                        String value = valueOf(args, i);
+                        i++;
+                        try {
+                            port = Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("Invalid port: " + value, e);
+                        }
+                    }
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            return new Options(groupAddress, port, interfaceName, script, listen);
+        }
+
+        /**
+         * Gets the value following an option.
+         *
+         * @param args  The command line arguments
+         * @param index The index of the option
+         * @return The value
+         * @throws IllegalArgumentException if the option is the last argument
+         */
+        private static String valueOf(String[] args, int index) {
+            if (index + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[index]);
+            }
+            return args[index + 1];
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Headless package for the Teflon chat application.
+ * Contains the chat node run from the command line without a window.
+ */
+package name.maxdeliso.teflon.headless;
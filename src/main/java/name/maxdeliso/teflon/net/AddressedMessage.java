@@ -0,0 +1,13 @@
+package name.maxdeliso.teflon.net;
+
+import name.maxdeliso.teflon.data.Message;
+
+import java.net.SocketAddress;
+
+/**
+ * A message to be sent to a single peer rather than to the whole group.
+ *
+ * @param message     The message
+ * @param destination The peer's address
+ */
+public record AddressedMessage(Message message, SocketAddress destination) {}
@@ -10,6 +10,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.ProtocolFamily;
+import java.net.SocketException;
 import java.net.StandardProtocolFamily;
 import java.net.StandardSocketOptions;
 import java.net.UnknownHostException;
@@ -50,6 +51,48 @@ public class ConnectionManager {
         });
     }
 
+    /**
+     * Asynchronously connects to a multicast group on an interface given by name, as saved in a
+     * connection profile. The interface is looked up on the connecting thread.
+     *
+     * @param ipAddress     The multicast IP address to connect to
+     * @param port          The port to use
+     * @param interfaceName The name of the network interface to use
+     * @return A future that completes with the connection result
+     */
+    public CompletableFuture<ConnectionResult> connectMulticast(
+            final String ipAddress,
+            final int port,
+            final String interfaceName) {
+        return CompletableFuture.supplyAsync(() -> {
+            var networkInterface = resolveInterface(interfaceName);
+            var inetAddress = resolveMulticastAddress(ipAddress);
+            var datagramChannel = openAndBindChannel(inetAddress, port, networkInterface);
+            var membershipKey = joinGroup(datagramChannel, inetAddress, networkInterface);
+
+            return new ConnectionResult(port, datagramChannel, membershipKey);
+        });
+    }
+
+    /**
+     * Looks up a network interface by name.
+     *
+     * @param interfaceName The interface name
+     * @return The interface
+     * @throws CompletionException if there is no such interface
+     */
+    private NetworkInterface resolveInterface(final String interfaceName) {
+        try {
+            var networkInterface = NetworkInterface.getByName(interfaceName);
+            if (networkInterface == null) {
+                throw new CompletionException(new IOException("No network interface named " + interfaceName));
+            }
+            return networkInterface;
+        } catch (SocketException e) {
+            throw new CompletionException("Failed to look up network interface: " + interfaceName, e);
+        }
+    }
+
     /**
      * Resolves a multicast address string to an InetAddress.
      *
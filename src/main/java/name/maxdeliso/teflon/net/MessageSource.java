@@ -1,5 +1,6 @@
 package name.maxdeliso.teflon.net;
 
+import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 
 /**
@@ -22,4 +23,13 @@ public interface MessageSource {
      * @return The next message as a ByteBuffer, or null if no message is available
      */
     ByteBuffer poll();
+
+    /**
+     * Gets where the message returned by the last {@link #peek()} should be sent.
+     *
+     * @return The address of a single peer, or null to send the message to the group
+     */
+    default SocketAddress destination() {
+        return null;
+    }
 }
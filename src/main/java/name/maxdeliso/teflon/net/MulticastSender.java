@@ -1,10 +1,13 @@
 package name.maxdeliso.teflon.net;
 
+import name.maxdeliso.teflon.data.MetricsRegistry;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 
@@ -28,6 +31,26 @@ public class MulticastSender {
      */
     private final InetSocketAddress isa;
 
+    /**
+     * Number of datagrams sent in full.
+     */
+    private final MetricsRegistry.Counter datagramsSent;
+
+    /**
+     * Number of bytes sent.
+     */
+    private final MetricsRegistry.Counter bytesSent;
+
+    /**
+     * Number of sends that transmitted only part of the buffer.
+     */
+    private final MetricsRegistry.Counter partialSends;
+
+    /**
+     * Number of sends that failed with an I/O error.
+     */
+    private final MetricsRegistry.Counter sendErrors;
+
     /**
      * Creates a new multicast sender.
      *
@@ -35,8 +58,23 @@ public class MulticastSender {
      * @param isa The target socket address
      */
     public MulticastSender(final DatagramChannel dc, final InetSocketAddress isa) {
+        this(dc, isa, new MetricsRegistry());
+    }
+
+    /**
+     * Creates a new multicast sender that records send metrics.
+     *
+     * @param dc      The datagram channel to use
+     * @param isa     The target socket address
+     * @param metrics The registry to register send metrics with
+     */
+    public MulticastSender(final DatagramChannel dc, final InetSocketAddress isa, final MetricsRegistry metrics) {
         this.dc = dc;
         this.isa = isa;
+        this.datagramsSent = metrics.counter("net.datagramsSent");
+        this.bytesSent = metrics.counter("net.bytesSent");
+        this.partialSends = metrics.counter("net.partialSends");
+        this.sendErrors = metrics.counter("net.sendErrors");
     }
 
     /**
@@ -46,6 +84,17 @@ public class MulticastSender {
      * @param bb The byte buffer containing the message to send
      */
     public void send(final ByteBuffer bb) {
+        send(bb, isa);
+    }
+
+    /**
+     * Sends a message via the datagram channel to a single peer instead of the group.
+     * Logs success or failure of the send operation.
+     *
+     * @param bb          The byte buffer containing the message to send
+     * @param destination The peer's address
+     */
+    public void send(final ByteBuffer bb, final SocketAddress destination) {
         if (bb == null) {
             throw new NullPointerException("ByteBuffer cannot be null");
         }
@@ -57,14 +106,18 @@ public class MulticastSender {
         }
 
         try {
-            final var sentBytes = dc.send(bb, isa);
+            final var sentBytes = dc.send(bb, destination);
+            bytesSent.add(sentBytes);
 
             if (bufferLength != sentBytes) {
+                partialSends.increment();
                 LOG.warn("only successfully sent {} of {} bytes", sentBytes, bufferLength);
             } else {
+                datagramsSent.increment();
                 LOG.debug("sent {} bytes", sentBytes);
             }
         } catch (IOException exc) {
+            sendErrors.increment();
             LOG.error("i/o exception while attempting to send", exc);
         }
     }
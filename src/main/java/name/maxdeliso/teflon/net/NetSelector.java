@@ -1,5 +1,7 @@
 package name.maxdeliso.teflon.net;
 
+import name.maxdeliso.teflon.data.MetricsRegistry;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -44,6 +46,22 @@ public class NetSelector {
      * Tracks whether there are pending messages to write.
      */
     private final AtomicBoolean hasOutgoingMessages = new AtomicBoolean(false);
+    /**
+     * Registry for network metrics, shared with the multicast sender.
+     */
+    private final MetricsRegistry metrics;
+    /**
+     * Number of datagrams received.
+     */
+    private final MetricsRegistry.Counter datagramsReceived;
+    /**
+     * Number of bytes received.
+     */
+    private final MetricsRegistry.Counter bytesReceived;
+    /**
+     * Number of times the selector returned from select.
+     */
+    private final MetricsRegistry.Counter selectorWakeups;
     private volatile Selector selector;
 
     /**
@@ -58,10 +76,31 @@ public class NetSelector {
                        final ConnectionResult connectionResult,
                        final BiConsumer<SocketAddress, ByteBuffer> incomingConsumer,
                        final MessageSource outgoingSource) {
+        this(bufferLength, connectionResult, incomingConsumer, outgoingSource, new MetricsRegistry());
+    }
+
+    /**
+     * Creates a new network selector that records network metrics.
+     *
+     * @param bufferLength     Size of the network I/O buffer
+     * @param connectionResult Connection details
+     * @param incomingConsumer Consumer for handling incoming messages
+     * @param outgoingSource   Source for outgoing messages
+     * @param metrics          The registry to register network metrics with
+     */
+    public NetSelector(final int bufferLength,
+                       final ConnectionResult connectionResult,
+                       final BiConsumer<SocketAddress, ByteBuffer> incomingConsumer,
+                       final MessageSource outgoingSource,
+                       final MetricsRegistry metrics) {
         this.bufferLength = bufferLength;
         this.connectionResult = connectionResult;
         this.onIncomingMessage = incomingConsumer;
         this.outgoingMessageSource = outgoingSource;
+        this.metrics = metrics;
+        this.datagramsReceived = metrics.counter("net.datagramsReceived");
+        this.bytesReceived = metrics.counter("net.bytesReceived");
+        this.selectorWakeups = metrics.counter("net.selectorWakeups");
     }
 
     /**
@@ -114,7 +153,7 @@ public class NetSelector {
                         : groupAddress,
                 this.connectionResult.getPort());
         LOG.debug("Created send socket address: {}", sendSockAddress);
-        var multicastSender = new MulticastSender(connectionResult.getDc(), sendSockAddress);
+        var multicastSender = new MulticastSender(connectionResult.getDc(), sendSockAddress, metrics);
 
         try (final var sel = Selector.open()) {
             selector = sel;
@@ -133,6 +172,7 @@ public class NetSelector {
                 }
 
                 int selected = selector.select();
+                selectorWakeups.increment();
                 LOG.debug("Selector woke up, {} keys selected", selected);
                 var selectedKeys = selector.selectedKeys();
                 var iterator = selectedKeys.iterator();
@@ -186,6 +226,8 @@ public class NetSelector {
         SocketAddress sender = connectionResult.getDc().receive(dataBuffer);
         if (sender != null) {
             dataBuffer.flip();
+            datagramsReceived.increment();
+            bytesReceived.add(dataBuffer.remaining());
             // For IPv6, ensure we have the correct scope ID
             if (sender instanceof java.net.InetSocketAddress inetSender) {
                 if (inetSender.getAddress() instanceof Inet6Address) {
@@ -214,7 +256,12 @@ public class NetSelector {
         ByteBuffer peek = outgoingMessageSource.peek();
         if (peek != null && peek.hasRemaining()) {
             LOG.debug("Attempting to send message with {} bytes", peek.remaining());
-            multicastSender.send(peek);
+            SocketAddress destination = outgoingMessageSource.destination();
+            if (destination == null) {
+                multicastSender.send(peek);
+            } else {
+                multicastSender.send(peek, destination);
+            }
             // If message was sent successfully, consume it
             if (!peek.hasRemaining()) {
                 LOG.debug("Message sent successfully, consuming from queue");
@@ -0,0 +1,156 @@
+package name.maxdeliso.teflon.net;
+
+import name.maxdeliso.teflon.data.Clock;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageMarshaller;
+import name.maxdeliso.teflon.data.Outbox;
+import name.maxdeliso.teflon.data.TimingWheel;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Implementation of MessageSource that sends the messages waiting in an {@link Outbox} after
+ * those of another source, removing each from the outbox only once it has been sent.
+ * Protocol traffic from the other source, such as acknowledgments, goes first. Outbox messages
+ * are paced at most one per {@link #DEFAULT_INTERVAL_MILLIS}, so that a backlog composed while
+ * disconnected is replayed in order without flooding the group when a connection comes up;
+ * when the next one is not yet due, a timer wakes the selector once it is.
+ * Like {@link QueueMessageSource}, each message is amended by a decorator and stamped with its
+ * send time as it is marshalled.
+ */
+public final class OutboxMessageSource implements MessageSource {
+    /**
+     * Default shortest time between two outbox messages being sent.
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 20L;
+
+    private final MessageSource live;
+    private final Outbox outbox;
+    private final MessageMarshaller marshaller;
+    private final Clock clock;
+    private final Consumer<Message> sendListener;
+    private final UnaryOperator<Message> decorator;
+    private final long intervalMillis;
+    private final TimingWheel timingWheel;
+
+    /**
+     * Timer waking the selector when the next outbox message is due.
+     */
+    private final TimingWheel.Timeout pacer;
+
+    /**
+     * The outbox message being sent, or null if none has been taken from the outbox.
+     */
+    private volatile Message currentMessage;
+    private volatile ByteBuffer currentBuffer;
+
+    /**
+     * When the last outbox message was sent, in clock milliseconds.
+     */
+    private volatile long lastSentMillis = Long.MIN_VALUE / 2;
+
+    /**
+     * Creates a new OutboxMessageSource with the default pacing.
+     *
+     * @param live         The source whose messages are sent ahead of the outbox
+     * @param outbox       The outbox to send and remove messages from
+     * @param marshaller   The marshaller to convert messages to bytes
+     * @param clock        The clock used to stamp send times and pace the outbox
+     * @param sendListener Receives each outbox message, as stamped, after it has been sent
+     * @param decorator    Amends each outbox message just before it is marshalled, on the network thread
+     * @param timingWheel  The timing wheel to schedule pacing wakeups on, driven by the same clock
+     * @param wakeup       Wakes the selector sending from this source
+     */
+    public OutboxMessageSource(final MessageSource live,
+                               final Outbox outbox,
+                               final MessageMarshaller marshaller,
+                               final Clock clock,
+                               final Consumer<Message> sendListener,
+                               final UnaryOperator<Message> decorator,
+                               final TimingWheel timingWheel,
+                               final Runnable wakeup) {
+        this(live, outbox, marshaller, clock, sendListener, decorator, timingWheel, wakeup, DEFAULT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Creates a new OutboxMessageSource with a given pacing.
+     *
+     * @param live           The source whose messages are sent ahead of the outbox
+     * @param outbox         The outbox to send and remove messages from
+     * @param marshaller     The marshaller to convert messages to bytes
+     * @param clock          The clock used to stamp send times and pace the outbox
+     * @param sendListener   Receives each outbox message, as stamped, after it has been sent
+     * @param decorator      Amends each outbox message just before it is marshalled, on the network thread
+     * @param timingWheel    The timing wheel to schedule pacing wakeups on, driven by the same clock
+     * @param wakeup         Wakes the selector sending from this source
+     * @param intervalMillis The shortest time between two outbox messages being sent
+     */
+    public OutboxMessageSource(final MessageSource live,
+                               final Outbox outbox,
+                               final MessageMarshaller marshaller,
+                               final Clock clock,
+                               final Consumer<Message> sendListener,
+                               final UnaryOperator<Message> decorator,
+                               final TimingWheel timingWheel,
+                               final Runnable wakeup,
+                               final long intervalMillis) {
+        this.live = live;
+        this.outbox = outbox;
+        this.marshaller = marshaller;
+        this.clock = clock;
+        this.sendListener = sendListener;
+        this.decorator = decorator;
+        this.timingWheel = timingWheel;
+        this.pacer = timingWheel.timeout(wakeup);
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public ByteBuffer peek() {
+        if (currentMessage != null) {
+            return currentBuffer;
+        }
+
+        ByteBuffer liveBuffer = live.peek();
+        if (liveBuffer != null) {
+            return liveBuffer;
+        }
+
+        Optional<Message> next = outbox.peek();
+        if (next.isEmpty()) {
+            return null;
+        }
+        long due = lastSentMillis + intervalMillis;
+        if (clock.millis() < due) {
+            timingWheel.reschedule(pacer, due);
+            return null;
+        }
+        currentMessage = decorator.apply(next.get()).withSentAt(clock.micros());
+        currentBuffer = marshaller.messageToBuffer(currentMessage);
+        return currentBuffer;
+    }
+
+    @Override
+    public ByteBuffer poll() {
+        if (currentMessage == null) {
+            return live.poll();
+        }
+        outbox.remove();
+        lastSentMillis = clock.millis();
+        ByteBuffer buffer = currentBuffer;
+        Message sent = currentMessage;
+        currentMessage = null;
+        currentBuffer = null;
+        sendListener.accept(sent);
+        return buffer;
+    }
+
+    @Override
+    public SocketAddress destination() {
+        return currentMessage != null ? null : live.destination();
+    }
+}
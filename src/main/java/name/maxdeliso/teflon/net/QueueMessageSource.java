@@ -1,19 +1,34 @@
 package name.maxdeliso.teflon.net;
 
+import name.maxdeliso.teflon.data.Clock;
 import name.maxdeliso.teflon.data.Message;
 import name.maxdeliso.teflon.data.MessageMarshaller;
+import name.maxdeliso.teflon.data.RealClock;
 
+import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TransferQueue;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 /**
  * Implementation of MessageSource that wraps a TransferQueue of Messages.
  * Handles the conversion of Messages to ByteBuffers using a MessageMarshaller.
+ * Each message is stamped with its send time as it is marshalled for the wire, after an optional
+ * decorator has had the chance to piggyback data on it.
+ * Messages addressed to a single peer wait in a separate queue and are sent ahead of group traffic.
  */
 public final class QueueMessageSource implements MessageSource {
     private final TransferQueue<Message> queue;
     private final MessageMarshaller marshaller;
+    private final Clock clock;
+    private final Consumer<Message> sendListener;
+    private final UnaryOperator<Message> decorator;
+    private final Queue<AddressedMessage> unicastQueue;
     private volatile Message currentMessage;
+    private volatile SocketAddress currentDestination;
     private volatile ByteBuffer currentBuffer;
 
     /**
@@ -23,8 +38,63 @@ public final class QueueMessageSource implements MessageSource {
      * @param marshaller The marshaller to convert messages to bytes
      */
     public QueueMessageSource(final TransferQueue<Message> queue, final MessageMarshaller marshaller) {
+        this(queue, marshaller, new RealClock(), message -> { });
+    }
+
+    /**
+     * Creates a new QueueMessageSource that reports each message once it has been sent.
+     *
+     * @param queue        The queue to source messages from
+     * @param marshaller   The marshaller to convert messages to bytes
+     * @param clock        The clock used to stamp send times
+     * @param sendListener Receives each message, as stamped, after it has been sent
+     */
+    public QueueMessageSource(final TransferQueue<Message> queue,
+                              final MessageMarshaller marshaller,
+                              final Clock clock,
+                              final Consumer<Message> sendListener) {
+        this(queue, marshaller, clock, sendListener, UnaryOperator.identity());
+    }
+
+    /**
+     * Creates a new QueueMessageSource that lets a decorator amend each message as it is sent.
+     *
+     * @param queue        The queue to source messages from
+     * @param marshaller   The marshaller to convert messages to bytes
+     * @param clock        The clock used to stamp send times
+     * @param sendListener Receives each message, as stamped, after it has been sent
+     * @param decorator    Amends each message just before it is marshalled, on the network thread
+     */
+    public QueueMessageSource(final TransferQueue<Message> queue,
+                              final MessageMarshaller marshaller,
+                              final Clock clock,
+                              final Consumer<Message> sendListener,
+                              final UnaryOperator<Message> decorator) {
+        this(queue, marshaller, clock, sendListener, decorator, new ConcurrentLinkedQueue<>());
+    }
+
+    /**
+     * Creates a new QueueMessageSource that also sends messages addressed to single peers.
+     *
+     * @param queue        The queue to source group messages from
+     * @param marshaller   The marshaller to convert messages to bytes
+     * @param clock        The clock used to stamp send times
+     * @param sendListener Receives each message, as stamped, after it has been sent
+     * @param decorator    Amends each message just before it is marshalled, on the network thread
+     * @param unicastQueue The queue to source messages for single peers from, sent ahead of group messages
+     */
+    public QueueMessageSource(final TransferQueue<Message> queue,
+                              final MessageMarshaller marshaller,
+                              final Clock clock,
+                              final Consumer<Message> sendListener,
+                              final UnaryOperator<Message> decorator,
+                              final Queue<AddressedMessage> unicastQueue) {
         this.queue = queue;
         this.marshaller = marshaller;
+        this.clock = clock;
+        this.sendListener = sendListener;
+        this.decorator = decorator;
+        this.unicastQueue = unicastQueue;
     }
 
     @Override
@@ -34,10 +104,13 @@ public final class QueueMessageSource implements MessageSource {
         }
 
         if (currentMessage == null) {
-            currentMessage = queue.peek();
-            if (currentMessage == null) {
+            AddressedMessage addressed = unicastQueue.peek();
+            Message next = addressed != null ? addressed.message() : queue.peek();
+            if (next == null) {
                 return null;
             }
+            currentDestination = addressed != null ? addressed.destination() : null;
+            currentMessage = decorator.apply(next).withSentAt(clock.micros());
             currentBuffer = marshaller.messageToBuffer(currentMessage);
         }
         return currentBuffer;
@@ -46,12 +119,24 @@ public final class QueueMessageSource implements MessageSource {
     @Override
     public ByteBuffer poll() {
         if (currentMessage != null) {
-            queue.poll(); // Remove the message we peeked
+            if (currentDestination != null) {
+                unicastQueue.poll();
+            } else {
+                queue.poll(); // Remove the message we peeked
+            }
             ByteBuffer buffer = currentBuffer;
+            Message sent = currentMessage;
             currentMessage = null;
+            currentDestination = null;
             currentBuffer = null;
+            sendListener.accept(sent);
             return buffer;
         }
         return null;
     }
+
+    @Override
+    public SocketAddress destination() {
+        return currentDestination;
+    }
 }
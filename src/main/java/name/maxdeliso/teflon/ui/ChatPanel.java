@@ -1,26 +1,59 @@
 package name.maxdeliso.teflon.ui;
 
 import java.awt.BorderLayout;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.awt.Color;
+import java.awt.Font;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
+import static org.apache.commons.text.StringEscapeUtils.escapeHtml4;
+import static org.apache.commons.text.StringEscapeUtils.unescapeHtml4;
 
 import javax.swing.JEditorPane;
+import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
-import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.ToolTipManager;
 import javax.swing.event.DocumentListener;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Supplier;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import name.maxdeliso.teflon.data.LatencyTracker;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageTracker;
 
 /**
  * Panel for displaying chat messages.
  * Handles HTML rendering and message formatting.
+ * Each chat message carries a single delivery receipt badge that is redrawn in place. Receipt
+ * changes are coalesced and applied together on a short timer, so the transcript and the render
+ * work per message do not grow with the number of peers acknowledging it.
+ * Updates are applied through a {@link UiUpdateScheduler}; transcript changes made within one
+ * frame are rendered into the pane once.
+ * Formatting and parsing happen in {@link #prerenderMessage}, which is safe to call from any
+ * thread, so the EDT only links ready-made {@link Fragment}s into the document.
+ * With {@link View#LIST} the transcript is a virtualized list of fixed-height rows instead of an
+ * HTML document: only visible rows are laid out and painted, so appending and scrolling cost the
+ * same however long the transcript grows.
  */
 public class ChatPanel extends JPanel {
     /**
@@ -37,20 +70,20 @@ public class ChatPanel extends JPanel {
     /**
      * Message template for HTML formatting.
      */
-    private static final String MESSAGE_TEMPLATE =
-            TemplateLoader.loadTemplate("/templates/message-template.html", ChatPanel.class);
+    private static final CompiledTemplate MESSAGE_TEMPLATE =
+            TemplateLoader.compileTemplate("/templates/message-template.html", ChatPanel.class);
 
     /**
      * System event template for HTML formatting.
      */
-    private static final String SYSTEM_EVENT_TEMPLATE =
-            TemplateLoader.loadTemplate("/templates/system-event-template.html", ChatPanel.class);
+    private static final CompiledTemplate SYSTEM_EVENT_TEMPLATE =
+            TemplateLoader.compileTemplate("/templates/system-event-template.html", ChatPanel.class);
 
     /**
-     * Acknowledgment template for HTML formatting.
+     * Receipt badge template for HTML formatting.
      */
-    private static final String ACK_TEMPLATE =
-            TemplateLoader.loadTemplate("/templates/ack-template.html", ChatPanel.class);
+    private static final CompiledTemplate RECEIPT_TEMPLATE =
+            TemplateLoader.compileTemplate("/templates/receipt-template.html", ChatPanel.class);
 
     /**
      * Stats template for HTML formatting.
@@ -58,20 +91,76 @@ public class ChatPanel extends JPanel {
     private static final String STATS_TEMPLATE =
             TemplateLoader.loadTemplate("/templates/status-stats-template.html", ChatPanel.class);
 
+    /**
+     * Latency template for HTML formatting.
+     */
+    private static final String LATENCY_TEMPLATE =
+            TemplateLoader.loadTemplate("/templates/status-latency-template.html", ChatPanel.class);
+
     /**
      * Number of characters to show in truncated sender ID.
      */
     private static final int SENDER_ID_TRUNCATE_LENGTH = 8;
 
     /**
-     * Editor pane for displaying messages.
+     * Microseconds per millisecond, for display.
+     */
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    /**
+     * Attribute holding the hybrid logical clock timestamp of a rendered message.
+     */
+    private static final String HLC_ATTRIBUTE = "data-hlc";
+
+    /**
+     * Attribute holding the sender ID of a rendered message, used to break timestamp ties.
+     */
+    private static final String SENDER_ATTRIBUTE = "data-sender";
+
+    /**
+     * Attribute holding the message ID of a rendered message, used to break ties between one sender's messages.
+     */
+    private static final String MESSAGE_ID_ATTRIBUTE = "data-message-id";
+
+    /**
+     * Delay in milliseconds between a receipt changing and its badge being redrawn.
+     */
+    private static final int RECEIPT_REFRESH_MILLIS = 250;
+
+    /**
+     * Number of senders whose rendering styles are cached before the cache is cleared.
+     */
+    private static final int SENDER_CACHE_LIMIT = 1024;
+
+    /**
+     * Runs of whitespace, collapsed when HTML is laid out as list rows.
+     */
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * Per-thread buffer that message HTML is assembled in.
+     */
+    private static final ThreadLocal<StringBuilder> RENDER_BUFFER = ThreadLocal.withInitial(StringBuilder::new);
+
+    /**
+     * Editor pane for displaying messages, or null when the transcript is a list.
      */
     private final JEditorPane messagePane;
 
     /**
-     * Date formatter for timestamps.
+     * List displaying the transcript, or null when the transcript is an HTML document.
+     */
+    private final JList<TranscriptEntry> transcriptList;
+
+    /**
+     * Rows of the list transcript.
      */
-    private final DateFormat dateFormat;
+    private final TranscriptListModel transcriptModel;
+
+    /**
+     * Scroll pane around the transcript.
+     */
+    private final JScrollPane scrollPane;
 
     /**
      * Current HTML document for efficient message appending.
@@ -79,12 +168,104 @@ public class ChatPanel extends JPanel {
     private final Document currentDocument;
 
     /**
-     * Creates a new chat panel.
+     * Scheduler through which updates reach the EDT.
+     */
+    private final UiUpdateScheduler scheduler;
+
+    /**
+     * Key under which transcript redraws are coalesced.
+     */
+    private final Object redrawKey = new Object();
+
+    /**
+     * Color, color style and truncated ID of each recent sender.
+     */
+    private final ConcurrentHashMap<String, SenderStyle> senderStyles = new ConcurrentHashMap<>();
+
+    /**
+     * Formats message and event timestamps.
+     */
+    private final TimestampFormat timestampFormat = new TimestampFormat();
+
+    /**
+     * Looks up the current delivery receipt of a message, or null if it is unknown.
+     */
+    private final Function<UUID, Receipt> receiptSource;
+
+    /**
+     * Receipt badge elements keyed by message ID. Accessed only on the EDT.
+     */
+    private final Map<UUID, Element> receiptBadges = new HashMap<>();
+
+    /**
+     * Last receipt with responses of each message in the list transcript, or null for none yet,
+     * keyed by message ID. The tracker forgets a message once it times out, so list rows paint
+     * this rather than looking their receipts up. Accessed only on the EDT.
+     */
+    private final Map<UUID, Receipt> listReceipts = new HashMap<>();
+
+    /**
+     * Messages whose receipt badges need redrawing. Accessed only on the EDT.
+     */
+    private final Set<UUID> staleReceipts = new LinkedHashSet<>();
+
+    /**
+     * Timer that redraws stale receipt badges in one pass.
+     */
+    private final Timer receiptTimer;
+
+    /**
+     * Creates a new chat panel without delivery receipts.
      */
     public ChatPanel() {
+        this(new UiUpdateScheduler(), messageId -> null);
+    }
+
+    /**
+     * Creates a new chat panel that shows delivery receipts.
+     *
+     * @param scheduler     The scheduler through which updates reach the EDT
+     * @param receiptSource Looks up the current receipt of a message; called on the EDT
+     */
+    public ChatPanel(UiUpdateScheduler scheduler, Function<UUID, Receipt> receiptSource) {
+        this(scheduler, receiptSource, View.HTML);
+    }
+
+    /**
+     * Creates a new chat panel that shows delivery receipts in the given view.
+     *
+     * @param scheduler     The scheduler through which updates reach the EDT
+     * @param receiptSource Looks up the current receipt of a message; called on the EDT
+     * @param view          How the transcript is displayed
+     */
+    public ChatPanel(UiUpdateScheduler scheduler, Function<UUID, Receipt> receiptSource, View view) {
+        this(scheduler, receiptSource, view, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new chat panel that keeps a limited scrollback in memory.
+     * The list view spills older rows to a temporary file and pages them back in when scrolled
+     * to. The HTML view has nowhere to page its elements from, so it keeps them all and takes
+     * no limit.
+     *
+     * @param scheduler     The scheduler through which updates reach the EDT
+     * @param receiptSource Looks up the current receipt of a message; called on the EDT
+     * @param view          How the transcript is displayed
+     * @param scrollback    The number of recent rows kept in memory; {@link Integer#MAX_VALUE} for the HTML view
+     * @throws IllegalArgumentException if a limit is given for the HTML view
+     */
+    public ChatPanel(UiUpdateScheduler scheduler, Function<UUID, Receipt> receiptSource, View view, int scrollback) {
+        if (view == View.HTML && scrollback != Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("the HTML view does not support a scrollback limit");
+        }
+        this.scheduler = scheduler;
+        this.transcriptModel = new TranscriptListModel(scrollback);
+        this.receiptSource = receiptSource;
+        this.receiptTimer = new Timer(RECEIPT_REFRESH_MILLIS, e -> refreshReceipts());
+        this.receiptTimer.setRepeats(false);
         setLayout(new BorderLayout());
-        this.dateFormat = new SimpleDateFormat("HH:mm:ss:SS z");
-        this.messagePane = createMessagePane();
+        this.messagePane = view == View.HTML ? createMessagePane() : null;
+        this.transcriptList = view == View.LIST ? createTranscriptList() : null;
         this.currentDocument = Jsoup.parse(INITIAL_HTML);
 
         currentDocument
@@ -93,7 +274,21 @@ public class ChatPanel extends JPanel {
                 .syntax(Document.OutputSettings.Syntax.html)
                 .escapeMode(org.jsoup.nodes.Entities.EscapeMode.xhtml);
 
-        add(new JScrollPane(messagePane), BorderLayout.CENTER);
+        this.scrollPane = new JScrollPane(view == View.HTML ? messagePane : transcriptList);
+        add(scrollPane, BorderLayout.CENTER);
+    }
+
+    /**
+     * Creates the list transcript.
+     *
+     * @return The configured list
+     */
+    private JList<TranscriptEntry> createTranscriptList() {
+        JList<TranscriptEntry> list = new JList<>(transcriptModel);
+        list.setFont(list.getFont().deriveFont(Font.PLAIN));
+        list.setCellRenderer(new TranscriptCellRenderer(listReceipts::get));
+        TranscriptCellRenderer.fixCellSize(list);
+        return list;
     }
 
     /**
@@ -107,21 +302,22 @@ public class ChatPanel extends JPanel {
         pane.setEditable(false);
         pane.setCursor(java.awt.Cursor.getDefaultCursor());
         pane.putClientProperty(JEditorPane.HONOR_DISPLAY_PROPERTIES, Boolean.TRUE);
+        ToolTipManager.sharedInstance().registerComponent(pane);
 
         pane.getDocument().addDocumentListener(new DocumentListener() {
             @Override
             public void insertUpdate(javax.swing.event.DocumentEvent e) {
-                LOG.debug("Document updated: {}", pane.getText());
+                LOG.debug("Document updated: {}", (Supplier<String>) pane::getText);
             }
 
             @Override
             public void removeUpdate(javax.swing.event.DocumentEvent e) {
-                LOG.debug("Document removed: {}", pane.getText());
+                LOG.debug("Document removed: {}", (Supplier<String>) pane::getText);
             }
 
             @Override
             public void changedUpdate(javax.swing.event.DocumentEvent e) {
-                LOG.debug("Document changed: {}", pane.getText());
+                LOG.debug("Document changed: {}", (Supplier<String>) pane::getText);
             }
         });
 
@@ -132,20 +328,167 @@ public class ChatPanel extends JPanel {
     /**
      * Renders a chat message.
      *
+     * @param color     The color for the sender
      * @param senderId  The sender's ID
      * @param message   The message text
      * @param timestamp The message timestamp
      */
     public void renderMessage(String color, String senderId, String message, Date timestamp) {
-        var truncatedId = senderId.substring(0, Math.min(senderId.length(), SENDER_ID_TRUNCATE_LENGTH));
-        var colorClass = getColorStyle(color);
-        var formattedMessage = String.format(MESSAGE_TEMPLATE,
-                colorClass,
-                senderId, // Full sender ID for tooltip
-                truncatedId,
-                dateFormat.format(timestamp),
-                message);
-        appendToMessagePane(formattedMessage);
+        renderMessage(color, senderId, message, timestamp, 0L);
+    }
+
+    /**
+     * Renders a chat message in hybrid logical clock order.
+     * Messages stamped with a timestamp are placed after every rendered message that precedes
+     * them causally, so all peers display the same sequence regardless of arrival order.
+     *
+     * @param color     The color for the sender
+     * @param senderId  The sender's ID
+     * @param message   The message text
+     * @param timestamp The message timestamp
+     * @param hlc       The encoded hybrid logical clock timestamp, or zero to append
+     */
+    public void renderMessage(String color, String senderId, String message, Date timestamp, long hlc) {
+        renderMessage(color, senderId, message, timestamp, hlc, null);
+    }
+
+    /**
+     * Renders a chat message in hybrid logical clock order with a delivery receipt badge.
+     *
+     * @param color     The color for the sender
+     * @param senderId  The sender's ID
+     * @param message   The message text
+     * @param timestamp The message timestamp
+     * @param hlc       The encoded hybrid logical clock timestamp, or zero to append
+     * @param messageId The message ID whose receipt the badge shows, or null for no badge
+     */
+    public void renderMessage(String color,
+                              String senderId,
+                              String message,
+                              Date timestamp,
+                              long hlc,
+                              UUID messageId) {
+        insertFragment(prerenderMessage(color, senderId, message, timestamp, hlc, messageId));
+    }
+
+    /**
+     * Formats and parses a chat message into a fragment ready for {@link #insertFragment}.
+     * Safe to call from any thread; the fragment must then be inserted exactly once.
+     *
+     * @param color     The color for the sender
+     * @param senderId  The sender's ID
+     * @param message   The HTML-escaped message text
+     * @param timestamp The message timestamp
+     * @param hlc       The encoded hybrid logical clock timestamp, or zero to append
+     * @param messageId The message ID whose receipt the badge shows, or null for no badge
+     * @return The pre-rendered fragment
+     */
+    public Fragment prerenderMessage(String color,
+                                     String senderId,
+                                     String message,
+                                     Date timestamp,
+                                     long hlc,
+                                     UUID messageId) {
+        if (transcriptList != null) {
+            return new Fragment(TranscriptEntry.message(toColor(color), truncate(senderId), senderId,
+                    timestamp.getTime(), hlc, unescapeHtml4(message), messageId));
+        }
+        var html = renderBuffer();
+        MESSAGE_TEMPLATE.appendLiteral(html, 0).append(getColorStyle(color));
+        MESSAGE_TEMPLATE.appendLiteral(html, 1).append(senderId); // Full sender ID for tooltip
+        MESSAGE_TEMPLATE.appendLiteral(html, 2).append(truncate(senderId));
+        timestampFormat.appendTo(MESSAGE_TEMPLATE.appendLiteral(html, 3), timestamp.getTime());
+        MESSAGE_TEMPLATE.appendLiteral(html, 4).append(message);
+        MESSAGE_TEMPLATE.appendLiteral(html, 5);
+        return prerender(html.toString(), hlc, senderId, messageId);
+    }
+
+    /**
+     * Formats and parses a received message into a fragment ready for {@link #insertFragment}.
+     * The sender's color and truncated ID are cached, and the body is escaped straight into the
+     * render buffer. Safe to call from any thread; the fragment must then be inserted exactly once.
+     *
+     * @param message   The message to render
+     * @param timestamp The time to display
+     * @return The pre-rendered fragment
+     * @throws IllegalArgumentException if the sender ID is not a UUID
+     */
+    public Fragment prerenderMessage(Message message, Date timestamp) {
+        var senderId = message.senderId();
+        var style = message.type() == Message.MessageType.SYSTEM_EVENT
+                ? SenderStyle.of(UIConstants.COLOR_NEUTRAL, truncate(senderId))
+                : senderStyle(message);
+        var messageId = message.type() == Message.MessageType.CHAT ? message.messageId() : null;
+        if (transcriptList != null) {
+            return new Fragment(TranscriptEntry.message(style.color(), style.shortId(), senderId,
+                    timestamp.getTime(), message.hlc(), message.body(), messageId));
+        }
+        var html = renderBuffer();
+        MESSAGE_TEMPLATE.appendLiteral(html, 0).append(style.colorStyle());
+        MESSAGE_TEMPLATE.appendLiteral(html, 1).append(senderId); // Full sender ID for tooltip
+        MESSAGE_TEMPLATE.appendLiteral(html, 2).append(style.shortId());
+        timestampFormat.appendTo(MESSAGE_TEMPLATE.appendLiteral(html, 3), timestamp.getTime());
+        CompiledTemplate.appendEscaped(MESSAGE_TEMPLATE.appendLiteral(html, 4), message.body());
+        MESSAGE_TEMPLATE.appendLiteral(html, 5);
+        return prerender(html.toString(), message.hlc(), senderId, messageId);
+    }
+
+    /**
+     * Gets the cached rendering style of a message's sender, computing it on first sight.
+     *
+     * @param message A message from the sender
+     * @return The sender's style
+     */
+    private SenderStyle senderStyle(Message message) {
+        var style = senderStyles.get(message.senderId());
+        if (style == null) {
+            if (senderStyles.size() >= SENDER_CACHE_LIMIT) {
+                senderStyles.clear();
+            }
+            style = SenderStyle.of(message.generateColor(), truncate(message.senderId()));
+            senderStyles.put(message.senderId(), style);
+        }
+        return style;
+    }
+
+    /**
+     * Truncates an ID for display.
+     *
+     * @param id The ID
+     * @return The first characters of the ID
+     */
+    private static String truncate(String id) {
+        return id.substring(0, Math.min(id.length(), SENDER_ID_TRUNCATE_LENGTH));
+    }
+
+    /**
+     * Gets this thread's render buffer, emptied.
+     *
+     * @return The render buffer
+     */
+    private static StringBuilder renderBuffer() {
+        var html = RENDER_BUFFER.get();
+        html.setLength(0);
+        return html;
+    }
+
+    /**
+     * Inserts a pre-rendered fragment into the transcript on the next frame.
+     *
+     * @param fragment The fragment from {@link #prerenderMessage}
+     */
+    public void insertFragment(Fragment fragment) {
+        scheduler.post(() -> insert(fragment));
+    }
+
+    /**
+     * Inserts pre-rendered fragments into the transcript as one update on the next frame, so
+     * the transcript is redrawn once for the whole batch.
+     *
+     * @param fragments The fragments from {@link #prerenderMessage}
+     */
+    public void insertFragments(List<Fragment> fragments) {
+        scheduler.post(() -> fragments.forEach(this::insert));
     }
 
     /**
@@ -156,31 +499,81 @@ public class ChatPanel extends JPanel {
      * @param details The event details
      */
     public void renderSystemEvent(String color, String title, String details) {
-        var colorClass = getColorStyle(color);
-        var formattedMessage = String.format(SYSTEM_EVENT_TEMPLATE,
-                colorClass,
+        if (transcriptList != null) {
+            insertFragment(new Fragment(eventRows(toColor(color), title, details)));
+            return;
+        }
+        var timestamp = timestampFormat.appendTo(new StringBuilder(), System.currentTimeMillis());
+        var formattedMessage = SYSTEM_EVENT_TEMPLATE.appendTo(renderBuffer(),
+                getColorStyle(color),
                 title,
-                dateFormat.format(new Date()),
+                timestamp,
                 details);
-        appendToMessagePane(formattedMessage);
+        appendToMessagePane(formattedMessage.toString());
     }
 
     /**
-     * Renders an acknowledgment message.
+     * Marks a message's delivery receipt as changed. The badge is redrawn on the next refresh,
+     * together with any other receipts that changed in the meantime.
      *
-     * @param color     The color for the message
      * @param messageId The message ID
-     * @param senderId  The sender's ID
      */
-    public void renderAcknowledgment(String color, String messageId, String senderId) {
-        var truncatedId = senderId.substring(0, Math.min(senderId.length(), SENDER_ID_TRUNCATE_LENGTH));
-        var colorClass = getColorStyle(color);
-        var formattedMessage = String.format(ACK_TEMPLATE,
-                colorClass,
-                messageId,
-                truncatedId,
-                dateFormat.format(new Date()));
-        appendToMessagePane(formattedMessage);
+    public void updateReceipt(UUID messageId) {
+        scheduler.post(() -> markReceiptStale(messageId));
+    }
+
+    /**
+     * Marks every delivery receipt as changed, for when acknowledgments were recorded without
+     * being shown. Called on the EDT.
+     */
+    public void invalidateReceipts() {
+        (transcriptList != null ? listReceipts : receiptBadges).keySet().forEach(this::markReceiptStale);
+    }
+
+    /**
+     * Queues a receipt badge for redrawing and starts the refresh timer if it is idle.
+     *
+     * @param messageId The message ID
+     */
+    private void markReceiptStale(UUID messageId) {
+        boolean shown = transcriptList != null
+                ? listReceipts.containsKey(messageId)
+                : receiptBadges.containsKey(messageId);
+        if (shown && staleReceipts.add(messageId) && !receiptTimer.isRunning()) {
+            receiptTimer.start();
+        }
+    }
+
+    /**
+     * Redraws every stale receipt badge, then schedules one re-render of the transcript.
+     * A receipt without responses, such as that of a message the tracker has forgotten,
+     * leaves the badge as it was.
+     */
+    private void refreshReceipts() {
+        if (transcriptList != null) {
+            for (UUID messageId : staleReceipts) {
+                Receipt receipt = receiptSource.apply(messageId);
+                if (receipt != null && receipt.responded() > 0) {
+                    listReceipts.put(messageId, receipt);
+                }
+            }
+            staleReceipts.clear();
+            transcriptList.repaint();
+            return;
+        }
+        for (UUID messageId : staleReceipts) {
+            Element badge = receiptBadges.get(messageId);
+            Receipt receipt = receiptSource.apply(messageId);
+            if (badge != null && receipt != null && receipt.responded() > 0) {
+                var color = receipt.rejected().isEmpty() ? UIConstants.COLOR_NEUTRAL : UIConstants.COLOR_ERROR;
+                badge.html(RECEIPT_TEMPLATE.appendTo(renderBuffer(),
+                        getColorStyle(color),
+                        escapeHtml4(receipt.breakdown()),
+                        escapeHtml4(receipt.summary())).toString());
+            }
+        }
+        staleReceipts.clear();
+        scheduler.postLatest(redrawKey, this::redraw);
     }
 
     /**
@@ -214,7 +607,37 @@ public class ChatPanel extends JPanel {
         appendToMessagePane(formattedStats);
     }
 
-    private String getColorStyle(String color) {
+    /**
+     * Renders the end-to-end latency breakdown.
+     *
+     * @param breakdown The latency breakdown across all peers
+     * @param peers     Latency summaries keyed by peer ID
+     */
+    public void renderLatencyStats(LatencyTracker.Breakdown breakdown,
+                                   Map<String, LatencyTracker.PeerSummary> peers) {
+        var peerLines = new StringBuilder();
+        peers.forEach((peerId, summary) -> {
+            var truncatedId = peerId.substring(0, Math.min(peerId.length(), SENDER_ID_TRUNCATE_LENGTH));
+            peerLines.append("<br/>• Peer ").append(escapeHtml4(truncatedId)).append(": ");
+            if (summary.synchronizedWithPeer()) {
+                peerLines.append(String.format(Locale.ROOT, "offset <b>%+.2f ms</b>, round trip <b>%s</b>",
+                        summary.offset() / MICROS_PER_MILLI, summary.roundTrip().describeMillis()));
+            } else {
+                peerLines.append("awaiting acknowledgment round trip");
+            }
+        });
+
+        var formattedStats = String.format(
+                LATENCY_TEMPLATE,
+                breakdown.queue().describeMillis(),
+                breakdown.wire().describeMillis(),
+                breakdown.decode().describeMillis(),
+                breakdown.render().describeMillis(),
+                peerLines);
+        appendToMessagePane(formattedStats);
+    }
+
+    private static String getColorStyle(String color) {
         return switch (color) {
             case UIConstants.COLOR_SUCCESS -> "color: #2E7D32;";
             case UIConstants.COLOR_ERROR -> "color: #C62828;";
@@ -223,31 +646,378 @@ public class ChatPanel extends JPanel {
         };
     }
 
+    /**
+     * Converts a color to the one displayed, as {@link #getColorStyle} does for HTML.
+     *
+     * @param color The color, such as "#2E7D32"
+     * @return The color to paint with
+     */
+    private static Color toColor(String color) {
+        try {
+            return Color.decode(color);
+        } catch (NumberFormatException e) {
+            return Color.decode(UIConstants.COLOR_NEUTRAL);
+        }
+    }
+
     /**
      * Appends a message to the message pane.
      *
      * @param message The message to append
      */
     private void appendToMessagePane(String message) {
-        SwingUtilities.invokeLater(() -> {
-            try {
-                var messageDoc = Jsoup.parseBodyFragment(message);
-                var newMessageElement = requireNonNull(messageDoc.body().children().first());
-                currentDocument.body().appendChild(newMessageElement);
-                messagePane.setText(currentDocument.html());
-                messagePane.setCaretPosition(messagePane.getDocument().getLength());
-            } catch (Exception e) {
-                LOG.error("Failed to append message", e);
+        if (transcriptList != null) {
+            insertFragment(new Fragment(eventRows(null, null, message)));
+            return;
+        }
+        insertFragment(prerender(message, 0L, null, null));
+    }
+
+    /**
+     * Lays out a system event as list rows. The first line of the details goes below the title,
+     * and the remaining lines continue two to a row.
+     *
+     * @param color   The title color, or null if there is no title
+     * @param title   The event title, or null to start with a continuation row
+     * @param details The event details, as HTML
+     * @return The rows
+     */
+    private static List<TranscriptEntry> eventRows(Color color, String title, String details) {
+        List<String> lines = new ArrayList<>();
+        for (String line : Jsoup.parseBodyFragment(details).body().wholeText().split("\n")) {
+            String collapsed = WHITESPACE.matcher(line).replaceAll(" ").strip();
+            if (!collapsed.isEmpty()) {
+                lines.add(collapsed);
             }
-        });
+        }
+
+        List<TranscriptEntry> rows = new ArrayList<>();
+        int next = 0;
+        if (title != null) {
+            rows.add(TranscriptEntry.event(color, title, System.currentTimeMillis(),
+                    lines.isEmpty() ? "" : lines.get(next++)));
+        }
+        while (next < lines.size()) {
+            String text = lines.get(next++);
+            rows.add(TranscriptEntry.continuation(text, next < lines.size() ? lines.get(next++) : null));
+        }
+        return rows;
+    }
+
+    /**
+     * Parses formatted HTML into a fragment, stamping it for ordering and attaching an empty
+     * receipt badge if requested.
+     *
+     * @param message   The formatted HTML
+     * @param hlc       The encoded hybrid logical clock timestamp, or zero to append
+     * @param senderId  The sender's ID, used to break timestamp ties
+     * @param messageId The message ID whose receipt badge to attach, or null for none
+     * @return The fragment
+     */
+    private static Fragment prerender(String message, long hlc, String senderId, UUID messageId) {
+        var messageDoc = Jsoup.parseBodyFragment(message);
+        var element = requireNonNull(messageDoc.body().children().first());
+        if (hlc > 0) {
+            element.attr(HLC_ATTRIBUTE, Long.toString(hlc));
+            element.attr(SENDER_ATTRIBUTE, senderId);
+            if (messageId != null) {
+                element.attr(MESSAGE_ID_ATTRIBUTE, messageId.toString());
+            }
+        }
+        var badge = messageId != null ? element.appendElement("span") : null;
+        element.remove();
+        return new Fragment(element, hlc, senderId, messageId, badge);
+    }
+
+    /**
+     * Links a fragment into the document, ordered by hybrid logical clock timestamp.
+     * Unstamped fragments are appended. Stamped fragments walk back from the end past any
+     * stamped message that orders after them; unstamped elements such as system events
+     * act as barriers, so insertion is constant time for messages arriving in order.
+     *
+     * @param fragment The fragment to insert
+     */
+    private void insert(Fragment fragment) {
+        if (transcriptList != null) {
+            if (fragment.rows.size() == 1) {
+                transcriptModel.insert(fragment.rows.get(0));
+            } else {
+                transcriptModel.append(fragment.rows);
+            }
+            UUID messageId = fragment.rows.get(0).messageId();
+            if (messageId != null) {
+                listReceipts.putIfAbsent(messageId, null);
+                markReceiptStale(messageId);
+            }
+            scheduler.postLatest(redrawKey, this::redraw);
+            return;
+        }
+        var body = currentDocument.body();
+        Element successor = null;
+        if (fragment.hlc > 0) {
+            for (var child = body.lastElementChild();
+                 child != null && ordersAfter(child, fragment.hlc, fragment.senderId, fragment.messageId);
+                 child = child.previousElementSibling()) {
+                successor = child;
+            }
+        }
+
+        if (fragment.messageId != null) {
+            receiptBadges.put(fragment.messageId, fragment.badge);
+            markReceiptStale(fragment.messageId);
+        }
+
+        if (successor == null) {
+            body.appendChild(fragment.element);
+        } else {
+            successor.before(fragment.element);
+        }
+        scheduler.postLatest(redrawKey, this::redraw);
+    }
+
+    /**
+     * Stops the receipt timer and deletes the transcript's spill file, if any.
+     */
+    public void shutdown() {
+        receiptTimer.stop();
+        transcriptModel.close();
+    }
+
+    /**
+     * Renders the current document into the message pane and scrolls to the end. A list
+     * transcript repaints itself as rows arrive, so it only follows the end while the user has
+     * not scrolled away from it.
+     */
+    private void redraw() {
+        if (transcriptList != null) {
+            var scrollBar = scrollPane.getVerticalScrollBar();
+            boolean atEnd = scrollBar.getValue() + scrollBar.getVisibleAmount()
+                    >= scrollBar.getMaximum() - transcriptList.getFixedCellHeight();
+            if (atEnd && transcriptModel.getSize() > 0) {
+                scrollPane.validate();
+                transcriptList.ensureIndexIsVisible(transcriptModel.getSize() - 1);
+            }
+            return;
+        }
+        messagePane.setText(currentDocument.html());
+        messagePane.setCaretPosition(messagePane.getDocument().getLength());
+    }
+
+    /**
+     * Checks whether a rendered element is stamped and orders after the given message in
+     * {@link Message#CAUSAL_ORDER}.
+     *
+     * @param element   The rendered element
+     * @param hlc       The encoded hybrid logical clock timestamp
+     * @param senderId  The sender's ID
+     * @param messageId The message ID, or null
+     * @return true if the element should be displayed after the given message
+     */
+    private static boolean ordersAfter(Element element, long hlc, String senderId, UUID messageId) {
+        if (!element.hasAttr(HLC_ATTRIBUTE)) {
+            return false;
+        }
+        UUID elementId = element.hasAttr(MESSAGE_ID_ATTRIBUTE)
+                ? UUID.fromString(element.attr(MESSAGE_ID_ATTRIBUTE))
+                : null;
+        return Message.compareCausally(Long.parseLong(element.attr(HLC_ATTRIBUTE)), element.attr(SENDER_ATTRIBUTE),
+                elementId, hlc, senderId, messageId) > 0;
     }
 
     /**
      * Gets the message pane.
      *
-     * @return The message pane
+     * @return The message pane, or null when the transcript is a list
      */
     public JEditorPane getMessagePane() {
         return messagePane;
     }
+
+    /**
+     * Gets the list transcript.
+     *
+     * @return The transcript list, or null when the transcript is an HTML document
+     */
+    public JList<TranscriptEntry> getTranscriptList() {
+        return transcriptList;
+    }
+
+    /**
+     * How the transcript is displayed.
+     */
+    public enum View {
+        /**
+         * An HTML document in an editor pane, re-rendered whole on every frame with changes.
+         */
+        HTML,
+
+        /**
+         * A virtualized list of fixed-height rows painted directly.
+         */
+        LIST;
+
+        /**
+         * Looks a view up by name, ignoring case.
+         *
+         * @param name The name, such as "html" or "list", or null
+         * @return The named view, or {@link #HTML} if the name is not recognized
+         */
+        public static View fromName(String name) {
+            return LIST.name().equalsIgnoreCase(name) ? LIST : HTML;
+        }
+    }
+
+    /**
+     * Cached rendering style of a sender.
+     *
+     * @param color      The color of the sender's name
+     * @param colorStyle The CSS color declaration for the sender's name
+     * @param shortId    The sender's truncated ID
+     */
+    private record SenderStyle(Color color, String colorStyle, String shortId) {
+        /**
+         * Creates a style from a color code.
+         *
+         * @param color   The color, such as "#2E7D32"
+         * @param shortId The sender's truncated ID
+         * @return The style
+         */
+        static SenderStyle of(String color, String shortId) {
+            return new SenderStyle(toColor(color), getColorStyle(color), shortId);
+        }
+    }
+
+    /**
+     * A message formatted and parsed off the EDT, waiting to be linked into the transcript.
+     * Fragments are opaque and single-use. In the list view a fragment holds rows instead.
+     */
+    public static final class Fragment {
+        /**
+         * The parsed element, detached from any document.
+         */
+        private final Element element;
+
+        /**
+         * The encoded hybrid logical clock timestamp, or zero to append.
+         */
+        private final long hlc;
+
+        /**
+         * The sender's ID, used to break timestamp ties.
+         */
+        private final String senderId;
+
+        /**
+         * The message ID whose receipt the badge shows, or null for none.
+         */
+        private final UUID messageId;
+
+        /**
+         * The empty receipt badge inside the element, or null for none.
+         */
+        private final Element badge;
+
+        /**
+         * The list rows to insert, or null in the HTML view.
+         */
+        private final List<TranscriptEntry> rows;
+
+        private Fragment(Element element, long hlc, String senderId, UUID messageId, Element badge) {
+            this.element = element;
+            this.hlc = hlc;
+            this.senderId = senderId;
+            this.messageId = messageId;
+            this.badge = badge;
+            this.rows = null;
+        }
+
+        private Fragment(TranscriptEntry row) {
+            this(List.of(row));
+        }
+
+        private Fragment(List<TranscriptEntry> rows) {
+            this.element = null;
+            this.hlc = 0L;
+            this.senderId = null;
+            this.messageId = null;
+            this.badge = null;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Delivery receipt of a message: which peers have responded and which have not.
+     *
+     * @param acknowledged Peers that acknowledged the message
+     * @param rejected     Peers that negatively acknowledged the message
+     * @param pending      Known peers that have not responded yet
+     */
+    public record Receipt(Set<String> acknowledged, Set<String> rejected, Set<String> pending) {
+        /**
+         * Builds the receipt of a message from the acknowledgments recorded by a tracker.
+         * Acknowledgments from this instance are left out.
+         *
+         * @param tracker    The message tracker
+         * @param instanceId The ID of this instance
+         * @param messageId  The message ID
+         * @param peers      The IDs of the known peers
+         * @return The receipt
+         */
+        public static Receipt of(MessageTracker tracker, String instanceId, UUID messageId, Set<String> peers) {
+            Set<String> rejected = new HashSet<>(tracker.getNegativelyAcknowledgingParties(messageId));
+            Set<String> acknowledged = new HashSet<>(tracker.getAcknowledgingParties(messageId));
+            acknowledged.removeAll(rejected);
+            acknowledged.remove(instanceId);
+            rejected.remove(instanceId);
+            Set<String> pending = tracker.getUnacknowledgedParties(messageId, peers);
+            return new Receipt(acknowledged, rejected, pending);
+        }
+
+        /**
+         * Gets the number of peers that have responded.
+         *
+         * @return The number of acknowledging and rejecting peers
+         */
+        public int responded() {
+            return acknowledged.size() + rejected.size();
+        }
+
+        /**
+         * Formats the badge text, such as "✓ 27/30" or "✓ 27/30 ✗ 1".
+         *
+         * @return The badge text
+         */
+        public String summary() {
+            var total = responded() + pending.size();
+            var summary = "\u2713 " + acknowledged.size() + "/" + total;
+            return rejected.isEmpty() ? summary : summary + " \u2717 " + rejected.size();
+        }
+
+        /**
+         * Formats the per-peer breakdown shown on hover.
+         *
+         * @return The breakdown text
+         */
+        public String breakdown() {
+            return "Acknowledged: " + truncatedIds(acknowledged)
+                    + "; Rejected: " + truncatedIds(rejected)
+                    + "; Pending: " + truncatedIds(pending);
+        }
+
+        /**
+         * Joins peer IDs truncated for display.
+         *
+         * @param ids The peer IDs
+         * @return The sorted, truncated IDs, or "none"
+         */
+        private static String truncatedIds(Set<String> ids) {
+            if (ids.isEmpty()) {
+                return "none";
+            }
+            return ids.stream()
+                    .map(id -> id.substring(0, Math.min(id.length(), SENDER_ID_TRUNCATE_LENGTH)))
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+        }
+    }
 }
@@ -0,0 +1,122 @@
+package name.maxdeliso.teflon.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An HTML template split once into the literal text between its {@code %s} placeholders, so
+ * rendering appends segments and arguments into a caller's {@link StringBuilder} instead of
+ * re-parsing the format string on every call. Only {@code %s} and {@code %%} are supported.
+ */
+public final class CompiledTemplate {
+    /**
+     * Literal text before, between and after the placeholders; one more than the placeholders.
+     */
+    private final String[] literals;
+
+    /**
+     * Creates a compiled template from its literal segments.
+     *
+     * @param literals The literal segments
+     */
+    private CompiledTemplate(String[] literals) {
+        this.literals = literals;
+    }
+
+    /**
+     * Compiles a template.
+     *
+     * @param template The template text
+     * @return The compiled template
+     * @throws IllegalArgumentException if the template uses a conversion other than {@code %s}
+     */
+    public static CompiledTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            char conversion = i + 1 < template.length() ? template.charAt(++i) : '\0';
+            if (conversion == '%') {
+                literal.append('%');
+            } else if (conversion == 's') {
+                literals.add(literal.toString());
+                literal.setLength(0);
+            } else {
+                throw new IllegalArgumentException("Unsupported conversion at index " + (i - 1) + ": " + template);
+            }
+        }
+        literals.add(literal.toString());
+        return new CompiledTemplate(literals.toArray(String[]::new));
+    }
+
+    /**
+     * Gets the number of placeholders.
+     *
+     * @return The number of {@code %s} placeholders
+     */
+    public int placeholders() {
+        return literals.length - 1;
+    }
+
+    /**
+     * Appends the literal text that precedes a placeholder, or the trailing text when the index
+     * equals the number of placeholders. Callers that write arguments directly, such as escaped
+     * text, interleave this with their own appends.
+     *
+     * @param out   The builder to append to
+     * @param index The segment index
+     * @return The builder
+     */
+    public StringBuilder appendLiteral(StringBuilder out, int index) {
+        return out.append(literals[index]);
+    }
+
+    /**
+     * Appends the template with its placeholders replaced by the given arguments.
+     *
+     * @param out  The builder to append to
+     * @param args One argument per placeholder
+     * @return The builder
+     * @throws IllegalArgumentException if the number of arguments does not match
+     */
+    public StringBuilder appendTo(StringBuilder out, CharSequence... args) {
+        if (args.length != placeholders()) {
+            throw new IllegalArgumentException(
+                    "Expected " + placeholders() + " arguments but got " + args.length);
+        }
+        for (int i = 0; i < args.length; i++) {
+            out.append(literals[i]).append(args[i]);
+        }
+        return out.append(literals[args.length]);
+    }
+
+    /**
+     * Appends text with the characters that are special in HTML replaced by entity references.
+     * Other characters, including non-ASCII ones, are appended unchanged.
+     *
+     * @param out  The builder to append to
+     * @param text The text to escape
+     * @return The builder
+     */
+    public static StringBuilder appendEscaped(StringBuilder out, CharSequence text) {
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String entity = switch (text.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                default -> null;
+            };
+            if (entity != null) {
+                out.append(text, start, i).append(entity);
+                start = i + 1;
+            }
+        }
+        return out.append(text, start, text.length());
+    }
+}
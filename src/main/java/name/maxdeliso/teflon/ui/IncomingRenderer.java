@@ -0,0 +1,259 @@
+package name.maxdeliso.teflon.ui;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import name.maxdeliso.teflon.data.Message;
+
+/**
+ * Pre-render stage between the network and the EDT. Incoming messages, already recorded and
+ * acknowledged, are formatted and parsed into transcript fragments on the pre-render thread, so
+ * the EDT only links them in. While rendering is suspended, because nobody can see the
+ * transcript, or while the UI backlog is full, messages are held back instead and later
+ * inserted in one batch. Apart from {@link #setSuspended(boolean)}, which is called on the EDT,
+ * methods are called on the pre-render thread.
+ */
+public final class IncomingRenderer {
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = LogManager.getLogger(IncomingRenderer.class);
+
+    /**
+     * Default number of messages held back while rendering is suspended before they are
+     * inserted into the transcript anyway, without being painted, to keep the buffer small.
+     */
+    public static final int DEFAULT_MAX_PENDING = 1024;
+
+    /**
+     * The transcript.
+     */
+    private final ChatPanel chatPanel;
+
+    /**
+     * The scheduler through which updates reach the EDT.
+     */
+    private final UiUpdateScheduler scheduler;
+
+    /**
+     * The pre-render thread, on which held-back messages are inserted.
+     */
+    private final Executor renderThread;
+
+    /**
+     * Number of messages held back while suspended before they are inserted anyway.
+     */
+    private final int maxPending;
+
+    /**
+     * Runs on the EDT after held-back messages were inserted, to redraw what their shed updates
+     * would have.
+     */
+    private final Runnable caughtUp;
+
+    /**
+     * Runs on the EDT when the unread count changes.
+     */
+    private final Runnable unreadChanged;
+
+    /**
+     * Key under which unread count updates are coalesced.
+     */
+    private final Object unreadKey = new Object();
+
+    /**
+     * Messages whose transcript update is held back, in arrival order.
+     * Accessed only on the pre-render thread.
+     */
+    private final List<PendingMessage> pendingMessages = new ArrayList<>();
+
+    /**
+     * Whether an insertion of messages held back by a full UI backlog is scheduled.
+     * Accessed only on the pre-render thread.
+     */
+    private boolean flushScheduled;
+
+    /**
+     * Whether rendering is suspended.
+     */
+    private volatile boolean suspended;
+
+    /**
+     * Number of messages received since rendering was suspended.
+     * Written only on the pre-render thread.
+     */
+    private volatile int unread;
+
+    /**
+     * Creates a pre-render stage.
+     *
+     * @param chatPanel     The transcript
+     * @param scheduler     The scheduler through which updates reach the EDT
+     * @param renderThread  The pre-render thread; a single thread keeps messages in arrival order
+     * @param maxPending    The number of messages held back while suspended before they are inserted anyway
+     * @param caughtUp      Runs on the EDT after held-back messages were inserted
+     * @param unreadChanged Runs on the EDT when the unread count changes
+     */
+    public IncomingRenderer(ChatPanel chatPanel,
+                            UiUpdateScheduler scheduler,
+                            Executor renderThread,
+                            int maxPending,
+                            Runnable caughtUp,
+                            Runnable unreadChanged) {
+        this.chatPanel = chatPanel;
+        this.scheduler = scheduler;
+        this.renderThread = renderThread;
+        this.maxPending = maxPending;
+        this.caughtUp = caughtUp;
+        this.unreadChanged = unreadChanged;
+    }
+
+    /**
+     * Queues the transcript update of an incoming message: inserts a chat message, then runs
+     * the given update in the same frame. Nothing is inserted for acknowledgments. When the
+     * update is held back, so is the given one; {@code caughtUp} stands in for it.
+     *
+     * @param message The message, already recorded and acknowledged
+     * @param shown   Runs on the EDT once the message's update has been applied
+     */
+    public void render(Message message, Runnable shown) {
+        if (suspended) {
+            defer(message);
+            return;
+        }
+        ChatPanel.Fragment fragment = message.isAcknowledgment() ? null
+                : chatPanel.prerenderMessage(message, new Date());
+        boolean queued = scheduler.tryPost(() -> {
+            if (fragment != null) {
+                chatPanel.insertFragment(fragment);
+            }
+            shown.run();
+        });
+        if (!queued) {
+            shed(message);
+        }
+    }
+
+    /**
+     * Suspends or resumes rendering. While suspended, messages are held back with only the
+     * unread count shown; the EDT does no transcript work. Resuming inserts them in one batch.
+     * Called on the EDT.
+     *
+     * @param suspend Whether rendering should be suspended
+     */
+    public void setSuspended(boolean suspend) {
+        if (suspended == suspend) {
+            return;
+        }
+        suspended = suspend;
+        LOG.debug("Transcript rendering {}", suspend ? "suspended" : "resumed");
+        if (!suspend) {
+            renderThread.execute(this::resume);
+        }
+    }
+
+    /**
+     * Gets whether rendering is suspended.
+     *
+     * @return true if suspended
+     */
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    /**
+     * Gets the number of messages received since rendering was suspended.
+     *
+     * @return The unread count, zero while rendering
+     */
+    public int unread() {
+        return unread;
+    }
+
+    /**
+     * Holds back a message received while rendering is suspended.
+     *
+     * @param message The message
+     */
+    private void defer(Message message) {
+        if (message.isAcknowledgment()) {
+            return;
+        }
+        pendingMessages.add(new PendingMessage(message, new Date()));
+        unread++;
+        if (pendingMessages.size() >= maxPending) {
+            insertPending();
+        }
+        scheduler.postLatest(unreadKey, unreadChanged);
+    }
+
+    /**
+     * Holds back a message refused by the full UI backlog, and arranges for the held-back
+     * messages to be inserted once the EDT has applied a frame.
+     *
+     * @param message The message
+     */
+    private void shed(Message message) {
+        LOG.warn("UI backlog full, holding back the transcript update for message: {}", message.messageId());
+        if (!message.isAcknowledgment()) {
+            pendingMessages.add(new PendingMessage(message, new Date()));
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            scheduler.afterFrame(() -> renderThread.execute(this::insertShed));
+        }
+    }
+
+    /**
+     * Inserts the messages held back by a full UI backlog, unless rendering has since been
+     * suspended, in which case resuming inserts them.
+     */
+    private void insertShed() {
+        flushScheduled = false;
+        if (suspended) {
+            return;
+        }
+        insertPending();
+        scheduler.post(caughtUp);
+    }
+
+    /**
+     * Inserts the held-back messages in one batch and resets the unread count.
+     */
+    private void resume() {
+        insertPending();
+        unread = 0;
+        scheduler.post(() -> {
+            caughtUp.run();
+            unreadChanged.run();
+        });
+    }
+
+    /**
+     * Pre-renders the held-back messages and queues them for insertion as one update.
+     */
+    private void insertPending() {
+        if (pendingMessages.isEmpty()) {
+            return;
+        }
+        List<ChatPanel.Fragment> fragments = new ArrayList<>(pendingMessages.size());
+        for (PendingMessage pending : pendingMessages) {
+            fragments.add(chatPanel.prerenderMessage(pending.message(), pending.receivedAt()));
+        }
+        pendingMessages.clear();
+        chatPanel.insertFragments(fragments);
+    }
+
+    /**
+     * A message whose transcript update is held back.
+     *
+     * @param message    The message
+     * @param receivedAt When it was received, shown as its time in the transcript
+     */
+    private record PendingMessage(Message message, Date receivedAt) {}
+}
@@ -1,16 +1,36 @@
 package name.maxdeliso.teflon.ui;
 
 import java.awt.BorderLayout;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.Optional;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import javax.swing.JFrame;
@@ -19,7 +39,6 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JSplitPane;
 import javax.swing.JTextField;
-import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 
 import org.apache.logging.log4j.LogManager;
@@ -31,15 +50,33 @@ import static name.maxdeliso.teflon.Main.MESSAGE_MARSHALLER;
 import static name.maxdeliso.teflon.Main.MULTICAST_IPV4_BIND_ADDRESS;
 import static name.maxdeliso.teflon.Main.MULTICAST_IPV6_BIND_ADDRESS;
 import static name.maxdeliso.teflon.Main.TRANSFER_QUEUE;
+import static org.apache.commons.text.StringEscapeUtils.escapeHtml4;
 
 import name.maxdeliso.teflon.commands.CommandProcessor;
+import name.maxdeliso.teflon.data.Clock;
+import name.maxdeliso.teflon.data.HistorySync;
+import name.maxdeliso.teflon.data.HybridLogicalClock;
+import name.maxdeliso.teflon.data.LatencyTracker;
 import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageHistory;
 import name.maxdeliso.teflon.data.MessageTracker;
+import name.maxdeliso.teflon.data.MetricsRegistry;
+import name.maxdeliso.teflon.data.NodeCore;
+import name.maxdeliso.teflon.data.Outbox;
 import name.maxdeliso.teflon.data.PeerTracker;
+import name.maxdeliso.teflon.data.RealClock;
+import name.maxdeliso.teflon.data.SearchIndex;
+import name.maxdeliso.teflon.data.SessionSnapshot;
+import name.maxdeliso.teflon.data.SwimMembership;
+import name.maxdeliso.teflon.data.TimingWheel;
+import name.maxdeliso.teflon.data.TranscriptExporter;
+import name.maxdeliso.teflon.net.AddressedMessage;
 import name.maxdeliso.teflon.net.ConnectionManager;
 import name.maxdeliso.teflon.net.ConnectionResult;
+import name.maxdeliso.teflon.net.MessageSource;
 import name.maxdeliso.teflon.net.NetSelector;
 import name.maxdeliso.teflon.net.NetworkInterfaceManager;
+import name.maxdeliso.teflon.net.OutboxMessageSource;
 import name.maxdeliso.teflon.net.QueueMessageSource;
 
 /**
@@ -52,6 +89,67 @@ public class MainFrame extends JFrame {
      */
     private static final Logger LOG = LogManager.getLogger(MainFrame.class);
 
+    /**
+     * System property selecting the transcript view: "html" (the default) or "list".
+     */
+    private static final String TRANSCRIPT_VIEW_PROPERTY = "teflon.transcript";
+
+    /**
+     * System property setting how many recent transcript rows are kept in memory.
+     */
+    private static final String SCROLLBACK_PROPERTY = "teflon.scrollback";
+
+    /**
+     * Default number of recent transcript rows kept in memory.
+     */
+    private static final int DEFAULT_SCROLLBACK = 10_000;
+
+    /**
+     * System property naming the directory the message history is kept in.
+     */
+    private static final String HISTORY_DIR_PROPERTY = "teflon.history.dir";
+
+    /**
+     * Number of recent history entries read back into the transcript on startup.
+     */
+    private static final int HISTORY_TAIL_ENTRIES = 200;
+
+    /**
+     * Longest time to wait for the history to be saved and closed on exit, in seconds.
+     */
+    private static final long HISTORY_CLOSE_SECONDS = 5L;
+
+    /**
+     * Longest time since a peer was last seen for it to be restored from the session snapshot.
+     */
+    private static final long ROSTER_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Most search results shown for one query.
+     */
+    private static final int SEARCH_RESULT_LIMIT = 20;
+
+    /**
+     * Most characters of a message shown in a search result.
+     */
+    private static final int SEARCH_SNIPPET_CHARS = 120;
+
+    /**
+     * Number of sender ID characters shown in a search result.
+     */
+    private static final int SEARCH_SENDER_CHARS = 8;
+
+    /**
+     * Format of the time shown in a search result.
+     */
+    private static final DateTimeFormatter SEARCH_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
+    /**
+     * Number of messages exported between two progress updates.
+     */
+    private static final int EXPORT_PROGRESS_INTERVAL = 1024;
+
     /**
      * Default window width.
      */
@@ -142,6 +240,51 @@ public class MainFrame extends JFrame {
      * Manager for network interfaces.
      */
     private final NetworkInterfaceManager networkInterfaceManager;
+    /**
+     * Timing wheel shared by the trackers for expiry deadlines.
+     */
+    private final TimingWheel timingWheel;
+
+    /**
+     * Registry for delivery, membership and network metrics.
+     */
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
+    /**
+     * Scheduler through which all UI updates reach the EDT.
+     */
+    private final UiUpdateScheduler uiScheduler = new UiUpdateScheduler(metrics);
+
+    /**
+     * Worker that formats and parses incoming messages before they reach the EDT.
+     * A single thread keeps messages in arrival order.
+     */
+    private final ExecutorService renderExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Teflon-PreRender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Worker that appends messages to the history and keeps the search index, so neither the
+     * EDT nor the selector thread waits on them. A single thread keeps the index confined.
+     */
+    private final ExecutorService historyExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Teflon-History");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Worker that exports transcripts, so a long export neither blocks the EDT nor holds up
+     * the history thread. Exports queue behind one another.
+     */
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Teflon-Export");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * Message tracker for handling acknowledgments.
      */
@@ -151,6 +294,71 @@ public class MainFrame extends JFrame {
      * Peer tracker for managing known peers.
      */
     private final PeerTracker peerTracker;
+
+    /**
+     * Membership protocol probing peers and gossiping membership changes.
+     */
+    private final SwimMembership membership;
+
+    /**
+     * Catch-up of history missed while disconnected, pulled from peers.
+     */
+    private final HistorySync historySync;
+
+    /**
+     * Messages waiting to be sent to single peers rather than the group.
+     */
+    private final Queue<AddressedMessage> unicastQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Wall clock shared by the trackers, the timers and the stamping of outgoing messages, so
+     * their readings share an origin.
+     */
+    private final Clock clock;
+
+    /**
+     * Records incoming messages and stamps outgoing ones, as a headless node does.
+     */
+    private final NodeCore nodeCore;
+
+    /**
+     * Latency tracker for end-to-end message timing.
+     */
+    private final LatencyTracker latencyTracker;
+
+    /**
+     * Persistent history of sent and received messages, or null if it could not be opened.
+     */
+    private final MessageHistory history;
+
+    /**
+     * Durable queue of chat messages not yet sent, or null if it could not be opened, in which
+     * case chat messages can only be sent while connected.
+     */
+    private final Outbox outbox;
+
+    /**
+     * State saved by the previous session.
+     */
+    private final SessionSnapshot snapshot;
+
+    /**
+     * Profile of the current or last connection, at first the saved one, or null if there has
+     * been none. The saved roster was taken while connected with it. Accessed only on the EDT.
+     */
+    private SessionSnapshot.Profile connectionProfile;
+
+    /**
+     * Peers to restore on the next connection to the saved profile, and to save while
+     * disconnected. Accessed only on the EDT.
+     */
+    private List<PeerTracker.PeerInfo> savedRoster;
+
+    /**
+     * Full-text index over the chat messages in the history, or null until loaded.
+     * Accessed only on the history thread.
+     */
+    private SearchIndex searchIndex;
     /**
      * Current connection result.
      */
@@ -162,6 +370,22 @@ public class MainFrame extends JFrame {
 
     private volatile NetSelector currentSelector;
 
+    /**
+     * Pre-render stage that formats incoming messages off the EDT and holds them back while
+     * rendering is suspended or the UI backlog is full.
+     */
+    private final IncomingRenderer incomingRenderer;
+
+    /**
+     * IDs of the known peers as of {@link #peerIdsVersion}. Accessed only on the EDT.
+     */
+    private Set<String> peerIds = Set.of();
+
+    /**
+     * Peer tracker membership version {@link #peerIds} was taken at, or -1 if never taken.
+     */
+    private long peerIdsVersion = -1;
+
     /**
      * Creates a new main frame.
      *
@@ -180,23 +404,49 @@ public class MainFrame extends JFrame {
         this.netExecutor = executor;
         this.connectionManager = connManager;
         this.networkInterfaceManager = ifaceManager;
-        this.messageTracker = new MessageTracker(id.toString());
-        this.peerTracker = new PeerTracker(id.toString());
+        this.snapshot = loadSnapshot();
+        this.connectionProfile = snapshot.profile();
+        this.savedRoster = snapshot.peers();
+        // Rejoin the last group while the rest of the window is built
+        CompletableFuture<ConnectionResult> warmConnection = connectionProfile == null ? null
+                : connManager.connectMulticast(connectionProfile.groupAddress(), connectionProfile.port(),
+                        connectionProfile.interfaceName());
+        this.clock = new RealClock();
+        this.timingWheel = new TimingWheel(clock).start("Teflon-Timers");
+        this.messageTracker = new MessageTracker(id.toString(), clock, timingWheel, metrics);
+        messageTracker.restoreDeliveryStats(snapshot.deliveryStats());
+        this.peerTracker = new PeerTracker(id.toString(), clock, timingWheel, metrics);
+        this.nodeCore = new NodeCore(id.toString(), clock, messageTracker, peerTracker, this::sendProtocolMessage);
+        this.latencyTracker = new LatencyTracker(id.toString(), clock, peerTracker);
+        this.membership = new SwimMembership(id.toString(), clock, timingWheel, peerTracker, this::sendProtocolMessage,
+                metrics);
+        this.historySync = HistorySync.create(id.toString(), clock, timingWheel, peerTracker, this::sendUnicast,
+                this::findStoredMessage, this::deliverSyncedMessage, metrics);
 
         // Initialize UI components first
-        this.chatPanel = new ChatPanel();
-        this.statusPanel = new StatusPanel();
-        this.peerPanel = new PeerPanel();
+        var transcriptView = ChatPanel.View.fromName(System.getProperty(TRANSCRIPT_VIEW_PROPERTY));
+        this.chatPanel = new ChatPanel(uiScheduler, this::receiptFor, transcriptView, scrollback(transcriptView));
+        this.statusPanel = new StatusPanel(uiScheduler);
+        this.peerPanel = new PeerPanel(uiScheduler, peerTracker, latencyTracker::peerSummary);
+        this.incomingRenderer = new IncomingRenderer(chatPanel, uiScheduler, renderExecutor,
+                IncomingRenderer.DEFAULT_MAX_PENDING, this::catchUp, this::updateTitle);
+        this.history = openHistory();
+        this.outbox = openOutbox();
+        renderExecutor.execute(this::loadHistoryTail);
+        historyExecutor.execute(this::loadSearchIndex);
+        historyExecutor.execute(this::loadSyncDigest);
 
         CommandProcessor commandProcessor =
                 new CommandProcessor(msg -> chatPanel.renderSystemEvent("#757575", "System", msg));
         this.messageConsumer = msgConsumer;  // Use the original message consumer directly
         this.messageComposer = new MessageComposer(
-                id,
-                this.messageConsumer,
+                this::queueChatMessage,
                 messageTracker,
                 commandProcessor,
-                chatPanel
+                chatPanel,
+                nodeCore,
+                latencyTracker,
+                outbox != null
         );
         this.connectMenuItem = new JMenuItem("Connect...");
         this.disconnectMenuItem = new JMenuItem("Disconnect");
@@ -204,6 +454,10 @@ public class MainFrame extends JFrame {
 
         // Set initial status
         this.statusPanel.updateStatus(false, "disconnected");
+        if (outbox != null && outbox.size() > 0) {
+            chatPanel.renderSystemEvent("#757575", "Queued", outbox.size()
+                    + " unsent messages from the last session will be sent once a connection is up");
+        }
 
         // Register built-in commands
         commandProcessor.registerCommand(new name.maxdeliso.teflon.commands.ChatCommand(
@@ -257,6 +511,18 @@ public class MainFrame extends JFrame {
                 args -> handleDisconnect()
         ));
 
+        commandProcessor.registerCommand(new name.maxdeliso.teflon.commands.ChatCommand(
+                "search",
+                "Search the message history for messages containing every term (usage: /search <terms>)",
+                this::searchHistory
+        ));
+
+        commandProcessor.registerCommand(new name.maxdeliso.teflon.commands.ChatCommand(
+                "export",
+                "Write the message history to a file (usage: /export <file> [html|jsonl|txt])",
+                this::exportTranscript
+        ));
+
         commandProcessor.registerCommand(new name.maxdeliso.teflon.commands.ChatCommand(
                 "quit",
                 "Exit the application",
@@ -269,6 +535,10 @@ public class MainFrame extends JFrame {
         initializeComponents();
         connectMenuItem.setEnabled(true);
         disconnectMenuItem.setEnabled(false);
+
+        if (warmConnection != null) {
+            warmConnection.whenComplete((result, ex) -> uiScheduler.post(() -> finishWarmConnection(result, ex)));
+        }
     }
 
     /**
@@ -295,6 +565,30 @@ public class MainFrame extends JFrame {
         getContentPane().add(statusPanel, BorderLayout.SOUTH);
         getContentPane().add(messageComposer, BorderLayout.NORTH);
 
+        // Stop rendering while nobody can see the transcript
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowIconified(WindowEvent e) {
+                incomingRenderer.setSuspended(true);
+            }
+
+            @Override
+            public void windowDeiconified(WindowEvent e) {
+                incomingRenderer.setSuspended(false);
+            }
+        });
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentHidden(ComponentEvent e) {
+                incomingRenderer.setSuspended(true);
+            }
+
+            @Override
+            public void componentShown(ComponentEvent e) {
+                incomingRenderer.setSuspended(false);
+            }
+        });
+
         // Set up event handlers
         connectMenuItem.addActionListener(e -> showConnectionDialog());
         disconnectMenuItem.addActionListener(e -> handleDisconnect());
@@ -342,11 +636,27 @@ public class MainFrame extends JFrame {
                     BUFFER_LENGTH,
                     connectionResult,
                     // Incoming message handler
-                    (address, bb) -> MESSAGE_MARSHALLER
-                            .bufferToMessage(bb)
-                            .ifPresent(msg -> SwingUtilities.invokeLater(() -> processIncomingMessage(msg, address))),
+                    (address, bb) -> {
+                        long arrivedAt = latencyTracker.now();
+                        MESSAGE_MARSHALLER
+                                .bufferToMessage(bb)
+                                .ifPresent(msg -> {
+                                    if (membership.receive(msg, address)) {
+                                        return;
+                                    }
+                                    if (msg.isSync()) {
+                                        historyExecutor.execute(() -> historySync.receive(msg, address));
+                                        return;
+                                    }
+                                    long decodedAt = latencyTracker.now();
+                                    latencyTracker.recordArrival(msg, arrivedAt, decodedAt);
+                                    renderExecutor.execute(
+                                            () -> receiveIncomingMessage(msg, address, arrivedAt, decodedAt));
+                                });
+                    },
                     // Outgoing message source
-                    new QueueMessageSource(TRANSFER_QUEUE, MESSAGE_MARSHALLER)
+                    createMessageSource(),
+                    metrics
             );
             LOG.debug("Successfully created NetSelector");
             return selector;
@@ -356,6 +666,38 @@ public class MainFrame extends JFrame {
         }
     }
 
+    /**
+     * Creates the source of outgoing messages for a new connection: protocol messages and
+     * acknowledgments first, then the chat messages waiting in the outbox, replayed in order.
+     *
+     * @return The message source
+     */
+    private MessageSource createMessageSource() {
+        Consumer<Message> sendListener = message -> {
+            latencyTracker.recordSent(message);
+            recordHistory(message);
+        };
+        MessageSource queueSource = new QueueMessageSource(
+                TRANSFER_QUEUE,
+                MESSAGE_MARSHALLER,
+                clock,
+                sendListener,
+                membership::piggyback,
+                unicastQueue);
+        if (outbox == null) {
+            return queueSource;
+        }
+        return new OutboxMessageSource(
+                queueSource,
+                outbox,
+                MESSAGE_MARSHALLER,
+                clock,
+                sendListener,
+                membership::piggyback,
+                timingWheel,
+                this::wakeSelector);
+    }
+
     CompletableFuture<Void> handleConnectionResult(final ConnectionResult result) {
         this.connectionResult = result;
         LOG.info("Connection successful: {}", formatMembershipInfo(result));
@@ -377,12 +719,15 @@ public class MainFrame extends JFrame {
                         LOG.debug("NetSelector created successfully, setting in message composer");
 
                         // Set the selector and update UI state on EDT
-                        SwingUtilities.invokeLater(() -> {
+                        uiScheduler.post(() -> {
                             currentSelector = selector;
                             messageComposer.setNetSelector(selector);
 
-                            // Reset peer tracker for new connection
+                            // Reset peer tracker for new connection, then restore the saved roster
                             peerTracker.reset();
+                            restoreRoster(result);
+                            membership.start();
+                            historySync.start(result.getPort());
 
                             // Now that selector is set up, update UI state
                             updateConnectivityState(true);
@@ -397,6 +742,9 @@ public class MainFrame extends JFrame {
                             }
 
                             messageComposer.getInputTextField().requestFocusInWindow();
+
+                            SessionSnapshot current = takeSnapshot();
+                            historyExecutor.execute(() -> saveSnapshot(current));
                         });
                         return selector;
                     } catch (Exception e) {
@@ -415,7 +763,7 @@ public class MainFrame extends JFrame {
                         selector.selectLoop().join();
                     } catch (IOException e) {
                         LOG.error("Error in selector loop: {} - {}", e.getClass().getName(), e.getMessage(), e);
-                        SwingUtilities.invokeLater(() -> handleError(e));
+                        uiScheduler.post(() -> handleError(e));
                         throw new RuntimeException(e);
                     }
                 }, netExecutor))
@@ -427,11 +775,132 @@ public class MainFrame extends JFrame {
                             cause.getMessage(),
                             cause
                     );
-                    SwingUtilities.invokeLater(() -> handleError(cause));
+                    uiScheduler.post(() -> handleError(cause));
                     return null;
                 });
     }
 
+    /**
+     * Completes the connection to the saved profile started at launch. If the user has connected
+     * by other means in the meantime, the new connection is closed. Called on the EDT.
+     *
+     * @param result The connection, or null if it failed
+     * @param ex     The failure, or null if it succeeded
+     */
+    private void finishWarmConnection(ConnectionResult result, Throwable ex) {
+        if (ex != null) {
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            LOG.warn("Failed to rejoin {}", snapshot.profile(), cause);
+            chatPanel.renderSystemEvent("#C62828", "Error", escapeHtml4("Could not rejoin "
+                    + snapshot.profile().groupAddress() + ":" + snapshot.profile().port() + " on "
+                    + snapshot.profile().interfaceName() + ": " + cause.getMessage()));
+            return;
+        }
+        if (connectionResult != null) {
+            try {
+                result.getDc().close();
+            } catch (IOException e) {
+                LOG.debug("Error closing superseded connection", e);
+            }
+            return;
+        }
+        handleConnectionResult(result);
+    }
+
+    /**
+     * Adds the peers saved from the previous connection to the roster and the membership if this
+     * connection is to the same group, so they are shown and counted before they are heard from.
+     * They keep the time they were last seen, and the membership probes them, declaring dead any
+     * that have gone; one not heard from also times out of the roster as usual. Peers not seen
+     * for {@link #ROSTER_MAX_AGE_MILLIS} are left out. Called on the EDT, before the membership starts.
+     *
+     * @param result The new connection
+     */
+    private void restoreRoster(ConnectionResult result) {
+        // The saved roster was taken while connected with the previous profile
+        SessionSnapshot.Profile profile = profileOf(result);
+        boolean sameGroup = profile.equals(connectionProfile);
+        connectionProfile = profile;
+        if (!sameGroup) {
+            savedRoster = List.of();
+            return;
+        }
+        long oldest = clock.millis() - ROSTER_MAX_AGE_MILLIS;
+        int restored = 0;
+        for (PeerTracker.PeerInfo peer : savedRoster) {
+            long lastSeen = peer.lastSeen().toEpochMilli();
+            if (lastSeen < oldest) {
+                continue;
+            }
+            try {
+                // The address is a literal, so this does no lookup
+                var address = new InetSocketAddress(InetAddress.getByName(peer.ipAddress()), result.getPort());
+                if (peerTracker.restorePeer(peer.uuid(), address, lastSeen)) {
+                    membership.restore(peer.uuid(), address.getAddress().getHostAddress());
+                    restored++;
+                }
+            } catch (UnknownHostException e) {
+                LOG.debug("Skipping saved peer {} with bad address {}", peer.uuid(), peer.ipAddress());
+            }
+        }
+        LOG.debug("Restored {} of {} saved peers", restored, savedRoster.size());
+        savedRoster = List.of();
+    }
+
+    /**
+     * Describes a connection as a profile that can be saved and connected to again.
+     *
+     * @param result The connection
+     * @return The profile
+     */
+    private static SessionSnapshot.Profile profileOf(ConnectionResult result) {
+        return new SessionSnapshot.Profile(
+                result.getMembershipKey().group().getHostAddress(),
+                result.getPort(),
+                result.getMembershipKey().networkInterface().getName());
+    }
+
+    /**
+     * Captures the connection profile, roster and delivery statistics. Called on the EDT.
+     *
+     * @return The snapshot
+     */
+    private SessionSnapshot takeSnapshot() {
+        List<PeerTracker.PeerInfo> roster = connectionResult != null
+                ? List.copyOf(peerTracker.getPeers().values())
+                : savedRoster;
+        return new SessionSnapshot(connectionProfile, roster, messageTracker.getDeliveryStats());
+    }
+
+    /**
+     * Loads the snapshot saved by the previous session.
+     *
+     * @return The snapshot, or an empty one if there is none or it cannot be read
+     */
+    private static SessionSnapshot loadSnapshot() {
+        try {
+            return SessionSnapshot.load(historyDirectory().resolve(SessionSnapshot.FILE_NAME));
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to load the session snapshot; starting cold", e);
+            return SessionSnapshot.EMPTY;
+        }
+    }
+
+    /**
+     * Saves a session snapshot. Runs on the history thread.
+     *
+     * @param current The snapshot
+     */
+    private static void saveSnapshot(SessionSnapshot current) {
+        try {
+            Path directory = historyDirectory();
+            Files.createDirectories(directory);
+            current.save(directory.resolve(SessionSnapshot.FILE_NAME));
+        } catch (IOException e) {
+            LOG.warn("Failed to save the session snapshot", e);
+        }
+    }
+
     /**
      * Process an incoming message.
      *
@@ -439,37 +908,503 @@ public class MainFrame extends JFrame {
      * @param senderAddress The sender's network address
      */
     public void processIncomingMessage(Message message, SocketAddress senderAddress) {
-        // Update peer tracker with sender information
-        peerTracker.updatePeer(message.senderId(), senderAddress);
+        long now = latencyTracker.now();
+        processIncomingMessage(message, senderAddress, now, now,
+                message.isAcknowledgment() ? null : chatPanel.prerenderMessage(message, new Date()));
+    }
+
+    /**
+     * Records and acknowledges an incoming message, then hands it to the pre-render stage.
+     * Runs on the pre-render thread, so recording never waits for the EDT; if the UI falls
+     * behind, only the transcript update is held back.
+     *
+     * @param message       The message
+     * @param senderAddress The sender's network address
+     * @param arrivedAt     When the datagram was received, in epoch microseconds
+     * @param decodedAt     When decoding finished, in epoch microseconds
+     */
+    private void receiveIncomingMessage(Message message, SocketAddress senderAddress, long arrivedAt, long decodedAt) {
+        recordIncomingMessage(message, senderAddress, arrivedAt);
+        incomingRenderer.render(message, () -> showIncomingMessage(message, decodedAt));
+    }
+
+    /**
+     * Gets the number of recent transcript rows to keep in memory. The HTML view cannot page
+     * evicted rows back in, so it keeps every row and ignores a configured limit.
+     *
+     * @param view The transcript view
+     * @return The scrollback for the view
+     */
+    private static int scrollback(ChatPanel.View view) {
+        if (view == ChatPanel.View.HTML) {
+            if (System.getProperty(SCROLLBACK_PROPERTY) != null) {
+                LOG.warn("Ignoring {}: the HTML transcript keeps every row", SCROLLBACK_PROPERTY);
+            }
+            return Integer.MAX_VALUE;
+        }
+        return Integer.getInteger(SCROLLBACK_PROPERTY, DEFAULT_SCROLLBACK);
+    }
 
-        // Update peer panel display
-        peerPanel.updatePeers(peerTracker.getPeers());
+    /**
+     * Brings the peer list and receipts up to date after held-back messages were inserted,
+     * since the updates of those messages were not applied. Called on the EDT.
+     */
+    private void catchUp() {
+        peerPanel.refresh();
+        chatPanel.invalidateReceipts();
+    }
 
+    /**
+     * Shows the number of unread messages in the window title. Called on the EDT.
+     */
+    private void updateTitle() {
+        int unread = incomingRenderer.unread();
+        setTitle(unread == 0 ? WINDOW_TITLE : WINDOW_TITLE + " (" + unread + " unread)");
+    }
+
+    /**
+     * Process an incoming message whose arrival has been timed and whose transcript entry has
+     * been pre-rendered.
+     *
+     * @param message       The message to process
+     * @param senderAddress The sender's network address
+     * @param arrivedAt     When the datagram was received, in epoch microseconds
+     * @param decodedAt     When decoding finished, in epoch microseconds
+     * @param fragment      The pre-rendered transcript entry, or null for acknowledgments
+     */
+    void processIncomingMessage(Message message,
+                                SocketAddress senderAddress,
+                                long arrivedAt,
+                                long decodedAt,
+                                ChatPanel.Fragment fragment) {
+        recordIncomingMessage(message, senderAddress, arrivedAt);
+        if (fragment != null) {
+            chatPanel.insertFragment(fragment);
+        }
+        showIncomingMessage(message, decodedAt);
+    }
+
+    /**
+     * Applies the rest of an incoming message's update once it is in the transcript: redraws
+     * what an acknowledgment changed, or times a chat message's rendering. Called on the EDT.
+     *
+     * @param message   The message
+     * @param decodedAt When decoding finished, in epoch microseconds
+     */
+    private void showIncomingMessage(Message message, long decodedAt) {
         if (message.isAcknowledgment()) {
-            messageTracker.processAcknowledgment(message);
+            // Acknowledgments carry round trip samples, so redraw the visible peers' latency
+            peerPanel.refresh();
 
             // Filter out self-acknowledgments (caused by IP_MULTICAST_LOOP=true)
             if (!message.senderId().equals(uuid.toString())) {
-                chatPanel.renderAcknowledgment(
-                        message.type() == Message.MessageType.ACK ? "#2E7D32" : "#C62828",
-                        message.originalMessageId().toString(),
-                        message.senderId());
+                chatPanel.updateReceipt(message.originalMessageId());
             }
         } else {
-            messageTracker.trackMessage(message);
-            chatPanel.renderMessage(
-                    message.type() == Message.MessageType.SYSTEM_EVENT ? "#757575" : message.generateColor(),
-                    message.senderId(),
-                    message.htmlSafeBody(),
-                    new Date());
-
-            // Send acknowledgment for received messages
-            Message ack = Message.createAcknowledgment(uuid.toString(), message.messageId(), true);
-            messageConsumer.accept(ack);
-            if (currentSelector != null) {
-                currentSelector.wakeup();
+            // The transcript is redrawn at the end of this frame, so this runs once the message is on screen
+            uiScheduler.afterFrame(() -> latencyTracker.recordRendered(decodedAt));
+        }
+    }
+
+    /**
+     * Queues an incoming message for the history, then updates the trackers and clock and
+     * acknowledges it. Our own messages, looped back, are only shown.
+     * Touches no UI, so it is safe to call from any thread.
+     *
+     * @param message       The message
+     * @param senderAddress The sender's network address
+     * @param arrivedAt     When the datagram was received, in epoch microseconds
+     */
+    private void recordIncomingMessage(Message message, SocketAddress senderAddress, long arrivedAt) {
+        recordHistory(message);
+        nodeCore.receive(message, senderAddress, arrivedAt);
+    }
+
+    /**
+     * Opens the message history in the configured directory, by default under the user's home.
+     *
+     * @return The history, or null if it cannot be opened, in which case nothing is persisted
+     */
+    private static MessageHistory openHistory() {
+        Path directory = historyDirectory();
+        try {
+            return MessageHistory.open(directory);
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Failed to open the message history in {}; history will not be kept", directory, e);
+            return null;
+        }
+    }
+
+    /**
+     * Opens the outbox journal in the history directory.
+     *
+     * @return The outbox, or null if it cannot be opened, in which case unsent messages are kept only in memory
+     */
+    private static Outbox openOutbox() {
+        Path file = historyDirectory().resolve(Outbox.FILE_NAME);
+        try {
+            return Outbox.open(file, MESSAGE_MARSHALLER);
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Failed to open the outbox {}; unsent messages will not be kept", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Gets the configured history directory, by default under the user's home.
+     *
+     * @return The directory
+     */
+    private static Path historyDirectory() {
+        String configured = System.getProperty(HISTORY_DIR_PROPERTY);
+        return configured != null
+                ? Path.of(configured)
+                : Path.of(System.getProperty("user.home"), ".teflon", "history");
+    }
+
+    /**
+     * Queues a composed chat message in the outbox, which keeps it until it has been sent, even
+     * across restarts, and wakes the selector to send it. Without an outbox the message is queued
+     * in memory. Called on the EDT; appending does not wait for the journal to reach the disk.
+     *
+     * @param message The chat message
+     */
+    private void queueChatMessage(Message message) {
+        if (outbox != null) {
+            try {
+                outbox.add(message);
+                wakeSelector();
+                return;
+            } catch (IOException e) {
+                LOG.warn("Failed to add message {} to the outbox; queueing it in memory", message.messageId(), e);
             }
         }
+        messageConsumer.accept(message);
+    }
+
+    /**
+     * Wakes the selector, if connected, to send newly queued messages.
+     */
+    private void wakeSelector() {
+        NetSelector selector = currentSelector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Queues a sent or received message for the history. Protocol messages are not kept.
+     * Safe to call from any thread.
+     *
+     * @param message The message
+     */
+    private void recordHistory(Message message) {
+        if (history == null || message.isProbe() || message.isSync() || historyExecutor.isShutdown()) {
+            return;
+        }
+        historyExecutor.execute(() -> storeMessage(message));
+    }
+
+    /**
+     * Appends a message to the history and indexes it if it is a chat message. A message
+     * already in the history, such as our own looped back, is neither appended nor indexed again.
+     * Runs on the history thread.
+     *
+     * @param message The message
+     * @return true if the message was appended, false if it was already stored or could not be
+     */
+    private boolean storeMessage(Message message) {
+        try {
+            long position = history.append(message);
+            if (position >= 0 && message.type() == Message.MessageType.CHAT) {
+                searchIndex.add(position, message.body());
+                historySync.record(message);
+            }
+            return position >= 0;
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.warn("Failed to append message {} to the history", message.messageId(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Loads the saved search index and indexes the chat messages stored since it was saved.
+     * An index that cannot be read is rebuilt from the whole history. Runs on the history thread.
+     */
+    private void loadSearchIndex() {
+        if (history == null) {
+            return;
+        }
+        try {
+            searchIndex = SearchIndex.load(history.directory().resolve(SearchIndex.FILE_NAME));
+        } catch (IOException e) {
+            LOG.warn("Failed to load the search index; rebuilding it", e);
+            searchIndex = new SearchIndex();
+        }
+        long saved = searchIndex.documents();
+        history.forEachAfter(searchIndex.indexedThrough(), entry -> {
+            if (entry.message().type() == Message.MessageType.CHAT) {
+                searchIndex.add(entry.position(), entry.message().body());
+            }
+        });
+        LOG.debug("Search index holds {} messages, {} indexed at startup",
+                searchIndex.documents(), searchIndex.documents() - saved);
+    }
+
+    /**
+     * Summarizes the recent chat history for catching up with peers. Runs on the history thread.
+     */
+    private void loadSyncDigest() {
+        if (history == null) {
+            return;
+        }
+        // Messages are stored after they are stamped, so none in the window was stored before it
+        history.forEachSince(System.currentTimeMillis() - HistorySync.WINDOW_MILLIS - HistorySync.BUCKET_MILLIS,
+                entry -> historySync.record(entry.message()));
+    }
+
+    /**
+     * Looks up a stored chat message for a peer catching up. Runs on the history thread.
+     *
+     * @param messageId The message ID
+     * @return The message, or empty if it is not stored
+     */
+    private Optional<Message> findStoredMessage(UUID messageId) {
+        return history == null ? Optional.empty() : history.find(messageId).map(MessageHistory.Entry::message);
+    }
+
+    /**
+     * Stores a chat message pulled from a peer and shows it in the transcript, ordered by its
+     * timestamp among the messages already shown. A message that reached the history by other
+     * means while it was being pulled is already shown, so it is not shown again.
+     * Runs on the history thread.
+     *
+     * @param message The chat message
+     */
+    private void deliverSyncedMessage(Message message) {
+        if (history != null && !storeMessage(message)) {
+            return;
+        }
+        chatPanel.insertFragment(chatPanel.prerenderMessage(message,
+                new Date(HybridLogicalClock.physicalMillis(message.hlc()))));
+    }
+
+    /**
+     * Queues a message for a single peer and wakes the selector to send it.
+     *
+     * @param message     The message
+     * @param destination The peer's address
+     */
+    private void sendUnicast(Message message, SocketAddress destination) {
+        unicastQueue.add(new AddressedMessage(message, destination));
+        NetSelector selector = currentSelector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Searches the history for the terms given to the search command. Called on the EDT; the
+     * search runs on the history thread and its results are shown as a system event.
+     *
+     * @param args The search terms
+     */
+    private void searchHistory(String[] args) {
+        if (history == null) {
+            chatPanel.renderSystemEvent("#C62828", "Error", "Message history is unavailable.");
+            return;
+        }
+        String query = String.join(" ", args).strip();
+        if (query.isEmpty()) {
+            chatPanel.renderSystemEvent("#C62828", "Error", "Usage: /search <terms>");
+            return;
+        }
+        historyExecutor.execute(() -> showSearchResults(query));
+    }
+
+    /**
+     * Exports the history to the file given to the export command. Called on the EDT; the
+     * export runs on the export thread, reporting its progress in the status bar.
+     * The format is the one named, or else the one matching the file's extension, or else HTML.
+     *
+     * @param args The file, optionally followed by the format
+     */
+    private void exportTranscript(String[] args) {
+        if (history == null) {
+            chatPanel.renderSystemEvent("#C62828", "Error", "Message history is unavailable.");
+            return;
+        }
+        if (args.length < 1 || args.length > 2) {
+            chatPanel.renderSystemEvent("#C62828", "Error", "Usage: /export <file> [html|jsonl|txt]");
+            return;
+        }
+        Path file = Path.of(args[0]).toAbsolutePath();
+        Optional<TranscriptExporter.Format> format = args.length == 2
+                ? TranscriptExporter.Format.named(args[1])
+                : Optional.of(TranscriptExporter.Format.of(file).orElse(TranscriptExporter.Format.HTML));
+        if (format.isEmpty()) {
+            chatPanel.renderSystemEvent("#C62828", "Error",
+                    "Unknown format " + escapeHtml4(args[1]) + ". Use html, jsonl or txt.");
+            return;
+        }
+        exportExecutor.execute(() -> writeTranscript(file, format.get()));
+    }
+
+    /**
+     * Streams every chat message in the history to a file. The file is replaced only once the
+     * export is complete, so a failed or cancelled export leaves it as it was. Runs on the export thread.
+     *
+     * @param file   The file to write
+     * @param format The format of the transcript
+     */
+    private void writeTranscript(Path file, TranscriptExporter.Format format) {
+        long started = System.nanoTime();
+        long total = history.size();
+        long[] visited = {0};
+        long messages;
+        long bytes;
+        try (TranscriptExporter exporter = TranscriptExporter.open(file, format)) {
+            history.forEach(entry -> {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Export interrupted");
+                }
+                if (entry.message().type() == Message.MessageType.CHAT) {
+                    try {
+                        exporter.write(entry.message(), entry.timestamp());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                if (++visited[0] % EXPORT_PROGRESS_INTERVAL == 0) {
+                    statusPanel.updateProgress(String.format("Exporting %s: %d%%",
+                            file.getFileName(), visited[0] * 100 / Math.max(total, visited[0])));
+                }
+            });
+            exporter.commit();
+            messages = exporter.messages();
+            bytes = exporter.bytes();
+        } catch (IOException | UncheckedIOException | CancellationException e) {
+            LOG.warn("Failed to export the history to {}", file, e);
+            chatPanel.renderSystemEvent("#C62828", "Error",
+                    "Export to " + escapeHtml4(file.toString()) + " failed: " + escapeHtml4(e.getMessage()));
+            return;
+        } finally {
+            statusPanel.updateProgress("");
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        chatPanel.renderSystemEvent("#757575", "Export", messages + (messages == 1 ? " message" : " messages")
+                + " (" + bytes / 1024 + " KB) written to " + escapeHtml4(file.toString())
+                + " in " + elapsedMillis + " ms");
+    }
+
+    /**
+     * Runs a search and shows the newest matches. Runs on the history thread.
+     *
+     * @param query The search terms
+     */
+    private void showSearchResults(String query) {
+        long started = System.nanoTime();
+        SearchIndex.Hits hits = searchIndex.search(query, SEARCH_RESULT_LIMIT);
+        long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+
+        var details = new StringBuilder();
+        details.append(hits.total()).append(hits.total() == 1 ? " message" : " messages")
+                .append(" matching \"").append(escapeHtml4(query)).append('"');
+        if (hits.total() > hits.positions().size()) {
+            details.append(", newest ").append(hits.positions().size()).append(" shown");
+        }
+        details.append(" (").append(elapsedMicros).append(" µs)");
+        for (long position : hits.positions()) {
+            MessageHistory.Entry entry = history.read(position);
+            Message message = entry.message();
+            String sender = message.senderId();
+            String body = message.body();
+            details.append("<br/>• ")
+                    .append(SEARCH_TIME_FORMAT.format(Instant.ofEpochMilli(entry.timestamp())))
+                    .append(' ')
+                    .append(escapeHtml4(sender.substring(0, Math.min(SEARCH_SENDER_CHARS, sender.length()))))
+                    .append(": ")
+                    .append(escapeHtml4(body.length() > SEARCH_SNIPPET_CHARS
+                            ? body.substring(0, SEARCH_SNIPPET_CHARS) + "…"
+                            : body));
+        }
+        chatPanel.renderSystemEvent("#757575", "Search", details.toString());
+    }
+
+    /**
+     * Saves the search index and closes the history. Runs on the history thread.
+     */
+    private void closeHistory() {
+        if (history == null) {
+            return;
+        }
+        if (searchIndex != null) {
+            try {
+                searchIndex.save(history.directory().resolve(SearchIndex.FILE_NAME));
+            } catch (IOException e) {
+                LOG.warn("Failed to save the search index; it will be rebuilt on next start", e);
+            }
+        }
+        history.close();
+    }
+
+    /**
+     * Reads the most recent chat messages back from the history into the transcript, shown at the
+     * time they were stored. Runs on the pre-render thread.
+     */
+    private void loadHistoryTail() {
+        if (history == null) {
+            return;
+        }
+        List<ChatPanel.Fragment> fragments = new ArrayList<>();
+        for (MessageHistory.Entry entry : history.tail(HISTORY_TAIL_ENTRIES)) {
+            Message message = entry.message();
+            if (message.type() == Message.MessageType.CHAT) {
+                fragments.add(chatPanel.prerenderMessage(message, new Date(entry.timestamp())));
+            }
+        }
+        LOG.debug("Loaded {} messages from the history", fragments.size());
+        chatPanel.insertFragments(fragments);
+    }
+
+    /**
+     * Queues a membership protocol message or an acknowledgment and wakes the selector to send it.
+     * Called with the membership protocol's lock held, or on the pre-render thread.
+     *
+     * @param message The protocol message
+     */
+    private void sendProtocolMessage(Message message) {
+        messageConsumer.accept(message);
+        NetSelector selector = currentSelector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Builds the delivery receipt of a message from the message and peer trackers.
+     * Acknowledgments from this instance are left out.
+     *
+     * @param messageId The message ID
+     * @return The receipt
+     */
+    private ChatPanel.Receipt receiptFor(UUID messageId) {
+        return ChatPanel.Receipt.of(messageTracker, uuid.toString(), messageId, knownPeerIds());
+    }
+
+    /**
+     * Gets the IDs of the known peers, taking a new snapshot only when membership has changed.
+     * Called on the EDT.
+     *
+     * @return The known peer IDs
+     */
+    private Set<String> knownPeerIds() {
+        long version = peerTracker.version();
+        if (version != peerIdsVersion) {
+            peerIds = peerTracker.getPeers().keySet();
+            peerIdsVersion = version;
+        }
+        return peerIds;
     }
 
     private void handleDisconnect() {
@@ -505,9 +1440,12 @@ public class MainFrame extends JFrame {
                 messageComposer.updateConnectionStatus(false);
                 statusPanel.updateStatus(false, "disconnected");
 
-                // Reset peer tracking
+                // Reset peer tracking, keeping the roster to save and to restore on reconnecting
+                membership.stop();
+                historySync.stop();
+                savedRoster = List.copyOf(peerTracker.getPeers().values());
                 peerTracker.reset();
-                peerPanel.updatePeers(Map.of());
+                latencyTracker.reset();
 
                 // Update UI
                 connectMenuItem.setEnabled(true);
@@ -561,7 +1499,28 @@ public class MainFrame extends JFrame {
                 LOG.error("Error closing connection", e);
             }
         }
+        SessionSnapshot current = takeSnapshot();
+        historyExecutor.execute(() -> saveSnapshot(current));
+        renderExecutor.shutdownNow();
+        exportExecutor.shutdownNow();
+        membership.stop();
+        historySync.stop();
         messageTracker.shutdown();
+        peerTracker.shutdown();
+        timingWheel.shutdown();
+        chatPanel.shutdown();
+        if (outbox != null) {
+            outbox.close();
+        }
+        historyExecutor.execute(this::closeHistory);
+        historyExecutor.shutdown();
+        try {
+            if (!historyExecutor.awaitTermination(HISTORY_CLOSE_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("Timed out saving the message history");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         super.dispose();
     }
 }
@@ -3,15 +3,16 @@ package name.maxdeliso.teflon.ui;
 import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.util.Map;
-import java.util.UUID;
 import java.util.function.Consumer;
 
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 
 import name.maxdeliso.teflon.commands.CommandProcessor;
+import name.maxdeliso.teflon.data.LatencyTracker;
 import name.maxdeliso.teflon.data.Message;
 import name.maxdeliso.teflon.data.MessageTracker;
+import name.maxdeliso.teflon.data.NodeCore;
 import name.maxdeliso.teflon.net.NetSelector;
 
 /**
@@ -46,14 +47,24 @@ public class MessageComposer extends JPanel {
     private final Consumer<Message> messageConsumer;
 
     /**
-     * Instance ID for message tracking.
+     * Chat panel for displaying messages.
      */
-    private final UUID instanceId;
+    private final ChatPanel chatPanel;
 
     /**
-     * Chat panel for displaying messages.
+     * Node core that stamps and tracks outgoing messages.
      */
-    private final ChatPanel chatPanel;
+    private final NodeCore nodeCore;
+
+    /**
+     * Latency tracker for end-to-end message timing.
+     */
+    private final LatencyTracker latencyTracker;
+
+    /**
+     * Whether messages composed while disconnected are accepted, to be sent once connected.
+     */
+    private final boolean queueWhileDisconnected;
 
     /**
      * Connection status.
@@ -65,22 +76,49 @@ public class MessageComposer extends JPanel {
     /**
      * Creates a new message composer.
      *
-     * @param instanceId       Instance ID for message tracking
      * @param messageConsumer  Consumer for handling messages
      * @param messageTracker   Tracker for message acknowledgments
      * @param commandProcessor Processor for handling commands
      * @param chatPanel        Chat panel for displaying messages
+     * @param nodeCore         Node core that stamps and tracks outgoing messages
+     * @param latencyTracker   Latency tracker for end-to-end message timing
      */
-    public MessageComposer(UUID instanceId,
-                           Consumer<Message> messageConsumer,
+    public MessageComposer(Consumer<Message> messageConsumer,
                            MessageTracker messageTracker,
                            CommandProcessor commandProcessor,
-                           ChatPanel chatPanel) {
-        this.instanceId = instanceId;
+                           ChatPanel chatPanel,
+                           NodeCore nodeCore,
+                           LatencyTracker latencyTracker) {
+        this(messageConsumer, messageTracker, commandProcessor, chatPanel, nodeCore, latencyTracker,
+                false);
+    }
+
+    /**
+     * Creates a new message composer that may accept messages while disconnected.
+     *
+     * @param messageConsumer        Consumer for handling messages
+     * @param messageTracker         Tracker for message acknowledgments
+     * @param commandProcessor       Processor for handling commands
+     * @param chatPanel              Chat panel for displaying messages
+     * @param nodeCore               Node core that stamps and tracks outgoing messages
+     * @param latencyTracker         Latency tracker for end-to-end message timing
+     * @param queueWhileDisconnected Whether the consumer keeps messages composed while disconnected
+     *                               until a connection is up, rather than them being rejected
+     */
+    public MessageComposer(Consumer<Message> messageConsumer,
+                           MessageTracker messageTracker,
+                           CommandProcessor commandProcessor,
+                           ChatPanel chatPanel,
+                           NodeCore nodeCore,
+                           LatencyTracker latencyTracker,
+                           boolean queueWhileDisconnected) {
         this.messageConsumer = messageConsumer;
         this.messageTracker = messageTracker;
         this.commandProcessor = commandProcessor;
         this.chatPanel = chatPanel;
+        this.nodeCore = nodeCore;
+        this.latencyTracker = latencyTracker;
+        this.queueWhileDisconnected = queueWhileDisconnected;
         this.connected = false;
 
         setLayout(new BorderLayout());
@@ -125,14 +163,17 @@ public class MessageComposer extends JPanel {
                 chatPanel.renderSystemEvent("#C62828", "Error", escapedMessage);
             }
         } else if (!text.isEmpty()) {
-            if (!connected) {
+            if (!connected && queueWhileDisconnected) {
+                chatPanel.renderSystemEvent("#757575", "Queued",
+                        "Not connected; the message will be sent once a connection is up");
+            } else if (!connected) {
                 String errorMessage = "Message could not be delivered because there is no connection";
                 String escapedMessage = org.apache.commons.text.StringEscapeUtils.escapeHtml4(errorMessage);
                 chatPanel.renderSystemEvent("#C62828", "Error", escapedMessage);
                 return;
             }
-            Message message = new Message(instanceId.toString(), text);
-            messageTracker.trackMessage(message);
+            Message message = nodeCore.compose(text);
+            latencyTracker.recordComposed(message);
 
             messageConsumer.accept(message);
             if (currentSelector != null) {
@@ -151,7 +192,7 @@ public class MessageComposer extends JPanel {
     }
 
     /**
-     * Displays status information including message tracker stats.
+     * Displays status information including message tracker stats and the latency breakdown.
      *
      * @param args Command arguments (unused)
      */
@@ -169,6 +210,7 @@ public class MessageComposer extends JPanel {
             stats.get("messagesTimedOut"),
             stats.get("pendingMessages")
         );
+        chatPanel.renderLatencyStats(latencyTracker.breakdown(), latencyTracker.peerSummaries());
     }
 
     /**
@@ -177,6 +219,11 @@ public class MessageComposer extends JPanel {
      * @param args Command arguments (unused)
      */
     public void displayHtml(String[] args) {
+        if (chatPanel.getMessagePane() == null) {
+            chatPanel.renderSystemEvent("#757575", "Chat Panel HTML",
+                    "The transcript is displayed as a list; start with -Dteflon.transcript=html to inspect it.");
+            return;
+        }
         String html = chatPanel.getMessagePane().getText();
         String escapedHtml = org.apache.commons.text.StringEscapeUtils.escapeHtml4(html);
         chatPanel.renderSystemEvent("#757575", "Chat Panel HTML", escapedHtml);
@@ -0,0 +1,131 @@
+package name.maxdeliso.teflon.ui;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+
+import name.maxdeliso.teflon.data.PeerTracker;
+
+/**
+ * List model holding known peers sorted by UUID. Peers are added, replaced and removed one at a
+ * time, each change firing an event that covers only its own row, so a roster of thousands of
+ * peers is never rebuilt or re-sorted as a whole. Rows are kept as {@link PeerTracker.PeerInfo}
+ * records and formatted only when painted.
+ * Accessed only on the EDT.
+ */
+public final class PeerListModel extends AbstractListModel<PeerTracker.PeerInfo> {
+    /**
+     * Order of the rows.
+     */
+    private static final Comparator<PeerTracker.PeerInfo> BY_UUID = Comparator.comparing(PeerTracker.PeerInfo::uuid);
+
+    /**
+     * Known peers sorted by UUID.
+     */
+    private final List<PeerTracker.PeerInfo> peers = new ArrayList<>();
+
+    @Override
+    public int getSize() {
+        return peers.size();
+    }
+
+    @Override
+    public PeerTracker.PeerInfo getElementAt(int index) {
+        return peers.get(index);
+    }
+
+    /**
+     * Adds a peer, or replaces the row of a peer with the same UUID.
+     *
+     * @param peer The peer
+     * @return The index of the peer's row
+     */
+    public int put(PeerTracker.PeerInfo peer) {
+        int index = indexOf(peer.uuid());
+        if (index >= 0) {
+            peers.set(index, peer);
+            fireContentsChanged(this, index, index);
+            return index;
+        }
+        index = -index - 1;
+        peers.add(index, peer);
+        fireIntervalAdded(this, index, index);
+        return index;
+    }
+
+    /**
+     * Replaces the row of a listed peer, leaving the list unchanged if the peer is not listed.
+     *
+     * @param peer The peer
+     * @return The index of the peer's row, or -1 if it was not listed
+     */
+    public int replace(PeerTracker.PeerInfo peer) {
+        int index = indexOf(peer.uuid());
+        if (index < 0) {
+            return -1;
+        }
+        peers.set(index, peer);
+        fireContentsChanged(this, index, index);
+        return index;
+    }
+
+    /**
+     * Removes a peer.
+     *
+     * @param uuid The peer's UUID
+     * @return The index the peer's row had, or -1 if it was not listed
+     */
+    public int remove(String uuid) {
+        int index = indexOf(uuid);
+        if (index < 0) {
+            return -1;
+        }
+        peers.remove(index);
+        fireIntervalRemoved(this, index, index);
+        return index;
+    }
+
+    /**
+     * Replaces every row.
+     *
+     * @param replacement The peers to list, in any order
+     */
+    public void setAll(Collection<PeerTracker.PeerInfo> replacement) {
+        if (!peers.isEmpty()) {
+            int last = peers.size() - 1;
+            peers.clear();
+            fireIntervalRemoved(this, 0, last);
+        }
+        if (!replacement.isEmpty()) {
+            peers.addAll(replacement);
+            peers.sort(BY_UUID);
+            fireIntervalAdded(this, 0, peers.size() - 1);
+        }
+    }
+
+    /**
+     * Finds a peer's row by binary search.
+     *
+     * @param uuid The peer's UUID
+     * @return The row index, or {@code -(insertion point) - 1} if the peer is not listed
+     */
+    private int indexOf(String uuid) {
+        int low = 0;
+        int high = peers.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int order = peers.get(mid).uuid().compareTo(uuid);
+            if (order < 0) {
+                low = mid + 1;
+            } else if (order > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+}
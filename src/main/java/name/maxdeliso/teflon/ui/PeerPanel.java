@@ -1,30 +1,35 @@
 package name.maxdeliso.teflon.ui;
 
 
+import name.maxdeliso.teflon.data.LatencyTracker;
 import name.maxdeliso.teflon.data.PeerTracker;
 
 import javax.swing.BorderFactory;
 import javax.swing.DefaultListCellRenderer;
-import javax.swing.DefaultListModel;
 import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingConstants;
-import javax.swing.SwingUtilities;
 import javax.swing.border.TitledBorder;
 import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.event.MouseEvent;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.Comparator;
+import java.util.Locale;
 import java.util.Map;
+import java.util.function.Function;
 
 /**
  * Panel for displaying known peers in the network.
- * Shows peer UUIDs, IP addresses, and last seen timestamps.
+ * Shows peer UUIDs, IP addresses, last seen timestamps, and measured latency.
+ * The list follows a {@link PeerTracker}'s change events row by row, and rows are formatted only
+ * when painted, so traffic from a known peer costs at most one row update per second rather than
+ * a rebuild of the roster.
  */
 public class PeerPanel extends JPanel {
 
@@ -48,20 +53,113 @@ public class PeerPanel extends JPanel {
      */
     private static final int PEER_LIST_FONT_SIZE = 12;
 
+    /**
+     * Microseconds per millisecond, for display.
+     */
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    /**
+     * Width of a row in characters, enough for an IPv6 address and a round trip time.
+     */
+    private static final int ROW_CHARS = 80;
+
+    /**
+     * Lookup returning no latency summary for any peer.
+     */
+    private static final Function<String, LatencyTracker.PeerSummary> NO_LATENCIES = peerId -> null;
+
     /**
      * List model for peer display.
      */
-    private final DefaultListModel<String> peerListModel;
+    private final PeerListModel peerListModel;
+
+    /**
+     * The peer list.
+     */
+    private final JList<PeerTracker.PeerInfo> peerList;
 
     /**
      * Label showing peer count.
      */
     private final JLabel peerCountLabel;
 
+    /**
+     * Scheduler through which updates reach the EDT.
+     */
+    private final UiUpdateScheduler scheduler;
+
+    /**
+     * Key under which peer list repaints are coalesced.
+     */
+    private final Object refreshKey = new Object();
+
+    /**
+     * Key under which peer list snapshots are coalesced.
+     */
+    private final Object snapshotKey = new Object();
+
+    /**
+     * Looks up a peer's latency summary, or returns null if it is unmeasured. Accessed on the EDT.
+     */
+    private Function<String, LatencyTracker.PeerSummary> latencies;
+
     /**
      * Creates a new peer panel.
      */
     public PeerPanel() {
+        this(new UiUpdateScheduler());
+    }
+
+    /**
+     * Creates a new peer panel that applies updates through a scheduler.
+     * The list is filled by {@link #updatePeers}.
+     *
+     * @param scheduler The scheduler through which updates reach the EDT
+     */
+    public PeerPanel(UiUpdateScheduler scheduler) {
+        this(scheduler, NO_LATENCIES);
+    }
+
+    /**
+     * Creates a new peer panel that follows a peer tracker's roster changes.
+     * Call {@link #refresh} when latencies are measured so they are redrawn.
+     *
+     * @param scheduler   The scheduler through which updates reach the EDT
+     * @param peerTracker The tracker whose peers to list
+     * @param latencies   Lookup of latency summaries by peer UUID, returning null if unmeasured
+     */
+    public PeerPanel(UiUpdateScheduler scheduler,
+                     PeerTracker peerTracker,
+                     Function<String, LatencyTracker.PeerSummary> latencies) {
+        this(scheduler, latencies);
+        peerTracker.subscribe(new PeerTracker.Listener() {
+            @Override
+            public void peerJoined(PeerTracker.PeerInfo peer) {
+                scheduler.post(() -> put(peer));
+            }
+
+            @Override
+            public void peerUpdated(PeerTracker.PeerInfo peer) {
+                scheduler.post(() -> put(peer));
+            }
+
+            @Override
+            public void peerSeen(PeerTracker.PeerInfo peer) {
+                scheduler.post(() -> peerListModel.replace(peer));
+            }
+
+            @Override
+            public void peerLeft(String uuid) {
+                scheduler.post(() -> remove(uuid));
+            }
+        });
+        var peers = peerTracker.getPeers();
+        scheduler.post(() -> peers.values().forEach(this::put));
+    }
+
+    private PeerPanel(UiUpdateScheduler scheduler, Function<String, LatencyTracker.PeerSummary> latencies) {
+        this.scheduler = scheduler;
+        this.latencies = latencies;
         setLayout(new BorderLayout());
         setBorder(BorderFactory.createTitledBorder(
                 BorderFactory.createEtchedBorder(),
@@ -70,8 +168,8 @@ public class PeerPanel extends JPanel {
                 TitledBorder.TOP
         ));
 
-        this.peerListModel = new DefaultListModel<>();
-        JList<String> peerList = createPeerList();
+        this.peerListModel = new PeerListModel();
+        this.peerList = createPeerList();
         JScrollPane scrollPane = new JScrollPane(peerList);
         this.peerCountLabel = createPeerCountLabel();
 
@@ -84,15 +182,19 @@ public class PeerPanel extends JPanel {
     }
 
     /**
-     * Creates the peer list component.
+     * Creates the peer list component. Cells have a fixed size so the list never measures rows.
      *
      * @return The configured peer list
      */
-    private JList<String> createPeerList() {
-        JList<String> list = new JList<>(peerListModel);
+    private JList<PeerTracker.PeerInfo> createPeerList() {
+        JList<PeerTracker.PeerInfo> list = new JList<>(peerListModel);
         list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         list.setCellRenderer(new PeerListCellRenderer());
         list.setFont(new Font(Font.MONOSPACED, Font.PLAIN, PEER_LIST_FONT_SIZE));
+        FontMetrics metrics = list.getFontMetrics(list.getFont());
+        // The default renderer's border adds a pixel on each side
+        list.setFixedCellHeight(metrics.getHeight() + 2);
+        list.setFixedCellWidth(metrics.charWidth('0') * ROW_CHARS + 2);
         return list;
     }
 
@@ -110,29 +212,59 @@ public class PeerPanel extends JPanel {
     }
 
     /**
-     * Updates the peer list with current peer information.
+     * Redraws the visible rows on the next frame, picking up new latencies.
+     * Costs the same however many peers are listed.
+     */
+    public void refresh() {
+        scheduler.postLatest(refreshKey, peerList::repaint);
+    }
+
+    /**
+     * Replaces the peer list with a snapshot of peer information.
      *
      * @param peers Map of peer UUIDs to their information
      */
     public void updatePeers(Map<String, PeerTracker.PeerInfo> peers) {
-        SwingUtilities.invokeLater(() -> {
-            peerListModel.clear();
-
-            peers.values().stream()
-                    .sorted(Comparator.comparing(PeerTracker.PeerInfo::uuid))
-                    .forEach(peer -> {
-                        String truncatedUuid = peer.uuid().substring(0,
-                                Math.min(peer.uuid().length(), UUID_TRUNCATE_LENGTH));
-                        String timeStr = peer.lastSeen().atZone(ZoneId.systemDefault()).format(TIME_FORMATTER);
-                        String displayText = String.format("%s... %s (%s)",
-                                truncatedUuid, peer.ipAddress(), timeStr);
-                        peerListModel.addElement(displayText);
-                    });
-
-            updatePeerCount(peers.size());
+        updatePeers(peers, NO_LATENCIES);
+    }
+
+    /**
+     * Replaces the peer list with a snapshot of peer information and measured latency.
+     *
+     * @param peers     Map of peer UUIDs to their information
+     * @param latencies Lookup of latency summaries by peer UUID, returning null if unmeasured
+     */
+    public void updatePeers(Map<String, PeerTracker.PeerInfo> peers,
+                            Function<String, LatencyTracker.PeerSummary> latencies) {
+        scheduler.postLatest(snapshotKey, () -> {
+            this.latencies = latencies;
+            peerListModel.setAll(peers.values());
+            updatePeerCount(peerListModel.getSize());
+            peerList.repaint();
         });
     }
 
+    /**
+     * Adds or replaces a peer's row. Called on the EDT.
+     *
+     * @param peer The peer
+     */
+    private void put(PeerTracker.PeerInfo peer) {
+        peerListModel.put(peer);
+        updatePeerCount(peerListModel.getSize());
+    }
+
+    /**
+     * Removes a peer's row. Called on the EDT.
+     *
+     * @param uuid The peer's UUID
+     */
+    private void remove(String uuid) {
+        if (peerListModel.remove(uuid) >= 0) {
+            updatePeerCount(peerListModel.getSize());
+        }
+    }
+
     /**
      * Updates the peer count display.
      *
@@ -144,20 +276,60 @@ public class PeerPanel extends JPanel {
     }
 
     /**
-     * Custom cell renderer for peer list items.
+     * Cell renderer formatting peer rows as they are painted. The tooltip is formatted only
+     * when it is shown.
      */
-    private static final class PeerListCellRenderer extends DefaultListCellRenderer {
+    private final class PeerListCellRenderer extends DefaultListCellRenderer {
+        /**
+         * Buffer rows are formatted in.
+         */
+        private final StringBuilder text = new StringBuilder();
+
+        /**
+         * The peer being painted.
+         */
+        private PeerTracker.PeerInfo peer;
+
         @Override
         public Component getListCellRendererComponent(JList<?> list, Object value, int index,
                                                       boolean isSelected, boolean cellHasFocus) {
-            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-
-            if (value instanceof String text) {
-                setText(text);
-                setToolTipText("UUID: " + text.split("\\s+")[0] + "...");
+            super.getListCellRendererComponent(list, "", index, isSelected, cellHasFocus);
+            if (!(value instanceof PeerTracker.PeerInfo info)) {
+                peer = null;
+                return this;
             }
+            peer = info;
 
+            text.setLength(0);
+            text.append(info.uuid(), 0, Math.min(info.uuid().length(), UUID_TRUNCATE_LENGTH))
+                    .append("... ").append(info.ipAddress()).append(" (");
+            TIME_FORMATTER.formatTo(info.lastSeen().atZone(ZoneId.systemDefault()), text);
+            text.append(')');
+            LatencyTracker.PeerSummary latency = latencies.apply(info.uuid());
+            if (latency != null && latency.synchronizedWithPeer()) {
+                text.append(String.format(Locale.ROOT, " rtt %.2fms",
+                        latency.roundTrip().median() / MICROS_PER_MILLI));
+            }
+            setText(text.toString());
             return this;
         }
+
+        @Override
+        public String getToolTipText(MouseEvent event) {
+            if (peer == null) {
+                return null;
+            }
+            LatencyTracker.PeerSummary latency = latencies.apply(peer.uuid());
+            if (latency == null || !latency.synchronizedWithPeer()) {
+                return "UUID: " + peer.uuid();
+            }
+            return String.format(Locale.ROOT,
+                    "<html>UUID: %s<br/>Clock offset: %+.2f ms<br/>"
+                            + "Round trip: %s<br/>One way: %s</html>",
+                    peer.uuid(),
+                    latency.offset() / MICROS_PER_MILLI,
+                    latency.roundTrip().describeMillis(),
+                    latency.oneWay().describeMillis());
+        }
     }
 }
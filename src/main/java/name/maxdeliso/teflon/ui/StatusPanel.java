@@ -1,24 +1,15 @@
 package name.maxdeliso.teflon.ui;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
 import javax.swing.BorderFactory;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.SwingConstants;
-import javax.swing.SwingUtilities;
 import java.awt.BorderLayout;
 
 /**
  * Panel for displaying connection status and message statistics.
  */
 public class StatusPanel extends JPanel {
-    /**
-     * Logger for this class.
-     */
-    private static final Logger LOG = LogManager.getLogger(StatusPanel.class);
-
     /**
      * Status template for HTML formatting.
      */
@@ -35,13 +26,46 @@ public class StatusPanel extends JPanel {
      */
     private final JLabel statusLabel;
 
+    /**
+     * Label for displaying the progress of a background task.
+     */
+    private final JLabel progressLabel;
+
+    /**
+     * Scheduler through which updates reach the EDT.
+     */
+    private final UiUpdateScheduler scheduler;
+
+    /**
+     * Key under which status updates are coalesced.
+     */
+    private final Object statusKey = new Object();
+
+    /**
+     * Key under which progress updates are coalesced.
+     */
+    private final Object progressKey = new Object();
+
     /**
      * Creates a new status panel.
      */
     public StatusPanel() {
+        this(new UiUpdateScheduler());
+    }
+
+    /**
+     * Creates a new status panel that applies updates through a scheduler.
+     * Callers never wait for the EDT; only the latest status submitted within a frame is shown.
+     *
+     * @param scheduler The scheduler through which updates reach the EDT
+     */
+    public StatusPanel(UiUpdateScheduler scheduler) {
+        this.scheduler = scheduler;
         setLayout(new BorderLayout());
         this.statusLabel = createStatusLabel();
         add(statusLabel, BorderLayout.CENTER);
+        this.progressLabel = createStatusLabel();
+        add(progressLabel, BorderLayout.EAST);
         // Initial status will be empty
     }
 
@@ -69,6 +93,16 @@ public class StatusPanel extends JPanel {
         updateStatusText(color, status, connectionInfo);
     }
 
+    /**
+     * Shows the progress of a background task beside the status. Only the latest progress
+     * submitted within a frame is shown, so it may be reported as often as is convenient.
+     *
+     * @param progress The progress to show, or an empty string to clear it
+     */
+    public void updateProgress(String progress) {
+        scheduler.postLatest(progressKey, () -> progressLabel.setText(progress));
+    }
+
     /**
      * Updates the status text with formatted HTML.
      *
@@ -77,19 +111,7 @@ public class StatusPanel extends JPanel {
      * @param details Additional details
      */
     private void updateStatusText(String color, String status, String details) {
-        Runnable updateText = () -> {
-            String formattedStatus = String.format(STATUS_TEMPLATE, color, status, details);
-            statusLabel.setText(formattedStatus);
-        };
-
-        if (SwingUtilities.isEventDispatchThread()) {
-            updateText.run();
-        } else {
-            try {
-                SwingUtilities.invokeAndWait(updateText);
-            } catch (Exception e) {
-                LOG.error("Failed to update status text", e);
-            }
-        }
+        String formattedStatus = String.format(STATUS_TEMPLATE, color, status, details);
+        scheduler.postLatest(statusKey, () -> statusLabel.setText(formattedStatus));
     }
 }
@@ -42,4 +42,17 @@ public final class TemplateLoader {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Loads and compiles a template from resources.
+     *
+     * @param templatePath The path to the template resource
+     * @param contextClass The class to use for resource loading context
+     * @return The compiled template
+     * @throws RuntimeException if the template cannot be loaded
+     * @throws IllegalArgumentException if the template uses a conversion other than {@code %s}
+     */
+    public static CompiledTemplate compileTemplate(final String templatePath, final Class<?> contextClass) {
+        return CompiledTemplate.compile(loadTemplate(templatePath, contextClass));
+    }
 }
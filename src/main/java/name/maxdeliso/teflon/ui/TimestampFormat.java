@@ -0,0 +1,69 @@
+package name.maxdeliso.teflon.ui;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Formats transcript timestamps as hours, minutes, seconds, milliseconds and zone. The text on
+ * either side of the milliseconds is formatted once per second and reused, so formatting a
+ * timestamp only appends into the caller's builder. Safe to use from any thread.
+ */
+public final class TimestampFormat {
+    /**
+     * Formatter for the part of a timestamp before the milliseconds.
+     */
+    private static final DateTimeFormatter SECOND_FORMATTER =
+            DateTimeFormatter.ofPattern("HH:mm:ss:").withZone(ZoneId.systemDefault());
+
+    /**
+     * Formatter for the part of a timestamp after the milliseconds.
+     */
+    private static final DateTimeFormatter ZONE_FORMATTER =
+            DateTimeFormatter.ofPattern(" z").withZone(ZoneId.systemDefault());
+
+    /**
+     * Milliseconds per second.
+     */
+    private static final int MILLIS_PER_SECOND = 1000;
+
+    /**
+     * Formatted text of the most recent second, shared by every timestamp within it.
+     */
+    private volatile SecondStamp secondStamp;
+
+    /**
+     * Appends a formatted timestamp.
+     *
+     * @param out         The builder to append to
+     * @param epochMillis The timestamp in epoch milliseconds
+     * @return The builder
+     */
+    public StringBuilder appendTo(StringBuilder out, long epochMillis) {
+        long epochSecond = Math.floorDiv(epochMillis, MILLIS_PER_SECOND);
+        var stamp = secondStamp;
+        if (stamp == null || stamp.epochSecond() != epochSecond) {
+            var instant = Instant.ofEpochSecond(epochSecond);
+            stamp = new SecondStamp(epochSecond, SECOND_FORMATTER.format(instant), ZONE_FORMATTER.format(instant));
+            secondStamp = stamp;
+        }
+        int millis = Math.floorMod(epochMillis, MILLIS_PER_SECOND);
+        out.append(stamp.prefix());
+        if (millis < 100) {
+            out.append('0');
+        }
+        if (millis < 10) {
+            out.append('0');
+        }
+        return out.append(millis).append(stamp.suffix());
+    }
+
+    /**
+     * Formatted text around the milliseconds of every timestamp within one second.
+     *
+     * @param epochSecond The second
+     * @param prefix      Hours, minutes and seconds, ending with a separator
+     * @param suffix      The zone, preceded by a space
+     */
+    private record SecondStamp(long epochSecond, String prefix, String suffix) {}
+}
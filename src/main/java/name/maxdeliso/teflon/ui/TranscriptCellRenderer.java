@@ -0,0 +1,311 @@
+package name.maxdeliso.teflon.ui;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Toolkit;
+import java.awt.event.MouseEvent;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.apache.commons.text.StringEscapeUtils.escapeHtml4;
+
+import javax.swing.JComponent;
+import javax.swing.JList;
+import javax.swing.ListCellRenderer;
+
+/**
+ * Paints transcript rows directly with {@link Graphics}, in the styling of the HTML transcript:
+ * the sender or event title in bold and color, a small gray timestamp, the receipt badge, and
+ * the text below. System events sit on a shaded background with a bar on the left. Text that
+ * does not fit is cut short with an ellipsis and shown in full on hover.
+ * Every row is two lines high, so the list never has to measure rows it does not paint.
+ */
+public final class TranscriptCellRenderer extends JComponent implements ListCellRenderer<TranscriptEntry> {
+    /**
+     * Padding around the text of a row, in pixels.
+     */
+    private static final int PADDING = 2;
+
+    /**
+     * Left inset of message text, in pixels.
+     */
+    private static final int MESSAGE_INSET = 4;
+
+    /**
+     * Width of the bar to the left of system events, in pixels.
+     */
+    private static final int EVENT_BAR_WIDTH = 3;
+
+    /**
+     * Left inset of system event text, in pixels.
+     */
+    private static final int EVENT_INSET = 11;
+
+    /**
+     * Size of the timestamp and badge font relative to the list font.
+     */
+    private static final float SMALL_FONT_SCALE = 0.85f;
+
+    /**
+     * Longest text painted on one line; longer text is cut before measuring.
+     */
+    private static final int MAX_PAINTED_CHARS = 512;
+
+    /**
+     * Text color of message bodies.
+     */
+    private static final Color MESSAGE_TEXT = new Color(0x555555);
+
+    /**
+     * Background of system events.
+     */
+    private static final Color EVENT_BACKGROUND = new Color(0xF8F9FA);
+
+    /**
+     * Color of the bar to the left of system events, and of unremarkable receipt badges.
+     */
+    private static final Color NEUTRAL = Color.decode(UIConstants.COLOR_NEUTRAL);
+
+    /**
+     * Color of receipt badges that include a rejection.
+     */
+    private static final Color ERROR = Color.decode(UIConstants.COLOR_ERROR);
+
+    /**
+     * Ellipsis marking text that was cut short.
+     */
+    private static final String ELLIPSIS = "…";
+
+    /**
+     * Looks up the last delivery receipt shown for a message, or null if there is none.
+     */
+    private final Function<UUID, ChatPanel.Receipt> receiptSource;
+
+    /**
+     * Formats the timestamps of painted rows.
+     */
+    private final TimestampFormat timestampFormat = new TimestampFormat();
+
+    /**
+     * Buffer the timestamp of the row being painted is formatted in.
+     */
+    private final StringBuilder stamp = new StringBuilder();
+
+    /**
+     * The row being painted.
+     */
+    private TranscriptEntry entry;
+
+    /**
+     * Background of the list being painted.
+     */
+    private Color listBackground;
+
+    /**
+     * The list font the derived fonts were made from.
+     */
+    private Font baseFont;
+
+    /**
+     * Bold variant of the list font, for titles.
+     */
+    private Font boldFont;
+
+    /**
+     * Small variant of the list font, for timestamps and badges.
+     */
+    private Font smallFont;
+
+    /**
+     * Creates a renderer.
+     *
+     * @param receiptSource Looks up the last receipt shown for a message; called on the EDT
+     */
+    public TranscriptCellRenderer(Function<UUID, ChatPanel.Receipt> receiptSource) {
+        this.receiptSource = receiptSource;
+        setOpaque(true);
+    }
+
+    /**
+     * Fixes the size of a list's cells for its font. With both dimensions fixed the list never
+     * measures rows; a nominal width lets the list track the width of its viewport instead.
+     *
+     * @param list The list
+     */
+    public static void fixCellSize(JList<?> list) {
+        list.setFixedCellHeight(2 * list.getFontMetrics(list.getFont()).getHeight() + 2 * PADDING);
+        list.setFixedCellWidth(1);
+    }
+
+    @Override
+    public Component getListCellRendererComponent(JList<? extends TranscriptEntry> list,
+                                                  TranscriptEntry value,
+                                                  int index,
+                                                  boolean isSelected,
+                                                  boolean cellHasFocus) {
+        this.entry = value;
+        this.listBackground = list.getBackground();
+        if (list.getFont() != baseFont) {
+            baseFont = list.getFont();
+            boldFont = baseFont.deriveFont(Font.BOLD);
+            smallFont = baseFont.deriveFont(baseFont.getSize2D() * SMALL_FONT_SCALE);
+        }
+        setFont(baseFont);
+        return this;
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        var g = (Graphics2D) graphics.create();
+        try {
+            var hints = (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+            if (hints != null) {
+                g.addRenderingHints(hints);
+            } else {
+                g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            }
+            paintRow(g);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Paints the current row.
+     *
+     * @param g The graphics context
+     */
+    private void paintRow(Graphics2D g) {
+        boolean event = entry.kind() == TranscriptEntry.Kind.EVENT;
+        g.setColor(event ? EVENT_BACKGROUND : listBackground);
+        g.fillRect(0, 0, getWidth(), getHeight());
+        if (event) {
+            g.setColor(NEUTRAL);
+            g.fillRect(0, 0, EVENT_BAR_WIDTH, getHeight());
+        }
+
+        int x = event ? EVENT_INSET : MESSAGE_INSET;
+        int width = getWidth() - x - MESSAGE_INSET;
+        FontMetrics metrics = g.getFontMetrics(baseFont);
+        int firstBaseline = PADDING + metrics.getAscent();
+        int secondBaseline = firstBaseline + metrics.getHeight();
+        Color textColor = event ? getForeground() : MESSAGE_TEXT;
+
+        if (entry.title() == null) {
+            drawText(g, baseFont, textColor, entry.text(), x, firstBaseline, width);
+            drawText(g, baseFont, textColor, entry.more(), x, secondBaseline, width);
+            return;
+        }
+
+        int badgeWidth = drawBadge(g, firstBaseline);
+        int titleWidth = drawText(g, boldFont, entry.color(), entry.title(), x, firstBaseline, width - badgeWidth);
+        stamp.setLength(0);
+        timestampFormat.appendTo(stamp.append(" ["), entry.timestamp()).append(']');
+        drawText(g, smallFont, Color.GRAY, stamp.toString(), x + titleWidth, firstBaseline,
+                width - badgeWidth - titleWidth);
+        drawText(g, baseFont, textColor, entry.text(), x, secondBaseline, width);
+    }
+
+    /**
+     * Paints the receipt badge of the current row at the right edge, if it has responses.
+     *
+     * @param g        The graphics context
+     * @param baseline The baseline to paint on
+     * @return The width taken by the badge, or zero if none was painted
+     */
+    private int drawBadge(Graphics2D g, int baseline) {
+        if (entry.messageId() == null) {
+            return 0;
+        }
+        ChatPanel.Receipt receipt = receiptSource.apply(entry.messageId());
+        if (receipt == null || receipt.responded() == 0) {
+            return 0;
+        }
+        String summary = receipt.summary();
+        int badgeWidth = g.getFontMetrics(smallFont).stringWidth(summary);
+        g.setFont(smallFont);
+        g.setColor(receipt.rejected().isEmpty() ? NEUTRAL : ERROR);
+        g.drawString(summary, getWidth() - MESSAGE_INSET - badgeWidth, baseline);
+        return badgeWidth + MESSAGE_INSET;
+    }
+
+    /**
+     * Paints one line of text, cut short with an ellipsis if it does not fit.
+     *
+     * @param g        The graphics context
+     * @param font     The font
+     * @param color    The text color
+     * @param text     The text, or null for none
+     * @param x        The left edge
+     * @param baseline The baseline
+     * @param width    The available width
+     * @return The width taken by the painted text
+     */
+    private static int drawText(Graphics2D g, Font font, Color color, String text, int x, int baseline, int width) {
+        if (text == null || text.isEmpty() || width <= 0) {
+            return 0;
+        }
+        FontMetrics metrics = g.getFontMetrics(font);
+        String fitted = fit(text, metrics, width);
+        g.setFont(font);
+        g.setColor(color);
+        g.drawString(fitted, x, baseline);
+        return metrics.stringWidth(fitted);
+    }
+
+    /**
+     * Cuts text short with an ellipsis so that it fits a width.
+     *
+     * @param text    The text
+     * @param metrics The metrics of the font the text is painted in
+     * @param width   The available width
+     * @return The text, or the longest prefix that fits followed by an ellipsis
+     */
+    private static String fit(String text, FontMetrics metrics, int width) {
+        boolean cut = text.length() > MAX_PAINTED_CHARS;
+        String candidate = cut ? text.substring(0, MAX_PAINTED_CHARS) : text;
+        if (!cut && metrics.stringWidth(candidate) <= width) {
+            return candidate;
+        }
+        int low = 0;
+        int high = candidate.length();
+        int ellipsisWidth = metrics.stringWidth(ELLIPSIS);
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (metrics.stringWidth(candidate.substring(0, mid)) + ellipsisWidth <= width) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return candidate.substring(0, low) + ELLIPSIS;
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent event) {
+        if (entry == null || entry.title() == null) {
+            return entry == null ? null : entry.text();
+        }
+        var tooltip = new StringBuilder("<html>");
+        if (entry.senderId() != null) {
+            tooltip.append(escapeHtml4(entry.senderId())).append("<br/>");
+        }
+        if (entry.messageId() != null) {
+            ChatPanel.Receipt receipt = receiptSource.apply(entry.messageId());
+            if (receipt != null && receipt.responded() > 0) {
+                tooltip.append(escapeHtml4(receipt.breakdown())).append("<br/>");
+            }
+        }
+        String text = entry.text();
+        if (text.length() > MAX_PAINTED_CHARS) {
+            text = text.substring(0, MAX_PAINTED_CHARS) + ELLIPSIS;
+        }
+        return tooltip.append(escapeHtml4(text)).append("</html>").toString();
+    }
+}
@@ -0,0 +1,105 @@
+package name.maxdeliso.teflon.ui;
+
+import name.maxdeliso.teflon.data.Message;
+
+import java.awt.Color;
+import java.util.UUID;
+
+/**
+ * One fixed-height row of the list transcript. A row is two lines of text: a header row shows
+ * its title, timestamp and receipt badge above its text, while a continuation row carries on
+ * the text of the row before it over both lines. Rows keep the raw timestamp rather than its
+ * formatted text; only rows that are painted are formatted.
+ *
+ * @param kind      Whether the row belongs to a chat message or a system event
+ * @param color     The title color
+ * @param title     The sender's truncated ID or the event title, or null for a continuation row
+ * @param senderId  The sender's full ID, or null for system events
+ * @param timestamp The time to display, in epoch milliseconds
+ * @param hlc       The encoded hybrid logical clock timestamp, or zero if unordered
+ * @param text      The first line of text
+ * @param more      The second line of a continuation row, or null
+ * @param messageId The message ID whose receipt the badge shows, or null for no badge
+ */
+public record TranscriptEntry(Kind kind,
+                              Color color,
+                              String title,
+                              String senderId,
+                              long timestamp,
+                              long hlc,
+                              String text,
+                              String more,
+                              UUID messageId) {
+    /**
+     * What a row displays, which determines its styling.
+     */
+    public enum Kind {
+        /**
+         * A chat message.
+         */
+        MESSAGE,
+
+        /**
+         * A system event, status report or command reply.
+         */
+        EVENT
+    }
+
+    /**
+     * Creates the row of a chat message.
+     *
+     * @param color     The sender's color
+     * @param shortId   The sender's truncated ID
+     * @param senderId  The sender's full ID
+     * @param timestamp The time to display, in epoch milliseconds
+     * @param hlc       The encoded hybrid logical clock timestamp, or zero to append
+     * @param body      The message text
+     * @param messageId The message ID whose receipt the badge shows, or null for no badge
+     * @return The row
+     */
+    public static TranscriptEntry message(Color color,
+                                          String shortId,
+                                          String senderId,
+                                          long timestamp,
+                                          long hlc,
+                                          String body,
+                                          UUID messageId) {
+        return new TranscriptEntry(Kind.MESSAGE, color, shortId, senderId, timestamp, hlc, body, null, messageId);
+    }
+
+    /**
+     * Creates the header row of a system event.
+     *
+     * @param color     The title color
+     * @param title     The event title
+     * @param timestamp The time to display, in epoch milliseconds
+     * @param text      The first line of the event details
+     * @return The row
+     */
+    public static TranscriptEntry event(Color color, String title, long timestamp, String text) {
+        return new TranscriptEntry(Kind.EVENT, color, title, null, timestamp, 0L, text, null, null);
+    }
+
+    /**
+     * Creates a row continuing a system event.
+     *
+     * @param text The first line
+     * @param more The second line, or null
+     * @return The row
+     */
+    public static TranscriptEntry continuation(String text, String more) {
+        return new TranscriptEntry(Kind.EVENT, null, null, null, 0L, 0L, text, more, null);
+    }
+
+    /**
+     * Checks whether this row orders after a stamped message in {@link Message#CAUSAL_ORDER}.
+     * Unstamped rows never do, so they act as barriers to reordering.
+     *
+     * @param other The other message's row
+     * @return true if this row should be displayed after the other message
+     */
+    boolean ordersAfter(TranscriptEntry other) {
+        return hlc != 0L
+                && Message.compareCausally(hlc, senderId, messageId, other.hlc, other.senderId, other.messageId) > 0;
+    }
+}
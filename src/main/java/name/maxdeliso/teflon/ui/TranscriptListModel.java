@@ -0,0 +1,196 @@
+package name.maxdeliso.teflon.ui;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * List model holding the rows of the transcript in display order.
+ * Every change fires an event covering only the rows inserted, so with a fixed cell height the
+ * list's layout and repaint cost does not depend on how many rows the model holds.
+ * At most a scrollback's worth of recent rows is kept on the heap. Older rows are evicted a page
+ * at a time to a {@link TranscriptSpill} file and read back when the list paints them, so the
+ * whole history stays browsable while memory stays flat. Evicting does not change row indexes.
+ * Accessed only on the EDT.
+ */
+public final class TranscriptListModel extends AbstractListModel<TranscriptEntry> implements Closeable {
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = LogManager.getLogger(TranscriptListModel.class);
+
+    /**
+     * Row shown in place of history that could not be read back.
+     */
+    private static final TranscriptEntry UNAVAILABLE = TranscriptEntry.continuation("(history unavailable)", null);
+
+    /**
+     * Number of recent rows kept on the heap.
+     */
+    private final int scrollback;
+
+    /**
+     * Recent rows in display order, following the spilled rows.
+     */
+    private final List<TranscriptEntry> entries = new ArrayList<>();
+
+    /**
+     * File holding evicted rows, created on first eviction.
+     */
+    private TranscriptSpill spill;
+
+    /**
+     * Whether writing to the spill file has failed, after which evicted rows are dropped.
+     */
+    private boolean spillFailed;
+
+    /**
+     * Number of rows in the spill file, which precede the recent rows.
+     */
+    private int spilled;
+
+    /**
+     * Creates a model that keeps every row on the heap.
+     */
+    public TranscriptListModel() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a model that keeps a limited number of recent rows on the heap.
+     *
+     * @param scrollback The number of recent rows kept on the heap
+     */
+    public TranscriptListModel(int scrollback) {
+        if (scrollback <= 0) {
+            throw new IllegalArgumentException("scrollback must be positive");
+        }
+        this.scrollback = scrollback;
+    }
+
+    @Override
+    public int getSize() {
+        return spilled + entries.size();
+    }
+
+    @Override
+    public TranscriptEntry getElementAt(int index) {
+        if (index >= spilled) {
+            return entries.get(index - spilled);
+        }
+        try {
+            return spill.read(index);
+        } catch (IOException e) {
+            LOG.error("Failed to read transcript row {} from the spill file", index, e);
+            return UNAVAILABLE;
+        }
+    }
+
+    /**
+     * Gets the number of rows held on the heap.
+     *
+     * @return The number of recent rows
+     */
+    public int residentRows() {
+        return entries.size();
+    }
+
+    /**
+     * Inserts a row in hybrid logical clock order. Unstamped rows are appended. Stamped rows walk
+     * back from the end past any stamped row that orders after them; unstamped rows such as
+     * system events act as barriers, so insertion is constant time for messages arriving in order.
+     * Evicted rows are barriers too: a message older than every recent row is placed first among them.
+     *
+     * @param entry The row
+     * @return The index the row was inserted at
+     */
+    public int insert(TranscriptEntry entry) {
+        int index = entries.size();
+        if (entry.hlc() > 0) {
+            while (index > 0 && entries.get(index - 1).ordersAfter(entry)) {
+                index--;
+            }
+        }
+        entries.add(index, entry);
+        int inserted = spilled + index;
+        fireIntervalAdded(this, inserted, inserted);
+        evictOverflow();
+        return inserted;
+    }
+
+    /**
+     * Appends rows that belong together, such as the lines of a system event.
+     *
+     * @param rows The rows
+     */
+    public void append(List<TranscriptEntry> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        int first = getSize();
+        entries.addAll(rows);
+        fireIntervalAdded(this, first, getSize() - 1);
+        evictOverflow();
+    }
+
+    /**
+     * Closes the spill file, deleting it. Spilled rows can no longer be read back.
+     */
+    @Override
+    public void close() {
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the transcript spill file", e);
+            }
+        }
+    }
+
+    /**
+     * Evicts the oldest recent rows a page at a time while more than a page over the scrollback.
+     * If the spill file fails, the page is dropped instead so memory stays bounded.
+     */
+    private void evictOverflow() {
+        while (entries.size() - TranscriptSpill.PAGE_ROWS >= scrollback) {
+            var page = entries.subList(0, TranscriptSpill.PAGE_ROWS);
+            boolean written = spillPage(page);
+            page.clear();
+            if (written) {
+                spilled += TranscriptSpill.PAGE_ROWS;
+            } else {
+                fireIntervalRemoved(this, spilled, spilled + TranscriptSpill.PAGE_ROWS - 1);
+            }
+        }
+    }
+
+    /**
+     * Writes a page of rows to the spill file, creating it if needed.
+     * Once spilling has failed it is not retried.
+     *
+     * @param page The rows
+     * @return true if the rows were spilled
+     */
+    private boolean spillPage(List<TranscriptEntry> page) {
+        if (spillFailed) {
+            return false;
+        }
+        try {
+            if (spill == null) {
+                spill = new TranscriptSpill();
+            }
+            spill.writePage(page);
+            return true;
+        } catch (IOException e) {
+            LOG.error("Failed to spill transcript rows; dropping the oldest rows from now on", e);
+            spillFailed = true;
+            return false;
+        }
+    }
+}
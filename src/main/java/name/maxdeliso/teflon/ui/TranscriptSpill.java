@@ -0,0 +1,250 @@
+package name.maxdeliso.teflon.ui;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Append-only file holding transcript rows evicted from memory, in pages of
+ * {@link #PAGE_ROWS} rows. Only the file offset of each page stays on the heap; pages are read
+ * back on demand, and the few most recently read are cached so scrolling through old history
+ * reads each page once. The file is a temporary file deleted when the spill is closed.
+ * Accessed only on the EDT.
+ */
+final class TranscriptSpill implements Closeable {
+    /**
+     * Number of rows written and read together.
+     */
+    static final int PAGE_ROWS = 256;
+
+    /**
+     * Number of pages kept in memory after being read back.
+     */
+    private static final int CACHED_PAGES = 8;
+
+    /**
+     * Initial capacity of the page offset table.
+     */
+    private static final int INITIAL_PAGES = 16;
+
+    /**
+     * Length marking an absent string.
+     */
+    private static final int ABSENT = -1;
+
+    /**
+     * The spill file, deleted when closed.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Encoding buffer reused for every page written.
+     */
+    private final ByteArrayOutputStream pageBytes = new ByteArrayOutputStream();
+
+    /**
+     * File offset of each page; one extra entry marks the end of the last page.
+     */
+    private long[] pageOffsets = new long[INITIAL_PAGES + 1];
+
+    /**
+     * Number of pages written.
+     */
+    private int pages;
+
+    /**
+     * Pages recently read back, least recently used first.
+     */
+    private final Map<Integer, TranscriptEntry[]> cache = new LinkedHashMap<>(CACHED_PAGES, 1.0f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, TranscriptEntry[]> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    /**
+     * Creates a spill backed by a new temporary file.
+     *
+     * @throws IOException if the file cannot be created
+     */
+    TranscriptSpill() throws IOException {
+        var path = Files.createTempFile("teflon-transcript-", ".spill");
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Gets the number of rows written.
+     *
+     * @return The number of rows
+     */
+    int rows() {
+        return pages * PAGE_ROWS;
+    }
+
+    /**
+     * Appends a page of rows.
+     *
+     * @param rows Exactly {@link #PAGE_ROWS} rows
+     * @throws IOException if the page cannot be written
+     */
+    void writePage(List<TranscriptEntry> rows) throws IOException {
+        if (rows.size() != PAGE_ROWS) {
+            throw new IllegalArgumentException("Expected " + PAGE_ROWS + " rows but got " + rows.size());
+        }
+        pageBytes.reset();
+        var out = new DataOutputStream(pageBytes);
+        for (TranscriptEntry row : rows) {
+            write(out, row);
+        }
+        out.flush();
+
+        long offset = pageOffsets[pages];
+        var buffer = ByteBuffer.wrap(pageBytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        if (pages + 1 == pageOffsets.length - 1) {
+            pageOffsets = Arrays.copyOf(pageOffsets, pageOffsets.length * 2);
+        }
+        pageOffsets[++pages] = offset + pageBytes.size();
+    }
+
+    /**
+     * Reads a row back.
+     *
+     * @param index The row index, less than {@link #rows()}
+     * @return The row
+     * @throws IOException if the page holding the row cannot be read
+     */
+    TranscriptEntry read(int index) throws IOException {
+        int page = index / PAGE_ROWS;
+        TranscriptEntry[] rows = cache.get(page);
+        if (rows == null) {
+            rows = readPage(page);
+            cache.put(page, rows);
+        }
+        return rows[index % PAGE_ROWS];
+    }
+
+    @Override
+    public void close() throws IOException {
+        cache.clear();
+        channel.close();
+    }
+
+    /**
+     * Reads and decodes a page.
+     *
+     * @param page The page number
+     * @return The page's rows
+     * @throws IOException if the page cannot be read
+     */
+    private TranscriptEntry[] readPage(int page) throws IOException {
+        long offset = pageOffsets[page];
+        var buffer = ByteBuffer.allocate((int) (pageOffsets[page + 1] - offset));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Spill file truncated in page " + page);
+            }
+        }
+        buffer.flip();
+        var rows = new TranscriptEntry[PAGE_ROWS];
+        for (int i = 0; i < PAGE_ROWS; i++) {
+            rows[i] = read(buffer);
+        }
+        return rows;
+    }
+
+    /**
+     * Encodes a row.
+     *
+     * @param out The stream to write to
+     * @param row The row
+     * @throws IOException if the stream fails
+     */
+    private static void write(DataOutputStream out, TranscriptEntry row) throws IOException {
+        out.writeByte(row.kind().ordinal());
+        out.writeBoolean(row.color() != null);
+        if (row.color() != null) {
+            out.writeInt(row.color().getRGB());
+        }
+        writeString(out, row.title());
+        writeString(out, row.senderId());
+        out.writeLong(row.timestamp());
+        out.writeLong(row.hlc());
+        writeString(out, row.text());
+        writeString(out, row.more());
+        out.writeBoolean(row.messageId() != null);
+        if (row.messageId() != null) {
+            out.writeLong(row.messageId().getMostSignificantBits());
+            out.writeLong(row.messageId().getLeastSignificantBits());
+        }
+    }
+
+    /**
+     * Decodes a row.
+     *
+     * @param in The buffer to read from
+     * @return The row
+     */
+    private static TranscriptEntry read(ByteBuffer in) {
+        var kind = TranscriptEntry.Kind.values()[in.get()];
+        var color = in.get() != 0 ? new Color(in.getInt(), true) : null;
+        var title = readString(in);
+        var senderId = readString(in);
+        long timestamp = in.getLong();
+        long hlc = in.getLong();
+        var text = readString(in);
+        var more = readString(in);
+        var messageId = in.get() != 0 ? new UUID(in.getLong(), in.getLong()) : null;
+        return new TranscriptEntry(kind, color, title, senderId, timestamp, hlc, text, more, messageId);
+    }
+
+    /**
+     * Encodes a string that may be null as its UTF-8 length and bytes.
+     *
+     * @param out   The stream to write to
+     * @param value The string, or null
+     * @throws IOException if the stream fails
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(ABSENT);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Decodes a string written by {@link #writeString}.
+     *
+     * @param in The buffer to read from
+     * @return The string, or null
+     */
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == ABSENT) {
+            return null;
+        }
+        var value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,340 @@
+package name.maxdeliso.teflon.ui;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.Timer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import name.maxdeliso.teflon.data.MetricsRegistry;
+
+/**
+ * Collects UI updates from any thread and applies them on the EDT in frames of about 16 ms.
+ * Ordered updates run in submission order. Keyed updates coalesce, so only the latest update
+ * for a key runs in a frame; they run after the ordered ones and see their effects. Callbacks
+ * registered with {@link #afterFrame(Runnable)} run once everything else in the frame has.
+ * A frame stops early when user input is waiting on the event queue or its time budget is
+ * spent, leaving the rest for the next frame so typing and clicking stay responsive.
+ * Submitting never blocks; {@link #tryPost(Runnable)} refuses work once the backlog is full so
+ * high-volume producers can shed load instead of growing the queue without bound.
+ */
+public final class UiUpdateScheduler {
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = LogManager.getLogger(UiUpdateScheduler.class);
+
+    /**
+     * Interval between frames in milliseconds.
+     */
+    private static final int FRAME_MILLIS = 16;
+
+    /**
+     * Time budget for ordered updates within one frame, in nanoseconds.
+     */
+    private static final long FRAME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(8);
+
+    /**
+     * Number of ordered updates applied between checks for pending input and the time budget.
+     */
+    private static final int YIELD_CHECK_INTERVAL = 16;
+
+    /**
+     * Default maximum number of ordered updates accepted by {@link #tryPost(Runnable)}.
+     */
+    private static final int DEFAULT_BACKLOG_CAPACITY = 4096;
+
+    /**
+     * Input events that end a frame early when waiting.
+     */
+    private static final int[] INPUT_EVENT_IDS = {
+            KeyEvent.KEY_PRESSED,
+            KeyEvent.KEY_TYPED,
+            MouseEvent.MOUSE_PRESSED,
+            MouseEvent.MOUSE_RELEASED,
+            MouseEvent.MOUSE_WHEEL
+    };
+
+    /**
+     * Maximum number of ordered updates accepted by {@link #tryPost(Runnable)}.
+     */
+    private final int backlogCapacity;
+
+    /**
+     * Ordered updates waiting for a frame. Guarded by this scheduler.
+     */
+    private final ArrayDeque<Runnable> ordered = new ArrayDeque<>();
+
+    /**
+     * Latest keyed update for each key, in first-submission order. Guarded by this scheduler.
+     */
+    private Map<Object, Runnable> latest = new LinkedHashMap<>();
+
+    /**
+     * Callbacks to run after the next frame. Guarded by this scheduler.
+     */
+    private List<Runnable> afterFrame = new ArrayList<>();
+
+    /**
+     * Whether a frame is scheduled. Guarded by this scheduler.
+     */
+    private boolean frameScheduled;
+
+    /**
+     * Timer that runs frames on the EDT.
+     */
+    private final Timer frameTimer;
+
+    /**
+     * Number of frames applied.
+     */
+    private final MetricsRegistry.Counter framesApplied;
+
+    /**
+     * Number of updates applied.
+     */
+    private final MetricsRegistry.Counter updatesApplied;
+
+    /**
+     * Number of keyed updates replaced by a later update before they ran.
+     */
+    private final MetricsRegistry.Counter updatesCoalesced;
+
+    /**
+     * Number of updates refused because the backlog was full.
+     */
+    private final MetricsRegistry.Counter updatesRejected;
+
+    /**
+     * Number of frames that ended early to let input or the next frame through.
+     */
+    private final MetricsRegistry.Counter framesYielded;
+
+    /**
+     * Total time spent applying frames on the EDT, in nanoseconds.
+     */
+    private final MetricsRegistry.Counter busyNanos;
+
+    /**
+     * Time spent applying ordered updates on the EDT, in nanoseconds.
+     */
+    private final MetricsRegistry.Counter orderedNanos;
+
+    /**
+     * Creates a scheduler with its own metrics registry.
+     */
+    public UiUpdateScheduler() {
+        this(new MetricsRegistry(), DEFAULT_BACKLOG_CAPACITY);
+    }
+
+    /**
+     * Creates a scheduler that registers its metrics with a shared registry.
+     *
+     * @param metrics The registry to register UI update metrics with
+     */
+    public UiUpdateScheduler(MetricsRegistry metrics) {
+        this(metrics, DEFAULT_BACKLOG_CAPACITY);
+    }
+
+    /**
+     * Creates a scheduler with a specific backlog capacity.
+     *
+     * @param metrics         The registry to register UI update metrics with
+     * @param backlogCapacity The maximum number of ordered updates accepted by {@link #tryPost}
+     */
+    public UiUpdateScheduler(MetricsRegistry metrics, int backlogCapacity) {
+        if (backlogCapacity <= 0) {
+            throw new IllegalArgumentException("backlogCapacity must be positive");
+        }
+        this.backlogCapacity = backlogCapacity;
+        this.frameTimer = new Timer(FRAME_MILLIS, e -> applyFrame());
+        this.frameTimer.setRepeats(false);
+        this.framesApplied = metrics.counter("ui.framesApplied");
+        this.updatesApplied = metrics.counter("ui.updatesApplied");
+        this.updatesCoalesced = metrics.counter("ui.updatesCoalesced");
+        this.updatesRejected = metrics.counter("ui.updatesRejected");
+        this.framesYielded = metrics.counter("ui.framesYielded");
+        this.busyNanos = metrics.counter("ui.busyNanos");
+        this.orderedNanos = metrics.counter("ui.orderedNanos");
+        metrics.gauge("ui.backlog", this::backlog);
+    }
+
+    /**
+     * Queues an ordered update. Use for updates that must not be lost, such as connection
+     * state changes and replies to local commands.
+     *
+     * @param update The update to apply on the EDT
+     */
+    public void post(Runnable update) {
+        synchronized (this) {
+            ordered.addLast(update);
+        }
+        requestFrame();
+    }
+
+    /**
+     * Queues an ordered update unless the backlog is full.
+     * Producers driven by the network use this so a slow EDT pushes back instead of queueing
+     * without bound.
+     *
+     * @param update The update to apply on the EDT
+     * @return true if the update was queued, false if it was refused
+     */
+    public boolean tryPost(Runnable update) {
+        synchronized (this) {
+            if (ordered.size() >= backlogCapacity) {
+                updatesRejected.increment();
+                return false;
+            }
+            ordered.addLast(update);
+        }
+        requestFrame();
+        return true;
+    }
+
+    /**
+     * Queues a keyed update, replacing any update for the same key that has not run yet.
+     * Use for updates that redraw current state, where only the latest one matters.
+     *
+     * @param key    Identifies the state the update redraws
+     * @param update The update to apply on the EDT
+     */
+    public void postLatest(Object key, Runnable update) {
+        synchronized (this) {
+            if (latest.put(key, update) != null) {
+                updatesCoalesced.increment();
+            }
+        }
+        requestFrame();
+    }
+
+    /**
+     * Registers a callback to run on the EDT after the next frame has been applied.
+     *
+     * @param callback The callback
+     */
+    public void afterFrame(Runnable callback) {
+        synchronized (this) {
+            afterFrame.add(callback);
+        }
+        requestFrame();
+    }
+
+    /**
+     * Gets the number of ordered updates waiting for a frame.
+     *
+     * @return The backlog
+     */
+    public synchronized int backlog() {
+        return ordered.size();
+    }
+
+    /**
+     * Schedules a frame unless one is already scheduled.
+     */
+    private void requestFrame() {
+        synchronized (this) {
+            if (frameScheduled) {
+                return;
+            }
+            frameScheduled = true;
+        }
+        frameTimer.restart();
+    }
+
+    /**
+     * Applies one frame: ordered updates within the time budget, then the latest keyed updates,
+     * then after-frame callbacks. Schedules another frame if ordered updates remain.
+     */
+    private void applyFrame() {
+        long started = System.nanoTime();
+        long deadline = started + FRAME_BUDGET_NANOS;
+        EventQueue eventQueue = Toolkit.getDefaultToolkit().getSystemEventQueue();
+        int applied = 0;
+        boolean yielded = false;
+        while (true) {
+            Runnable update;
+            synchronized (this) {
+                update = ordered.pollFirst();
+            }
+            if (update == null) {
+                break;
+            }
+            apply(update);
+            if (++applied % YIELD_CHECK_INTERVAL == 0
+                    && (System.nanoTime() > deadline || inputPending(eventQueue))) {
+                yielded = true;
+                break;
+            }
+        }
+
+        orderedNanos.add(System.nanoTime() - started);
+
+        Map<Object, Runnable> keyed;
+        List<Runnable> callbacks;
+        synchronized (this) {
+            keyed = latest;
+            latest = new LinkedHashMap<>();
+            callbacks = afterFrame;
+            afterFrame = new ArrayList<>();
+        }
+        keyed.values().forEach(this::apply);
+        callbacks.forEach(this::apply);
+        updatesApplied.add(applied + keyed.size() + callbacks.size());
+        framesApplied.increment();
+        busyNanos.add(System.nanoTime() - started);
+
+        boolean more;
+        synchronized (this) {
+            frameScheduled = false;
+            more = !ordered.isEmpty() || !latest.isEmpty() || !afterFrame.isEmpty();
+        }
+        if (yielded) {
+            framesYielded.increment();
+        }
+        if (more) {
+            requestFrame();
+        }
+    }
+
+    /**
+     * Applies one update, logging rather than propagating failures so one bad update cannot
+     * stall the rest of the frame.
+     *
+     * @param update The update
+     */
+    private void apply(Runnable update) {
+        try {
+            update.run();
+        } catch (RuntimeException e) {
+            LOG.error("UI update failed", e);
+        }
+    }
+
+    /**
+     * Checks whether user input is waiting on the event queue.
+     *
+     * @param eventQueue The system event queue
+     * @return true if a key or mouse event is waiting
+     */
+    private static boolean inputPending(EventQueue eventQueue) {
+        for (int id : INPUT_EVENT_IDS) {
+            AWTEvent event = eventQueue.peekEvent(id);
+            if (event != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -20,5 +20,7 @@ open module name.maxdeliso.teflon.test {
     // Export test packages
     exports name.maxdeliso.teflon.commands.test;
     exports name.maxdeliso.teflon.data.test;
+    exports name.maxdeliso.teflon.headless.test;
     exports name.maxdeliso.teflon.net.test;
+    exports name.maxdeliso.teflon.ui.test;
 }
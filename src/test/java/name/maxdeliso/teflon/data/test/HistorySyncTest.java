@@ -0,0 +1,220 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.HistorySync;
+import name.maxdeliso.teflon.data.HybridLogicalClock;
+import name.maxdeliso.teflon.data.LogicalClock;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MetricsRegistry;
+import name.maxdeliso.teflon.data.PeerTracker;
+import name.maxdeliso.teflon.data.TimingWheel;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the HistorySync class, run over a simulated network of unicast links.
+ */
+public class HistorySyncTest {
+
+    private static final Instant START_TIME = Instant.parse("2024-01-01T00:00:00Z");
+    private static final long STEP_MILLIS = 50L;
+    private static final int PORT = 1337;
+    private LogicalClock clock;
+    private TimingWheel wheel;
+    private List<Node> nodes;
+    private Queue<Datagram> wire;
+
+    private record Datagram(Node from, Message message, SocketAddress destination) {}
+
+    private final class Node {
+        private final String id;
+        private final InetSocketAddress address;
+        private final PeerTracker peerTracker;
+        private final MetricsRegistry metrics = new MetricsRegistry();
+        private final Map<UUID, Message> store = new HashMap<>();
+        private final HistorySync sync;
+        private int delivered;
+
+        private Node(int index) {
+            id = new UUID(index + 1, index + 1).toString();
+            address = new InetSocketAddress("10.0.0." + (index + 1), PORT);
+            peerTracker = new PeerTracker(id, clock, wheel);
+            sync = HistorySync.create(id, clock, wheel, peerTracker,
+                    (message, destination) -> wire.add(new Datagram(this, message, destination)),
+                    messageId -> Optional.ofNullable(store.get(messageId)),
+                    this::deliver,
+                    metrics,
+                    new Random(index));
+        }
+
+        private void deliver(Message message) {
+            delivered++;
+            store(message);
+        }
+
+        private void store(Message message) {
+            store.put(message.messageId(), message);
+            sync.record(message);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        clock = new LogicalClock(START_TIME);
+        wheel = new TimingWheel(clock);
+        wire = new ArrayDeque<>();
+        nodes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            nodes.add(new Node(i));
+        }
+        for (Node node : nodes) {
+            for (Node peer : nodes) {
+                node.peerTracker.updatePeer(peer.id, peer.address);
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(node -> {
+            node.sync.stop();
+            node.peerTracker.shutdown();
+        });
+        wheel.shutdown();
+    }
+
+    private Message chat(Node sender, int index) {
+        long millis = START_TIME.toEpochMilli() - HistorySync.WINDOW_MILLIS / 2 + index * 60_000L;
+        return new Message(sender.id, "message " + index, HybridLogicalClock.encode(millis, 0));
+    }
+
+    private void run(long millis) {
+        run(millis, datagram -> { });
+    }
+
+    private void run(long millis, Consumer<Datagram> beforeDelivery) {
+        for (long elapsed = 0; elapsed < millis; elapsed += STEP_MILLIS) {
+            clock.advanceMillis(STEP_MILLIS);
+            wheel.advance();
+            while (!wire.isEmpty()) {
+                Datagram datagram = wire.poll();
+                beforeDelivery.accept(datagram);
+                for (Node to : nodes) {
+                    if (to.address.equals(datagram.destination())) {
+                        assertTrue(to.sync.receive(datagram.message(), datagram.from().address));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testLateJoinerPullsTheUnionOfItsPeersHistories() {
+        Node first = nodes.get(0);
+        Node second = nodes.get(1);
+        Node joiner = nodes.get(2);
+        for (int i = 0; i < 300; i++) {
+            Message message = chat(first, i);
+            first.store(message);
+            second.store(message);
+        }
+        for (int i = 300; i < 310; i++) {
+            second.store(chat(second, i));
+        }
+
+        joiner.sync.start(PORT);
+        run(30_000);
+
+        Map<UUID, Message> union = new HashMap<>(first.store);
+        union.putAll(second.store);
+        assertEquals(union, joiner.store, "The joiner should hold every message its peers hold");
+        assertEquals(0, joiner.sync.pending());
+        long rounds = joiner.metrics.snapshot().value("sync.rounds");
+        assertTrue(rounds <= HistorySync.MAX_ROUNDS, "Catch-up should take a bounded number of rounds");
+        assertEquals(310, joiner.metrics.snapshot().value("sync.pulled"), "Each message should be pulled once");
+    }
+
+    @Test
+    void testJoinerMissingMoreThanOneListingPullsEverything() {
+        Node first = nodes.get(0);
+        Node second = nodes.get(1);
+        Node joiner = nodes.get(2);
+        int count = HistorySync.MAX_ROUNDS * HistorySync.MAX_LISTED_IDS + 1000;
+        long oldest = START_TIME.toEpochMilli() - HistorySync.WINDOW_MILLIS / 2;
+        for (int i = 0; i < count; i++) {
+            Message message = new Message(first.id, "message " + i, HybridLogicalClock.encode(oldest + i * 3_000L, 0));
+            first.store(message);
+            second.store(message);
+        }
+
+        joiner.sync.start(PORT);
+        run(180_000);
+
+        assertEquals(count, joiner.store.size(), "The joiner should hold every message, not just one listing's worth");
+        assertTrue(joiner.store.equals(first.store));
+        assertEquals(count, joiner.metrics.snapshot().value("sync.pulled"), "Each message should be pulled once");
+        assertEquals(0, joiner.sync.pending());
+    }
+
+    @Test
+    void testMembersInSyncExchangeOnlyDigests() {
+        Node first = nodes.get(0);
+        Node second = nodes.get(1);
+        for (int i = 0; i < 50; i++) {
+            Message message = chat(first, i);
+            first.store(message);
+            second.store(message);
+            nodes.get(2).store(message);
+        }
+        assertEquals(first.sync.digest(), second.sync.digest());
+
+        first.sync.start(PORT);
+        run(30_000);
+
+        assertEquals(1, first.metrics.snapshot().value("sync.rounds"), "One answered round should suffice");
+        assertEquals(0, first.metrics.snapshot().value("sync.pulled"));
+        assertEquals(0, second.metrics.snapshot().value("sync.served") + nodes.get(2).metrics.snapshot()
+                .value("sync.served"));
+    }
+
+    @Test
+    void testMessageStoredWhileBeingPulledIsNotDeliveredAgain() {
+        Node first = nodes.get(0);
+        Node joiner = nodes.get(2);
+        for (int i = 0; i < 20; i++) {
+            Message message = chat(first, i);
+            first.store(message);
+            nodes.get(1).store(message);
+        }
+
+        joiner.sync.start(PORT);
+        run(30_000, datagram -> {
+            if (datagram.destination().equals(joiner.address)
+                    && datagram.message().type() == Message.MessageType.SYNC_DATA) {
+                joiner.store(datagram.message().syncedMessage().orElseThrow());
+            }
+        });
+
+        assertEquals(first.store, joiner.store);
+        assertEquals(0, joiner.delivered, "Messages that arrived by other means should not be delivered again");
+        assertEquals(0, joiner.sync.pending());
+    }
+}
@@ -0,0 +1,127 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.HybridLogicalClock;
+import name.maxdeliso.teflon.data.LogicalClock;
+import name.maxdeliso.teflon.data.Message;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the HybridLogicalClock class.
+ */
+public class HybridLogicalClockTest {
+
+    private static final Instant START_TIME = Instant.parse("2024-01-01T00:00:00Z");
+    private LogicalClock physicalClock;
+    private HybridLogicalClock clock;
+
+    @BeforeEach
+    void setUp() {
+        physicalClock = new LogicalClock(START_TIME);
+        clock = new HybridLogicalClock(physicalClock);
+    }
+
+    @Test
+    void testTickUsesPhysicalTime() {
+        long stamp = clock.tick();
+        assertEquals(START_TIME.toEpochMilli(), HybridLogicalClock.physicalMillis(stamp),
+                "First tick should carry physical time");
+        assertEquals(0, HybridLogicalClock.logical(stamp), "First tick should have no logical component");
+    }
+
+    @Test
+    void testTickIsMonotonicWhenPhysicalTimeStalls() {
+        long first = clock.tick();
+        long second = clock.tick();
+        long third = clock.tick();
+
+        assertTrue(second > first, "Ticks should increase while physical time is frozen");
+        assertTrue(third > second, "Ticks should increase while physical time is frozen");
+        assertEquals(2, HybridLogicalClock.logical(third), "Logical counter should break ties");
+    }
+
+    @Test
+    void testTickResetsLogicalCounterWhenPhysicalTimeAdvances() {
+        clock.tick();
+        clock.tick();
+        physicalClock.advanceSeconds(1);
+
+        long stamp = clock.tick();
+        assertEquals(START_TIME.toEpochMilli() + 1000, HybridLogicalClock.physicalMillis(stamp));
+        assertEquals(0, HybridLogicalClock.logical(stamp));
+    }
+
+    @Test
+    void testMergeAdvancesPastRemoteTimestamp() {
+        long remote = HybridLogicalClock.encode(START_TIME.toEpochMilli() + 500, 7);
+
+        long merged = clock.merge(remote);
+        assertTrue(merged > remote, "Receive event should order after the remote send");
+        assertTrue(clock.tick() > merged, "Subsequent ticks should order after the merge");
+    }
+
+    @Test
+    void testMergeIgnoresTimestampsTooFarAhead() {
+        long remote = HybridLogicalClock.encode(START_TIME.toEpochMilli() + 3_600_000, 0);
+
+        long merged = clock.merge(remote);
+        assertEquals(START_TIME.toEpochMilli(), HybridLogicalClock.physicalMillis(merged),
+                "Runaway remote clocks should not drag local time forward");
+    }
+
+    @Test
+    void testReadingTheTimeDoesNotAdvanceTheClock() {
+        long stamp = clock.tick();
+        assertEquals(stamp, clock.current());
+        assertEquals(START_TIME, clock.now());
+        assertEquals(START_TIME.toEpochMilli(), clock.millis());
+
+        assertEquals(stamp + 1, clock.tick(), "Reads should not have consumed logical ticks");
+        physicalClock.advanceSeconds(1);
+        assertEquals(HybridLogicalClock.encode(START_TIME.toEpochMilli() + 1000, 0), clock.current(),
+                "Reads should follow physical time");
+    }
+
+    @Test
+    void testCausalOrderIsDeterministic() {
+        HybridLogicalClock peerClock = new HybridLogicalClock(physicalClock);
+        String senderA = "550e8400-e29b-41d4-a716-446655440000";
+        String senderB = "6ba7b810-9dad-11d1-80b4-00c04fd430c8";
+
+        Message first = new Message(senderA, "hello", clock.tick());
+        peerClock.merge(first.hlc());
+        Message reply = new Message(senderB, "hi", peerClock.tick());
+        Message concurrent = new Message(senderA, "anyone?", first.hlc());
+
+        List<Message> arrivalA = new ArrayList<>(List.of(reply, concurrent, first));
+        List<Message> arrivalB = new ArrayList<>(List.of(concurrent, first, reply));
+        arrivalA.sort(Message.CAUSAL_ORDER);
+        arrivalB.sort(Message.CAUSAL_ORDER);
+
+        assertEquals(arrivalA, arrivalB, "Peers should agree on order regardless of arrival");
+        assertEquals(reply, arrivalA.getLast(), "Reply should order after the message it answers");
+    }
+
+    @Test
+    void testUnstampedMessagesDecodeWithZeroTimestamp() {
+        Message legacy = new Message(
+                "550e8400-e29b-41d4-a716-446655440000",
+                "Legacy message",
+                UUID.randomUUID(),
+                Message.MessageType.CHAT,
+                123456L,
+                null
+        );
+        assertEquals(0L, legacy.hlc());
+        assertTrue(!legacy.hasTimestamp(), "Legacy messages should report no timestamp");
+    }
+}
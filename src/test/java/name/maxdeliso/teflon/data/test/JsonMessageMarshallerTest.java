@@ -2,7 +2,9 @@ package name.maxdeliso.teflon.data.test;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -12,6 +14,7 @@ import org.junit.jupiter.api.Test;
 import com.google.gson.Gson;
 
 import name.maxdeliso.teflon.data.JsonMessageMarshaller;
+import name.maxdeliso.teflon.data.MembershipUpdate;
 import name.maxdeliso.teflon.data.Message;
 
 public class JsonMessageMarshallerTest {
@@ -55,6 +58,19 @@ public class JsonMessageMarshallerTest {
         assertEquals(TEST_MESSAGE_BODY, result.get().body(), "Message body should match");
     }
 
+    @Test
+    void testPiggybackedMembershipRoundTrips() {
+        var update = new MembershipUpdate(TEST_SENDER_ID, "10.0.0.1", MembershipUpdate.State.SUSPECT, 3);
+        Message probe = Message.createProbe(TEST_SENDER_ID, UUID.randomUUID(), "target", true)
+                .withMembership(List.of(update));
+
+        Optional<Message> result = jsonMessageMarshaller.bufferToMessage(jsonMessageMarshaller.messageToBuffer(probe));
+
+        assertTrue(result.isPresent(), "Should successfully parse a probe");
+        assertEquals(Message.MessageType.PING_REQ, result.get().type(), "Probe type should match");
+        assertEquals(List.of(update), result.get().membership(), "Piggybacked updates should match");
+    }
+
     @Test
     void testBufferToMessageWithInvalidJson() {
         // Create buffer with invalid JSON
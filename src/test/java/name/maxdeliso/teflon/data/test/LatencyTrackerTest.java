@@ -0,0 +1,122 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.LatencyHistogram;
+import name.maxdeliso.teflon.data.LatencyTracker;
+import name.maxdeliso.teflon.data.LogicalClock;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.PeerTracker;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the LatencyTracker and LatencyHistogram classes.
+ */
+public class LatencyTrackerTest {
+
+    private static final String TEST_INSTANCE_ID = "550e8400-e29b-41d4-a716-446655440000";
+    private static final String TEST_PEER_ID = "6ba7b810-9dad-11d1-80b4-00c04fd430c8";
+    private static final Instant START_TIME = Instant.parse("2024-01-01T00:00:00Z");
+    private static final long START_MICROS = START_TIME.toEpochMilli() * 1000;
+    private static final long PEER_OFFSET_MICROS = 250_000;
+    private static final long ONE_WAY_MICROS = 400;
+
+    private LatencyTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new LatencyTracker(TEST_INSTANCE_ID, new LogicalClock(START_TIME));
+    }
+
+    @Test
+    void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 10L);
+        }
+
+        LatencyHistogram.Summary summary = histogram.summarize();
+        assertEquals(100, summary.count());
+        assertEquals(1000, summary.max());
+        assertTrue(Math.abs(summary.median() - 500) <= 500 / 8, "Median should be within bucket precision");
+        assertTrue(summary.p99() >= 960 && summary.p99() <= 1000, "p99 should be within bucket precision");
+    }
+
+    @Test
+    void testHistogramClampsNegativeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.percentile(0.5));
+        assertEquals("n/a", new LatencyHistogram().summarize().describeMillis());
+    }
+
+    @Test
+    void testOffsetEstimatedFromAcknowledgmentRoundTrip() {
+        Message chat = new Message(TEST_INSTANCE_ID, "hello", 1L);
+        tracker.recordComposed(chat);
+
+        long t1 = START_MICROS;
+        tracker.recordSent(chat.withSentAt(t1));
+
+        long t2 = t1 + ONE_WAY_MICROS + PEER_OFFSET_MICROS;
+        long t3 = t2 + 100;
+        Message ack = Message.createAcknowledgment(TEST_PEER_ID, chat.messageId(), true, 2L, t2).withSentAt(t3);
+        long t4 = t3 - PEER_OFFSET_MICROS + ONE_WAY_MICROS;
+        tracker.recordArrival(ack, t4, t4 + 20);
+
+        LatencyTracker.PeerSummary summary = tracker.peerSummary(TEST_PEER_ID);
+        assertNotNull(summary);
+        assertTrue(summary.synchronizedWithPeer(), "Offset should be known after one round trip");
+        assertEquals(PEER_OFFSET_MICROS, summary.offset(), "Symmetric delay should yield the exact offset");
+        assertEquals(1, summary.roundTrip().count());
+        assertTrue(Math.abs(summary.oneWay().median() - ONE_WAY_MICROS) <= ONE_WAY_MICROS / 8,
+                "One-way delay should be corrected for the peer's clock offset");
+        assertEquals(1, tracker.breakdown().decode().count());
+    }
+
+    @Test
+    void testOneWayDelayNotRecordedBeforeSynchronization() {
+        Message chat = new Message(TEST_PEER_ID, "hi", 1L).withSentAt(START_MICROS);
+        tracker.recordArrival(chat, START_MICROS + 300, START_MICROS + 310);
+
+        LatencyTracker.PeerSummary summary = tracker.peerSummary(TEST_PEER_ID);
+        assertNotNull(summary);
+        assertFalse(summary.synchronizedWithPeer());
+        assertEquals(0, summary.oneWay().count());
+        assertEquals(0, tracker.breakdown().wire().count());
+    }
+
+    @Test
+    void testSelfMessagesIgnored() {
+        Message chat = new Message(TEST_INSTANCE_ID, "echo", 1L).withSentAt(START_MICROS);
+        tracker.recordArrival(chat, START_MICROS + 300, START_MICROS + 310);
+
+        assertNull(tracker.peerSummary(TEST_INSTANCE_ID), "Loopback copies of our own messages are not peers");
+    }
+
+    @Test
+    void testPeerIsForgottenWhenItLeavesTheRoster() {
+        LogicalClock clock = new LogicalClock(START_TIME);
+        PeerTracker peerTracker = new PeerTracker(TEST_INSTANCE_ID, clock);
+        LatencyTracker following = new LatencyTracker(TEST_INSTANCE_ID, clock, peerTracker);
+        peerTracker.updatePeer(TEST_PEER_ID, new InetSocketAddress("10.0.0.2", 1337));
+        following.recordArrival(new Message(TEST_PEER_ID, "hi", 1L).withSentAt(START_MICROS),
+                START_MICROS + 300, START_MICROS + 310);
+        assertNotNull(following.peerSummary(TEST_PEER_ID));
+
+        peerTracker.remove(TEST_PEER_ID);
+
+        assertNull(following.peerSummary(TEST_PEER_ID), "A peer that left should be forgotten");
+        assertTrue(following.peerSummaries().isEmpty());
+        peerTracker.shutdown();
+    }
+}
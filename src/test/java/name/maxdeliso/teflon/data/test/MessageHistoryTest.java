@@ -0,0 +1,157 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.LogicalClock;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageHistory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the MessageHistory class.
+ */
+public class MessageHistoryTest {
+
+    private static final String TEST_SENDER_ID = "550e8400-e29b-41d4-a716-446655440000";
+    private static final Instant START_TIME = Instant.parse("2024-01-01T00:00:00Z");
+    private static final int SMALL_SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path directory;
+
+    private LogicalClock clock;
+
+    @BeforeEach
+    void setUp() {
+        clock = new LogicalClock(START_TIME);
+    }
+
+    @Test
+    void testAppendedMessagesRoundTripAndDuplicatesAreRejected() throws IOException {
+        Message chat = new Message(TEST_SENDER_ID, "héllo, wörld 😀 <b>", 42L);
+        Message ack = Message.createAcknowledgment(TEST_SENDER_ID, chat.messageId(), true, 43L, 1234L);
+
+        try (MessageHistory history = MessageHistory.open(directory, SMALL_SEGMENT_BYTES, clock)) {
+            long position = history.append(chat);
+            assertTrue(position >= 0);
+            assertTrue(history.append(ack) >= 0);
+            assertEquals(-1, history.append(chat), "A stored message should not be appended again");
+
+            assertEquals(2, history.size());
+            assertTrue(history.contains(chat.messageId()));
+            assertFalse(history.contains(UUID.randomUUID()));
+            assertEquals(chat, history.find(chat.messageId()).orElseThrow().message());
+            assertEquals(ack, history.read(history.find(ack.messageId()).orElseThrow().position()).message());
+        }
+    }
+
+    @Test
+    void testReopenedHistorySpansSegmentsInOrder() throws IOException {
+        List<Message> messages = new ArrayList<>();
+        try (MessageHistory history = MessageHistory.open(directory, SMALL_SEGMENT_BYTES, clock)) {
+            for (int i = 0; i < 500; i++) {
+                Message message = new Message(TEST_SENDER_ID, "message " + i, i + 1);
+                messages.add(message);
+                history.append(message);
+                clock.advanceMillis(10);
+            }
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.count() > 1, "The messages should fill several segments");
+        }
+
+        try (MessageHistory history = MessageHistory.open(directory, SMALL_SEGMENT_BYTES, clock)) {
+            List<MessageHistory.Entry> tail = history.tail(150);
+            assertEquals(150, tail.size());
+            for (int i = 0; i < tail.size(); i++) {
+                assertEquals(messages.get(350 + i), tail.get(i).message());
+            }
+
+            assertEquals(500, history.size());
+            assertEquals(-1, history.append(messages.getFirst()), "Reopening should restore the ID index");
+
+            long since = START_TIME.toEpochMilli() + 4_000;
+            List<Message> recent = new ArrayList<>();
+            history.forEachSince(since, entry -> recent.add(entry.message()));
+            assertEquals(messages.subList(400, 500), recent);
+        }
+    }
+
+    @Test
+    void testForEachAfterVisitsOnlyLaterEntries() throws IOException {
+        try (MessageHistory history = MessageHistory.open(directory, SMALL_SEGMENT_BYTES, clock)) {
+            List<Long> positions = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                positions.add(history.append(new Message(TEST_SENDER_ID, "message " + i)));
+            }
+
+            List<Long> visited = new ArrayList<>();
+            history.forEachAfter(positions.get(59), entry -> visited.add(entry.position()));
+            assertEquals(positions.subList(60, 100), visited);
+
+            visited.clear();
+            history.forEachAfter(-1, entry -> visited.add(entry.position()));
+            assertEquals(positions, visited);
+        }
+    }
+
+    @Test
+    void testAppendAfterReopenWaitsForIndexing() throws IOException {
+        Message first = new Message(TEST_SENDER_ID, "first");
+        try (MessageHistory history = MessageHistory.open(directory, 512, clock)) {
+            for (int i = 0; i < 20; i++) {
+                history.append(i == 0 ? first : new Message(TEST_SENDER_ID, "filler " + i));
+            }
+        }
+        try (MessageHistory history = MessageHistory.open(directory, 512, clock)) {
+            assertEquals(-1, history.append(first), "A message in a sealed segment should be found");
+            assertEquals(20, history.size());
+        }
+    }
+
+    @Test
+    void testTornRecordIsDiscardedOnReopen() throws IOException {
+        Message first = new Message(TEST_SENDER_ID, "first");
+        Message torn = new Message(TEST_SENDER_ID, "torn");
+        long tornPosition;
+        try (MessageHistory history = MessageHistory.open(directory, SMALL_SEGMENT_BYTES, clock)) {
+            history.append(first);
+            tornPosition = history.append(torn);
+        }
+
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0x7F}), tornPosition + 40);
+        }
+
+        Message next = new Message(TEST_SENDER_ID, "next");
+        try (MessageHistory history = MessageHistory.open(directory, SMALL_SEGMENT_BYTES, clock)) {
+            assertEquals(1, history.size());
+            assertFalse(history.contains(torn.messageId()));
+            history.append(next);
+        }
+        try (MessageHistory history = MessageHistory.open(directory, SMALL_SEGMENT_BYTES, clock)) {
+            assertEquals(List.of(first, next), history.tail(10).stream().map(MessageHistory.Entry::message).toList());
+        }
+    }
+}
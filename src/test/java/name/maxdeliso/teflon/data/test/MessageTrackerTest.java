@@ -9,11 +9,14 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -60,6 +63,18 @@ public class MessageTrackerTest {
         assertEquals(1L, stats.get("pendingMessages"), "Should have one pending message");
     }
 
+    @Test
+    void testRestoredDeliveryStatsAddToTheRunningTotals() {
+        tracker.restoreDeliveryStats(Map.of("messagesSent", 10L, "acksReceived", 7L, "pendingMessages", 3L));
+        tracker.trackMessage(testMessage);
+        Map<String, Long> stats = tracker.getDeliveryStats();
+
+        assertEquals(11L, stats.get("messagesSent"));
+        assertEquals(7L, stats.get("acksReceived"));
+        assertEquals(0L, stats.get("messagesTimedOut"));
+        assertEquals(1L, stats.get("pendingMessages"), "Pending messages should not be carried over");
+    }
+
     @Test
     void testProcessPositiveAcknowledgment() {
         // Create a message from a different sender
@@ -96,9 +111,9 @@ public class MessageTrackerTest {
         // Track a message sent by this instance
         tracker.trackMessage(testMessage);
 
-        // Try to acknowledge our own message
+        // Acknowledge our own message, as multicast loopback makes us do
         Message selfAck = new Message(
-                TEST_RECEIVER_ID,
+                TEST_INSTANCE_ID,
                 "Message received",
                 UUID.randomUUID(),
                 Message.MessageType.ACK,
@@ -108,13 +123,30 @@ public class MessageTrackerTest {
         tracker.processAcknowledgment(selfAck);
 
         Map<String, Long> stats = tracker.getDeliveryStats();
-        assertEquals(0L, stats.get("acksReceived"), "Should not record ACK for own message");
-        assertEquals(0L, stats.get("nacksReceived"), "Should not record NACK for own message");
+        assertEquals(0L, stats.get("acksReceived"), "Should not record our own ACK of our message");
+        assertEquals(0L, stats.get("nacksReceived"), "Should not record our own NACK of our message");
 
         Set<String> ackParties = tracker.getAcknowledgingParties(testMessageId);
         assertTrue(ackParties.isEmpty(), "Should have no acknowledging parties for self-sent message");
     }
 
+    @Test
+    void testPeerAcknowledgmentsOfOwnMessageAreRecorded() {
+        tracker.trackMessage(testMessage);
+
+        tracker.processAcknowledgment(Message.createAcknowledgment(TEST_RECEIVER_ID, testMessageId, true));
+        tracker.processAcknowledgment(Message.createAcknowledgment(
+                "7ba7b810-9dad-11d1-80b4-00c04fd430c8", testMessageId, false));
+
+        Map<String, Long> stats = tracker.getDeliveryStats();
+        assertEquals(1L, stats.get("acksReceived"));
+        assertEquals(1L, stats.get("nacksReceived"));
+        assertEquals(Set.of(TEST_RECEIVER_ID, "7ba7b810-9dad-11d1-80b4-00c04fd430c8"),
+                tracker.getAcknowledgingParties(testMessageId));
+        assertEquals(Set.of("7ba7b810-9dad-11d1-80b4-00c04fd430c8"),
+                tracker.getNegativelyAcknowledgingParties(testMessageId));
+    }
+
     @Test
     void testProcessNegativeAcknowledgment() {
         // Create a message from a different sender
@@ -254,4 +286,50 @@ public class MessageTrackerTest {
         Map<String, Long> stats = tracker.getDeliveryStats();
         assertEquals(0L, stats.get("acksReceived"), "Should not record ACK for invalid message");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testUnacknowledgedAndNegativeParties() {
+        Message otherMessage = new Message(
+                TEST_RECEIVER_ID,
+                "Message from other",
+                testMessageId,
+                Message.MessageType.CHAT,
+                123456L,
+                null
+        );
+        tracker.trackMessage(otherMessage);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(new UUID(0, i + 1).toString());
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (i % 3 != 0) {
+                continue;
+            }
+            Message.MessageType type = i % 2 == 0 ? Message.MessageType.ACK : Message.MessageType.NACK;
+            tracker.processAcknowledgment(new Message(
+                    expected.get(i),
+                    "Response",
+                    UUID.randomUUID(),
+                    type,
+                    123456L,
+                    testMessageId
+            ));
+        }
+
+        Set<String> responded = tracker.getAcknowledgingParties(testMessageId);
+        Set<String> nacked = tracker.getNegativelyAcknowledgingParties(testMessageId);
+        Set<String> pending = tracker.getUnacknowledgedParties(testMessageId, expected);
+
+        assertEquals(34, responded.size(), "Every third peer should have responded");
+        assertEquals(17, nacked.size(), "Odd responders should have sent NACKs");
+        assertTrue(nacked.contains(expected.get(99)), "A NACK beyond the first 64 peers should be kept");
+        assertEquals(66, pending.size(), "The rest should still be pending");
+        for (String id : pending) {
+            assertFalse(responded.contains(id), "Pending peers should not have responded");
+        }
+        assertTrue(tracker.getUnacknowledgedParties(UUID.randomUUID(), expected).isEmpty(),
+                "Untracked messages should have no pending parties");
+    }
+}
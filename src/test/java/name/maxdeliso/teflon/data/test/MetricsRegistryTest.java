@@ -0,0 +1,90 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.LogicalClock;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageTracker;
+import name.maxdeliso.teflon.data.MetricsRegistry;
+import name.maxdeliso.teflon.data.TimingWheel;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Unit tests for the MetricsRegistry class.
+ */
+public class MetricsRegistryTest {
+
+    private static final String TEST_INSTANCE_ID = "550e8400-e29b-41d4-a716-446655440000";
+    private static final String TEST_SENDER_ID = "6ba7b810-9dad-11d1-80b4-00c04fd430c8";
+    private static final int THREADS = 4;
+    private static final int MESSAGES_PER_THREAD = 2_000;
+
+    @Test
+    void testCountersAreSharedByName() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        assertSame(metrics.counter("a.b"), metrics.counter("a.b"));
+
+        metrics.counter("a.b").increment();
+        metrics.counter("a.b").add(4);
+        assertEquals(5, metrics.snapshot().value("a.b"));
+        assertEquals(0, metrics.snapshot().value("missing"));
+    }
+
+    @Test
+    void testGaugesAreReadAtSnapshotTime() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        AtomicLong depth = new AtomicLong(3);
+        metrics.gauge("queue.depth", depth::get);
+
+        assertEquals(3, metrics.snapshot().value("queue.depth"));
+        depth.set(7);
+        assertEquals(7, metrics.snapshot().value("queue.depth"));
+    }
+
+    @Test
+    void testHistogramsAreSummarized() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.histogram("latency").record(100);
+        metrics.histogram("latency").record(200);
+
+        assertEquals(2, metrics.snapshot().histograms().get("latency").count());
+    }
+
+    @Test
+    void testConcurrentTrackingLosesNoUpdates() throws InterruptedException {
+        LogicalClock clock = new LogicalClock(Instant.parse("2024-01-01T00:00:00Z"));
+        TimingWheel wheel = new TimingWheel(clock);
+        MetricsRegistry metrics = new MetricsRegistry();
+        MessageTracker tracker = new MessageTracker(TEST_INSTANCE_ID, clock, wheel, metrics);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < MESSAGES_PER_THREAD; i++) {
+                    tracker.trackMessage(new Message(TEST_SENDER_ID, "hello"));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        MetricsRegistry.Snapshot snapshot = metrics.snapshot();
+        long expected = (long) THREADS * MESSAGES_PER_THREAD;
+        assertEquals(expected, snapshot.value("messages.sent"));
+        assertEquals(expected, snapshot.value("messages.pending"));
+        assertEquals(expected, tracker.getDeliveryStats().get("messagesSent"));
+
+        clock.advanceSeconds(6);
+        tracker.cleanupTimedOutMessages();
+        assertEquals(expected, metrics.snapshot().value("messages.timedOut"));
+        assertEquals(0, metrics.snapshot().value("messages.pending"));
+    }
+}
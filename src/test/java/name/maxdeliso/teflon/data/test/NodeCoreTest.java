@@ -0,0 +1,124 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.HybridLogicalClock;
+import name.maxdeliso.teflon.data.LogicalClock;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageTracker;
+import name.maxdeliso.teflon.data.NodeCore;
+import name.maxdeliso.teflon.data.PeerTracker;
+import name.maxdeliso.teflon.data.TimingWheel;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the NodeCore class.
+ */
+public class NodeCoreTest {
+
+    private static final String INSTANCE_ID = "550e8400-e29b-41d4-a716-446655440000";
+    private static final String PEER_ID = "6ba7b810-9dad-11d1-80b4-00c04fd430c8";
+    private static final SocketAddress PEER_ADDRESS = new InetSocketAddress("10.0.0.2", 1337);
+    private static final SocketAddress OWN_ADDRESS = new InetSocketAddress("10.0.0.1", 1337);
+    private static final long ARRIVED_AT = 1_704_067_200_000_000L;
+
+    private final List<Message> sent = new ArrayList<>();
+    private LogicalClock clock;
+    private TimingWheel wheel;
+    private MessageTracker messageTracker;
+    private PeerTracker peerTracker;
+    private NodeCore core;
+
+    @BeforeEach
+    void setUp() {
+        clock = new LogicalClock(Instant.parse("2024-01-01T00:00:00Z"));
+        wheel = new TimingWheel(clock);
+        messageTracker = new MessageTracker(INSTANCE_ID, clock);
+        peerTracker = new PeerTracker(INSTANCE_ID, clock, wheel);
+        core = new NodeCore(INSTANCE_ID, clock, messageTracker, peerTracker, sent::add);
+    }
+
+    @AfterEach
+    void tearDown() {
+        messageTracker.shutdown();
+        peerTracker.shutdown();
+        wheel.shutdown();
+    }
+
+    @Test
+    void testChatFromAPeerIsTrackedAndAcknowledged() {
+        long ahead = HybridLogicalClock.encode(clock.millis() + 60_000L, 0);
+        Message chat = new Message(PEER_ID, "hello", ahead);
+
+        assertTrue(core.receive(chat, PEER_ADDRESS, ARRIVED_AT));
+
+        assertEquals(1, peerTracker.getPeerCount());
+        assertEquals(1L, messageTracker.getDeliveryStats().get("messagesSent"));
+        Message ack = sent.getFirst();
+        assertTrue(ack.isAcknowledgment());
+        assertEquals(chat.messageId(), ack.originalMessageId());
+        assertEquals(INSTANCE_ID, ack.senderId());
+        assertTrue(ack.hlc() > chat.hlc(), "The acknowledgment should order after the message");
+        assertTrue(core.compose("reply").hlc() > ack.hlc(), "Replies should order after what was seen");
+    }
+
+    @Test
+    void testPeerAcknowledgmentOfAComposedMessageIsCounted() {
+        Message message = core.compose("hello");
+        assertEquals(INSTANCE_ID, message.senderId());
+
+        assertTrue(core.receive(Message.createAcknowledgment(PEER_ID, message.messageId(), true),
+                PEER_ADDRESS, ARRIVED_AT));
+
+        assertEquals(Set.of(PEER_ID), messageTracker.getAcknowledgingParties(message.messageId()));
+        assertTrue(sent.isEmpty(), "Acknowledgments should not be acknowledged");
+    }
+
+    @Test
+    void testOwnLoopedBackMessagesAreLeftAlone() {
+        Message message = core.compose("hello");
+
+        assertFalse(core.receive(message, OWN_ADDRESS, ARRIVED_AT));
+        assertFalse(core.receive(Message.createAcknowledgment(INSTANCE_ID, message.messageId(), true),
+                OWN_ADDRESS, ARRIVED_AT));
+
+        assertTrue(sent.isEmpty(), "Our own messages should not be acknowledged");
+        assertEquals(0, peerTracker.getPeerCount());
+        assertEquals(1L, messageTracker.getDeliveryStats().get("messagesSent"), "It should be tracked once");
+        assertTrue(messageTracker.getAcknowledgingParties(message.messageId()).isEmpty());
+    }
+
+    @Test
+    void testIndexesOfDepartedPeersAreReused() {
+        for (int round = 0; round < 1_000; round++) {
+            Message message = core.compose("round " + round);
+            Set<String> peers = new HashSet<>();
+            for (int peer = 0; peer < 3; peer++) {
+                String peerId = new UUID(round + 1, peer + 1).toString();
+                peers.add(peerId);
+                core.receive(Message.createAcknowledgment(peerId, message.messageId(), true), PEER_ADDRESS, ARRIVED_AT);
+                assertTrue(peerTracker.remove(peerId));
+            }
+            assertEquals(peers, messageTracker.getAcknowledgingParties(message.messageId()),
+                    "Acknowledgments from peers that have left should still be read as theirs");
+            clock.advanceSeconds(6);
+            messageTracker.cleanupTimedOutMessages();
+        }
+
+        assertEquals(3, messageTracker.peerIndexWidth(), "The bitsets should be as wide as the room, not its history");
+    }
+}
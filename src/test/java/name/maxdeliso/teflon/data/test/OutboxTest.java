@@ -0,0 +1,110 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.JsonMessageMarshaller;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageMarshaller;
+import name.maxdeliso.teflon.data.Outbox;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the Outbox class.
+ */
+public class OutboxTest {
+
+    private static final String TEST_SENDER_ID = "550e8400-e29b-41d4-a716-446655440000";
+    private static final int SMALL_CAPACITY = 512;
+
+    private final MessageMarshaller marshaller = new JsonMessageMarshaller(new Gson());
+
+    @TempDir
+    Path directory;
+
+    private List<Message> drain(Outbox outbox) {
+        List<Message> drained = new ArrayList<>();
+        for (Optional<Message> next = outbox.peek(); next.isPresent(); next = outbox.peek()) {
+            assertEquals(next, outbox.remove());
+            drained.add(next.get());
+        }
+        return drained;
+    }
+
+    @Test
+    void testWaitingMessagesSurviveReopeningInOrder() throws IOException {
+        Path file = directory.resolve(Outbox.FILE_NAME);
+        List<Message> messages = new ArrayList<>();
+        try (Outbox outbox = Outbox.open(file, marshaller)) {
+            for (int i = 0; i < 10; i++) {
+                Message message = new Message(TEST_SENDER_ID, "message " + i, i + 1);
+                messages.add(message);
+                outbox.add(message);
+            }
+            assertEquals(messages.getFirst(), outbox.remove().orElseThrow());
+            assertEquals(messages.get(1), outbox.remove().orElseThrow());
+        }
+
+        try (Outbox outbox = Outbox.open(file, marshaller)) {
+            assertEquals(8, outbox.size());
+            assertEquals(messages.subList(2, 10), drain(outbox));
+        }
+    }
+
+    @Test
+    void testDrainedJournalStartsOverWithoutResurrectingSentMessages() throws IOException {
+        Path file = directory.resolve(Outbox.FILE_NAME);
+        Message last = new Message(TEST_SENDER_ID, "after draining");
+        long size;
+        try (Outbox outbox = Outbox.open(file, SMALL_CAPACITY, marshaller)) {
+            for (int i = 0; i < 3; i++) {
+                outbox.add(new Message(TEST_SENDER_ID, "sent " + i));
+            }
+            drain(outbox);
+            size = Files.size(file);
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < 3; i++) {
+                    outbox.add(new Message(TEST_SENDER_ID, "round " + round + " sent " + i));
+                }
+                drain(outbox);
+            }
+            outbox.add(last);
+        }
+        assertEquals(size, Files.size(file), "Starting over should reuse the front of the file");
+
+        try (Outbox outbox = Outbox.open(file, SMALL_CAPACITY, marshaller)) {
+            assertEquals(List.of(last), drain(outbox));
+        }
+        try (Outbox outbox = Outbox.open(file, SMALL_CAPACITY, marshaller)) {
+            assertEquals(0, outbox.size(), "A drained outbox should stay empty when reopened");
+        }
+    }
+
+    @Test
+    void testJournalGrowsToHoldALongBacklog() throws IOException {
+        Path file = directory.resolve(Outbox.FILE_NAME);
+        List<Message> messages = new ArrayList<>();
+        try (Outbox outbox = Outbox.open(file, SMALL_CAPACITY, marshaller)) {
+            for (int i = 0; i < 100; i++) {
+                Message message = new Message(TEST_SENDER_ID, "backlog " + i);
+                messages.add(message);
+                outbox.add(message);
+            }
+        }
+        assertTrue(Files.size(file) > SMALL_CAPACITY);
+
+        try (Outbox outbox = Outbox.open(file, SMALL_CAPACITY, marshaller)) {
+            assertEquals(messages, drain(outbox));
+        }
+    }
+}
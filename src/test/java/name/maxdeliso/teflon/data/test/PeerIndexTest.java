@@ -0,0 +1,70 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.PeerIndex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the PeerIndex class.
+ */
+public class PeerIndexTest {
+
+    @Test
+    void testIndexesAreDenseAndStable() {
+        PeerIndex index = new PeerIndex();
+
+        assertEquals(0, index.indexOf("a"));
+        assertEquals(1, index.indexOf("b"));
+        assertEquals(0, index.indexOf("a"), "Known IDs should keep their index");
+        assertEquals(2, index.size());
+        assertEquals("b", index.idAt(1));
+        assertNull(index.idAt(2), "Unassigned indexes should resolve to null");
+    }
+
+    @Test
+    void testBitsetRoundTripBeyondOneWord() {
+        PeerIndex index = new PeerIndex();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            ids.add("peer-" + i);
+        }
+
+        long[] bits = index.bitsOf(ids);
+
+        assertEquals(4, bits.length, "200 peers should need four words");
+        assertEquals(Set.copyOf(ids), index.idsOf(bits));
+        assertArrayEquals(new long[]{1L << 3}, index.bitsOf(List.of("peer-3")));
+    }
+
+    @Test
+    void testReleasedIndexIsReusedOnlyOnceReclaimed() {
+        PeerIndex index = new PeerIndex();
+        index.indexOf("a");
+        index.indexOf("b");
+        long started = index.generation();
+        long[] bits = index.bitsOf(List.of("a"));
+
+        assertTrue(index.release("a"));
+        assertFalse(index.release("a"), "An ID without an index should not be released");
+        assertEquals(Set.of("a"), index.idsOf(bits), "A released index should resolve to its peer until reclaimed");
+        assertEquals(2, index.indexOf("c"), "A released index should not be reused while a bitset may hold it");
+
+        index.reclaim(started);
+        assertEquals(3, index.indexOf("d"), "Bitsets started before the release may still hold the index");
+
+        index.reclaim(index.generation());
+        assertEquals(0, index.indexOf("e"), "A reclaimed index should be reused");
+        assertEquals(4, index.width());
+        assertEquals(4, index.size());
+    }
+}
@@ -0,0 +1,137 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.LogicalClock;
+import name.maxdeliso.teflon.data.PeerTracker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the PeerTracker class.
+ */
+public class PeerTrackerTest {
+
+    private static final String TEST_INSTANCE_ID = "550e8400-e29b-41d4-a716-446655440000";
+    private static final String TEST_PEER_ID = "6ba7b810-9dad-11d1-80b4-00c04fd430c8";
+    private static final Instant START_TIME = Instant.parse("2024-01-01T00:00:00Z");
+    private static final InetSocketAddress FIRST_ADDRESS = new InetSocketAddress("10.0.0.1", 1337);
+    private static final InetSocketAddress SECOND_ADDRESS = new InetSocketAddress("10.0.0.2", 1337);
+    private LogicalClock clock;
+    private PeerTracker tracker;
+    private List<String> events;
+
+    @BeforeEach
+    void setUp() {
+        clock = new LogicalClock(START_TIME);
+        tracker = new PeerTracker(TEST_INSTANCE_ID, clock);
+        events = new ArrayList<>();
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracker.shutdown();
+    }
+
+    private PeerTracker.Subscription subscribe() {
+        return tracker.subscribe(new PeerTracker.Listener() {
+            @Override
+            public void peerJoined(PeerTracker.PeerInfo peer) {
+                events.add("joined " + peer.ipAddress());
+            }
+
+            @Override
+            public void peerUpdated(PeerTracker.PeerInfo peer) {
+                events.add("updated " + peer.ipAddress());
+            }
+
+            @Override
+            public void peerSeen(PeerTracker.PeerInfo peer) {
+                events.add("seen " + peer.lastSeen().getEpochSecond());
+            }
+
+            @Override
+            public void peerLeft(String uuid) {
+                events.add("left");
+            }
+        });
+    }
+
+    @Test
+    void testSightingsAreCoalescedPerInterval() {
+        subscribe();
+
+        tracker.updatePeer(TEST_PEER_ID, FIRST_ADDRESS);
+        tracker.updatePeer(TEST_PEER_ID, FIRST_ADDRESS);
+        tracker.updatePeer(TEST_PEER_ID, FIRST_ADDRESS);
+        clock.advanceSeconds(1);
+        tracker.updatePeer(TEST_PEER_ID, FIRST_ADDRESS);
+        tracker.updatePeer(TEST_PEER_ID, FIRST_ADDRESS);
+        tracker.updatePeer(TEST_PEER_ID, SECOND_ADDRESS);
+
+        long joinedAt = START_TIME.getEpochSecond();
+        assertEquals(List.of("joined 10.0.0.1", "seen " + (joinedAt + 1), "updated 10.0.0.2"), events);
+    }
+
+    @Test
+    void testVersionCountsMembershipChangesOnly() {
+        long initial = tracker.version();
+        tracker.updatePeer(TEST_PEER_ID, FIRST_ADDRESS);
+        long joined = tracker.version();
+        assertNotEquals(initial, joined, "A join should change the version");
+
+        clock.advanceSeconds(1);
+        tracker.updatePeer(TEST_PEER_ID, FIRST_ADDRESS);
+        assertEquals(joined, tracker.version(), "A sighting should not change the version");
+
+        tracker.updatePeer(TEST_PEER_ID, SECOND_ADDRESS);
+        assertNotEquals(joined, tracker.version(), "An address change should change the version");
+    }
+
+    @Test
+    void testDeparturesAreReportedUntilUnsubscribed() {
+        PeerTracker.Subscription subscription = subscribe();
+
+        tracker.updatePeer(TEST_PEER_ID, FIRST_ADDRESS);
+        clock.advanceSeconds(31);
+        tracker.cleanupInactivePeers();
+        assertEquals(List.of("joined 10.0.0.1", "left"), events);
+        assertEquals(0, tracker.getPeerCount());
+
+        subscription.close();
+        tracker.updatePeer(TEST_PEER_ID, FIRST_ADDRESS);
+        tracker.reset();
+        assertEquals(2, events.size(), "A closed subscription should receive nothing");
+    }
+
+    @Test
+    void testRestoredPeerKeepsItsLastSeenUntilHeardFrom() {
+        long savedAt = START_TIME.toEpochMilli() - 120_000L;
+        subscribe();
+
+        assertTrue(tracker.restorePeer(TEST_PEER_ID, FIRST_ADDRESS, savedAt));
+        assertFalse(tracker.restorePeer(TEST_PEER_ID, SECOND_ADDRESS, savedAt), "A known peer should be left alone");
+        assertFalse(tracker.restorePeer(TEST_INSTANCE_ID, SECOND_ADDRESS, savedAt));
+        assertEquals(List.of("joined 10.0.0.1"), events);
+        assertEquals(Instant.ofEpochMilli(savedAt), tracker.getPeers().get(TEST_PEER_ID).lastSeen(),
+                "A restored peer should not look freshly seen");
+
+        clock.advanceSeconds(20);
+        tracker.cleanupInactivePeers();
+        assertEquals(1, tracker.getPeerCount(), "A restored peer should get a full timeout to be heard from");
+
+        clock.advanceSeconds(20);
+        tracker.cleanupInactivePeers();
+        assertEquals(0, tracker.getPeerCount(), "A restored peer not heard from should expire");
+    }
+}
@@ -0,0 +1,64 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.SearchIndex;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the SearchIndex class.
+ */
+public class SearchIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testTermsAreLowerCasedRunsOfLettersAndDigits() {
+        assertEquals(Set.of("meet", "at", "café", "42"), SearchIndex.terms("Meet at CAFÉ 42, at 42!"));
+        assertEquals(Set.of(), SearchIndex.terms(" ... "));
+    }
+
+    @Test
+    void testSearchMatchesEveryTermNewestFirst() {
+        SearchIndex index = new SearchIndex();
+        index.add(10, "lunch at noon");
+        index.add(20, "Lunch tomorrow?");
+        index.add(30, "no lunch today, noon meeting");
+        index.add(40, "meeting moved");
+
+        assertEquals(new SearchIndex.Hits(3, List.of(30L, 20L, 10L)), index.search("lunch", 10));
+        assertEquals(new SearchIndex.Hits(2, List.of(30L, 10L)), index.search("NOON lunch", 10));
+        assertEquals(new SearchIndex.Hits(3, List.of(30L)), index.search("lunch", 1));
+        assertEquals(new SearchIndex.Hits(0, List.of()), index.search("lunch dinner", 10));
+        assertEquals(new SearchIndex.Hits(0, List.of()), index.search("?", 10));
+        assertThrows(IllegalArgumentException.class, () -> index.add(40, "out of order"));
+    }
+
+    @Test
+    void testSavedIndexLoadsWithTheSameContents() throws IOException {
+        SearchIndex index = new SearchIndex();
+        for (int i = 0; i < 1000; i++) {
+            index.add(((long) (i / 100) << 32) | (i * 200L), "message " + i + (i % 7 == 0 ? " lucky" : ""));
+        }
+        Path file = directory.resolve(SearchIndex.FILE_NAME);
+        index.save(file);
+
+        SearchIndex loaded = SearchIndex.load(file);
+        assertEquals(index.indexedThrough(), loaded.indexedThrough());
+        assertEquals(index.documents(), loaded.documents());
+        assertEquals(index.termCount(), loaded.termCount());
+        assertEquals(index.search("lucky message", 50), loaded.search("lucky message", 50));
+        assertEquals(index.search("999", 1), loaded.search("999", 1));
+
+        assertEquals(-1, SearchIndex.load(directory.resolve("missing.idx")).indexedThrough());
+    }
+}
@@ -0,0 +1,54 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.PeerTracker;
+import name.maxdeliso.teflon.data.SessionSnapshot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the SessionSnapshot class.
+ */
+public class SessionSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSavedSnapshotLoadsWithTheSameContents() throws IOException {
+        var snapshot = new SessionSnapshot(
+                new SessionSnapshot.Profile("239.255.0.1", 1337, "eth0"),
+                List.of(
+                        new PeerTracker.PeerInfo("550e8400-e29b-41d4-a716-446655440000", "10.0.0.2",
+                                Instant.parse("2024-01-01T00:00:00Z")),
+                        new PeerTracker.PeerInfo("6ba7b810-9dad-11d1-80b4-00c04fd430c8", "fe80:0:0:0:0:0:0:1%eth0",
+                                Instant.parse("2024-01-01T00:01:00Z"))),
+                Map.of("messagesSent", 12L, "acksReceived", 30L));
+        Path file = directory.resolve(SessionSnapshot.FILE_NAME);
+        snapshot.save(file);
+
+        assertEquals(snapshot, SessionSnapshot.load(file));
+    }
+
+    @Test
+    void testMissingSnapshotLoadsEmptyAndForeignFileIsRejected() throws IOException {
+        Path file = directory.resolve(SessionSnapshot.FILE_NAME);
+        assertEquals(SessionSnapshot.EMPTY, SessionSnapshot.load(file));
+
+        SessionSnapshot.EMPTY.save(file);
+        assertEquals(SessionSnapshot.EMPTY, SessionSnapshot.load(file));
+
+        Files.writeString(file, "not a snapshot");
+        assertThrows(IOException.class, () -> SessionSnapshot.load(file));
+    }
+}
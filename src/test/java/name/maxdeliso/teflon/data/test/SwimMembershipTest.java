@@ -0,0 +1,167 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.LogicalClock;
+import name.maxdeliso.teflon.data.MembershipUpdate;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MetricsRegistry;
+import name.maxdeliso.teflon.data.PeerTracker;
+import name.maxdeliso.teflon.data.SwimMembership;
+import name.maxdeliso.teflon.data.TimingWheel;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the SwimMembership class, run over a simulated multicast group.
+ */
+public class SwimMembershipTest {
+
+    private static final Instant START_TIME = Instant.parse("2024-01-01T00:00:00Z");
+    private static final long STEP_MILLIS = 100L;
+    private static final int GROUP_SIZE = 4;
+    private LogicalClock clock;
+    private TimingWheel wheel;
+    private List<Node> nodes;
+    private Queue<Message> wire;
+    private Set<String> disconnected;
+
+    private final class Node {
+        private final String id;
+        private final InetSocketAddress address;
+        private final PeerTracker peerTracker;
+        private final SwimMembership membership;
+
+        private Node(int index) {
+            id = new UUID(index + 1, index + 1).toString();
+            address = new InetSocketAddress("10.0.0." + (index + 1), 1337);
+            peerTracker = new PeerTracker(id, clock, wheel);
+            membership = new SwimMembership(id, clock, wheel, peerTracker, wire::add, new MetricsRegistry(),
+                    new Random(index));
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        clock = new LogicalClock(START_TIME);
+        wheel = new TimingWheel(clock);
+        wire = new ArrayDeque<>();
+        disconnected = new HashSet<>();
+        nodes = new ArrayList<>();
+        for (int i = 0; i < GROUP_SIZE; i++) {
+            nodes.add(new Node(i));
+        }
+        nodes.forEach(node -> node.membership.start());
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(node -> {
+            node.membership.stop();
+            node.peerTracker.shutdown();
+        });
+        wheel.shutdown();
+    }
+
+    private Node node(String id) {
+        return nodes.stream().filter(node -> node.id.equals(id)).findFirst().orElseThrow();
+    }
+
+    private void run(long millis) {
+        for (long elapsed = 0; elapsed < millis; elapsed += STEP_MILLIS) {
+            clock.advanceMillis(STEP_MILLIS);
+            wheel.advance();
+            while (!wire.isEmpty()) {
+                Message message = wire.poll();
+                Node from = node(message.senderId());
+                if (disconnected.contains(from.id)) {
+                    continue;
+                }
+                Message sent = from.membership.piggyback(message);
+                for (Node to : nodes) {
+                    if (to != from && !disconnected.contains(to.id)) {
+                        to.membership.receive(sent, from.address);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testQuietMembersStayAndCrashedMemberIsRemoved() {
+        run(3_000);
+        for (Node node : nodes) {
+            assertEquals(GROUP_SIZE - 1, node.membership.members().size(), "Every member should be discovered");
+            assertEquals(GROUP_SIZE - 1, node.peerTracker.getPeerCount(), "Probes should keep quiet peers known");
+        }
+
+        Node crashed = nodes.get(GROUP_SIZE - 1);
+        disconnected.add(crashed.id);
+        run(10_000);
+        for (Node node : nodes.subList(0, GROUP_SIZE - 1)) {
+            assertEquals(MembershipUpdate.State.DEAD, node.membership.members().get(crashed.id),
+                    "A crashed member should be declared dead well before the peer timeout");
+            assertFalse(node.peerTracker.getPeers().containsKey(crashed.id),
+                    "A dead member should leave the roster");
+        }
+
+        run(40_000);
+        for (Node node : nodes.subList(0, GROUP_SIZE - 1)) {
+            assertEquals(GROUP_SIZE - 2, node.peerTracker.getPeerCount(),
+                    "Members that only answer probes should outlive the peer timeout");
+        }
+    }
+
+    @Test
+    void testSuspectedMemberRefutes() {
+        run(3_000);
+        Node partitioned = nodes.get(1);
+        disconnected.add(partitioned.id);
+        run(3_000);
+        assertTrue(nodes.stream()
+                        .filter(node -> node != partitioned)
+                        .anyMatch(node -> node.membership.members().get(partitioned.id)
+                                == MembershipUpdate.State.SUSPECT),
+                "An unreachable member should be suspected");
+
+        disconnected.remove(partitioned.id);
+        run(5_000);
+        assertTrue(partitioned.membership.incarnation() > 0, "A suspected member should raise its incarnation");
+        for (Node node : nodes) {
+            if (node != partitioned) {
+                assertEquals(MembershipUpdate.State.ALIVE, node.membership.members().get(partitioned.id),
+                        "A refuted suspicion should be withdrawn everywhere");
+            }
+        }
+    }
+
+    @Test
+    void testRestoredMemberThatHasGoneIsDeclaredDead() {
+        run(3_000);
+        Node node = nodes.get(0);
+        String gone = new UUID(GROUP_SIZE + 1, GROUP_SIZE + 1).toString();
+        assertTrue(node.peerTracker.restorePeer(gone, new InetSocketAddress("10.0.0.99", 1337), clock.millis()));
+        node.membership.restore(gone, "10.0.0.99");
+
+        run(10_000);
+        assertEquals(MembershipUpdate.State.DEAD, node.membership.members().get(gone),
+                "A restored member that does not answer probes should be declared dead");
+        assertFalse(node.peerTracker.getPeers().containsKey(gone),
+                "It should leave the roster before the peer timeout");
+    }
+}
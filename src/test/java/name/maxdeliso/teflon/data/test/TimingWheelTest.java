@@ -0,0 +1,193 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.LogicalClock;
+import name.maxdeliso.teflon.data.TimingWheel;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the TimingWheel class.
+ */
+public class TimingWheelTest {
+
+    private static final Instant START_TIME = Instant.parse("2024-01-01T00:00:00Z");
+    private LogicalClock clock;
+    private TimingWheel wheel;
+
+    @BeforeEach
+    void setUp() {
+        clock = new LogicalClock(START_TIME);
+        wheel = new TimingWheel(clock);
+    }
+
+    @Test
+    void testTimerFiresAtDeadlineNotBefore() {
+        List<String> fired = new ArrayList<>();
+        wheel.scheduleAfter(5000, () -> fired.add("timeout"));
+
+        clock.advanceSeconds(4);
+        assertEquals(0, wheel.advance(), "Timer should not fire before its deadline");
+        assertTrue(fired.isEmpty());
+
+        clock.advanceSeconds(1);
+        assertEquals(1, wheel.advance(), "Timer should fire exactly at its deadline");
+        assertEquals(List.of("timeout"), fired);
+        assertEquals(0, wheel.pendingCount());
+    }
+
+    @Test
+    void testCancelledTimerDoesNotFire() {
+        List<String> fired = new ArrayList<>();
+        TimingWheel.Timeout timeout = wheel.scheduleAfter(1000, () -> fired.add("cancelled"));
+
+        assertTrue(timeout.cancel(), "Scheduled timer should cancel");
+        assertFalse(timeout.cancel(), "Second cancel should report nothing to cancel");
+
+        clock.advanceSeconds(2);
+        assertEquals(0, wheel.advance());
+        assertTrue(fired.isEmpty());
+    }
+
+    @Test
+    void testRescheduleMovesDeadline() {
+        List<String> fired = new ArrayList<>();
+        TimingWheel.Timeout timeout = wheel.scheduleAfter(1000, () -> fired.add("moved"));
+        wheel.reschedule(timeout, START_TIME.toEpochMilli() + 30_000);
+
+        clock.advanceSeconds(29);
+        wheel.advance();
+        assertTrue(fired.isEmpty(), "Rescheduled timer should not fire at its old deadline");
+
+        clock.advanceSeconds(1);
+        wheel.advance();
+        assertEquals(List.of("moved"), fired);
+        assertEquals(0, wheel.pendingCount(), "Reschedule should not leave duplicate timers behind");
+    }
+
+    @Test
+    void testTimersFireInDeadlineOrderAcrossLevels() {
+        Random random = new Random(42);
+        List<Long> fired = new ArrayList<>();
+        long base = START_TIME.toEpochMilli();
+        for (int i = 0; i < 500; i++) {
+            long deadline = base + 1 + random.nextInt(10_000_000);
+            wheel.schedule(deadline, () -> fired.add(deadline));
+        }
+
+        for (int step = 0; step < 100; step++) {
+            clock.advanceSeconds(100);
+            wheel.advance();
+        }
+
+        assertEquals(500, fired.size(), "Every timer should fire once");
+        for (int i = 1; i < fired.size(); i++) {
+            assertTrue(fired.get(i - 1) <= fired.get(i), "Timers should fire in deadline order");
+        }
+    }
+
+    @Test
+    void testTimerSpanningTopLevelBoundaryFires() {
+        long boundary = 1L << 42;
+        LogicalClock edgeClock = new LogicalClock(Instant.ofEpochMilli(boundary - 2000));
+        TimingWheel edgeWheel = new TimingWheel(edgeClock);
+        List<String> fired = new ArrayList<>();
+        edgeWheel.scheduleAfter(5000, () -> fired.add("wrapped"));
+
+        edgeClock.advanceSeconds(4);
+        edgeWheel.advance();
+        assertTrue(fired.isEmpty(), "Timer should not fire early after time wraps past the boundary");
+
+        edgeClock.advanceSeconds(1);
+        edgeWheel.advance();
+        assertEquals(List.of("wrapped"), fired);
+    }
+
+    @Test
+    void testPastDeadlineFiresOnNextAdvance() {
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(START_TIME.toEpochMilli() - 1000, () -> fired.add("late"));
+
+        clock.advanceSeconds(1);
+        assertEquals(1, wheel.advance());
+        assertEquals(List.of("late"), fired);
+    }
+
+    @Test
+    void testRescheduleWhileFiringLeavesOtherSlotsIntact() {
+        List<String> fired = new ArrayList<>();
+        long base = START_TIME.toEpochMilli();
+        TimingWheel.Timeout[] pair = new TimingWheel.Timeout[2];
+        for (int i = 0; i < pair.length; i++) {
+            int index = i;
+            pair[i] = wheel.schedule(base + 1000, () -> {
+                // Whichever fires first moves the other, as another thread could while both are firing
+                if (fired.isEmpty()) {
+                    wheel.schedule(base + 10_000, () -> fired.add("later"));
+                    wheel.reschedule(pair[1 - index], base + 10_000);
+                }
+                fired.add("due");
+            });
+        }
+
+        clock.advanceSeconds(1);
+        wheel.advance();
+        assertFalse(fired.contains("later"), "A timer in another slot should not fire early");
+        assertEquals(2, wheel.pendingCount());
+
+        clock.advanceSeconds(9);
+        wheel.advance();
+        assertEquals(1, fired.stream().filter("later"::equals).count());
+        assertEquals(0, wheel.pendingCount());
+    }
+
+    @Test
+    void testConcurrentRescheduleDuringAdvanceKeepsWheelConsistent() throws InterruptedException {
+        int timers = 64;
+        long base = START_TIME.toEpochMilli();
+        AtomicIntegerArray counts = new AtomicIntegerArray(timers);
+        TimingWheel.Timeout[] timeouts = new TimingWheel.Timeout[timers];
+        for (int i = 0; i < timers; i++) {
+            int index = i;
+            timeouts[i] = wheel.schedule(base + 1 + i, () -> counts.incrementAndGet(index));
+        }
+
+        Thread rescheduler = new Thread(() -> {
+            Random random = new Random(7);
+            for (int i = 0; i < 50_000; i++) {
+                wheel.reschedule(timeouts[random.nextInt(timers)], base + 1 + random.nextInt(2000));
+            }
+        });
+        rescheduler.start();
+        for (int step = 0; step < 2000; step++) {
+            clock.advanceMillis(1);
+            wheel.advance();
+        }
+        rescheduler.join();
+
+        for (TimingWheel.Timeout timeout : timeouts) {
+            wheel.reschedule(timeout, base + 5000);
+        }
+        assertEquals(timers, wheel.pendingCount());
+        int[] before = new int[timers];
+        for (int i = 0; i < timers; i++) {
+            before[i] = counts.get(i);
+        }
+        clock.advanceSeconds(5);
+        assertEquals(timers, wheel.advance());
+        for (int i = 0; i < timers; i++) {
+            assertEquals(before[i] + 1, counts.get(i), "Each timer should fire once at its final deadline");
+        }
+        assertEquals(0, wheel.pendingCount());
+    }
+}
@@ -0,0 +1,108 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.TranscriptExporter;
+
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the TranscriptExporter class.
+ */
+public class TranscriptExporterTest {
+
+    private static final String TEST_SENDER_ID = "550e8400-e29b-41d4-a716-446655440000";
+    private static final long TIMESTAMP = 1_704_067_200_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testLongTranscriptIsWrittenThroughTheBufferInOrder() throws IOException {
+        Path file = directory.resolve("transcript.jsonl");
+        int count = 5000;
+        long bytes;
+        try (TranscriptExporter exporter = TranscriptExporter.open(file, TranscriptExporter.Format.JSONL)) {
+            for (int i = 0; i < count; i++) {
+                exporter.write(new Message(TEST_SENDER_ID, "message " + i + " <ünïcödé> \"quoted\""), TIMESTAMP + i);
+            }
+            assertEquals(count, exporter.messages());
+            exporter.commit();
+            bytes = exporter.bytes();
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(count, lines.size());
+        assertEquals(Files.size(file), bytes);
+        for (int i = 0; i < count; i++) {
+            var json = JsonParser.parseString(lines.get(i)).getAsJsonObject();
+            assertEquals("message " + i + " <ünïcödé> \"quoted\"", json.get("body").getAsString());
+            assertEquals(TEST_SENDER_ID, json.get("senderId").getAsString());
+        }
+    }
+
+    @Test
+    void testHtmlAndTextTranscripts() throws IOException {
+        Message message = new Message(TEST_SENDER_ID, "<script>alert(1)</script>");
+
+        Path html = directory.resolve("transcript.html");
+        try (TranscriptExporter exporter = TranscriptExporter.open(html, TranscriptExporter.Format.HTML)) {
+            exporter.write(message, TIMESTAMP);
+            exporter.commit();
+        }
+        String page = Files.readString(html);
+        assertTrue(page.startsWith("<!DOCTYPE html>"));
+        assertTrue(page.strip().endsWith("</html>"));
+        assertTrue(page.contains("&lt;script&gt;alert(1)&lt;/script&gt;"));
+        assertFalse(page.contains("<script>"), "Message bodies should be escaped");
+
+        Path text = directory.resolve("transcript.txt");
+        try (TranscriptExporter exporter = TranscriptExporter.open(text, TranscriptExporter.Format.TXT)) {
+            exporter.write(message, TIMESTAMP);
+            exporter.commit();
+        }
+        String line = Files.readString(text);
+        assertTrue(line.endsWith(TEST_SENDER_ID + ": <script>alert(1)</script>\n"));
+    }
+
+    @Test
+    void testUncommittedTranscriptLeavesTheExistingFileUntouched() throws IOException {
+        Path file = directory.resolve("transcript.txt");
+        Files.writeString(file, "previous export\n");
+
+        try (TranscriptExporter exporter = TranscriptExporter.open(file, TranscriptExporter.Format.TXT)) {
+            exporter.write(new Message(TEST_SENDER_ID, "interrupted"), TIMESTAMP);
+        }
+
+        assertEquals("previous export\n", Files.readString(file));
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(file), files.toList(), "The temporary file should be deleted");
+        }
+
+        try (TranscriptExporter exporter = TranscriptExporter.open(file, TranscriptExporter.Format.TXT)) {
+            exporter.write(new Message(TEST_SENDER_ID, "complete"), TIMESTAMP);
+            exporter.commit();
+        }
+        assertTrue(Files.readString(file).endsWith(TEST_SENDER_ID + ": complete\n"));
+    }
+
+    @Test
+    void testFormatIsChosenByNameOrExtension() {
+        assertEquals(Optional.of(TranscriptExporter.Format.JSONL), TranscriptExporter.Format.named("JsonL"));
+        assertEquals(Optional.empty(), TranscriptExporter.Format.named("pdf"));
+        assertEquals(Optional.of(TranscriptExporter.Format.HTML), TranscriptExporter.Format.of(Path.of("a.htm")));
+        assertEquals(Optional.of(TranscriptExporter.Format.TXT), TranscriptExporter.Format.of(Path.of("log.TXT")));
+        assertEquals(Optional.empty(), TranscriptExporter.Format.of(Path.of("transcript")));
+    }
+}
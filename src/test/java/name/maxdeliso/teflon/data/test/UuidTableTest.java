@@ -0,0 +1,131 @@
+package name.maxdeliso.teflon.data.test;
+
+import name.maxdeliso.teflon.data.UuidTable;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the UuidTable class.
+ */
+public class UuidTableTest {
+
+    @Test
+    void testPutAndLookup() {
+        UuidTable table = new UuidTable(2);
+        UUID id = UUID.randomUUID();
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+
+        assertTrue(table.put(msb, lsb, 100), "First put should insert");
+        assertTrue(table.setStateBits(msb, lsb, 1, 0b101));
+        assertEquals(100, table.timestamp(msb, lsb));
+        assertEquals(0b101, table.state(msb, lsb, 1));
+        assertEquals(0, table.state(msb, lsb, 0));
+
+        assertFalse(table.put(msb, lsb, 200), "Second put should reset the existing entry");
+        assertEquals(200, table.timestamp(msb, lsb));
+        assertEquals(0, table.state(msb, lsb, 1), "Reset should clear state words");
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void testAbsentKeys() {
+        UuidTable table = new UuidTable(1);
+        UUID id = UUID.randomUUID();
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+
+        assertEquals(UuidTable.ABSENT, table.timestamp(msb, lsb));
+        assertFalse(table.touch(msb, lsb, 1));
+        assertFalse(table.setStateBits(msb, lsb, 0, 1));
+        assertFalse(table.remove(msb, lsb));
+        assertThrows(IllegalArgumentException.class, () -> table.put(0, 0, 1), "Nil UUID is reserved");
+    }
+
+    @Test
+    void testRemoveIfNotAfterRespectsTimestamp() {
+        UuidTable table = new UuidTable(0);
+        UUID id = UUID.randomUUID();
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        table.put(msb, lsb, 1000);
+
+        assertFalse(table.removeIfNotAfter(msb, lsb, 999), "Newer entries should be kept");
+        assertTrue(table.removeIfNotAfter(msb, lsb, 1000));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void testMatchesHashMapUnderRandomOperations() {
+        UuidTable table = new UuidTable(0);
+        Map<UUID, Long> reference = new HashMap<>();
+        List<UUID> keys = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 2_000; i++) {
+            keys.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+
+        for (int op = 0; op < 50_000; op++) {
+            UUID key = keys.get(random.nextInt(keys.size()));
+            long msb = key.getMostSignificantBits();
+            long lsb = key.getLeastSignificantBits();
+            if (random.nextInt(3) == 0) {
+                assertEquals(reference.remove(key) != null, table.remove(msb, lsb));
+            } else {
+                assertEquals(!reference.containsKey(key), table.put(msb, lsb, op));
+                reference.put(key, (long) op);
+            }
+        }
+
+        assertEquals(reference.size(), table.size());
+        for (UUID key : keys) {
+            long expected = reference.getOrDefault(key, UuidTable.ABSENT);
+            assertEquals(expected, table.timestamp(key.getMostSignificantBits(), key.getLeastSignificantBits()));
+        }
+        Set<UUID> visited = new HashSet<>();
+        table.forEach((msb, lsb, timestamp, attachment) -> visited.add(new UUID(msb, lsb)));
+        assertEquals(reference.keySet(), visited);
+    }
+
+    @Test
+    void testAttachments() {
+        UuidTable table = new UuidTable(0);
+        UUID id = UUID.randomUUID();
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+
+        assertNull(table.<String>updateAttachment(msb, lsb, previous -> "x"), "Absent keys are not updated");
+        table.put(msb, lsb, 1);
+        table.<String>updateAttachment(msb, lsb, previous -> previous == null ? "first" : previous + "+");
+        table.<String>updateAttachment(msb, lsb, previous -> previous == null ? "first" : previous + "+");
+        assertEquals("first+", table.<String>attachment(msb, lsb));
+    }
+
+    @Test
+    void testParsesCanonicalUuidStrings() {
+        UUID id = UUID.randomUUID();
+        String text = id.toString();
+
+        assertEquals(id.getMostSignificantBits(), UuidTable.mostSignificantBits(text));
+        assertEquals(id.getLeastSignificantBits(), UuidTable.leastSignificantBits(text));
+        assertEquals(id.getLeastSignificantBits(), UuidTable.leastSignificantBits(text.toUpperCase()));
+        assertThrows(IllegalArgumentException.class, () -> UuidTable.mostSignificantBits("not-a-uuid"));
+        assertThrows(IllegalArgumentException.class,
+                () -> UuidTable.leastSignificantBits("550e8400-e29b-41d4-a716-44665544000g"));
+    }
+}
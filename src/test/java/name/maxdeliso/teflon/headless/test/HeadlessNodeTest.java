@@ -0,0 +1,138 @@
+package name.maxdeliso.teflon.headless.test;
+
+import name.maxdeliso.teflon.data.JsonMessageMarshaller;
+import name.maxdeliso.teflon.data.LogicalClock;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageMarshaller;
+import name.maxdeliso.teflon.data.TimingWheel;
+import name.maxdeliso.teflon.headless.HeadlessNode;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the HeadlessNode class.
+ */
+public class HeadlessNodeTest {
+
+    private static final String PEER_ID = "550e8400-e29b-41d4-a716-446655440000";
+    private static final SocketAddress PEER_ADDRESS = new InetSocketAddress("10.0.0.2", 1337);
+
+    private final MessageMarshaller marshaller = new JsonMessageMarshaller(new Gson());
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final UUID nodeId = UUID.randomUUID();
+    private HeadlessNode node;
+
+    @BeforeEach
+    void setUp() {
+        var clock = new LogicalClock(Instant.parse("2024-01-01T00:00:00Z"));
+        node = new HeadlessNode(nodeId, clock, new TimingWheel(clock), marshaller,
+                new PrintStream(output, true, StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void tearDown() {
+        node.close();
+    }
+
+    private List<JsonObject> events() {
+        return output.toString(StandardCharsets.UTF_8).lines()
+                .map(line -> JsonParser.parseString(line).getAsJsonObject())
+                .toList();
+    }
+
+    private Message sendNext() {
+        ByteBuffer buffer = node.messageSource().peek();
+        Message message = marshaller.bufferToMessage(buffer.duplicate()).orElseThrow();
+        node.messageSource().poll();
+        return message;
+    }
+
+    @Test
+    void testReceivedChatIsWrittenAndAcknowledged() {
+        Message chat = new Message(PEER_ID, "hello from a peer", 1L);
+        node.receive(PEER_ADDRESS, marshaller.messageToBuffer(chat));
+
+        JsonObject event = events().getFirst();
+        assertEquals("received", event.get("event").getAsString());
+        assertEquals("hello from a peer", event.getAsJsonObject("message").get("body").getAsString());
+
+        Message ack = sendNext();
+        assertTrue(ack.isAcknowledgment());
+        assertEquals(chat.messageId(), ack.originalMessageId());
+        assertEquals(nodeId.toString(), ack.senderId());
+        assertEquals(1, events().size(), "Acknowledgments should not be written out");
+    }
+
+    @Test
+    void testInputLinesAreSentAndCommandsRun() throws InterruptedException {
+        assertTrue(node.execute("first line"));
+        assertTrue(node.execute("   "));
+        assertTrue(node.execute("/bogus"));
+        assertTrue(node.execute("/stats"));
+
+        Message sent = sendNext();
+        assertEquals("first line", sent.body());
+        assertNull(node.messageSource().peek());
+        assertFalse(node.execute("/quit"));
+
+        List<JsonObject> events = events();
+        assertEquals(List.of("error", "stats", "sent"), events.stream().map(e -> e.get("event").getAsString()).toList());
+        assertEquals(sent.messageId().toString(),
+                events.getLast().getAsJsonObject("message").get("messageId").getAsString());
+    }
+
+    @Test
+    void testSleepRejectsInvalidDurations() throws InterruptedException {
+        assertTrue(node.execute("/sleep -5"));
+        assertTrue(node.execute("/sleep soon"));
+        assertTrue(node.execute("/sleep"));
+        assertTrue(node.execute("/sleep 0"));
+
+        List<JsonObject> events = events();
+        assertEquals(3, events.size());
+        for (JsonObject event : events) {
+            assertEquals("error", event.get("event").getAsString());
+            assertEquals("Usage: /sleep <millis>", event.get("description").getAsString());
+        }
+    }
+
+    @Test
+    void testOptionsAreParsedWithDefaults() {
+        String[] defaults = {HeadlessNode.FLAG};
+        assertTrue(HeadlessNode.Options.requested(defaults));
+        assertFalse(HeadlessNode.Options.requested(new String[0]));
+        assertEquals(new HeadlessNode.Options("224.0.0.122", 1337, null, null, false),
+                HeadlessNode.Options.parse(defaults));
+
+        assertEquals(new HeadlessNode.Options("FF02::77", 4000, "eth0", Path.of("load.txt"), true),
+                HeadlessNode.Options.parse(new String[]{HeadlessNode.FLAG, "--group", "FF02::77", "--port", "4000",
+                        "--interface", "eth0", "--script", "load.txt", "--listen"}));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> HeadlessNode.Options.parse(new String[]{HeadlessNode.FLAG, "--port"}));
+        assertThrows(IllegalArgumentException.class,
+                () -> HeadlessNode.Options.parse(new String[]{HeadlessNode.FLAG, "--verbose"}));
+    }
+}
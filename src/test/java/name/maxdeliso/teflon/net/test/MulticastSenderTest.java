@@ -6,6 +6,7 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -18,6 +19,7 @@ import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import name.maxdeliso.teflon.data.MetricsRegistry;
 import name.maxdeliso.teflon.net.MulticastSender;
 
 @ExtendWith(MockitoExtension.class)
@@ -67,6 +69,26 @@ public class MulticastSenderTest {
         verify(datagramChannel).send(any(ByteBuffer.class), eq(socketAddress));
     }
 
+    @Test
+    void testSendOutcomesAreCounted() throws IOException {
+        MetricsRegistry metrics = new MetricsRegistry();
+        MulticastSender countingSender = new MulticastSender(datagramChannel, socketAddress, metrics);
+        when(datagramChannel.send(any(ByteBuffer.class), eq(socketAddress)))
+                .thenReturn(12)
+                .thenReturn(6)
+                .thenThrow(new IOException("Test exception"));
+
+        for (int i = 0; i < 3; i++) {
+            countingSender.send(ByteBuffer.wrap("test message".getBytes()));
+        }
+
+        MetricsRegistry.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.value("net.datagramsSent"));
+        assertEquals(1, snapshot.value("net.partialSends"));
+        assertEquals(1, snapshot.value("net.sendErrors"));
+        assertEquals(18, snapshot.value("net.bytesSent"));
+    }
+
     @Test
     void testSendWithNullBuffer() {
         MulticastSender sender = new MulticastSender(datagramChannel, socketAddress);
@@ -0,0 +1,122 @@
+package name.maxdeliso.teflon.net.test;
+
+import name.maxdeliso.teflon.data.JsonMessageMarshaller;
+import name.maxdeliso.teflon.data.LogicalClock;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageMarshaller;
+import name.maxdeliso.teflon.data.Outbox;
+import name.maxdeliso.teflon.data.TimingWheel;
+import name.maxdeliso.teflon.net.OutboxMessageSource;
+import name.maxdeliso.teflon.net.QueueMessageSource;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TransferQueue;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit tests for the OutboxMessageSource class.
+ */
+public class OutboxMessageSourceTest {
+
+    private static final String TEST_SENDER_ID = "550e8400-e29b-41d4-a716-446655440000";
+    private static final long INTERVAL_MILLIS = 20L;
+
+    private final MessageMarshaller marshaller = new JsonMessageMarshaller(new Gson());
+
+    @TempDir
+    Path directory;
+
+    private LogicalClock clock;
+    private TimingWheel wheel;
+    private Outbox outbox;
+    private TransferQueue<Message> queue;
+    private List<Message> sent;
+    private int wakeups;
+    private OutboxMessageSource source;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        clock = new LogicalClock(Instant.parse("2024-01-01T00:00:00Z"));
+        wheel = new TimingWheel(clock);
+        outbox = Outbox.open(directory.resolve(Outbox.FILE_NAME), marshaller);
+        queue = new LinkedTransferQueue<>();
+        sent = new ArrayList<>();
+        source = new OutboxMessageSource(
+                new QueueMessageSource(queue, marshaller, clock, sent::add),
+                outbox,
+                marshaller,
+                clock,
+                sent::add,
+                UnaryOperator.identity(),
+                wheel,
+                () -> wakeups++,
+                INTERVAL_MILLIS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        outbox.close();
+        wheel.shutdown();
+    }
+
+    private UUID send() {
+        ByteBuffer buffer = source.peek();
+        assertNotNull(buffer);
+        assertNull(source.destination());
+        source.poll();
+        return sent.getLast().messageId();
+    }
+
+    @Test
+    void testQueuedMessagesGoAheadOfTheOutbox() throws IOException {
+        Message chat = new Message(TEST_SENDER_ID, "chat");
+        Message ack = Message.createAcknowledgment(TEST_SENDER_ID, UUID.randomUUID(), true, 1L, 2L);
+        outbox.add(chat);
+        queue.add(ack);
+
+        assertEquals(ack.messageId(), send());
+        assertEquals(1, outbox.size(), "Sending a queued message should leave the outbox alone");
+        assertEquals(chat.messageId(), send());
+        assertEquals(0, outbox.size(), "A sent outbox message should be removed");
+        assertNull(source.peek());
+    }
+
+    @Test
+    void testBacklogIsReplayedInOrderAtAPacedRate() throws IOException {
+        List<UUID> backlog = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Message message = new Message(TEST_SENDER_ID, "offline " + i);
+            backlog.add(message.messageId());
+            outbox.add(message);
+        }
+
+        List<UUID> replayed = new ArrayList<>();
+        replayed.add(send());
+        while (replayed.size() < backlog.size()) {
+            assertNull(source.peek(), "The next message should wait for its turn");
+            int before = wakeups;
+            clock.advanceMillis(INTERVAL_MILLIS);
+            wheel.advance();
+            assertEquals(before + 1, wakeups, "The selector should be woken once the next message is due");
+            replayed.add(send());
+        }
+        assertEquals(backlog, replayed);
+    }
+}
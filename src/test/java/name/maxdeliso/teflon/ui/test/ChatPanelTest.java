@@ -0,0 +1,143 @@
+package name.maxdeliso.teflon.ui.test;
+
+import name.maxdeliso.teflon.data.LogicalClock;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageTracker;
+import name.maxdeliso.teflon.ui.ChatPanel;
+import name.maxdeliso.teflon.ui.TranscriptEntry;
+import name.maxdeliso.teflon.ui.UiUpdateScheduler;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.JComponent;
+import javax.swing.JList;
+import javax.swing.SwingUtilities;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the ChatPanel class.
+ */
+public class ChatPanelTest {
+
+    private static final String INSTANCE_ID = "550e8400-e29b-41d4-a716-446655440000";
+    private static final String PEER_A = "6ba7b810-9dad-11d1-80b4-00c04fd430c8";
+    private static final String PEER_B = "7ba7b810-9dad-11d1-80b4-00c04fd430c8";
+    private static final String PEER_C = "8ba7b810-9dad-11d1-80b4-00c04fd430c8";
+
+    @Test
+    void testSentMessageReceiptCountsPeerAcknowledgments() {
+        MessageTracker tracker = new MessageTracker(INSTANCE_ID, new LogicalClock(Instant.EPOCH));
+        try {
+            Message sent = new Message(INSTANCE_ID, "hello", 1L);
+            tracker.trackMessage(sent);
+            tracker.processAcknowledgment(Message.createAcknowledgment(INSTANCE_ID, sent.messageId(), true));
+            tracker.processAcknowledgment(Message.createAcknowledgment(PEER_A, sent.messageId(), true));
+            tracker.processAcknowledgment(Message.createAcknowledgment(PEER_B, sent.messageId(), false));
+
+            ChatPanel.Receipt receipt = ChatPanel.Receipt.of(
+                    tracker, INSTANCE_ID, sent.messageId(), Set.of(PEER_A, PEER_B, PEER_C));
+
+            assertEquals(Set.of(PEER_A), receipt.acknowledged());
+            assertEquals(Set.of(PEER_B), receipt.rejected());
+            assertEquals(Set.of(PEER_C), receipt.pending());
+            assertEquals("✓ 1/3 ✗ 1", receipt.summary());
+        } finally {
+            tracker.shutdown();
+        }
+    }
+
+    @Test
+    void testHtmlViewRefusesAScrollbackLimit() {
+        UiUpdateScheduler scheduler = new UiUpdateScheduler();
+        assertThrows(IllegalArgumentException.class,
+                () -> new ChatPanel(scheduler, messageId -> null, ChatPanel.View.HTML, 100));
+        new ChatPanel(scheduler, messageId -> null, ChatPanel.View.HTML, Integer.MAX_VALUE).shutdown();
+        new ChatPanel(scheduler, messageId -> null, ChatPanel.View.LIST, 100).shutdown();
+    }
+
+    @Test
+    void testHtmlIsTheDefaultViewAndTheListIsOptIn() {
+        assertEquals(ChatPanel.View.HTML, ChatPanel.View.fromName(null));
+        assertEquals(ChatPanel.View.HTML, ChatPanel.View.fromName("bogus"));
+        assertEquals(ChatPanel.View.HTML, ChatPanel.View.fromName("html"));
+        assertEquals(ChatPanel.View.LIST, ChatPanel.View.fromName("List"));
+    }
+
+    /**
+     * Paints the first row of a list transcript and returns its tooltip, which carries the
+     * receipt breakdown looked up the same way as the badge.
+     */
+    private static String paintFirstRow(ChatPanel chatPanel) throws Exception {
+        String[] tooltip = new String[1];
+        SwingUtilities.invokeAndWait(() -> {
+            JList<TranscriptEntry> list = chatPanel.getTranscriptList();
+            var cell = (JComponent) list.getCellRenderer().getListCellRendererComponent(
+                    list, list.getModel().getElementAt(0), 0, false, false);
+            var image = new BufferedImage(400, 40, BufferedImage.TYPE_INT_RGB);
+            cell.setSize(image.getWidth(), image.getHeight());
+            Graphics2D g = image.createGraphics();
+            try {
+                cell.paint(g);
+            } finally {
+                g.dispose();
+            }
+            tooltip[0] = cell.getToolTipText(null);
+        });
+        return tooltip[0];
+    }
+
+    private static String awaitReceipt(ChatPanel chatPanel, String expected) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        String tooltip = paintFirstRow(chatPanel);
+        while (!tooltip.contains(expected) && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+            tooltip = paintFirstRow(chatPanel);
+        }
+        return tooltip;
+    }
+
+    @Test
+    void testListReceiptOutlivesTheTrackedMessage() throws Exception {
+        var clock = new LogicalClock(Instant.parse("2024-01-01T00:00:00Z"));
+        MessageTracker tracker = new MessageTracker(INSTANCE_ID, clock);
+        UiUpdateScheduler scheduler = new UiUpdateScheduler();
+        ChatPanel chatPanel = new ChatPanel(scheduler,
+                messageId -> ChatPanel.Receipt.of(tracker, INSTANCE_ID, messageId, Set.of(PEER_A, PEER_B)),
+                ChatPanel.View.LIST);
+        try {
+            Message sent = new Message(INSTANCE_ID, "hello", 1L);
+            tracker.trackMessage(sent);
+            chatPanel.insertFragment(chatPanel.prerenderMessage(sent, new Date()));
+            CountDownLatch inserted = new CountDownLatch(1);
+            scheduler.afterFrame(inserted::countDown);
+            assertTrue(inserted.await(5, TimeUnit.SECONDS));
+            tracker.processAcknowledgment(Message.createAcknowledgment(PEER_A, sent.messageId(), true));
+            chatPanel.updateReceipt(sent.messageId());
+            String acknowledged = "Acknowledged: " + PEER_A.substring(0, 8);
+            assertTrue(awaitReceipt(chatPanel, acknowledged).contains(acknowledged));
+
+            clock.advanceSeconds(6);
+            tracker.cleanupTimedOutMessages();
+            assertTrue(tracker.getAcknowledgingParties(sent.messageId()).isEmpty(), "The tracker should forget it");
+            SwingUtilities.invokeAndWait(chatPanel::invalidateReceipts);
+            Thread.sleep(500);
+
+            String tooltip = paintFirstRow(chatPanel);
+            assertTrue(tooltip.contains(acknowledged),
+                    "The receipt should still be shown after the tracker forgot the message: " + tooltip);
+        } finally {
+            chatPanel.shutdown();
+            tracker.shutdown();
+        }
+    }
+}
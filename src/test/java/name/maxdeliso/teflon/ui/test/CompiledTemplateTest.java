@@ -0,0 +1,76 @@
+package name.maxdeliso.teflon.ui.test;
+
+import name.maxdeliso.teflon.ui.ChatPanel;
+import name.maxdeliso.teflon.ui.CompiledTemplate;
+import name.maxdeliso.teflon.ui.TemplateLoader;
+
+import org.junit.jupiter.api.Test;
+
+import static org.apache.commons.text.StringEscapeUtils.escapeHtml4;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the CompiledTemplate class.
+ */
+public class CompiledTemplateTest {
+
+    private static String render(CompiledTemplate template, CharSequence... args) {
+        return template.appendTo(new StringBuilder(), args).toString();
+    }
+
+    @Test
+    void testOutputMatchesStringFormat() {
+        String template = "<b>%s</b> is at 100%% of %s%%";
+        CompiledTemplate compiled = CompiledTemplate.compile(template);
+
+        assertEquals(2, compiled.placeholders());
+        assertEquals(String.format(template, "load", "capacity"), render(compiled, "load", "capacity"));
+        assertEquals("100%", render(CompiledTemplate.compile("%s%%"), "100"));
+        assertEquals("no placeholders", render(CompiledTemplate.compile("no placeholders")));
+    }
+
+    @Test
+    void testBundledTemplatesMatchStringFormat() {
+        for (String path : new String[]{
+                "/templates/message-template.html",
+                "/templates/system-event-template.html",
+                "/templates/receipt-template.html"}) {
+            String template = TemplateLoader.loadTemplate(path, ChatPanel.class);
+            CompiledTemplate compiled = CompiledTemplate.compile(template);
+            String[] args = new String[compiled.placeholders()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = "arg" + i;
+            }
+
+            assertEquals(String.format(template, (Object[]) args), render(compiled, args), path);
+
+            var interleaved = new StringBuilder();
+            for (int i = 0; i < args.length; i++) {
+                compiled.appendLiteral(interleaved, i).append(args[i]);
+            }
+            compiled.appendLiteral(interleaved, args.length);
+            assertEquals(String.format(template, (Object[]) args), interleaved.toString(), path);
+        }
+    }
+
+    @Test
+    void testUnsupportedConversionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("%d items"));
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("width: 50%;"));
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("trailing %"));
+        assertThrows(IllegalArgumentException.class, () -> render(CompiledTemplate.compile("%s and %s"), "one"));
+    }
+
+    @Test
+    void testSubstitutedTextIsEscaped() {
+        String text = "<script>alert(\"x\")</script> & more";
+
+        String escaped = CompiledTemplate.appendEscaped(new StringBuilder("> "), text).toString();
+
+        assertEquals("> &lt;script&gt;alert(&quot;x&quot;)&lt;/script&gt; &amp; more", escaped);
+        assertEquals("> " + escapeHtml4(text), escaped, "Escaping should match the old escaping of ASCII text");
+        assertEquals("café ✓ it's", CompiledTemplate.appendEscaped(new StringBuilder(), "café ✓ it's")
+                .toString(), "Other characters should pass through unchanged");
+    }
+}
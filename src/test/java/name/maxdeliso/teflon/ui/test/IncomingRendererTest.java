@@ -0,0 +1,229 @@
+package name.maxdeliso.teflon.ui.test;
+
+import name.maxdeliso.teflon.data.LogicalClock;
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.data.MessageTracker;
+import name.maxdeliso.teflon.data.MetricsRegistry;
+import name.maxdeliso.teflon.data.NodeCore;
+import name.maxdeliso.teflon.data.PeerTracker;
+import name.maxdeliso.teflon.data.TimingWheel;
+import name.maxdeliso.teflon.ui.ChatPanel;
+import name.maxdeliso.teflon.ui.IncomingRenderer;
+import name.maxdeliso.teflon.ui.TranscriptEntry;
+import name.maxdeliso.teflon.ui.UiUpdateScheduler;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.ListModel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the IncomingRenderer class.
+ */
+public class IncomingRendererTest {
+
+    private static final String SENDER = "6ba7b810-9dad-11d1-80b4-00c04fd430c8";
+
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final ExecutorService renderThread = Executors.newSingleThreadExecutor();
+    private final AtomicInteger caughtUp = new AtomicInteger();
+    private final AtomicInteger unreadChanged = new AtomicInteger();
+    private final AtomicInteger shownOnEdt = new AtomicInteger();
+    private UiUpdateScheduler scheduler;
+    private ChatPanel chatPanel;
+    private IncomingRenderer renderer;
+
+    private void create(int backlogCapacity, int maxPending) {
+        scheduler = new UiUpdateScheduler(metrics, backlogCapacity);
+        chatPanel = new ChatPanel(scheduler, messageId -> null, ChatPanel.View.LIST);
+        renderer = new IncomingRenderer(chatPanel, scheduler, renderThread, maxPending,
+                caughtUp::incrementAndGet, unreadChanged::incrementAndGet);
+    }
+
+    @AfterEach
+    void tearDown() {
+        renderThread.shutdownNow();
+    }
+
+    private void render(long hlc) {
+        Message message = new Message(SENDER, "message " + hlc, hlc);
+        renderThread.execute(() -> renderer.render(message, () -> {
+            if (SwingUtilities.isEventDispatchThread()) {
+                shownOnEdt.incrementAndGet();
+            }
+        }));
+    }
+
+    /**
+     * Waits until the pre-render thread is idle and the EDT has applied everything it queued.
+     */
+    private void awaitShown() throws Exception {
+        for (int round = 0; round < 3; round++) {
+            renderThread.submit(() -> { }).get(5, TimeUnit.SECONDS);
+            CountDownLatch frame = new CountDownLatch(1);
+            scheduler.afterFrame(frame::countDown);
+            assertTrue(frame.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private List<String> transcript() throws Exception {
+        List<String> rows = new ArrayList<>();
+        SwingUtilities.invokeAndWait(() -> {
+            ListModel<?> model = chatPanel.getTranscriptList().getModel();
+            for (int i = 0; i < model.getSize(); i++) {
+                rows.add(((TranscriptEntry) model.getElementAt(i)).text());
+            }
+        });
+        return rows;
+    }
+
+    @Test
+    void testFragmentsBuiltOffTheEdtAreInsertedInHlcOrder() throws Exception {
+        create(Integer.MAX_VALUE, IncomingRenderer.DEFAULT_MAX_PENDING);
+        render(3);
+        render(1);
+        render(2);
+        awaitShown();
+
+        assertEquals(List.of("message 1", "message 2", "message 3"), transcript());
+        assertEquals(3, shownOnEdt.get(), "Each message's update should run on the EDT");
+        assertEquals(0, caughtUp.get());
+    }
+
+    @Test
+    void testHeldBackMessagesAreInsertedInOneBatchOnResume() throws Exception {
+        create(Integer.MAX_VALUE, IncomingRenderer.DEFAULT_MAX_PENDING);
+        SwingUtilities.invokeAndWait(() -> renderer.setSuspended(true));
+        render(2);
+        render(1);
+        renderThread.execute(() -> renderer.render(
+                Message.createAcknowledgment(SENDER, UUID.randomUUID(), true), shownOnEdt::incrementAndGet));
+        awaitShown();
+
+        assertTrue(transcript().isEmpty(), "Nothing should be rendered while suspended");
+        assertEquals(2, renderer.unread(), "Acknowledgments should not count as unread");
+        assertTrue(unreadChanged.get() > 0);
+        assertEquals(0, shownOnEdt.get());
+
+        Set<Long> insertedInFrames = ConcurrentHashMap.newKeySet();
+        SwingUtilities.invokeAndWait(() -> {
+            chatPanel.getTranscriptList().getModel().addListDataListener(new ListDataListener() {
+                @Override
+                public void intervalAdded(ListDataEvent e) {
+                    insertedInFrames.add(metrics.counter("ui.framesApplied").sum());
+                }
+
+                @Override
+                public void intervalRemoved(ListDataEvent e) {
+                }
+
+                @Override
+                public void contentsChanged(ListDataEvent e) {
+                }
+            });
+            renderer.setSuspended(false);
+        });
+        awaitShown();
+
+        assertEquals(List.of("message 1", "message 2"), transcript());
+        assertEquals(1, insertedInFrames.size(), "The held-back messages should be inserted in one frame");
+        assertEquals(0, renderer.unread());
+        assertEquals(1, caughtUp.get(), "The held-back updates should be replaced by one catch-up");
+    }
+
+    @Test
+    void testHeldBackMessagesAreAcknowledgedBeforeTheyAreShown() throws Exception {
+        create(Integer.MAX_VALUE, IncomingRenderer.DEFAULT_MAX_PENDING);
+        var clock = new LogicalClock(Instant.parse("2024-01-01T00:00:00Z"));
+        var wheel = new TimingWheel(clock);
+        var messageTracker = new MessageTracker(UUID.randomUUID().toString(), clock);
+        var peerTracker = new PeerTracker(UUID.randomUUID().toString(), clock, wheel);
+        List<Message> acknowledgments = new CopyOnWriteArrayList<>();
+        var core = new NodeCore(UUID.randomUUID().toString(), clock, messageTracker, peerTracker, acknowledgments::add);
+        try {
+            SwingUtilities.invokeAndWait(() -> renderer.setSuspended(true));
+            for (long hlc = 1; hlc <= 2; hlc++) {
+                Message message = new Message(SENDER, "message " + hlc, hlc);
+                renderThread.execute(() -> {
+                    core.receive(message, new InetSocketAddress("10.0.0.2", 1337), 0L);
+                    renderer.render(message, shownOnEdt::incrementAndGet);
+                });
+            }
+            awaitShown();
+
+            assertTrue(transcript().isEmpty());
+            assertEquals(2, acknowledgments.size(), "Held-back messages should still be acknowledged");
+
+            SwingUtilities.invokeAndWait(() -> renderer.setSuspended(false));
+            awaitShown();
+            assertEquals(List.of("message 1", "message 2"), transcript());
+            assertEquals(2, acknowledgments.size(), "Showing a message should not acknowledge it again");
+        } finally {
+            messageTracker.shutdown();
+            peerTracker.shutdown();
+            wheel.shutdown();
+        }
+    }
+
+    @Test
+    void testSuspendedMessagesAreInsertedOnceTheLimitIsReached() throws Exception {
+        create(Integer.MAX_VALUE, 2);
+        SwingUtilities.invokeAndWait(() -> renderer.setSuspended(true));
+        render(1);
+        render(2);
+        render(3);
+        awaitShown();
+
+        assertEquals(List.of("message 1", "message 2"), transcript(), "A full buffer should be flushed");
+        assertEquals(3, renderer.unread());
+        assertTrue(renderer.isSuspended());
+    }
+
+    @Test
+    void testMessagesRefusedByAFullBacklogAreInsertedLater() throws Exception {
+        create(1, IncomingRenderer.DEFAULT_MAX_PENDING);
+        CountDownLatch edtBlocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SwingUtilities.invokeLater(() -> {
+            edtBlocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        edtBlocked.await();
+        render(1);
+        render(3);
+        render(2);
+        renderThread.submit(() -> { }).get(5, TimeUnit.SECONDS);
+        assertEquals(2, metrics.counter("ui.updatesRejected").sum(), "Only one update fits in the backlog");
+        release.countDown();
+        awaitShown();
+
+        assertEquals(List.of("message 1", "message 2", "message 3"), transcript());
+        assertEquals(1, shownOnEdt.get(), "Only the accepted message's own update runs");
+        assertEquals(1, caughtUp.get());
+        assertFalse(renderer.isSuspended());
+    }
+}
@@ -0,0 +1,71 @@
+package name.maxdeliso.teflon.ui.test;
+
+import name.maxdeliso.teflon.data.PeerTracker;
+import name.maxdeliso.teflon.ui.PeerListModel;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests for the PeerListModel class.
+ */
+public class PeerListModelTest {
+
+    private static PeerTracker.PeerInfo peer(String uuid, String address) {
+        return new PeerTracker.PeerInfo(uuid, address, Instant.EPOCH);
+    }
+
+    @Test
+    void testChangesFireEventsForSingleRows() {
+        PeerListModel model = new PeerListModel();
+        List<String> events = new ArrayList<>();
+        model.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                events.add("added " + e.getIndex0() + "-" + e.getIndex1());
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                events.add("removed " + e.getIndex0() + "-" + e.getIndex1());
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                events.add("changed " + e.getIndex0() + "-" + e.getIndex1());
+            }
+        });
+
+        assertEquals(0, model.put(peer("b", "10.0.0.2")));
+        assertEquals(0, model.put(peer("a", "10.0.0.1")));
+        assertEquals(2, model.put(peer("c", "10.0.0.3")));
+        assertEquals(1, model.put(peer("b", "10.0.0.9")), "A known peer should keep its row");
+        assertEquals(0, model.remove("a"));
+        assertEquals(-1, model.remove("a"), "Removing an unknown peer should do nothing");
+
+        assertEquals(List.of("added 0-0", "added 0-0", "added 2-2", "changed 1-1", "removed 0-0"), events);
+        assertEquals(2, model.getSize());
+        assertEquals("10.0.0.9", model.getElementAt(0).ipAddress());
+        assertEquals("c", model.getElementAt(1).uuid());
+    }
+
+    @Test
+    void testSetAllSortsByUuid() {
+        PeerListModel model = new PeerListModel();
+        model.put(peer("z", "10.0.0.26"));
+
+        model.setAll(List.of(peer("c", "10.0.0.3"), peer("a", "10.0.0.1"), peer("b", "10.0.0.2")));
+
+        assertEquals(3, model.getSize());
+        assertEquals("a", model.getElementAt(0).uuid());
+        assertEquals("b", model.getElementAt(1).uuid());
+        assertEquals("c", model.getElementAt(2).uuid());
+    }
+}
@@ -0,0 +1,57 @@
+package name.maxdeliso.teflon.ui.test;
+
+import name.maxdeliso.teflon.ui.TimestampFormat;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the TimestampFormat class.
+ */
+public class TimestampFormatTest {
+
+    private static final DateTimeFormatter REFERENCE =
+            DateTimeFormatter.ofPattern("HH:mm:ss:SSS z").withZone(ZoneId.systemDefault());
+    private static final long SECOND = Instant.parse("2024-01-01T12:34:56Z").toEpochMilli();
+
+    private static String format(TimestampFormat format, long epochMillis) {
+        return format.appendTo(new StringBuilder(), epochMillis).toString();
+    }
+
+    @Test
+    void testMillisecondsAreZeroPadded() {
+        TimestampFormat format = new TimestampFormat();
+
+        assertTrue(format(format, SECOND).contains(":000 "));
+        assertTrue(format(format, SECOND + 7).contains(":007 "));
+        assertTrue(format(format, SECOND + 42).contains(":042 "));
+        assertTrue(format(format, SECOND + 999).contains(":999 "));
+    }
+
+    @Test
+    void testOutputMatchesDateTimeFormatter() {
+        TimestampFormat format = new TimestampFormat();
+        long[] offsets = {0, 1, 9, 10, 99, 100, 999, 1_000, 1_001, 59_999, 60_000, 3_600_000, -1, -1_000, -1_001};
+        for (long offset : offsets) {
+            long epochMillis = SECOND + offset;
+            assertEquals(REFERENCE.format(Instant.ofEpochMilli(epochMillis)), format(format, epochMillis),
+                    "Timestamp " + epochMillis);
+        }
+        assertEquals(REFERENCE.format(Instant.EPOCH), format(format, 0L));
+    }
+
+    @Test
+    void testAppendsAfterExistingText() {
+        var out = new StringBuilder("[");
+
+        new TimestampFormat().appendTo(out, SECOND + 5).append(']');
+
+        assertEquals("[" + REFERENCE.format(Instant.ofEpochMilli(SECOND + 5)) + "]", out.toString());
+    }
+}
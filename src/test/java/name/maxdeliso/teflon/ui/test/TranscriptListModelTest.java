@@ -0,0 +1,98 @@
+package name.maxdeliso.teflon.ui.test;
+
+import name.maxdeliso.teflon.data.Message;
+import name.maxdeliso.teflon.ui.TranscriptEntry;
+import name.maxdeliso.teflon.ui.TranscriptListModel;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the TranscriptListModel class.
+ */
+public class TranscriptListModelTest {
+
+    private static TranscriptEntry message(long hlc, String senderId) {
+        return TranscriptEntry.message(Color.BLUE, senderId.substring(0, 1), senderId,
+                1000L + hlc, hlc, "message " + hlc + " from " + senderId, new UUID(hlc, 7));
+    }
+
+    @Test
+    void testInsertOrdersByHybridLogicalClock() {
+        TranscriptListModel model = new TranscriptListModel();
+
+        model.insert(message(1, "a"));
+        model.insert(message(3, "a"));
+        assertEquals(1, model.insert(message(2, "b")), "A late message should be placed by its timestamp");
+        assertEquals(1, model.insert(message(2, "a")), "Ties should be broken by sender ID");
+        model.append(List.of(TranscriptEntry.event(Color.GRAY, "System", 0L, "barrier")));
+        assertEquals(5, model.insert(message(1, "c")), "Events should act as barriers to reordering");
+
+        assertEquals("message 2 from a", model.getElementAt(1).text());
+        assertEquals("message 2 from b", model.getElementAt(2).text());
+        assertEquals("message 3 from a", model.getElementAt(3).text());
+    }
+
+    @Test
+    void testTiesFromOneSenderAreBrokenByMessageIdAsInCausalOrder() {
+        TranscriptListModel model = new TranscriptListModel();
+        List<UUID> ids = List.of(new UUID(0, 3), new UUID(0, 1), new UUID(0, 2));
+        for (UUID id : ids) {
+            model.insert(TranscriptEntry.message(Color.BLUE, "a", "a", 1000L, 5, id.toString(), id));
+        }
+
+        List<Message> expected = new ArrayList<>();
+        for (UUID id : ids) {
+            expected.add(new Message("a", id.toString(), id, Message.MessageType.CHAT, 0L, null, 5));
+        }
+        expected.sort(Message.CAUSAL_ORDER);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).messageId(), model.getElementAt(i).messageId());
+        }
+    }
+
+    @Test
+    void testOldRowsAreSpilledAndReadBack() {
+        List<ListDataEvent> events = new ArrayList<>();
+        try (TranscriptListModel model = new TranscriptListModel(100)) {
+            model.addListDataListener(new ListDataListener() {
+                @Override
+                public void intervalAdded(ListDataEvent e) {
+                    events.add(e);
+                }
+
+                @Override
+                public void intervalRemoved(ListDataEvent e) {
+                    events.add(e);
+                }
+
+                @Override
+                public void contentsChanged(ListDataEvent e) {
+                    events.add(e);
+                }
+            });
+
+            for (int i = 1; i <= 5000; i++) {
+                assertEquals(i - 1, model.insert(message(i, "sender-" + (i % 3))));
+            }
+
+            assertEquals(5000, model.getSize());
+            assertTrue(model.residentRows() < 100 + 256, "At most a page over the scrollback should stay resident");
+            for (int i = 0; i < 5000; i++) {
+                TranscriptEntry row = model.getElementAt(i);
+                assertEquals(message(i + 1, "sender-" + ((i + 1) % 3)), row, "Row " + i + " should round trip");
+            }
+            assertEquals(5000, events.size(), "Spilling should not fire events");
+            assertTrue(events.stream().allMatch(e -> e.getType() == ListDataEvent.INTERVAL_ADDED));
+        }
+    }
+}
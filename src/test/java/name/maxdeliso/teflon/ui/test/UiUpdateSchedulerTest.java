@@ -0,0 +1,100 @@
+package name.maxdeliso.teflon.ui.test;
+
+import name.maxdeliso.teflon.data.MetricsRegistry;
+import name.maxdeliso.teflon.ui.UiUpdateScheduler;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the UiUpdateScheduler class.
+ * Updates are submitted from a task on the EDT, so no frame can run until all are queued.
+ */
+public class UiUpdateSchedulerTest {
+
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final List<String> applied = Collections.synchronizedList(new ArrayList<>());
+
+    private static void awaitFrame(UiUpdateScheduler scheduler) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.afterFrame(done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS), "A frame should be applied");
+    }
+
+    @Test
+    void testFrameRunsOrderedThenLatestThenAfterFrameCallbacks() throws Exception {
+        UiUpdateScheduler scheduler = new UiUpdateScheduler(metrics);
+        SwingUtilities.invokeAndWait(() -> {
+            scheduler.afterFrame(() -> applied.add("after"));
+            scheduler.postLatest("status", () -> applied.add("status"));
+            scheduler.post(() -> applied.add("first"));
+            scheduler.post(() -> applied.add("second"));
+        });
+        awaitFrame(scheduler);
+
+        assertEquals(List.of("first", "second", "status", "after"), applied);
+    }
+
+    @Test
+    void testLatestUpdatesCoalescePerKey() throws Exception {
+        UiUpdateScheduler scheduler = new UiUpdateScheduler(metrics);
+        SwingUtilities.invokeAndWait(() -> {
+            scheduler.postLatest("a", () -> applied.add("a1"));
+            scheduler.postLatest("b", () -> applied.add("b1"));
+            scheduler.postLatest("a", () -> applied.add("a2"));
+            scheduler.postLatest("a", () -> applied.add("a3"));
+        });
+        awaitFrame(scheduler);
+
+        assertEquals(List.of("a3", "b1"), applied, "Only the latest update per key should run, in first-key order");
+        assertEquals(2, metrics.counter("ui.updatesCoalesced").sum());
+    }
+
+    @Test
+    void testTryPostRefusesUpdatesBeyondTheBacklogCapacity() throws Exception {
+        UiUpdateScheduler scheduler = new UiUpdateScheduler(metrics, 2);
+        boolean[] accepted = new boolean[4];
+        SwingUtilities.invokeAndWait(() -> {
+            accepted[0] = scheduler.tryPost(() -> applied.add("one"));
+            accepted[1] = scheduler.tryPost(() -> applied.add("two"));
+            accepted[2] = scheduler.tryPost(() -> applied.add("three"));
+            scheduler.post(() -> applied.add("must not be lost"));
+            accepted[3] = scheduler.backlog() == 3;
+        });
+
+        assertTrue(accepted[0]);
+        assertTrue(accepted[1]);
+        assertFalse(accepted[2], "The backlog is full");
+        assertTrue(accepted[3], "post should queue beyond the capacity");
+        assertEquals(1, metrics.counter("ui.updatesRejected").sum());
+
+        awaitFrame(scheduler);
+        assertEquals(List.of("one", "two", "must not be lost"), applied);
+        assertEquals(0, scheduler.backlog());
+        assertTrue(scheduler.tryPost(() -> applied.add("four")), "Room should free up once the frame ran");
+    }
+
+    @Test
+    void testFailingUpdateDoesNotStallTheFrame() throws Exception {
+        UiUpdateScheduler scheduler = new UiUpdateScheduler(metrics);
+        SwingUtilities.invokeAndWait(() -> {
+            scheduler.post(() -> {
+                throw new IllegalStateException("broken update");
+            });
+            scheduler.post(() -> applied.add("next"));
+        });
+        awaitFrame(scheduler);
+
+        assertEquals(List.of("next"), applied);
+    }
+}